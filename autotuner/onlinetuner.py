@@ -20,7 +20,7 @@ from streamjitmd import StreamJITMD
 
 class StreamJitMI(MeasurementInterface):
 	''' Measurement Interface for tunning a StreamJit application'''
-	def __init__(self, args, configuration, connection, manipulator, inputmanager, objective):
+	def __init__(self, args, configuration, connection, manipulator, inputmanager, objective, seedcfgs = []):
 		super(StreamJitMI, self).__init__(args = args, program_name = args.program, manipulator = manipulator, input_manager = inputmanager, objective = objective)
 		self.connection = connection
 		self.trycount = 0
@@ -28,6 +28,18 @@ class StreamJitMI(MeasurementInterface):
 		signal.signal(signal.SIGUSR1, self.receive_signal)
 		print 'My PID is:', os.getpid()
 		self.submitted_desired_result={}
+		self.seedcfgs = seedcfgs
+
+	def seed_configurations(self):
+		'''Configurations from the earlier tuning runs, those are measured first.'''
+		seeds = []
+		for seedcfg in self.seedcfgs:
+			seed = self.manipulator().seed_config()
+			for k, p in seedcfg.getAllParameters().items():
+				if k in self.config.params and isinstance(p, (sjparameters.sjIntegerParameter, sjparameters.sjFloatParameter, sjparameters.sjSwitchParameter)):
+					self.config.getParameter(k)._set(seed, p.value)
+			seeds.append(seed)
+		return seeds
 
 	def run(self, desired_result, input, limit):
 		self.trycount = self.trycount + 1
@@ -107,7 +119,7 @@ class StreamJitMI(MeasurementInterface):
 			print "Execution time of configuration %d is %fms"%(configPrefix, exetime)
 			return desired_result_id, opentuner.resultsdb.models.Result(time=exetime)
 
-def main(args, cfg, connection):
+def main(args, cfg, connection, parallelcfgs, seedcfgs = []):
 	logging.basicConfig(level=logging.INFO)
 	manipulator = ConfigurationManipulator()
 
@@ -116,13 +128,15 @@ def main(args, cfg, connection):
 		manipulator.add_parameter(p)
 	
 	mi = StreamJitMI(args, cfg, connection, manipulator, FixedInputManager(),
-                    MinimizeTime())
+                    MinimizeTime(), seedcfgs)
 
 	m = TuningRunMain(mi, args, measurement_driver=StreamJITMD)
+	#Number of configurations those are sent to StreamJIT without waiting for their results.
+	m.measurement_driver.parallel_cfgs = parallelcfgs
 	mi.tuning_run_main(m)
 	m.main()
 
-def start(argv, cfg, connection):
+def start(argv, cfg, connection, parallelcfgs = 2, seedcfgs = []):
 	log = logging.getLogger(__name__)
 	parser = argparse.ArgumentParser(parents=opentuner.argparsers())
 
@@ -135,4 +149,4 @@ def start(argv, cfg, connection):
 	if not args.database:
 		args.database = 'sqlite:///' + args.program.rstrip('\n') + '.db'
 
-	main(args, cfg, connection)
+	main(args, cfg, connection, parallelcfgs, seedcfgs)
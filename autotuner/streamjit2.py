@@ -12,6 +12,8 @@ class streamJit:
 		self.port = port
 		self.program = "streamApp"
 		self.tunerounds = '5000'
+		self.parallelcfgs = 2
+		self.seedcfgs = []
 
 	def listen(self):
 		try:
@@ -40,6 +42,12 @@ class streamJit:
 
 			elif ( data == 'tunerounds\n'):
 				self.tunerounds = self.file.readline()
+
+			elif ( data == 'parallelcfgs\n'):
+				self.parallelcfgs = int(self.file.readline())
+
+			elif ( data == 'seedcfg\n'):
+				self.seedcfgs.append(configuration.getConfiguration(self.file.readline()))
 				
 			elif ( data == 'confg\n' ):
 				print "Config received."
@@ -47,7 +55,7 @@ class streamJit:
 				try:
 					cfg = configuration.getConfiguration(cfgString)
 					argv = ['--program', self.program,  '--test-limit', self.tunerounds]
-					onlinetuner.start(argv, cfg, self)
+					onlinetuner.start(argv, cfg, self, self.parallelcfgs, self.seedcfgs)
 				except Exception, e:
 					print "Exception occured : %s"%e
 					traceback.print_exc()
@@ -42,9 +42,10 @@ public final class Portal<I> {
 	private final Class<I> klass;
 	private final List<Worker<?, ?>> recipients = new ArrayList<>();
 	/**
-	 * sender -> (recipient -> constraint).
+	 * sender -> (recipient -> constraint).  Set once by setConstraints(), then
+	 * only read.
 	 */
-	private final Map<Worker<?, ?>, Map<Worker<?, ?>, MessageConstraint>> constraints = new IdentityHashMap<>();
+	private volatile Map<Worker<?, ?>, Map<Worker<?, ?>, MessageConstraint>> constraints = null;
 	public Portal(Class<I> klass) {
 		if (!klass.isInterface())
 			throw new IllegalArgumentException(klass+" is not an interface type");
@@ -121,7 +122,8 @@ public final class Portal<I> {
 	public I getHandle(Worker<?, ?> sender, int latency) {
 		if (sender == null)
 			throw new NullPointerException();
-		Handle handler = new Handle(sender, recipients, constraints.get(sender));
+		Map<Worker<?, ?>, Map<Worker<?, ?>, MessageConstraint>> constraints = this.constraints;
+		Handle handler = new Handle(sender, recipients, constraints == null ? null : constraints.get(sender));
 		@SuppressWarnings("unchecked")
 		I handle = (I)Proxy.newProxyInstance(klass.getClassLoader(), new Class<?>[]{klass}, handler);
 		return handle;
@@ -140,8 +142,13 @@ public final class Portal<I> {
 	 * Fills in our constraints map from the list of all constraints in the
 	 * graph.  (We only remember constraints about us.)  Called by the
 	 * interpreter after finding the constraints and before execution begins.
+	 * Blobs may be compiled concurrently, so only the first call takes effect;
+	 * the constraints of a graph do not change.
 	 */
-	/* package-private */ void setConstraints(List<MessageConstraint> allConstraints) {
+	/* package-private */ synchronized void setConstraints(List<MessageConstraint> allConstraints) {
+		if (this.constraints != null)
+			return;
+		Map<Worker<?, ?>, Map<Worker<?, ?>, MessageConstraint>> constraints = new IdentityHashMap<>();
 		for (MessageConstraint c : allConstraints) {
 			if (c.getPortal() != this)
 				continue;
@@ -152,6 +159,7 @@ public final class Portal<I> {
 			}
 			senderMap.put(c.getRecipient(), c);
 		}
+		this.constraints = constraints;
 	}
 
 	/**
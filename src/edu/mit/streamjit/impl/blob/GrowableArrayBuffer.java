@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A Buffer backed by a circular array that doubles when full, up to a
+ * high-water mark. Used between blobs whose relative rates are not known
+ * statically, where a small fixed-size buffer could deadlock. Writes beyond
+ * the high-water mark are partial, so that a producer that runs ahead of its
+ * consumer is throttled instead of exhausting the heap. All operations
+ * synchronize on the buffer.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public final class GrowableArrayBuffer extends AbstractBuffer {
+	private Object[] elements;
+	private int head;
+	private int size;
+	private final int maxCapacity;
+
+	/**
+	 * @param maxCapacity
+	 *            the high-water mark. The buffer never holds more items.
+	 */
+	public GrowableArrayBuffer(int initialCapacity, int maxCapacity) {
+		checkArgument(maxCapacity >= initialCapacity,
+				"maxCapacity(=%s) < initialCapacity(=%s)", maxCapacity,
+				initialCapacity);
+		this.elements = new Object[Math.max(initialCapacity, 2)];
+		this.maxCapacity = Math.max(maxCapacity, 2);
+	}
+
+	@Override
+	public synchronized Object read() {
+		if (size == 0)
+			return null;
+		Object e = elements[head];
+		elements[head] = null;
+		head = (head + 1) % elements.length;
+		--size;
+		return e;
+	}
+
+	@Override
+	public synchronized int read(Object[] data, int offset, int length) {
+		int read = Math.min(length, size);
+		for (int i = 0; i < read; ++i) {
+			data[offset + i] = elements[head];
+			elements[head] = null;
+			head = (head + 1) % elements.length;
+		}
+		size -= read;
+		return read;
+	}
+
+	@Override
+	public synchronized boolean readAll(Object[] data, int offset) {
+		if (data.length - offset > size)
+			return false;
+		read(data, offset, data.length - offset);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean write(Object t) {
+		if (size == maxCapacity)
+			return false;
+		ensureCapacity(size + 1);
+		elements[(head + size) % elements.length] = t;
+		++size;
+		return true;
+	}
+
+	@Override
+	public synchronized int write(Object[] data, int offset, int length) {
+		length = Math.min(length, maxCapacity - size);
+		ensureCapacity(size + length);
+		for (int i = 0; i < length; ++i)
+			elements[(head + size + i) % elements.length] = data[offset + i];
+		size += length;
+		return length;
+	}
+
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * The high-water mark, not the current length of the backing array.
+	 */
+	@Override
+	public int capacity() {
+		return maxCapacity;
+	}
+
+	private void ensureCapacity(int required) {
+		if (required <= elements.length)
+			return;
+		int newCapacity = elements.length;
+		while (newCapacity < required)
+			newCapacity *= 2;
+		newCapacity = Math.min(newCapacity, maxCapacity);
+		Object[] newElements = new Object[newCapacity];
+		for (int i = 0; i < size; ++i)
+			newElements[i] = elements[(head + i) % elements.length];
+		elements = newElements;
+		head = 0;
+	}
+}
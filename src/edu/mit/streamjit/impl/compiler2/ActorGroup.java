@@ -253,13 +253,16 @@ public class ActorGroup implements Comparable<ActorGroup> {
 	 * given iterations using the given ConcreteStorage instances.
 	 * @param iterations the range of iterations to run for
 	 * @param storage the storage being used
+	 * @param profiler the profiler to record worker loop times into, or null
+	 * to not profile
 	 * @return a void->void method handle
 	 */
 	public MethodHandle specialize(Range<Integer> iterations, Map<Storage, ConcreteStorage> storage,
 			BiFunction<MethodHandle[], WorkerActor, MethodHandle> switchFactory,
 			int unrollFactor,
 			ImmutableTable<Actor, Integer, IndexFunctionTransformer> inputTransformers,
-			ImmutableTable<Actor, Integer, IndexFunctionTransformer> outputTransformers) {
+			ImmutableTable<Actor, Integer, IndexFunctionTransformer> outputTransformers,
+			WorkCostProfiler profiler) {
 		//TokenActors are special.
 		assert !isTokenGroup() : actors();
 
@@ -271,8 +274,8 @@ public class ActorGroup implements Comparable<ActorGroup> {
 		int unrolls = (totalIterations/unrollFactor);
 		int unrollEndpoint = iterations.lowerEndpoint() + unrolls*unrollFactor;
 		MethodHandle overall = Combinators.semicolon(
-				makeGroupLoop(Range.closedOpen(iterations.lowerEndpoint(), unrollEndpoint), unrollFactor, withRWHandlesBound),
-				makeGroupLoop(Range.closedOpen(unrollEndpoint, iterations.upperEndpoint()), 1, withRWHandlesBound)
+				makeGroupLoop(Range.closedOpen(iterations.lowerEndpoint(), unrollEndpoint), unrollFactor, withRWHandlesBound, profiler),
+				makeGroupLoop(Range.closedOpen(unrollEndpoint, iterations.upperEndpoint()), 1, withRWHandlesBound, profiler)
 		);
 		return overall;
 	}
@@ -329,12 +332,12 @@ public class ActorGroup implements Comparable<ActorGroup> {
 	 * reinitialize the splitter/joiner index arrays to their initial
 	 * values.
 	 */
-	private MethodHandle makeGroupLoop(Range<Integer> iterations, int unrollFactor, Map<Actor, MethodHandle> withRWHandlesBound) {
+	private MethodHandle makeGroupLoop(Range<Integer> iterations, int unrollFactor, Map<Actor, MethodHandle> withRWHandlesBound, WorkCostProfiler profiler) {
 		if (iterations.isEmpty()) return Combinators.nop();
 		List<MethodHandle> loopHandles = new ArrayList<>(actors().size());
 		Map<int[], int[]> requiredCopies = new LinkedHashMap<>();
 		for (Actor a : actors())
-			loopHandles.add(makeWorkerLoop((WorkerActor)a, withRWHandlesBound.get(a), unrollFactor, iterations.lowerEndpoint(), requiredCopies));
+			loopHandles.add(makeWorkerLoop((WorkerActor)a, withRWHandlesBound.get(a), unrollFactor, iterations.lowerEndpoint(), requiredCopies, profiler));
 		MethodHandle groupLoop = MethodHandles.insertArguments(OVERALL_GROUP_LOOP, 0,
 				Combinators.semicolon(loopHandles), iterations.lowerEndpoint(), iterations.upperEndpoint(), unrollFactor);
 		if (!requiredCopies.isEmpty()) {
@@ -362,9 +365,10 @@ public class ActorGroup implements Comparable<ActorGroup> {
 	 * initial contents of index arrays
 	 * @param requiredCopies accumulates the copies required to reinitialize the
 	 * index arrays
+	 * @param profiler if non-null, the loop is timed into this profiler
 	 * @return a MethodHandle taking one int parameter
 	 */
-	private MethodHandle makeWorkerLoop(WorkerActor a, MethodHandle base, int unrollFactor, int firstIteration, Map<int[], int[]> requiredCopies) {
+	private MethodHandle makeWorkerLoop(WorkerActor a, MethodHandle base, int unrollFactor, int firstIteration, Map<int[], int[]> requiredCopies, WorkCostProfiler profiler) {
 		int subiterations = schedule.get(a);
 		Object pop, push;
 		if (base.type().parameterType(0).equals(int.class)) {
@@ -396,7 +400,10 @@ public class ActorGroup implements Comparable<ActorGroup> {
 			loopHandle = JOINER_LOOP;
 		else
 			throw new AssertionError(a);
-		return MethodHandles.insertArguments(loopHandle, 0, base, unrollFactor, subiterations, pop, push);
+		MethodHandle loop = MethodHandles.insertArguments(loopHandle, 0, base, unrollFactor, subiterations, pop, push);
+		if (profiler != null)
+			loop = MethodHandles.insertArguments(PROFILED_LOOP, 0, loop, profiler.counter(a), unrollFactor * subiterations);
+		return loop;
 	}
 
 	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
@@ -405,6 +412,7 @@ public class ActorGroup implements Comparable<ActorGroup> {
 	private static final MethodHandle JOINER_LOOP = findStatic(LOOKUP, "_joinerLoop");
 	private static final MethodHandle REINITIALIZE_ARRAYS = findStatic(LOOKUP, "_reinitializeArrays");
 	private static final MethodHandle OVERALL_GROUP_LOOP = findStatic(LOOKUP, "_overallGroupLoop");
+	private static final MethodHandle PROFILED_LOOP = findStatic(LOOKUP, "_profiledLoop");
 	private static void _filterLoop(MethodHandle work, int iterations, int subiterations, int pop, int push, int firstIteration) throws Throwable {
 		for (int i = firstIteration*subiterations; i < (firstIteration+iterations)*subiterations; ++i)
 			work.invokeExact(i * pop, i * push);
@@ -417,6 +425,15 @@ public class ActorGroup implements Comparable<ActorGroup> {
 		for (int i = firstIteration*subiterations; i < (firstIteration+iterations)*subiterations; ++i)
 			work.invokeExact(readIndices, i * push);
 	}
+	private static void _profiledLoop(MethodHandle loop, WorkCostProfiler.Counter counter, int firings, int firstIteration) throws Throwable {
+		if (!counter.isRecording()) {
+			loop.invokeExact(firstIteration);
+			return;
+		}
+		long start = System.nanoTime();
+		loop.invokeExact(firstIteration);
+		counter.record(System.nanoTime() - start, firings);
+	}
 	private static void _reinitializeArrays(int[][] indexArrays) {
 		for (int i = 0; i < indexArrays.length; i += 2)
 			System.arraycopy(indexArrays[i], 0, indexArrays[i+1], 0, indexArrays[i].length);
@@ -56,6 +56,22 @@ public interface Arrayish {
 	 * @return a write handle
 	 */
 	public MethodHandle set();
+	/**
+	 * Returns the number of bytes of native (off-heap) memory backing this
+	 * Arrayish, or 0 if it lives on the Java heap.
+	 * @return the native memory size in bytes
+	 */
+	public default long nativeBytes() {
+		return 0;
+	}
+	/**
+	 * Writes every page of this Arrayish's native memory (if any), zeroing it.
+	 * Linux places a page on the NUMA node of the thread that first touches
+	 * it, so calling this from a thread pinned to a socket places the memory
+	 * on that socket.  Must be called before any data is written.
+	 */
+	public default void firstTouch() {
+	}
 
 	/**
 	 * A Factory for Arrayish objects.
@@ -187,14 +203,15 @@ public interface Arrayish {
 		}
 		private static final MethodHandle MEMORY_GETTER = findGetter(MethodHandles.lookup(), "memory");
 		private static final MethodHandle INDEX = findStatic(MethodHandles.lookup(), "index");
-		private final long memory;
+		private final long memory, bytes;
 		private final int size;
 		private final MethodHandle get, set;
 		public UnsafeArrayish(Class<?> type, int size) {
 			//We can't store object references for lack of GC roots.
 			checkArgument(type.isPrimitive() && !type.equals(void.class), "%s can't be stored in native memory", type);
 			checkArgument(size >= 0, "bad size: %s", size);
-			this.memory = UNSAFE.allocateMemory(size * PrimitiveUtils.sizeof(type));
+			this.bytes = (long)size * PrimitiveUtils.sizeof(type);
+			this.memory = UNSAFE.allocateMemory(bytes);
 			this.size = size;
 
 			Class<?> dataType = type.equals(boolean.class) ? byte.class : type;
@@ -231,6 +248,14 @@ public interface Arrayish {
 		public MethodHandle set() {
 			return set;
 		}
+		@Override
+		public long nativeBytes() {
+			return bytes;
+		}
+		@Override
+		public void firstTouch() {
+			UNSAFE.setMemory(memory, bytes, (byte)0);
+		}
 		private static long index(long base, int stride, int index) {
 			return base + stride * index;
 		}
@@ -33,7 +33,7 @@ import java.lang.invoke.MethodHandles.Lookup;
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 10/10/2013
  */
-public class CircularArrayConcreteStorage implements ConcreteStorage {
+public class CircularArrayConcreteStorage implements NativeConcreteStorage {
 	private static final Lookup LOOKUP = MethodHandles.lookup();
 	private static final MethodHandle INDEX = findStatic(LOOKUP, "index");
 	private static final MethodHandle ADJUST = findVirtual(LOOKUP, "adjust");
@@ -71,6 +71,16 @@ public class CircularArrayConcreteStorage implements ConcreteStorage {
 	public void sync() {
 	}
 
+	@Override
+	public long nativeBytes() {
+		return array.nativeBytes();
+	}
+
+	@Override
+	public void firstTouch() {
+		array.firstTouch();
+	}
+
 	@Override
 	public MethodHandle readHandle() {
 		return readHandle;
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.util.json.Jsonifiers;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The scheduling decisions of one Compiler2 compilation, saved to disk so a
+ * later compilation of the same workers with the same configuration can skip
+ * the schedule solves.  Artifacts are keyed by a hash of the workers and
+ * their rates, the edges between them, the configuration's parameters, any
+ * measured {@link WorkCosts} and the initial data sizes, and are versioned so
+ * a changed compiler ignores stale files.  The same worker classes built with
+ * different constructor arguments (e.g., decimation rates) thus get different
+ * keys.
+ *
+ * Only the fusion result (for validation) and the internal, external and
+ * init schedules are saved.  The generated code itself is a tree of method
+ * handles bound to live storage objects, so it can't be serialized; archetype
+ * classes are still regenerated on load.
+ *
+ * The directory is an LRU cache: loading an artifact touches its file, and
+ * saving one evicts the least recently used files beyond the capacity.
+ * @author Sumanan sumanan@mit.edu
+ * @since 21 Oct, 2016
+ */
+public final class CompilationArtifact implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/**
+	 * Bump whenever a change to Compiler2 invalidates saved artifacts.
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * The extra data name holding the artifact directory (as a String).  If
+	 * absent, Compiler2 neither loads nor saves artifacts.
+	 */
+	public static final String EXTRA_DATA_NAME = "artifactDir";
+	/**
+	 * The extra data name holding the maximum number of artifacts kept in the
+	 * artifact directory (as an Integer).  If absent, artifacts are never
+	 * evicted.
+	 */
+	public static final String CAPACITY_EXTRA_DATA_NAME = "artifactCapacity";
+	private final int version;
+	private final String key;
+	/**
+	 * The worker identifiers of each non-token group.
+	 */
+	private final ImmutableSet<ImmutableSortedSet<Integer>> groups;
+	/**
+	 * Worker identifier to its peek and pop rates of each input followed by
+	 * its push rates of each output, as seen by the compiler.
+	 */
+	private final ImmutableMap<Integer, ImmutableList<Integer>> rates;
+	/**
+	 * Worker identifier to executions per group iteration.
+	 */
+	private final ImmutableMap<Integer, Integer> internalSchedule;
+	/**
+	 * Group key (see {@link #groupKey(ActorGroup)}) to group iterations.
+	 */
+	private final ImmutableMap<Object, Integer> externalSchedule, initSchedule;
+
+	private CompilationArtifact(String key, ImmutableSet<ImmutableSortedSet<Integer>> groups,
+			ImmutableMap<Integer, ImmutableList<Integer>> rates,
+			ImmutableMap<Integer, Integer> internalSchedule,
+			ImmutableMap<Object, Integer> externalSchedule,
+			ImmutableMap<Object, Integer> initSchedule) {
+		this.version = VERSION;
+		this.key = key;
+		this.groups = groups;
+		this.rates = rates;
+		this.internalSchedule = internalSchedule;
+		this.externalSchedule = externalSchedule;
+		this.initSchedule = initSchedule;
+	}
+
+	/**
+	 * Returns the artifact directory named by the given configuration, or null
+	 * if it doesn't name one.
+	 */
+	public static Path directory(Configuration config) {
+		Object dir = config.getExtraData(EXTRA_DATA_NAME);
+		return dir == null ? null : Paths.get(dir.toString());
+	}
+
+	/**
+	 * Returns the artifact directory capacity named by the given
+	 * configuration, or Integer.MAX_VALUE if it doesn't name one.
+	 */
+	public static int capacity(Configuration config) {
+		Object capacity = config.getExtraData(CAPACITY_EXTRA_DATA_NAME);
+		return capacity == null ? Integer.MAX_VALUE : ((Number)capacity).intValue();
+	}
+
+	/**
+	 * Computes the key identifying compilations of the given workers with the
+	 * given configuration and initial data.  Each worker contributes its
+	 * class, its declared rates and the identifiers of its predecessors and
+	 * successors, in edge order.  Extra data other than work costs doesn't
+	 * affect scheduling, so it's excluded.
+	 */
+	public static String key(Set<Worker<?, ?>> workers, Configuration config, Map<Token, ImmutableList<Object>> initialData) {
+		StringBuilder sb = new StringBuilder();
+		Map<Integer, String> workerKeys = new TreeMap<>();
+		for (Worker<?, ?> w : workers) {
+			List<Integer> predecessors = new ArrayList<>(), successors = new ArrayList<>();
+			for (Worker<?, ?> p : Workers.getPredecessors(w))
+				predecessors.add(Workers.getIdentifier(p));
+			for (Worker<?, ?> s : Workers.getSuccessors(w))
+				successors.add(Workers.getIdentifier(s));
+			workerKeys.put(Workers.getIdentifier(w), String.format("%s peek%s pop%s push%s in%s out%s",
+					w.getClass().getName(), w.getPeekRates(), w.getPopRates(), w.getPushRates(),
+					predecessors, successors));
+		}
+		sb.append(workerKeys);
+		for (Map.Entry<String, Configuration.Parameter> e : new TreeMap<>(config.getParametersMap()).entrySet())
+			sb.append(Jsonifiers.toJson(e.getValue()));
+		sb.append(WorkCosts.of(config));
+		Map<String, Integer> initialDataSizes = new TreeMap<>();
+		for (Map.Entry<Token, ImmutableList<Object>> e : initialData.entrySet())
+			initialDataSizes.put(e.getKey().toString(), e.getValue().size());
+		sb.append(initialDataSizes);
+		return Hashing.sha1().hashString(sb, Charsets.UTF_8).toString();
+	}
+
+	/**
+	 * Records the schedules of the given (scheduled) groups.
+	 */
+	public static CompilationArtifact record(String key, Set<ActorGroup> groups,
+			Map<ActorGroup, Integer> externalSchedule, Map<ActorGroup, Integer> initSchedule) {
+		ImmutableSet.Builder<ImmutableSortedSet<Integer>> groupsBuilder = ImmutableSet.builder();
+		ImmutableMap.Builder<Integer, ImmutableList<Integer>> ratesBuilder = ImmutableMap.builder();
+		ImmutableMap.Builder<Integer, Integer> internalBuilder = ImmutableMap.builder();
+		ImmutableMap.Builder<Object, Integer> externalBuilder = ImmutableMap.builder(), initBuilder = ImmutableMap.builder();
+		for (ActorGroup g : groups) {
+			if (!g.isTokenGroup()) {
+				ImmutableSortedSet.Builder<Integer> ids = ImmutableSortedSet.naturalOrder();
+				for (Actor a : g.actors()) {
+					ids.add(a.id());
+					ratesBuilder.put(a.id(), rates(a));
+					internalBuilder.put(a.id(), g.schedule().get(a));
+				}
+				groupsBuilder.add(ids.build());
+			}
+			externalBuilder.put(groupKey(g), externalSchedule.get(g));
+			initBuilder.put(groupKey(g), initSchedule.get(g));
+		}
+		return new CompilationArtifact(key, groupsBuilder.build(), ratesBuilder.build(),
+				internalBuilder.build(), externalBuilder.build(), initBuilder.build());
+	}
+
+	private static ImmutableList<Integer> rates(Actor a) {
+		ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+		for (int i = 0; i < a.inputs().size(); ++i)
+			builder.add(a.peek(i), a.pop(i));
+		for (int i = 0; i < a.outputs().size(); ++i)
+			builder.add(a.push(i));
+		return builder.build();
+	}
+
+	/**
+	 * Returns true iff the given groups are the groups this artifact was
+	 * recorded from, with the same rates.  (Fusion is cheap and
+	 * deterministic, so it's redone; this guards against a stale artifact with
+	 * a colliding key.)
+	 */
+	public boolean matches(Set<ActorGroup> groups) {
+		ImmutableSet.Builder<ImmutableSortedSet<Integer>> builder = ImmutableSet.builder();
+		for (ActorGroup g : groups) {
+			if (g.isTokenGroup()) {
+				if (!externalSchedule.containsKey(groupKey(g)))
+					return false;
+				continue;
+			}
+			ImmutableSortedSet.Builder<Integer> ids = ImmutableSortedSet.naturalOrder();
+			for (Actor a : g.actors()) {
+				if (!rates(a).equals(rates.get(a.id())))
+					return false;
+				ids.add(a.id());
+			}
+			builder.add(ids.build());
+		}
+		return builder.build().equals(this.groups);
+	}
+
+	/**
+	 * Sets the internal schedule of the given group from this artifact.
+	 */
+	public void restoreInternalSchedule(ActorGroup g) {
+		ImmutableMap.Builder<Actor, Integer> schedule = ImmutableMap.builder();
+		for (Actor a : g.actors())
+			schedule.put(a, g.isTokenGroup() ? 1 : internalSchedule.get(a.id()));
+		g.setSchedule(schedule.build());
+	}
+
+	public ImmutableMap<ActorGroup, Integer> externalSchedule(Set<ActorGroup> groups) {
+		return restore(externalSchedule, groups);
+	}
+
+	public ImmutableMap<ActorGroup, Integer> initSchedule(Set<ActorGroup> groups) {
+		return restore(initSchedule, groups);
+	}
+
+	private static ImmutableMap<ActorGroup, Integer> restore(Map<Object, Integer> schedule, Set<ActorGroup> groups) {
+		ImmutableMap.Builder<ActorGroup, Integer> builder = ImmutableMap.builder();
+		for (ActorGroup g : groups)
+			builder.put(g, schedule.get(groupKey(g)));
+		return builder.build();
+	}
+
+	/**
+	 * Token actor ids depend on connection order, which isn't stable across
+	 * runs, so token groups are keyed by their token instead.
+	 */
+	private static Object groupKey(ActorGroup g) {
+		if (g.isTokenGroup())
+			return ((TokenActor)Iterables.getOnlyElement(g.actors())).token();
+		return g.id();
+	}
+
+	private static Path file(Path dir, String key) {
+		return dir.resolve(String.format("%s.v%d.c2a", key, VERSION));
+	}
+
+	/**
+	 * Loads the artifact with the given key from the given directory.
+	 * @return the artifact, or null if there is no usable artifact
+	 */
+	public static CompilationArtifact load(Path dir, String key) {
+		Path file = file(dir, key);
+		if (!Files.isRegularFile(file))
+			return null;
+		try (InputStream is = Files.newInputStream(file);
+				ObjectInputStream ois = new ObjectInputStream(is)) {
+			CompilationArtifact artifact = (CompilationArtifact)ois.readObject();
+			if (artifact.version != VERSION || !artifact.key.equals(key))
+				return null;
+			touch(file);
+			return artifact;
+		} catch (IOException | ClassNotFoundException | ClassCastException ex) {
+			System.err.println(String.format("Ignoring unreadable compilation artifact %s: %s", file, ex));
+			return null;
+		}
+	}
+
+	/**
+	 * Saves this artifact to the given directory, then evicts the least
+	 * recently used artifacts so at most capacity remain.  The file is written
+	 * under a temporary name and then moved into place, so concurrent
+	 * compilers never see a partial artifact.  Failures are reported but not
+	 * thrown; an artifact is only a cache.
+	 */
+	public void save(Path dir, int capacity) {
+		try {
+			Files.createDirectories(dir);
+			Path temp = Files.createTempFile(dir, key, ".tmp");
+			try (OutputStream os = Files.newOutputStream(temp);
+					ObjectOutputStream oos = new ObjectOutputStream(os)) {
+				oos.writeObject(this);
+			}
+			Files.move(temp, file(dir, key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			evict(dir, capacity);
+		} catch (IOException ex) {
+			System.err.println(String.format("Couldn't save compilation artifact to %s: %s", dir, ex));
+		}
+	}
+
+	/**
+	 * Marks the given artifact file as recently used.  A failure only makes
+	 * the artifact an earlier eviction candidate, so it's ignored.
+	 */
+	private static void touch(Path file) {
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException ignored) {}
+	}
+
+	/**
+	 * Deletes the least recently used artifact files (of any version) in the
+	 * given directory until at most capacity remain.  Files deleted
+	 * concurrently by another compiler are skipped.
+	 */
+	private static void evict(Path dir, int capacity) throws IOException {
+		List<Path> files = new ArrayList<>();
+		Map<Path, FileTime> times = new HashMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.c2a")) {
+			for (Path f : stream) {
+				try {
+					times.put(f, Files.getLastModifiedTime(f));
+					files.add(f);
+				} catch (NoSuchFileException ignored) {}
+			}
+		}
+		if (files.size() <= capacity)
+			return;
+		files.sort(Comparator.comparing(times::get));
+		for (Path f : files.subList(0, files.size() - capacity))
+			Files.deleteIfExists(f);
+	}
+}
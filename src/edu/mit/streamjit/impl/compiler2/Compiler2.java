@@ -87,6 +87,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Modifier;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -124,7 +125,8 @@ public class Compiler2 {
 	public static final StorageStrategy INTERNAL_STORAGE_STRATEGY = Options.rss? new StandardInternalStorageStrategy() :new TuneInternalStorageStrategy();
 	//TODO: TuneExternalStorageStrategy has some indexing bug. Fix it and use it. Temporarily, we are using
 	// StandardExternalStorageStrategy.
-	public static final StorageStrategy EXTERNAL_STORAGE_STRATEGY = new StandardExternalStorageStrategy();
+	public static final StorageStrategy EXTERNAL_STORAGE_STRATEGY = Options.numaLocalStorage ?
+			new NativeExternalStorageStrategy() : new StandardExternalStorageStrategy();
 	public static final SwitchingStrategy SWITCHING_STRATEGY = Options.rss? SwitchingStrategy.lookupswitch() :SwitchingStrategy.tunePerWorker();
 
 	private static final AtomicInteger PACKAGE_NUMBER = new AtomicInteger();
@@ -135,6 +137,17 @@ public class Compiler2 {
 	private ImmutableSortedSet<WorkerActor> actorsToBeRemoved;
 	private final Configuration config;
 	private final int maxNumCores;
+	/**
+	 * Work costs measured by an earlier profiling compile, or null if none are
+	 * available.  If present, these drive fusion vetoes and core allocation
+	 * when the configuration switches them on (see
+	 * {@link CostAwareFusionStrategy} and {@link CostBalancedAllocationStrategy}).
+	 */
+	private final WorkCosts workCosts;
+	/**
+	 * Records worker loop times if this is a profiling compile, else null.
+	 */
+	private final WorkCostProfiler profiler;
 	private final DrainData initialState;
 	/**
 	 * If the blob is the entire graph, this is the overall input; else null.
@@ -191,6 +204,11 @@ public class Compiler2 {
 	 * filling/flushing buffers, adjusting storage and the global barrier.
 	 */
 	private ImmutableList<MethodHandle> steadyStateCode;
+	/**
+	 * The native external storage each steady-state core first-touches, in the
+	 * same order as steadyStateCode.
+	 */
+	private ImmutableList<ImmutableList<NativeConcreteStorage>> nativeStoragePlacement;
 	private final List<ReadInstruction> initReadInstructions = new ArrayList<>();
 	private final List<WriteInstruction> initWriteInstructions = new ArrayList<>();
 	private final List<Runnable> migrationInstructions = new ArrayList<>();
@@ -224,6 +242,9 @@ public class Compiler2 {
 
 		this.config = config;
 		this.maxNumCores = maxNumCores;
+		WorkCosts costs = WorkCosts.of(config);
+		this.workCosts = costs != null && !costs.isEmpty() ? costs : null;
+		this.profiler = WorkCosts.isProfilingRequested(config) ? new WorkCostProfiler() : null;
 		this.initialState = initialState;
 		this.initialStateDataMap = initialState(initialState, storageTable);
 		this.overallInput = input;
@@ -306,6 +327,9 @@ public class Compiler2 {
 			b.setDrainDataVariables(needDrainData, SplitJoinRemovalList,
 					drainDataStorages, initStorage);
 		b.setDDSizes(drainDataSize());
+		if (profiler != null)
+			b.setWorkCostProfiler(profiler);
+		b.setNativeStoragePlacement(nativeStoragePlacement);
 		return b;
 	}
 
@@ -339,6 +363,9 @@ public class Compiler2 {
 	 * Fuses actors into groups as directed by the configuration.
 	 */
 	private void fuse() {
+		FusionStrategy fusionStrategy = workCosts != null && CostAwareFusionStrategy.isChosen(config) ?
+				new CostAwareFusionStrategy(FUSION_STRATEGY, workCosts, maxNumCores) :
+				FUSION_STRATEGY;
 		List<ActorGroup> actorGroups = new ArrayList<>();
 		for (Actor a : actors)
 			actorGroups.add(ActorGroup.of(a));
@@ -352,6 +379,9 @@ public class Compiler2 {
 				for (ActorGroup pg : g.predecessorGroups())
 					if (pg.isTokenGroup())
 						continue try_fuse;
+				//A peeking group keeps items live across its iterations, which
+				//would need group-internal storage that survives the steady
+				//state and a prologue for the excess peeks; we have neither.
 				if (g.isPeeking() || g.predecessorGroups().size() > 1)
 					continue try_fuse;
 				for (Storage s : g.inputs())
@@ -362,7 +392,7 @@ public class Compiler2 {
 				//group-by-group.  If later we want to make all decisions at
 				//once, we'll refactor existing FusionStrategies to inherit from
 				//a base class containing this loop.
-				if (!FUSION_STRATEGY.fuseUpward(g, config))
+				if (!fusionStrategy.fuseUpward(g, config))
 					continue try_fuse;
 
 				ActorGroup gpred = Iterables.getOnlyElement(g.predecessorGroups());
@@ -392,13 +422,28 @@ public class Compiler2 {
 	}
 
 	/**
-	 * Computes each group's internal schedule and the external schedule.
+	 * Computes each group's internal schedule and the external schedule.  If
+	 * a saved artifact for this compilation exists, its schedules are reused
+	 * instead of solving again.
 	 */
 	private void schedule() {
-		for (ActorGroup g : groups)
-			internalSchedule(g);
-		externalSchedule();
-		initSchedule();
+		Path artifactDir = CompilationArtifact.directory(config);
+		String artifactKey = artifactDir != null ? CompilationArtifact.key(workers, config, initialStateDataMap) : null;
+		CompilationArtifact artifact = artifactDir != null ? CompilationArtifact.load(artifactDir, artifactKey) : null;
+		if (artifact != null && artifact.matches(groups)) {
+			for (ActorGroup g : groups)
+				artifact.restoreInternalSchedule(g);
+			externalSchedule = artifact.externalSchedule(groups);
+			initSchedule = artifact.initSchedule(groups);
+		} else {
+			for (ActorGroup g : groups)
+				internalSchedule(g);
+			externalSchedule();
+			initSchedule();
+			if (artifactDir != null)
+				CompilationArtifact.record(artifactKey, groups, externalSchedule, initSchedule).save(artifactDir, CompilationArtifact.capacity(config));
+		}
+		postInitLiveness();
 	}
 
 	private void externalSchedule() {
@@ -484,7 +529,12 @@ public class Compiler2 {
 		} catch (Schedule.ScheduleException ex) {
 			throw new StreamCompilationFailedException("couldn't find init schedule", ex);
 		}
+	}
 
+	/**
+	 * Computes the items live on each edge after the init schedule runs.
+	 */
+	private void postInitLiveness() {
 		ImmutableMap.Builder<Token, Integer> postInitLivenessBuilder = ImmutableMap.builder();
 		for (Storage s : storage) {
 			if (s.isInternal()) continue;
@@ -1080,13 +1130,16 @@ public class Compiler2 {
 				unrollFactors.put(g, unrollFactor);
 			}
 
-			ssCores.add(new Core(CollectionUtils.union(steadyStateStorage, internalStorage), (table, wa) -> SWITCHING_STRATEGY.createSwitch(table, wa, config), unrollFactors.build(), inputTransformers.build(), outputTransformers.build()));
+			ssCores.add(new Core(CollectionUtils.union(steadyStateStorage, internalStorage), (table, wa) -> SWITCHING_STRATEGY.createSwitch(table, wa, config), unrollFactors.build(), inputTransformers.build(), outputTransformers.build(), profiler));
 		}
 
+		AllocationStrategy allocationStrategy = workCosts != null && CostBalancedAllocationStrategy.isChosen(config) ?
+				new CostBalancedAllocationStrategy(workCosts, maxNumCores) :
+				ALLOCATION_STRATEGY;
 		int throughputPerSteadyState = 0;
 		for (ActorGroup g : groups)
 			if (!g.isTokenGroup())
-				ALLOCATION_STRATEGY.allocateGroup(g, Range.closedOpen(0, externalSchedule.get(g)), ssCores, config);
+				allocationStrategy.allocateGroup(g, Range.closedOpen(0, externalSchedule.get(g)), ssCores, config);
 			else {
 				assert g.actors().size() == 1;
 				TokenActor ta = (TokenActor)g.actors().iterator().next();
@@ -1101,14 +1154,18 @@ public class Compiler2 {
 				}
 			}
 		ImmutableList.Builder<MethodHandle> steadyStateCodeBuilder = ImmutableList.builder();
+		List<Core> nonEmptyCores = new ArrayList<>(ssCores.size());
 		for (Core c : ssCores)
-			if (!c.isEmpty())
+			if (!c.isEmpty()) {
 				steadyStateCodeBuilder.add(c.code());
+				nonEmptyCores.add(c);
+			}
 		//Provide at least one core of code, even if it doesn't do anything; the
 		//blob host will still copy inputs to outputs.
 		this.steadyStateCode = steadyStateCodeBuilder.build();
 		if (steadyStateCode.isEmpty())
 			this.steadyStateCode = ImmutableList.of(Combinators.nop());
+		this.nativeStoragePlacement = placeNativeStorage(nonEmptyCores);
 
 		createMigrationInstructions();
 		createDrainInstructions();
@@ -1287,6 +1344,59 @@ public class Compiler2 {
 	}
 	//</editor-fold>
 
+	/**
+	 * Assigns each native external storage to the core that writes the most
+	 * items to it (or, for storage written only by read instructions, the core
+	 * that reads the most), so the blob host can first-touch it from there.
+	 * @param cores the nonempty steady-state cores, in steadyStateCode order
+	 * @return the storage to first-touch from each core
+	 */
+	private ImmutableList<ImmutableList<NativeConcreteStorage>> placeNativeStorage(List<Core> cores) {
+		List<ImmutableList.Builder<NativeConcreteStorage>> placement = new ArrayList<>();
+		for (int i = 0; i < Math.max(cores.size(), 1); ++i)
+			placement.add(ImmutableList.builder());
+		for (Map.Entry<Storage, ConcreteStorage> e : steadyStateStorage.entrySet()) {
+			if (!(e.getValue() instanceof NativeConcreteStorage)
+					|| ((NativeConcreteStorage)e.getValue()).nativeBytes() == 0)
+				continue;
+			int core = busiestCore(e.getKey(), cores, true);
+			if (core == -1)
+				core = busiestCore(e.getKey(), cores, false);
+			placement.get(Math.max(core, 0)).add((NativeConcreteStorage)e.getValue());
+		}
+		ImmutableList.Builder<ImmutableList<NativeConcreteStorage>> builder = ImmutableList.builder();
+		for (ImmutableList.Builder<NativeConcreteStorage> b : placement)
+			builder.add(b.build());
+		return builder.build();
+	}
+
+	/**
+	 * Returns the index of the core that writes (or reads) the most items of
+	 * the given storage per steady state, or -1 if no core does.
+	 */
+	private static int busiestCore(Storage s, List<Core> cores, boolean writes) {
+		int busiest = -1;
+		long busiestItems = 0;
+		for (int i = 0; i < cores.size(); ++i) {
+			long items = 0;
+			for (Pair<ActorGroup, Range<Integer>> p : cores.get(i).allocations()) {
+				ActorGroup g = p.first;
+				int iterations = p.second.upperEndpoint() - p.second.lowerEndpoint();
+				for (Actor a : g.actors()) {
+					List<Storage> edges = writes ? a.outputs() : a.inputs();
+					for (int j = 0; j < edges.size(); ++j)
+						if (edges.get(j).equals(s))
+							items += (long)(writes ? a.push(j) : a.pop(j)) * g.schedule().get(a) * iterations;
+				}
+			}
+			if (items > busiestItems) {
+				busiest = i;
+				busiestItems = items;
+			}
+		}
+		return busiest;
+	}
+
 	private ImmutableMap<Storage, ConcreteStorage> createStorage(boolean internal, StorageFactory factory) {
 		ImmutableMap.Builder<Storage, ConcreteStorage> builder = ImmutableMap.builder();
 		for (Storage s : storage)
@@ -1470,16 +1580,22 @@ public class Compiler2 {
 	 */
 	private static final class TokenReadInstruction implements ReadInstruction {
 		private final Token token;
-		private final IndexFunction idxFxn;
 		private final ConcreteStorage storage;
 		private final int count;
+		/**
+		 * The physical index of each item, precomputed with applyBulk; the
+		 * storage's adjust() takes care of shifting between steady states.
+		 */
+		private final int[] indices;
+		private final Object[] data;
 		private Buffer buffer;
 		private TokenReadInstruction(TokenActor a, ConcreteStorage storage, int count) {
 			assert a.isInput() : a;
 			this.token = a.token();
 			this.storage = storage;
-			this.idxFxn = Iterables.getOnlyElement(a.outputIndexFunctions());
 			this.count = count;
+			this.indices = bulkIndices(Iterables.getOnlyElement(a.outputIndexFunctions()), count);
+			this.data = new Object[count];
 		}
 		@Override
 		public void init(Map<Token, Buffer> buffers) {
@@ -1494,34 +1610,17 @@ public class Compiler2 {
 		}
 		@Override
 		public boolean load() {
-			Object[] data = new Object[count];
 			if (!buffer.readAll(data))
 				return false;
-			for (int i = 0; i < data.length; ++i) {
-				int idx;
-				try {
-					idx = idxFxn.applyAsInt(i);
-				} catch (Throwable ex) {
-					throw new AssertionError("Can't happen! Index functions should not throw", ex);
-				}
-				storage.write(idx, data[i]);
-			}
+			storage.scatter(indices, data);
 			storage.sync();
 			return true;
 		}
 		@Override
 		public Map<Token, Object[]> unload() {
-			Object[] data = new Object[count];
-			for (int i = 0; i < data.length; ++i) {
-				int idx;
-				try {
-					idx = idxFxn.applyAsInt(i);
-				} catch (Throwable ex) {
-					throw new AssertionError("Can't happen! Index functions should not throw", ex);
-				}
-				data[i] = storage.read(idx);
-			}
-			return ImmutableMap.of(token, data);
+			Object[] unloaded = new Object[count];
+			storage.gather(indices, unloaded);
+			return ImmutableMap.of(token, unloaded);
 		}
 	}
 
@@ -1589,17 +1688,22 @@ public class Compiler2 {
 	 */
 	private static final class TokenWriteInstruction implements WriteInstruction {
 		private final Token token;
-		private final IndexFunction idxFxn;
 		private final ConcreteStorage storage;
 		private final int count;
+		/**
+		 * The physical index of each item, precomputed with applyBulk.
+		 */
+		private final int[] indices;
+		private final Object[] data;
 		private Buffer buffer;
 		private int written;
 		private TokenWriteInstruction(TokenActor a, ConcreteStorage storage, int count) {
 			assert a.isOutput() : a;
 			this.token = a.token();
 			this.storage = storage;
-			this.idxFxn = Iterables.getOnlyElement(a.inputIndexFunctions());
 			this.count = count;
+			this.indices = bulkIndices(Iterables.getOnlyElement(a.inputIndexFunctions()), count);
+			this.data = new Object[count];
 		}
 		@Override
 		public void init(Map<Token, Buffer> buffers) {
@@ -1614,16 +1718,10 @@ public class Compiler2 {
 		}
 		@Override
 		public Boolean call() {
-			Object[] data = new Object[count];
-			for (int i = 0; i < count; ++i) {
-				int idx;
-				try {
-					idx = idxFxn.applyAsInt(i);
-				} catch (Throwable ex) {
-					throw new AssertionError("Can't happen! Index functions should not throw", ex);
-				}
-				data[i] = storage.read(idx);
-			}
+			//Storage doesn't change until the adjust after the write completes,
+			//so gather only once even if the write takes several calls.
+			if (written == 0)
+				storage.gather(indices, data);
 			written += buffer.write(data, written, data.length-written);
 			if (written < count)
 				return false;
@@ -1632,6 +1730,18 @@ public class Compiler2 {
 		}
 	}
 
+	/**
+	 * Returns the result of applying the given index function to 0 through
+	 * count-1.
+	 */
+	private static int[] bulkIndices(IndexFunction idxFxn, int count) {
+		int[] indices = new int[count];
+		for (int i = 0; i < count; ++i)
+			indices[i] = i;
+		idxFxn.applyBulk(indices);
+		return indices;
+	}
+
 	/**
 	 * Doesn't write anything, but does respond to getMinimumBufferCapacity().
 	 */
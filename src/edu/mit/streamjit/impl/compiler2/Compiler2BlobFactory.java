@@ -44,12 +44,18 @@ public final class Compiler2BlobFactory implements BlobFactory {
 
 	@Override
 	public Blob makeBlob(Set<Worker<?, ?>> workers, Configuration config, int maxNumCores, DrainData initialState) {
+		Blob regions = RegionBlob.create(workers, config, maxNumCores, initialState);
+		if (regions != null)
+			return regions;
 		return new Compiler2(workers, config, maxNumCores, initialState, null, null).compile();
 	}
 
 	@Override
 	public Blob makeBlob(Set<Worker<?, ?>> workers, Configuration config, int maxNumCores,
 			ImmutableMap<Token, Integer> initialDrainDataBufferSizes) {
+		Blob regions = RegionBlob.create(workers, config, maxNumCores, initialDrainDataBufferSizes);
+		if (regions != null)
+			return regions;
 		return new Compiler2(workers, config, maxNumCores, initialDrainDataBufferSizes, null, null).compile();
 	}
 
@@ -58,8 +64,10 @@ public final class Compiler2BlobFactory implements BlobFactory {
 		Configuration.Builder builder = Configuration.builder();
 		Compiler2.REMOVAL_STRATEGY.makeParameters(workers, builder);
 		Compiler2.FUSION_STRATEGY.makeParameters(workers, builder);
+		CostAwareFusionStrategy.makeSwitchParameter(builder);
 		Compiler2.UNBOXING_STRATEGY.makeParameters(workers, builder);
 		Compiler2.ALLOCATION_STRATEGY.makeParameters(workers, builder);
+		CostBalancedAllocationStrategy.makeSwitchParameter(builder);
 		Compiler2.INTERNAL_STORAGE_STRATEGY.makeParameters(workers, builder);
 		Compiler2.EXTERNAL_STORAGE_STRATEGY.makeParameters(workers, builder);
 		Compiler2.SWITCHING_STRATEGY.makeParameters(workers, builder);
@@ -72,6 +72,7 @@ import java.util.Set;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * The actual blob produced by a Compiler2.
@@ -87,7 +88,7 @@ public class Compiler2BlobHost implements Blob {
 			findConstructor(LOOKUP, AssertionError.class, MethodType.methodType(void.class, Object.class)),
 			MethodHandles.throwException(void.class, AssertionError.class));
 	private static final MethodHandle NOP = Combinators.nop();
-	private static final MethodHandle MAIN_LOOP_NOP = MethodHandles.insertArguments(MAIN_LOOP, 1, NOP);
+	private static final MethodHandle FIRST_TOUCH = findVirtual(LOOKUP, "firstTouch");
 
 	/* provided by Compiler2 */
 	private final ImmutableSet<Worker<?, ?>> workers;
@@ -186,13 +187,14 @@ public class Compiler2BlobHost implements Blob {
 		this.minimumInitBufferCapacity = getMinCapacity(this.initReadInstructions, this.initWriteInstructions);
 		MethodHandle mainLoop = MAIN_LOOP.bindTo(this),
 				doInit = DO_INIT.bindTo(this),
-				doAdjust = DO_ADJUST.bindTo(this),
-				mainLoopNop = MAIN_LOOP_NOP.bindTo(this);
+				doAdjust = DO_ADJUST.bindTo(this);
 		ProxyFactory pf = new ProxyFactory(new ModuleClassLoader(new Module()));
 		ImmutableList.Builder<Runnable> coreCodeRunnables = ImmutableList.builder();
 		for (int i = 0; i < this.steadyStateCode.size(); ++i) {
 			MethodHandle ssc = this.steadyStateCode.get(i);
-			MethodHandle code = sp1.guardWithTest(mainLoopNop, sp2.guardWithTest(mainLoop.bindTo(ssc), NOP));
+			//Before init, each core just first-touches its native storage.
+			MethodHandle firstTouch = MethodHandles.insertArguments(FIRST_TOUCH, 0, this, i);
+			MethodHandle code = sp1.guardWithTest(mainLoop.bindTo(firstTouch), sp2.guardWithTest(mainLoop.bindTo(ssc), NOP));
 			coreCodeRunnables.add(pf.createProxy("Proxy"+i, ImmutableMap.of("run", code), Runnable.class));
 		}
 		this.coreCode = coreCodeRunnables.build();
@@ -311,6 +313,19 @@ public class Compiler2BlobHost implements Blob {
 		}
 	}
 
+	/**
+	 * Zeroes the native storage placed on the given core, from that core's
+	 * (pinned) thread, so Linux allocates its pages on the core's NUMA node.
+	 * Runs once per core before the first barrier, so before doInit migrates
+	 * any data into the steady-state storage.
+	 */
+	private void firstTouch(int core) {
+		ImmutableList<ImmutableList<NativeConcreteStorage>> placement = nativeStoragePlacement;
+		if (placement != null && core < placement.size())
+			for (NativeConcreteStorage s : placement.get(core))
+				s.firstTouch();
+	}
+
 	private void doInit() throws Throwable {
 		Stopwatch initTime = null;
 		if (logTimings)
@@ -365,12 +380,29 @@ public class Compiler2BlobHost implements Blob {
 		if(requireState)
 			stateSend();
 
+		if (profiler != null)
+			profileWindow();
+
 		readOrDrain();
 
 		if (logTimings)
 			adjustTime.stop();
 	}
 
+	/**
+	 * Starts the profiler after the warm-up steady states and publishes the
+	 * measured costs once the recording window has passed.
+	 */
+	private void profileWindow() {
+		if (adjustCount == WorkCostProfiler.WARMUP_STEADY_STATES)
+			profiler.start();
+		else if (adjustCount == WorkCostProfiler.WARMUP_STEADY_STATES + WorkCostProfiler.RECORDED_STEADY_STATES) {
+			profiler.stop();
+			publishWorkCosts(profiler.snapshot());
+			profiler = null;
+		}
+	}
+
 	private void stateSend() {
 		if (stateAdjustCount == adjustCount)
 			sendState(getState(drainInstructions));
@@ -616,6 +648,31 @@ public class Compiler2BlobHost implements Blob {
 		this.ddSizes = ddSizes;
 	}
 
+	/**
+	 * The native external storage each core first-touches; see
+	 * {@link NativeConcreteStorage}.
+	 */
+	private volatile ImmutableList<ImmutableList<NativeConcreteStorage>> nativeStoragePlacement;
+
+	void setNativeStoragePlacement(ImmutableList<ImmutableList<NativeConcreteStorage>> placement) {
+		this.nativeStoragePlacement = placement;
+	}
+
+	/**
+	 * Returns the number of bytes of native storage placed on (first-touched
+	 * by) the given core.
+	 * @param core the core index, as for {@link #getCoreCode(int)}
+	 * @return the native storage bytes placed on the core
+	 */
+	public long getNativeStorageBytes(int core) {
+		ImmutableList<ImmutableList<NativeConcreteStorage>> placement = nativeStoragePlacement;
+		long bytes = 0;
+		if (placement != null && core < placement.size())
+			for (NativeConcreteStorage s : placement.get(core))
+				bytes += s.nativeBytes();
+		return bytes;
+	}
+
 	int stateAdjustCount;
 	StateCallback stateCallback;
 	volatile boolean requireState = false;
@@ -633,6 +690,45 @@ public class Compiler2BlobHost implements Blob {
 		stateAdjustCount = 0;
 	}
 
+	/**
+	 * Profiles the steady-state code's worker loops (see
+	 * {@link WorkCostProfiler}); null if this isn't a profiling compile.
+	 */
+	private volatile WorkCostProfiler profiler;
+	private WorkCosts workCosts;
+	private Consumer<WorkCosts> workCostsCallback;
+
+	void setWorkCostProfiler(WorkCostProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Returns the work costs measured by a profiling compile, or null if
+	 * profiling hasn't finished (or this isn't a profiling compile).
+	 * @return the measured work costs, or null
+	 */
+	public synchronized WorkCosts getWorkCosts() {
+		return workCosts;
+	}
+
+	/**
+	 * Registers a callback to be called (on a blob thread) with the measured
+	 * work costs when profiling finishes.  If profiling already finished, the
+	 * callback is called immediately.
+	 * @param callback the callback
+	 */
+	public synchronized void onWorkCosts(Consumer<WorkCosts> callback) {
+		this.workCostsCallback = callback;
+		if (workCosts != null)
+			callback.accept(workCosts);
+	}
+
+	private synchronized void publishWorkCosts(WorkCosts costs) {
+		this.workCosts = costs;
+		if (workCostsCallback != null)
+			workCostsCallback.accept(costs);
+	}
+
 	private DrainData getState(List<DrainInstruction> drains) {
 		List<Map<Token, Object[]>> data = new ArrayList<>(drains.size());
 		for (DrainInstruction i : drains)
@@ -52,6 +52,15 @@ public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
 	private Path dumpFile;
 	private boolean timings = false;
 	private boolean throughput = false;
+	private boolean profileWorkCosts = false;
+	private WorkCosts workCosts;
+	/**
+	 * Set if the graph has workers Compiler2 can not compile; see
+	 * {@link RegionBlob}.
+	 * Then the overall input and output go through buffers, as the regions
+	 * are separate blobs.
+	 */
+	private boolean usesRegionBlob = false;
 	public Compiler2StreamCompiler() {
 		super(new Compiler2BlobFactory());
 	}
@@ -93,6 +102,24 @@ public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
 		return this;
 	}
 
+	/**
+	 * Instruments the compiled workers to measure their costs; see
+	 * {@link Compiler2BlobHost#getWorkCosts()}.
+	 */
+	public Compiler2StreamCompiler profileWorkCosts() {
+		this.profileWorkCosts = true;
+		return this;
+	}
+
+	/**
+	 * Allocates and fuses using the given costs, usually measured by an
+	 * earlier profiling compile.
+	 */
+	public Compiler2StreamCompiler workCosts(WorkCosts workCosts) {
+		this.workCosts = workCosts;
+		return this;
+	}
+
 	@Override
 	protected final int getMaxNumCores() {
 		return maxNumCores;
@@ -103,6 +130,7 @@ public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
 		if (config != null) {
 			Configuration.Builder builder = Configuration.builder(config);
 			builder.putExtraData("reportThroughput", throughput);
+			putWorkCostsExtraData(builder);
 			return builder.build();
 		}
 
@@ -118,25 +146,41 @@ public final class Compiler2StreamCompiler extends BlobHostStreamCompiler {
 			builder.putExtraData("dumpFile", dumpFile);
 		builder.putExtraData("timings", timings);
 		builder.putExtraData("reportThroughput", throughput);
+		putWorkCostsExtraData(builder);
 		return builder.build();
 	}
 
+	private void putWorkCostsExtraData(Configuration.Builder builder) {
+		builder.putExtraData(WorkCosts.PROFILE_EXTRA_DATA_NAME, profileWorkCosts);
+		if (workCosts != null)
+			builder.putExtraData(WorkCosts.EXTRA_DATA_NAME, workCosts);
+	}
+
 	@Override
 	protected Blob makeBlob(ImmutableSet<Worker<?, ?>> workers, Configuration configuration, Input<?> input, Output<?> output) {
 		//When reporting throughput, repeat the input as needed.
 		Boolean reportThroughput = (Boolean)configuration.getExtraData("reportThroughput");
 		if (reportThroughput != null && reportThroughput)
 			input = Datasets.cycle(input);
+		Blob regions = RegionBlob.create(workers, configuration, getMaxNumCores(), (DrainData)null);
+		if (regions != null) {
+			usesRegionBlob = true;
+			return regions;
+		}
 		return new Compiler2(workers, configuration, getMaxNumCores(), (DrainData)null, input, output).compile();
 	}
 
 	@Override
 	protected Buffer makeInputBuffer(Input<?> input, int minCapacity) {
+		if (usesRegionBlob)
+			return super.makeInputBuffer(input, minCapacity);
 		return null; //handled by Compiler2
 	}
 
 	@Override
 	protected Buffer makeOutputBuffer(Output<?> output, int minCapacity) {
+		if (usesRegionBlob)
+			return super.makeOutputBuffer(output, minCapacity);
 		return null; //handled by Compiler2
 	}
 
@@ -22,6 +22,7 @@
 package edu.mit.streamjit.impl.compiler2;
 
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
@@ -100,6 +101,46 @@ public interface ConcreteStorage {
 		}
 	}
 
+	/**
+	 * Reads the elements at the given indices into the given array, boxing if
+	 * necessary; that is, dest[i] = read(indices[i]).  This is equivalent to
+	 * calling {@link #read(int)} in a loop, but adapts the read handle only
+	 * once per call rather than once per element.  Implementations overriding
+	 * {@link #read(int)} must override this method too.
+	 * @param indices the indices to read
+	 * @param dest the array to read into (at least as long as indices)
+	 */
+	public default void gather(int[] indices, Object[] dest) {
+		MethodHandle read = readHandle().asType(MethodType.methodType(Object.class, int.class));
+		int i = 0;
+		try {
+			for (; i < indices.length; ++i)
+				dest[i] = (Object)read.invokeExact(indices[i]);
+		} catch (Throwable ex) {
+			throw new AssertionError(String.format("%s.read(%d)", this, indices[i]), ex);
+		}
+	}
+	/**
+	 * Writes the elements of the given array at the given indices, unboxing if
+	 * necessary; that is, write(indices[i], src[i]).  This is equivalent to
+	 * calling {@link #write(int, Object)} in a loop, but adapts the write
+	 * handle only once per call rather than once per element.
+	 * Implementations overriding {@link #write(int, Object)} must override
+	 * this method too.
+	 * @param indices the indices to write
+	 * @param src the elements to write (at least as long as indices)
+	 */
+	public default void scatter(int[] indices, Object[] src) {
+		MethodHandle write = writeHandle().asType(MethodType.methodType(void.class, int.class, Object.class));
+		int i = 0;
+		try {
+			for (; i < indices.length; ++i)
+				write.invokeExact(indices[i], src[i]);
+		} catch (Throwable ex) {
+			throw new AssertionError(String.format("%s.write(%d, %s)", this, indices[i], src[i]), ex);
+		}
+	}
+
 	/**
 	 * Shifts indices toward negative infinity and ensures that subsequent calls
 	 * to read will see items written by previous calls to write.  (These are
@@ -28,6 +28,7 @@ import edu.mit.streamjit.util.bytecode.methodhandles.Combinators;
 import edu.mit.streamjit.util.Pair;
 import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.BiFunction;
 
@@ -41,17 +42,31 @@ public class Core {
 	private final BiFunction<MethodHandle[], WorkerActor, MethodHandle> switchFactory;
 	private final ImmutableMap<ActorGroup, Integer> unrollFactors;
 	private final ImmutableTable<Actor, Integer, IndexFunctionTransformer> inputTransformers, outputTransformers;
+	/**
+	 * The profiler recording this core's worker loop times, or null.
+	 */
+	private final WorkCostProfiler profiler;
 	private final List<Pair<ActorGroup, Range<Integer>>> allocations = new ArrayList<>();
 	public Core(ImmutableMap<Storage, ConcreteStorage> storage,
 			BiFunction<MethodHandle[], WorkerActor, MethodHandle> switchFactory,
 			ImmutableMap<ActorGroup, Integer> unrollFactors,
 			ImmutableTable<Actor, Integer, IndexFunctionTransformer> inputTransformers,
 			ImmutableTable<Actor, Integer, IndexFunctionTransformer> outputTransformers) {
+		this(storage, switchFactory, unrollFactors, inputTransformers, outputTransformers, null);
+	}
+
+	public Core(ImmutableMap<Storage, ConcreteStorage> storage,
+			BiFunction<MethodHandle[], WorkerActor, MethodHandle> switchFactory,
+			ImmutableMap<ActorGroup, Integer> unrollFactors,
+			ImmutableTable<Actor, Integer, IndexFunctionTransformer> inputTransformers,
+			ImmutableTable<Actor, Integer, IndexFunctionTransformer> outputTransformers,
+			WorkCostProfiler profiler) {
 		this.storage = storage;
 		this.switchFactory = switchFactory;
 		this.unrollFactors = unrollFactors;
 		this.inputTransformers = inputTransformers;
 		this.outputTransformers = outputTransformers;
+		this.profiler = profiler;
 	}
 
 	public void allocate(ActorGroup group, Range<Integer> iterations) {
@@ -64,10 +79,18 @@ public class Core {
 		//List<Pair<ActorGroup, MethodHandle>>, then sort before semicolon(code).
 		List<MethodHandle> code = new ArrayList<>(allocations.size());
 		for (Pair<ActorGroup, Range<Integer>> p : allocations)
-			code.add(p.first.specialize(p.second, storage, switchFactory, unrollFactors.get(p.first), inputTransformers, outputTransformers));
+			code.add(p.first.specialize(p.second, storage, switchFactory, unrollFactors.get(p.first), inputTransformers, outputTransformers, profiler));
 		return Combinators.semicolon(code);
 	}
 
+	/**
+	 * Returns the groups and iteration ranges allocated to this core so far.
+	 * @return this core's allocations
+	 */
+	public List<Pair<ActorGroup, Range<Integer>>> allocations() {
+		return Collections.unmodifiableList(allocations);
+	}
+
 	/**
 	 * Returns true iff this Core is empty (has no allocations) and thus doesn't
 	 * need to generate or run code.
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Iterables;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import java.util.Set;
+
+/**
+ * A fusion strategy that vetoes fusions its delegate would make when measured
+ * costs show they would serialize significant stateless work.  Fusing a
+ * stateless group with a stateful one makes the result stateful, so it can no
+ * longer be data-parallelized; that's only worthwhile if the stateless part is
+ * cheap relative to the stateful part it joins.
+ *
+ * Fusion happens before scheduling, so costs are compared per firing rather
+ * than per steady state.
+ *
+ * Measured costs don't override the tuner: Compiler2 only uses this strategy
+ * when the {@link #PARAMETER_NAME} switch is on, so the tuner can still reach
+ * its own fusion choices.
+ * @author Sumanan sumanan@mit.edu
+ * @since 20 Oct, 2016
+ */
+public final class CostAwareFusionStrategy implements FusionStrategy {
+	/**
+	 * The name of the switch parameter choosing this strategy over the tuned
+	 * fusion strategy when work costs are available.
+	 */
+	public static final String PARAMETER_NAME = "CostAwareFusion";
+	private final FusionStrategy delegate;
+	private final WorkCosts costs;
+	private final int maxNumCores;
+	public CostAwareFusionStrategy(FusionStrategy delegate, WorkCosts costs, int maxNumCores) {
+		checkArgument(maxNumCores >= 1);
+		this.delegate = checkNotNull(delegate);
+		this.costs = checkNotNull(costs);
+		this.maxNumCores = maxNumCores;
+	}
+
+	@Override
+	public void makeParameters(Set<Worker<?, ?>> workers, Configuration.Builder builder) {
+		delegate.makeParameters(workers, builder);
+	}
+
+	/**
+	 * Adds the switch parameter choosing this strategy to the given builder.
+	 * It's off by default, so configurations tuned without work costs keep
+	 * their fusion.
+	 * @param builder the builder
+	 */
+	public static void makeSwitchParameter(Configuration.Builder builder) {
+		builder.addParameter(Configuration.SwitchParameter.create(PARAMETER_NAME, false));
+	}
+
+	/**
+	 * Returns true if the given configuration chooses this strategy.
+	 * Configurations without the switch parameter (e.g., saved before it
+	 * existed) don't.
+	 * @param config a configuration
+	 * @return true iff the configuration chooses cost-aware fusion
+	 */
+	public static boolean isChosen(Configuration config) {
+		Configuration.SwitchParameter<Boolean> param = config.getParameter(PARAMETER_NAME, Configuration.SwitchParameter.class, Boolean.class);
+		return param != null && param.getValue();
+	}
+
+	@Override
+	public boolean fuseUpward(ActorGroup group, Configuration config) {
+		if (!delegate.fuseUpward(group, config))
+			return false;
+		ActorGroup pred = Iterables.getOnlyElement(group.predecessorGroups());
+		if (group.isStateful() == pred.isStateful())
+			return true;
+		ActorGroup stateless = group.isStateful() ? pred : group,
+				stateful = group.isStateful() ? group : pred;
+		//Once fused, the stateless work runs serially instead of spread
+		//over the cores.
+		return firingCost(stateless) <= firingCost(stateful) / maxNumCores;
+	}
+
+	private double firingCost(ActorGroup group) {
+		double cost = 0;
+		for (Actor a : group.actors())
+			cost += costs.nanosPerFiring(a.id());
+		return cost;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Range;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.util.Pair;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * An allocation strategy that balances measured work costs across cores.
+ * Groups are allocated in order; each group's iterations are water-filled
+ * onto the cores so that the cores' total estimated loads (including groups
+ * already allocated) end up as even as possible.  Stateful groups can't be
+ * split, so they go entirely to the least-loaded core.
+ *
+ * Measured costs don't override the tuner: Compiler2 only uses this strategy
+ * when the {@link #PARAMETER_NAME} switch is on, so the tuner can compare it
+ * against the tuned allocation.
+ * @author Sumanan sumanan@mit.edu
+ * @since 20 Oct, 2016
+ */
+public final class CostBalancedAllocationStrategy implements AllocationStrategy {
+	/**
+	 * The name of the switch parameter choosing this strategy over the tuned
+	 * allocation strategy when work costs are available.
+	 */
+	public static final String PARAMETER_NAME = "CostBalancedAllocation";
+	private final WorkCosts costs;
+	private final int maxNumCores;
+	public CostBalancedAllocationStrategy(WorkCosts costs, int maxNumCores) {
+		checkArgument(maxNumCores >= 1);
+		this.costs = checkNotNull(costs);
+		this.maxNumCores = maxNumCores;
+	}
+
+	@Override
+	public int maxNumCores() {
+		return maxNumCores;
+	}
+
+	@Override
+	public void makeParameters(Set<Worker<?, ?>> workers, Configuration.Builder builder) {
+		//no parameters necessary; the costs come from profiling
+	}
+
+	/**
+	 * Adds the switch parameter choosing this strategy to the given builder.
+	 * It's off by default, so configurations tuned without work costs keep
+	 * their allocation.
+	 * @param builder the builder
+	 */
+	public static void makeSwitchParameter(Configuration.Builder builder) {
+		builder.addParameter(Configuration.SwitchParameter.create(PARAMETER_NAME, false));
+	}
+
+	/**
+	 * Returns true if the given configuration chooses this strategy.
+	 * Configurations without the switch parameter (e.g., saved before it
+	 * existed) don't.
+	 * @param config a configuration
+	 * @return true iff the configuration chooses cost-balanced allocation
+	 */
+	public static boolean isChosen(Configuration config) {
+		Configuration.SwitchParameter<Boolean> param = config.getParameter(PARAMETER_NAME, Configuration.SwitchParameter.class, Boolean.class);
+		return param != null && param.getValue();
+	}
+
+	@Override
+	public void allocateGroup(ActorGroup group, Range<Integer> iterations, List<Core> cores, Configuration config) {
+		int coresSize = Math.min(cores.size(), maxNumCores);
+		double[] loads = new double[coresSize];
+		for (int i = 0; i < coresSize; ++i)
+			loads[i] = load(cores.get(i));
+		int count = iterations.upperEndpoint() - iterations.lowerEndpoint();
+		double cost = costs.groupIterationCost(group);
+
+		if (group.isStateful()) {
+			cores.get(leastLoaded(loads)).allocate(group, iterations);
+			return;
+		}
+
+		int[] shares = new int[coresSize];
+		if (cost <= 0) {
+			//Nothing measured; split evenly.
+			for (int i = 0; i < coresSize; ++i)
+				shares[i] = count / coresSize + (i < count % coresSize ? 1 : 0);
+		} else {
+			//Find the water level: the k least-loaded cores get filled up to
+			//level, where level doesn't exceed the (k+1)th core's load.
+			Integer[] order = IntStream.range(0, coresSize).boxed().toArray(Integer[]::new);
+			Arrays.sort(order, Comparator.comparingDouble(i -> loads[i]));
+			double level = 0, sum = 0;
+			for (int k = 1; k <= coresSize; ++k) {
+				sum += loads[order[k-1]];
+				level = (sum + count * cost) / k;
+				if (k == coresSize || level <= loads[order[k]])
+					break;
+			}
+			int assigned = 0;
+			for (int i = 0; i < coresSize; ++i) {
+				shares[i] = Math.max(0, (int)Math.floor((level - loads[i]) / cost));
+				assigned += shares[i];
+			}
+			//Rounding down leaves a few iterations over; hand them out one at
+			//a time to whichever core will finish first.
+			for (; assigned < count; ++assigned) {
+				double[] projected = new double[coresSize];
+				for (int i = 0; i < coresSize; ++i)
+					projected[i] = loads[i] + shares[i] * cost;
+				++shares[leastLoaded(projected)];
+			}
+		}
+
+		for (int i = 0; i < coresSize; ++i) {
+			int min = iterations.lowerEndpoint();
+			Range<Integer> allocation = iterations.intersection(Range.closedOpen(min, min + shares[i]));
+			cores.get(i).allocate(group, allocation);
+			iterations = Range.closedOpen(allocation.upperEndpoint(), iterations.upperEndpoint());
+		}
+		assert iterations.isEmpty();
+	}
+
+	private double load(Core core) {
+		double load = 0;
+		for (Pair<ActorGroup, Range<Integer>> p : core.allocations())
+			load += (p.second.upperEndpoint() - p.second.lowerEndpoint()) * costs.groupIterationCost(p.first);
+		return load;
+	}
+
+	private static int leastLoaded(double[] loads) {
+		int best = 0;
+		for (int i = 1; i < loads.length; ++i)
+			if (loads[i] < loads[best])
+				best = i;
+		return best;
+	}
+}
@@ -36,7 +36,7 @@ import java.util.Map;
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 10/10/2013
  */
-public class DoubleArrayConcreteStorage implements ConcreteStorage {
+public class DoubleArrayConcreteStorage implements NativeConcreteStorage {
 	private static final Lookup LOOKUP = MethodHandles.lookup();
 	private static final MethodHandle ADJUST = findVirtual(LOOKUP, "adjust");
 	private static final MethodHandle STATE_GETTER = findGetter(LOOKUP, "state");
@@ -87,6 +87,12 @@ public class DoubleArrayConcreteStorage implements ConcreteStorage {
 		}
 	}
 
+	@Override
+	public void scatter(int[] indices, Object[] src) {
+		for (int i = 0; i < indices.length; ++i)
+			write(indices[i], src[i]);
+	}
+
 	@Override
 	public void adjust() {
 		//state != state doesn't work, heh.
@@ -97,6 +103,17 @@ public class DoubleArrayConcreteStorage implements ConcreteStorage {
 	public void sync() {
 	}
 
+	@Override
+	public long nativeBytes() {
+		return readArray.nativeBytes() + writeArray.nativeBytes();
+	}
+
+	@Override
+	public void firstTouch() {
+		readArray.firstTouch();
+		writeArray.firstTouch();
+	}
+
 	@Override
 	public MethodHandle readHandle() {
 		return readHandle;
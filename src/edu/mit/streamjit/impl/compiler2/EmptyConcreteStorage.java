@@ -50,6 +50,16 @@ public final class EmptyConcreteStorage implements ConcreteStorage {
 		throw new UnsupportedOperationException("writing to empty storage "+string);
 	}
 	@Override
+	public void gather(int[] indices, Object[] dest) {
+		if (indices.length > 0)
+			read(indices[0]);
+	}
+	@Override
+	public void scatter(int[] indices, Object[] src) {
+		if (indices.length > 0)
+			write(indices[0], src[0]);
+	}
+	@Override
 	public void adjust() {
 	}
 	@Override
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+/**
+ * A ConcreteStorage whose elements may live in native (off-heap) memory.  Such
+ * memory is not placed on a NUMA node until a thread first writes it, so the
+ * blob host first-touches each NativeConcreteStorage from the core that will
+ * write it, placing the pages on that core's socket.
+ * @author Sumanan sumanan@mit.edu
+ * @since 21 Oct, 2016
+ */
+public interface NativeConcreteStorage extends ConcreteStorage {
+	/**
+	 * Returns the number of bytes of native memory backing this storage, or 0
+	 * if it lives on the Java heap.
+	 * @return the native memory size in bytes
+	 */
+	public long nativeBytes();
+	/**
+	 * Zeroes this storage's native memory (if any) from the calling thread.
+	 * Must be called before any data is written to this storage.
+	 * @see Arrayish#firstTouch()
+	 */
+	public void firstTouch();
+}
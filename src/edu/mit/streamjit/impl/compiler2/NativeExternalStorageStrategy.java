@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import java.util.Set;
+
+/**
+ * Like {@link StandardExternalStorageStrategy}, but keeps primitive-typed
+ * external storage in native memory so the blob host can place it on the NUMA
+ * node of the core that writes it (see {@link NativeConcreteStorage}).
+ * Reference-typed storage stays on the Java heap, as native memory has no GC
+ * roots.
+ * @author Sumanan sumanan@mit.edu
+ * @since 21 Oct, 2016
+ */
+public final class NativeExternalStorageStrategy implements StorageStrategy {
+	@Override
+	public void makeParameters(Set<Worker<?, ?>> workers, Configuration.Builder builder) {
+		//no parameters necessary
+	}
+	@Override
+	public StorageFactory asFactory(Configuration config) {
+		return (Storage storage) -> {
+			if (storage.steadyStateCapacity() == 0)
+				return new EmptyConcreteStorage(storage);
+			Arrayish.Factory factory = storage.type().isPrimitive() ?
+					Arrayish.UnsafeArrayish.factory() :
+					Arrayish.ArrayArrayish.factory();
+			return new CircularArrayConcreteStorage(factory.make(storage.type(), storage.steadyStateCapacity()), storage);
+		};
+	}
+}
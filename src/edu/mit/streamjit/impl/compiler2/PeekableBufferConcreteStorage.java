@@ -63,6 +63,12 @@ public final class PeekableBufferConcreteStorage implements ConcreteStorage {
 		throw new AssertionError(String.format("read-only! %s.write(%d, %s)", this, index, data));
 	}
 
+	@Override
+	public void scatter(int[] indices, Object[] src) {
+		if (indices.length > 0)
+			write(indices[0], src[0]);
+	}
+
 	@Override
 	public void adjust() {
 		try {
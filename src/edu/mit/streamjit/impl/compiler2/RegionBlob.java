@@ -0,0 +1,541 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+
+import edu.mit.streamjit.api.Portal;
+import edu.mit.streamjit.api.Rate;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.blob.GrowableArrayBuffer;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.MessageConstraint;
+import edu.mit.streamjit.impl.common.Portals;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.common.Workers.StreamPosition;
+import edu.mit.streamjit.impl.interp.Interpreter;
+import edu.mit.streamjit.util.ReflectionUtils;
+
+/**
+ * Runs a worker set that contains workers Compiler2 can not compile. Compiler2
+ * schedules the workers statically, in batches of steady states, so it can
+ * not compile a worker whose rates are {@link Rate#DYNAMIC}, nor deliver a
+ * teleport message ({@link Portal}) at the exact firing its
+ * {@link MessageConstraint} asks for. Such workers used to force the whole
+ * blob into the {@link Interpreter}.
+ * <p>
+ * This blob splits the workers into regions (see {@link #regions(Set, Set)}).
+ * A region either contains only workers those can be compiled, and is
+ * compiled by {@link Compiler2} as usual, or contains only workers those must
+ * be interpreted, and is run by the {@link Interpreter}. The interpreted
+ * workers are the dynamic-rate workers, and, for every message constraint,
+ * the sender, the recipient and all workers between them. So the
+ * interpreter fires the sender ahead of the recipient's delivery time (SDEP)
+ * and delivers the messages through the recipient's message queue, which is
+ * checked before every firing of the recipient only. Only the constraints
+ * whose sender and recipient are both in this blob are handled so; the
+ * workers of a constraint that crosses the blob boundary are compiled as if
+ * no portal existed, as before.
+ * <p>
+ * The regions are connected by {@link GrowableArrayBuffer}s, so a dynamic
+ * producer blocks on a full buffer only once it has run far ahead of its
+ * consumer. The compiled regions wait until
+ * their inputs have a steady state's worth of items, and the interpreted
+ * regions fire whenever their inputs allow, so only the interpreted regions
+ * pay the dynamic cost.
+ * <p>
+ * Every region gets its own cores: an interpreted region one, and the compiled
+ * regions share the rest of maxNumCores. {@link #getCoreCode(int)} returns the
+ * regions' core codes one after the other. The regions are drained in the
+ * topological order, each one once all of its upstream regions have drained.
+ *
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public final class RegionBlob implements Blob {
+	/**
+	 * The buffers between the regions grow up to this many times of their
+	 * minimum capacity. See {@link GrowableArrayBuffer}.
+	 */
+	private static final int BUFFER_HIGH_WATER_FACTOR = 64;
+	private final ImmutableSet<Worker<?, ?>> workers;
+	/**
+	 * Blobs of the regions, in the topological order.
+	 */
+	private final ImmutableList<Blob> regionBlobs;
+	/**
+	 * Workers' identifiers of each region blob.
+	 */
+	private final ImmutableMap<Blob, ImmutableSet<Integer>> regionIds;
+	/**
+	 * Buffers between the regions.
+	 */
+	private final ImmutableMap<Token, Buffer> internalBuffers;
+	private final ImmutableSet<Token> inputs, outputs;
+	private final ImmutableList<Runnable> coreCode;
+	private volatile DrainData drainData;
+
+	private RegionBlob(Set<Worker<?, ?>> workers, Set<Worker<?, ?>> interpreted,
+			BiFunction<ImmutableSet<Worker<?, ?>>, Integer, Blob> compiler,
+			int maxNumCores) {
+		this.workers = ImmutableSet.copyOf(workers);
+		List<ImmutableSet<Worker<?, ?>>> regions = regions(workers, interpreted);
+		int compiledRegions = 0;
+		for (ImmutableSet<Worker<?, ?>> r : regions)
+			if (!interpreted.contains(r.iterator().next()))
+				++compiledRegions;
+		// Each interpreted region takes one core of maxNumCores.
+		int interpretedRegions = regions.size() - compiledRegions;
+		int coresPerRegion = Math.max(1, (maxNumCores - interpretedRegions)
+				/ Math.max(1, compiledRegions));
+
+		ImmutableList.Builder<Blob> blobsBuilder = ImmutableList.builder();
+		ImmutableMap.Builder<Blob, ImmutableSet<Integer>> idsBuilder = ImmutableMap
+				.builder();
+		Set<Token> allInputs = new HashSet<>(), allOutputs = new HashSet<>();
+		ImmutableList.Builder<Runnable> coreCodeBuilder = ImmutableList
+				.builder();
+		for (ImmutableSet<Worker<?, ?>> r : regions) {
+			Blob b = compiler.apply(r, coresPerRegion);
+			blobsBuilder.add(b);
+			idsBuilder.put(b, identifiers(r));
+			allInputs.addAll(b.getInputs());
+			allOutputs.addAll(b.getOutputs());
+			for (int i = 0; i < b.getCoreCount(); ++i)
+				coreCodeBuilder.add(b.getCoreCode(i));
+		}
+		this.regionBlobs = blobsBuilder.build();
+		this.regionIds = idsBuilder.build();
+		this.coreCode = coreCodeBuilder.build();
+
+		ImmutableMap.Builder<Token, Buffer> internalBuilder = ImmutableMap
+				.builder();
+		for (Token t : Sets.intersection(allInputs, allOutputs)) {
+			int capacity = Math.max(
+					getOwner(t, true).getMinimumBufferCapacity(t),
+					getOwner(t, false).getMinimumBufferCapacity(t));
+			internalBuilder.put(t, new GrowableArrayBuffer(capacity,
+					(int) Math.min(Integer.MAX_VALUE - 8, (long) capacity
+							* BUFFER_HIGH_WATER_FACTOR)));
+		}
+		this.internalBuffers = internalBuilder.build();
+		this.inputs = ImmutableSet.copyOf(Sets.difference(allInputs,
+				internalBuffers.keySet()));
+		this.outputs = ImmutableSet.copyOf(Sets.difference(allOutputs,
+				internalBuffers.keySet()));
+	}
+
+	/**
+	 * @return a {@link RegionBlob}, or null if Compiler2 can compile all of
+	 *         the workers.
+	 */
+	static Blob create(Set<Worker<?, ?>> workers, Configuration config,
+			int maxNumCores, DrainData initialState) {
+		List<MessageConstraint> constraints = constraints(workers);
+		Set<Worker<?, ?>> interpreted = interpretedWorkers(workers, constraints);
+		if (interpreted.isEmpty())
+			return null;
+		return new RegionBlob(workers, interpreted, (region, cores) -> {
+			DrainData state = initialState == null ? null : initialState
+					.subset(identifiers(region));
+			if (interpreted.contains(region.iterator().next()))
+				return new Interpreter(region, constraintsWithin(region,
+						constraints), interpreterConfiguration(region), state);
+			return new Compiler2(region, config, cores, state, null, null)
+					.compile();
+		}, maxNumCores);
+	}
+
+	/**
+	 * @return a {@link RegionBlob}, or null if Compiler2 can compile all of
+	 *         the workers.
+	 */
+	static Blob create(Set<Worker<?, ?>> workers, Configuration config,
+			int maxNumCores,
+			ImmutableMap<Token, Integer> initialDrainDataBufferSizes) {
+		List<MessageConstraint> constraints = constraints(workers);
+		Set<Worker<?, ?>> interpreted = interpretedWorkers(workers, constraints);
+		if (interpreted.isEmpty())
+			return null;
+		return new RegionBlob(workers, interpreted, (region, cores) -> {
+			Set<Integer> ids = identifiers(region);
+			ImmutableMap.Builder<Token, Integer> sizes = ImmutableMap
+					.builder();
+			for (Map.Entry<Token, Integer> en : initialDrainDataBufferSizes
+					.entrySet())
+				if (ids.contains(en.getKey().getDownstreamIdentifier()))
+					sizes.put(en);
+			if (interpreted.contains(region.iterator().next()))
+				return new Interpreter(region, constraintsWithin(region,
+						constraints), interpreterConfiguration(region),
+						sizes.build());
+			return new Compiler2(region, config, cores, sizes.build(), null,
+					null).compile();
+		}, maxNumCores);
+	}
+
+	private static Configuration interpreterConfiguration(
+			Set<Worker<?, ?>> region) {
+		return new Interpreter.InterpreterBlobFactory()
+				.getDefaultConfiguration(region);
+	}
+
+	/**
+	 * Whether a worker class has a {@link Portal} field. A worker can only
+	 * send messages if it has one.
+	 */
+	private static final ClassValue<Boolean> HAS_PORTAL_FIELD = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> klass) {
+			for (Field f : ReflectionUtils.getAllFields(klass))
+				if (f.getType().equals(Portal.class))
+					return true;
+			return false;
+		}
+	};
+
+	/**
+	 * Finds the message constraints whose sender and recipient are both in
+	 * the workers, and hands the graph's constraints to their {@link Portal}s,
+	 * so that the handles can compute the delivery times. A constraint that
+	 * crosses the blob boundary is left alone, and its ends are compiled as
+	 * before.
+	 */
+	private static List<MessageConstraint> constraints(
+			Set<Worker<?, ?>> workers) {
+		// Skips the costly constraint analysis, which runs for every blob of
+		// every trial, if no worker of the graph can send messages.
+		Worker<?, ?> graph = workers.iterator().next();
+		boolean mayMessage = false;
+		for (Worker<?, ?> w : Workers.getAllWorkersInGraph(graph))
+			mayMessage |= HAS_PORTAL_FIELD.get(w.getClass());
+		if (!mayMessage)
+			return ImmutableList.of();
+		List<MessageConstraint> constraints = MessageConstraint
+				.findConstraints(graph);
+		if (constraints.isEmpty())
+			return constraints;
+		List<MessageConstraint> local = new ArrayList<>();
+		Set<Portal<?>> portals = new HashSet<>();
+		for (MessageConstraint mc : constraints)
+			if (workers.contains(mc.getSender())
+					&& workers.contains(mc.getRecipient())) {
+				local.add(mc);
+				portals.add(mc.getPortal());
+			}
+		for (Portal<?> portal : portals)
+			Portals.setConstraints(portal, constraints);
+		return local;
+	}
+
+	private static List<MessageConstraint> constraintsWithin(
+			Set<Worker<?, ?>> region, List<MessageConstraint> constraints) {
+		List<MessageConstraint> within = new ArrayList<>();
+		for (MessageConstraint mc : constraints)
+			if (region.contains(mc.getSender()))
+				within.add(mc);
+		return within;
+	}
+
+	/**
+	 * @return the dynamic-rate workers, and the senders, recipients and the
+	 *         workers between them of the constraints.
+	 */
+	private static Set<Worker<?, ?>> interpretedWorkers(
+			Set<Worker<?, ?>> workers, List<MessageConstraint> constraints) {
+		Set<Worker<?, ?>> interpreted = new HashSet<>();
+		for (Worker<?, ?> w : workers)
+			if (isDynamic(w))
+				interpreted.add(w);
+		for (MessageConstraint mc : constraints) {
+			boolean downstream = mc.getDirection() == StreamPosition.DOWNSTREAM;
+			Worker<?, ?> upper = downstream ? mc.getSender() : mc
+					.getRecipient();
+			Worker<?, ?> lower = downstream ? mc.getRecipient() : mc
+					.getSender();
+			interpreted.add(upper);
+			interpreted.add(lower);
+			interpreted.addAll(Sets.intersection(
+					Sets.intersection(Workers.getAllSuccessors(upper),
+							Workers.getAllPredecessors(lower)), workers));
+		}
+		return interpreted;
+	}
+
+	private static boolean isDynamic(Worker<?, ?> w) {
+		for (List<Rate> rates : ImmutableList.of(w.getPeekRates(),
+				w.getPopRates(), w.getPushRates()))
+			for (Rate r : rates)
+				if (r.isDynamic())
+					return true;
+		return false;
+	}
+
+	/**
+	 * Splits the workers into regions of compiled workers and regions of
+	 * interpreted workers.
+	 * <p>
+	 * Each worker gets a level: the maximum number of compiled/interpreted
+	 * boundaries on any path from the topmost workers to it. All workers of
+	 * a level are of the same kind, and an edge never goes to a lower level,
+	 * so the connected components of the levels are regions those form an
+	 * acyclic graph.
+	 *
+	 * @return the regions in the topological order.
+	 */
+	static List<ImmutableSet<Worker<?, ?>>> regions(Set<Worker<?, ?>> workers,
+			Set<Worker<?, ?>> interpreted) {
+		ImmutableList<Worker<?, ?>> sorted = Workers.topologicalSort(workers);
+		Map<Worker<?, ?>, Integer> level = new HashMap<>();
+		for (Worker<?, ?> w : sorted) {
+			int l = 0;
+			for (Worker<?, ?> pred : Workers.getPredecessors(w))
+				if (level.containsKey(pred))
+					l = Math.max(l, level.get(pred)
+							+ (interpreted.contains(pred) != interpreted
+									.contains(w) ? 1 : 0));
+			level.put(w, l);
+		}
+
+		// Connected components of each level, in the topological order of
+		// their first workers.
+		Map<Worker<?, ?>, Set<Worker<?, ?>>> component = new LinkedHashMap<>();
+		for (Worker<?, ?> w : sorted) {
+			Set<Worker<?, ?>> c = null;
+			for (Worker<?, ?> pred : Workers.getPredecessors(w)) {
+				if (!level.containsKey(pred) || !level.get(pred).equals(level.get(w)))
+					continue;
+				Set<Worker<?, ?>> pc = component.get(pred);
+				if (c == null) {
+					c = pc;
+					c.add(w);
+				} else if (c != pc) {
+					c.addAll(pc);
+					for (Worker<?, ?> x : pc)
+						component.put(x, c);
+				}
+			}
+			if (c == null) {
+				c = new HashSet<>();
+				c.add(w);
+			}
+			component.put(w, c);
+		}
+
+		List<ImmutableSet<Worker<?, ?>>> regions = new ArrayList<>();
+		Set<Set<Worker<?, ?>>> seen = Sets.newIdentityHashSet();
+		List<Set<Worker<?, ?>>> ordered = new ArrayList<>();
+		for (Set<Worker<?, ?>> c : component.values())
+			if (seen.add(c))
+				ordered.add(c);
+		// Sort by level, keeping the topological order within a level.
+		ordered.sort((a, b) -> Integer.compare(
+				level.get(a.iterator().next()), level.get(b.iterator().next())));
+		for (Set<Worker<?, ?>> c : ordered)
+			regions.add(ImmutableSet.copyOf(c));
+		return regions;
+	}
+
+	private static ImmutableSet<Integer> identifiers(Set<Worker<?, ?>> workers) {
+		ImmutableSet.Builder<Integer> builder = ImmutableSet.builder();
+		for (Worker<?, ?> w : workers)
+			builder.add(Workers.getIdentifier(w));
+		return builder.build();
+	}
+
+	/**
+	 * @param input
+	 *            if true, returns the region blob that reads the token.
+	 *            Otherwise, the one that writes it.
+	 */
+	private Blob getOwner(Token token, boolean input) {
+		for (Blob b : regionBlobs)
+			if ((input ? b.getInputs() : b.getOutputs()).contains(token))
+				return b;
+		throw new IllegalArgumentException("not an edge of this blob: "
+				+ token);
+	}
+
+	private Blob getOwner(Token token) {
+		return getOwner(token, inputs.contains(token));
+	}
+
+	@Override
+	public Set<Worker<?, ?>> getWorkers() {
+		return workers;
+	}
+
+	@Override
+	public Set<Token> getInputs() {
+		return inputs;
+	}
+
+	@Override
+	public Set<Token> getOutputs() {
+		return outputs;
+	}
+
+	@Override
+	public int getMinimumBufferCapacity(Token token) {
+		return getOwner(token).getMinimumBufferCapacity(token);
+	}
+
+	@Override
+	public int getMinimumSteadyBufferCapacity(Token token) {
+		return getOwner(token).getMinimumSteadyBufferCapacity(token);
+	}
+
+	@Override
+	public int getMinimumInitBufferCapacity(Token token) {
+		return getOwner(token).getMinimumInitBufferCapacity(token);
+	}
+
+	@Override
+	public void installBuffers(Map<Token, Buffer> buffers) {
+		for (Blob b : regionBlobs) {
+			ImmutableMap.Builder<Token, Buffer> builder = ImmutableMap
+					.builder();
+			for (Token t : Sets.union(b.getInputs(), b.getOutputs()))
+				if (internalBuffers.containsKey(t))
+					builder.put(t, internalBuffers.get(t));
+				else if (buffers.containsKey(t))
+					builder.put(t, buffers.get(t));
+			b.installBuffers(builder.build());
+		}
+	}
+
+	@Override
+	public int getCoreCount() {
+		return coreCode.size();
+	}
+
+	@Override
+	public Runnable getCoreCode(int core) {
+		return coreCode.get(core);
+	}
+
+	@Override
+	public void drain(Runnable callback) {
+		drainRegion(0, callback);
+	}
+
+	private void drainRegion(int i, Runnable callback) {
+		if (i == regionBlobs.size()) {
+			drainData = collectDrainData();
+			callback.run();
+		} else
+			regionBlobs.get(i).drain(() -> drainRegion(i + 1, callback));
+	}
+
+	/**
+	 * Merges the regions' DrainData. The data on an edge between two regions
+	 * is, from the oldest, the items the downstream region had read, the
+	 * items left in the buffer, and the items the upstream region could not
+	 * write.
+	 */
+	private DrainData collectDrainData() {
+		Map<Token, List<Object>> data = new HashMap<>();
+		ImmutableTable.Builder<Integer, String, Object> state = ImmutableTable
+				.builder();
+		// Downstream regions first.
+		for (int i = regionBlobs.size() - 1; i >= 0; --i) {
+			Blob b = regionBlobs.get(i);
+			DrainData dd = b.getDrainData();
+			Set<Token> tokens = new HashSet<>(b.getInputs());
+			if (dd != null)
+				tokens.addAll(dd.getData().keySet());
+			for (Token t : tokens) {
+				List<Object> list = data.computeIfAbsent(t,
+						k -> new ArrayList<>());
+				if (dd != null && dd.getData(t) != null)
+					list.addAll(dd.getData(t));
+				if (internalBuffers.containsKey(t) && b.getInputs().contains(t))
+					drainBuffer(internalBuffers.get(t), list);
+			}
+			if (dd != null)
+				for (Table.Cell<Integer, String, Object> c : dd.getState()
+						.cellSet())
+					state.put(c);
+		}
+		return new DrainData(data, state.build());
+	}
+
+	private static void drainBuffer(Buffer buffer, List<Object> list) {
+		Object o;
+		while ((o = buffer.read()) != null)
+			list.add(o);
+	}
+
+	@Override
+	public void insertDrainData(DrainData initialState)
+			throws IllegalStateException {
+		for (Blob b : regionBlobs)
+			b.insertDrainData(initialState.subset(regionIds.get(b)));
+	}
+
+	@Override
+	public DrainData getDrainData() {
+		return drainData;
+	}
+
+	@Override
+	public ExecutionStatistics getExecutionStatistics() {
+		ExecutionStatistics.ExecutionStatisticsBuilder builder = new ExecutionStatistics.ExecutionStatisticsBuilder();
+		long initTime = 0, adjustTime = 0, drainTime = 0;
+		int adjustCount = 0;
+		for (Blob b : regionBlobs) {
+			ExecutionStatistics es = b.getExecutionStatistics();
+			initTime = Math.max(initTime, es.initTime);
+			adjustTime += es.adjustTime;
+			adjustCount = Math.max(adjustCount, es.adjustCount);
+			drainTime += es.drainTime;
+		}
+		builder.initTime(initTime);
+		builder.adjustTime(adjustTime);
+		builder.adjustCount(adjustCount);
+		builder.drainTime(drainTime);
+		return builder.build();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RegionBlob%s", regionIds.values());
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates the time spent in each worker's loop during a profiling compile.
+ * Profiled loops check {@link #isRecording()} before reading the clock, so
+ * outside the recording window the only overhead is a volatile read per
+ * worker loop invocation (not per firing).
+ * @author Sumanan sumanan@mit.edu
+ * @since 20 Oct, 2016
+ */
+public final class WorkCostProfiler {
+	/**
+	 * Steady-state iterations to run before recording, letting the JVM
+	 * compile the steady-state code.
+	 */
+	public static final int WARMUP_STEADY_STATES = 20;
+	/**
+	 * Steady-state iterations to record.
+	 */
+	public static final int RECORDED_STEADY_STATES = 50;
+	private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+	private volatile boolean recording = false;
+
+	Counter counter(WorkerActor a) {
+		return counters.computeIfAbsent(a.id(), id -> new Counter(this));
+	}
+
+	public void start() {
+		recording = true;
+	}
+
+	public void stop() {
+		recording = false;
+	}
+
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * Returns the costs recorded so far.  Workers that never fired while
+	 * recording are omitted.
+	 * @return the recorded costs
+	 */
+	public WorkCosts snapshot() {
+		ImmutableMap.Builder<Integer, Double> costs = ImmutableMap.builder();
+		ImmutableMap.Builder<Integer, Long> firings = ImmutableMap.builder();
+		for (Map.Entry<Integer, Counter> e : counters.entrySet()) {
+			long f = e.getValue().firings.sum();
+			if (f == 0) continue;
+			costs.put(e.getKey(), (double)e.getValue().nanos.sum() / f);
+			firings.put(e.getKey(), f);
+		}
+		return new WorkCosts(costs.build(), firings.build());
+	}
+
+	static final class Counter {
+		private final WorkCostProfiler profiler;
+		private final LongAdder nanos = new LongAdder(), firings = new LongAdder();
+		private Counter(WorkCostProfiler profiler) {
+			this.profiler = profiler;
+		}
+		boolean isRecording() {
+			return profiler.recording;
+		}
+		void record(long elapsedNanos, int firingCount) {
+			nanos.add(elapsedNanos);
+			firings.add(firingCount);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.compiler2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.ImmutableMap;
+import edu.mit.streamjit.impl.common.Configuration;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measured work costs, in average nanoseconds per firing, keyed by worker
+ * identifier.  WorkCosts are gathered by a profiling compile (see
+ * {@link WorkCostProfiler}) and travel as configuration extra data, so later
+ * compiles can allocate and fuse using real costs rather than tuner guesses.
+ * @author Sumanan sumanan@mit.edu
+ * @since 20 Oct, 2016
+ */
+public final class WorkCosts implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The extra data name under which measured WorkCosts are stored.
+	 */
+	public static final String EXTRA_DATA_NAME = "workCosts";
+	/**
+	 * The extra data name that, if set to true, requests a profiling compile.
+	 */
+	public static final String PROFILE_EXTRA_DATA_NAME = "profileWorkCosts";
+	private final ImmutableMap<Integer, Double> nanosPerFiring;
+	/**
+	 * The number of firings each average is over, so merges are weighted.
+	 */
+	private final ImmutableMap<Integer, Long> firings;
+
+	WorkCosts(ImmutableMap<Integer, Double> nanosPerFiring, ImmutableMap<Integer, Long> firings) {
+		checkArgument(nanosPerFiring.keySet().equals(firings.keySet()));
+		this.nanosPerFiring = nanosPerFiring;
+		this.firings = firings;
+	}
+
+	/**
+	 * Returns the WorkCosts stored in the given configuration's extra data, or
+	 * null if it doesn't contain any.
+	 * @param config the configuration
+	 * @return the WorkCosts, or null
+	 */
+	public static WorkCosts of(Configuration config) {
+		Object costs = config.getExtraData(EXTRA_DATA_NAME);
+		return costs instanceof WorkCosts ? (WorkCosts)costs : null;
+	}
+
+	/**
+	 * Returns true iff the given configuration requests a profiling compile.
+	 * @param config the configuration
+	 * @return true iff work costs should be profiled
+	 */
+	public static boolean isProfilingRequested(Configuration config) {
+		Boolean profile = (Boolean)config.getExtraData(PROFILE_EXTRA_DATA_NAME);
+		return profile != null && profile;
+	}
+
+	public boolean isEmpty() {
+		return nanosPerFiring.isEmpty();
+	}
+
+	public boolean contains(int workerId) {
+		return nanosPerFiring.containsKey(workerId);
+	}
+
+	/**
+	 * Returns the average cost of one firing of the given worker.  Workers
+	 * that weren't measured are assumed to cost the mean of the measured
+	 * workers.
+	 * @param workerId the worker's identifier
+	 * @return nanoseconds per firing
+	 */
+	public double nanosPerFiring(int workerId) {
+		Double cost = nanosPerFiring.get(workerId);
+		if (cost != null)
+			return cost;
+		return nanosPerFiring.values().stream().mapToDouble(Double::doubleValue).average().orElse(1);
+	}
+
+	/**
+	 * Returns the total time measured for the given worker. All workers are
+	 * profiled over the same iterations, so this is proportional to the
+	 * worker's share of the work of a steady-state iteration.  Workers that
+	 * weren't measured are assumed to cost the mean of the measured workers.
+	 * @param workerId the worker's identifier
+	 * @return nanoseconds measured
+	 */
+	public double measuredNanos(int workerId) {
+		Double cost = nanosPerFiring.get(workerId);
+		if (cost != null)
+			return cost * firings.get(workerId);
+		return nanosPerFiring.entrySet().stream()
+				.mapToDouble(e -> e.getValue() * firings.get(e.getKey()))
+				.average().orElse(1);
+	}
+
+	/**
+	 * Returns the cost of one iteration of the given group (that is, of each
+	 * actor in the group firing its internal schedule's worth of times).
+	 * Token groups cost nothing.
+	 * @param group the group (must have been internally scheduled)
+	 * @return nanoseconds per group iteration
+	 */
+	public double groupIterationCost(ActorGroup group) {
+		if (group.isTokenGroup())
+			return 0;
+		double cost = 0;
+		for (Map.Entry<Actor, Integer> e : group.schedule().entrySet())
+			cost += e.getValue() * nanosPerFiring(e.getKey().id());
+		return cost;
+	}
+
+	/**
+	 * Returns WorkCosts combining these costs with the given ones, weighting
+	 * each worker's averages by the number of firings measured.
+	 * @param other the costs to merge with (may be null)
+	 * @return the merged costs
+	 */
+	public WorkCosts merge(WorkCosts other) {
+		if (other == null || other.isEmpty())
+			return this;
+		if (isEmpty())
+			return other;
+		Map<Integer, Double> mergedCosts = new HashMap<>(nanosPerFiring);
+		Map<Integer, Long> mergedFirings = new HashMap<>(firings);
+		for (Map.Entry<Integer, Double> e : other.nanosPerFiring.entrySet()) {
+			int id = e.getKey();
+			long otherFirings = other.firings.get(id);
+			Long ourFirings = mergedFirings.get(id);
+			if (ourFirings == null) {
+				mergedCosts.put(id, e.getValue());
+				mergedFirings.put(id, otherFirings);
+			} else {
+				long total = ourFirings + otherFirings;
+				mergedCosts.put(id, (mergedCosts.get(id) * ourFirings + e.getValue() * otherFirings) / total);
+				mergedFirings.put(id, total);
+			}
+		}
+		return new WorkCosts(ImmutableMap.copyOf(mergedCosts), ImmutableMap.copyOf(mergedFirings));
+	}
+
+	@Override
+	public String toString() {
+		return nanosPerFiring.toString();
+	}
+}
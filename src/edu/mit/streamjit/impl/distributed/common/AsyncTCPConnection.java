@@ -710,6 +710,10 @@ public class AsyncTCPConnection implements Connection {
 			this.portNo = portNo;
 		}
 
+		public int getPortNo() {
+			return portNo;
+		}
+
 		@Override
 		public int hashCode() {
 			final int prime = 31;
@@ -0,0 +1,636 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessageElementHolder;
+import edu.mit.streamjit.impl.distributed.common.SNDrainElement.Drained;
+import edu.mit.streamjit.impl.distributed.common.SNDrainElement.SNDrainedData;
+import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
+import edu.mit.streamjit.impl.distributed.common.SNTimeInfo.CompilationTime;
+import edu.mit.streamjit.impl.distributed.common.SNTimeInfo.DrainingTime;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.profiler.SNProfileElement.SNBufferStatusData;
+import edu.mit.streamjit.impl.distributed.profiler.SNProfileElement.SNBufferStatusData.BlobBufferStatus;
+import edu.mit.streamjit.impl.distributed.profiler.SNProfileElement.SNBufferStatusData.BufferStatus;
+import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+
+/**
+ * {@link Connection} for the control messages between the {@link Controller}
+ * and a {@link StreamNode}. See {@link Options#batchedControl}.
+ * <p>
+ * Unlike {@link SynchronizedTCPConnection},
+ * <ol>
+ * <li>{@link #writeObject(Object)} does not block on the socket. Messages are
+ * queued and a writer thread sends them in order. So the controller can send
+ * a message to all nodes without waiting for each node in turn, and the
+ * senders at a {@link StreamNode} (e.g., blob threads) are never blocked by
+ * the controller, unless {@link #maxQueueSize} messages are pending.
+ * <li>The writer thread takes all queued messages at once and flushes the
+ * socket once per batch, instead of once per message.
+ * <li>The frequent and the large messages are encoded field by field instead
+ * of being serialized: {@link CreditGrant}s, {@link SNTimeInfo}s,
+ * {@link SNBufferStatusData}, {@link Drained} and {@link SNDrainedData}. Drained
+ * items are written as primitives if all items of a channel are of the same
+ * boxed type. A {@link Token} is sent in full only once per connection;
+ * afterwards it is referred by its index.
+ * </ol>
+ * Both ends of a control connection must be {@link BatchedControlConnection}
+ * s.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public class BatchedControlConnection implements Connection {
+
+	/**
+	 * Record tags.
+	 */
+	private static final byte OBJECT = 0;
+	private static final byte TOKEN = 1;
+	private static final byte SN_CREDIT = 2;
+	private static final byte CTRLR_CREDIT = 3;
+	private static final byte COMPILATION_TIME = 4;
+	private static final byte DRAINING_TIME = 5;
+	private static final byte BUFFER_STATUS = 6;
+	private static final byte DRAINED = 7;
+	private static final byte DRAINED_DATA = 8;
+
+	/**
+	 * Item list encodings. See {@link #writeList(List)}.
+	 */
+	private static final byte OBJECT_LIST = 0;
+	private static final byte INT_LIST = 1;
+	private static final byte FLOAT_LIST = 2;
+	private static final byte DOUBLE_LIST = 3;
+
+	/**
+	 * Maximum number of messages written before a single flush.
+	 */
+	private static final int maxBatchSize = 256;
+
+	/**
+	 * Maximum number of messages waiting to be written.
+	 * {@link #writeObject(Object)} blocks while the queue is full.
+	 */
+	private static final int maxQueueSize = 8192;
+
+	/**
+	 * Queued to stop the writer thread after all earlier messages have been
+	 * written.
+	 */
+	private static final Object closeMarker = new Object();
+
+	private final Socket socket;
+
+	private final ObjectOutputStream ooStream;
+
+	private final ObjectInputStream oiStream;
+
+	private final LinkedBlockingQueue<Object> queue;
+
+	private final Thread writer;
+
+	private final Object readLock = new Object();
+
+	private volatile boolean isconnected;
+
+	/**
+	 * Set once {@link #softClose()} has been called. No more messages can be
+	 * written, but messages can still be read.
+	 */
+	private volatile boolean softClosed;
+
+	/**
+	 * Tokens those have been sent in full, with their indices. Accessed only
+	 * by the writer thread.
+	 */
+	private final Map<Token, Integer> sentTokens;
+
+	/**
+	 * Tokens those have been received in full. Index of a token in this list
+	 * is its index at the sender.
+	 */
+	private final List<Token> receivedTokens;
+
+	/**
+	 * Whether the current batch has been written through
+	 * {@link ObjectOutputStream#writeObject(Object)}. Accessed only by the
+	 * writer thread.
+	 */
+	private boolean serialized;
+
+	public BatchedControlConnection(Socket socket) throws IOException {
+		this.socket = socket;
+		socket.setTcpNoDelay(true);
+		ooStream = new ObjectOutputStream(new BufferedOutputStream(
+				socket.getOutputStream(), 1 << 16));
+		// Other side's ObjectInputStream blocks until it reads the stream
+		// header.
+		ooStream.flush();
+		oiStream = new ObjectInputStream(new BufferedInputStream(
+				socket.getInputStream(), 1 << 16));
+		queue = new LinkedBlockingQueue<>(maxQueueSize);
+		sentTokens = new HashMap<>();
+		receivedTokens = new ArrayList<>();
+		isconnected = true;
+		writer = new Thread(String.format("ControlWriter-%s",
+				socket.getInetAddress())) {
+			public void run() {
+				write();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public <T> T readObject() throws IOException, ClassNotFoundException {
+		if (!isStillConnected())
+			throw new IOException("Connection is not connected");
+		Object obj;
+		synchronized (readLock) {
+			try {
+				obj = read();
+			} catch (IOException e) {
+				isconnected = false;
+				throw e;
+			}
+		}
+		@SuppressWarnings("unchecked")
+		T t = (T) obj;
+		return t;
+	}
+
+	/**
+	 * Reads records until a message is complete.
+	 */
+	private Object read() throws IOException, ClassNotFoundException {
+		while (true) {
+			byte tag = oiStream.readByte();
+			switch (tag) {
+				case OBJECT :
+					return oiStream.readObject();
+				case TOKEN :
+					receivedTokens.add((Token) oiStream.readObject());
+					break;
+				case SN_CREDIT : {
+					int appInstId = oiStream.readInt();
+					return new SNMessageElementHolder(readCreditGrant(),
+							appInstId);
+				}
+				case CTRLR_CREDIT : {
+					int appInstId = oiStream.readInt();
+					return new CTRLRMessageElementHolder(readCreditGrant(),
+							appInstId);
+				}
+				case COMPILATION_TIME : {
+					int appInstId = oiStream.readInt();
+					Token blobID = readToken();
+					return new SNMessageElementHolder(new CompilationTime(
+							blobID, oiStream.readDouble()), appInstId);
+				}
+				case DRAINING_TIME : {
+					int appInstId = oiStream.readInt();
+					Token blobID = readToken();
+					return new SNMessageElementHolder(new DrainingTime(
+							blobID, oiStream.readDouble()), appInstId);
+				}
+				case BUFFER_STATUS : {
+					int appInstId = oiStream.readInt();
+					return new SNMessageElementHolder(readBufferStatusData(),
+							appInstId);
+				}
+				case DRAINED : {
+					int appInstId = oiStream.readInt();
+					return new SNMessageElementHolder(new Drained(readToken()),
+							appInstId);
+				}
+				case DRAINED_DATA : {
+					int appInstId = oiStream.readInt();
+					return new SNMessageElementHolder(readDrainedData(),
+							appInstId);
+				}
+				default :
+					throw new IOException("Unknown record tag " + tag);
+			}
+		}
+	}
+
+	private Token readToken() throws IOException {
+		return receivedTokens.get(oiStream.readInt());
+	}
+
+	private CreditGrant readCreditGrant() throws IOException {
+		Token t = readToken();
+		return new CreditGrant(t, oiStream.readInt());
+	}
+
+	private SNBufferStatusData readBufferStatusData() throws IOException {
+		int machineID = oiStream.readInt();
+		int n = oiStream.readInt();
+		ImmutableSet.Builder<BlobBufferStatus> builder = ImmutableSet.builder();
+		for (int i = 0; i < n; i++) {
+			Token blobID = readToken();
+			ImmutableSet<BufferStatus> inputSet = readBufferStatusSet();
+			ImmutableSet<BufferStatus> outputSet = readBufferStatusSet();
+			builder.add(new BlobBufferStatus(blobID, inputSet, outputSet));
+		}
+		return new SNBufferStatusData(machineID, builder.build());
+	}
+
+	private ImmutableSet<BufferStatus> readBufferStatusSet() throws IOException {
+		int n = oiStream.readInt();
+		ImmutableSet.Builder<BufferStatus> builder = ImmutableSet.builder();
+		for (int i = 0; i < n; i++) {
+			Token t = readToken();
+			int min = oiStream.readInt();
+			builder.add(new BufferStatus(t, min, oiStream.readInt()));
+		}
+		return builder.build();
+	}
+
+	private SNDrainedData readDrainedData() throws IOException,
+			ClassNotFoundException {
+		Token blobID = readToken();
+		DrainData drainData = null;
+		if (oiStream.readBoolean()) {
+			ImmutableMap<Token, ImmutableList<Object>> data = readDataMap();
+			@SuppressWarnings("unchecked")
+			ImmutableTable<Integer, String, Object> state = (ImmutableTable<Integer, String, Object>) oiStream
+					.readObject();
+			drainData = new DrainData(data, state);
+		}
+		ImmutableMap<Token, ImmutableList<Object>> inputData = readDataMap();
+		ImmutableMap<Token, ImmutableList<Object>> outputData = readDataMap();
+		return new SNDrainedData(blobID, drainData, inputData, outputData);
+	}
+
+	private ImmutableMap<Token, ImmutableList<Object>> readDataMap()
+			throws IOException, ClassNotFoundException {
+		int n = oiStream.readInt();
+		ImmutableMap.Builder<Token, ImmutableList<Object>> builder = ImmutableMap
+				.builder();
+		for (int i = 0; i < n; i++) {
+			Token t = readToken();
+			builder.put(t, readList());
+		}
+		return builder.build();
+	}
+
+	private ImmutableList<Object> readList() throws IOException,
+			ClassNotFoundException {
+		byte type = oiStream.readByte();
+		if (type == OBJECT_LIST) {
+			@SuppressWarnings("unchecked")
+			ImmutableList<Object> list = (ImmutableList<Object>) oiStream
+					.readObject();
+			return list;
+		}
+		int size = oiStream.readInt();
+		Object[] items = new Object[size];
+		for (int i = 0; i < size; i++) {
+			switch (type) {
+				case INT_LIST :
+					items[i] = oiStream.readInt();
+					break;
+				case FLOAT_LIST :
+					items[i] = oiStream.readFloat();
+					break;
+				case DOUBLE_LIST :
+					items[i] = oiStream.readDouble();
+					break;
+				default :
+					throw new IOException("Unknown list type " + type);
+			}
+		}
+		return ImmutableList.copyOf(items);
+	}
+
+	@Override
+	public void writeObject(Object obj) throws IOException {
+		try {
+			while (isStillConnected() && !softClosed)
+				if (queue.offer(obj, 100, TimeUnit.MILLISECONDS))
+					return;
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		throw new IOException("Connection is not connected");
+	}
+
+	@Override
+	public int writeObjects(Object[] data, int offset, int length)
+			throws IOException {
+		for (int i = 0; i < length; i++)
+			writeObject(data[offset + i]);
+		return length;
+	}
+
+	/**
+	 * Writer thread's loop.
+	 */
+	private void write() {
+		List<Object> batch = new ArrayList<>(maxBatchSize);
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, maxBatchSize - 1);
+				serialized = false;
+				for (Object obj : batch) {
+					if (obj == closeMarker) {
+						ooStream.flush();
+						return;
+					}
+					encode(obj);
+				}
+				ooStream.flush();
+				batch.clear();
+				// Reset after every serialized message, so that the stream
+				// neither keeps the sent objects (e.g., DrainData) alive nor
+				// sends a mutated object as a stale back-reference. Batches of
+				// encoded messages only need no reset.
+				if (serialized)
+					ooStream.reset();
+			}
+		} catch (IOException | InterruptedException e) {
+			if (isconnected)
+				e.printStackTrace();
+			isconnected = false;
+		}
+	}
+
+	private void encode(Object obj) throws IOException {
+		if (obj instanceof SNMessageElementHolder) {
+			SNMessageElementHolder h = (SNMessageElementHolder) obj;
+			if (encode(h.me, h.appInstId))
+				return;
+		} else if (obj instanceof CTRLRMessageElementHolder) {
+			CTRLRMessageElementHolder h = (CTRLRMessageElementHolder) obj;
+			if (h.me instanceof CreditGrant) {
+				writeCreditGrant(CTRLR_CREDIT, h.appInstId, (CreditGrant) h.me);
+				return;
+			}
+		}
+		ooStream.writeByte(OBJECT);
+		ooStream.writeObject(obj);
+		serialized = true;
+	}
+
+	/**
+	 * @return <code>false</code> iff the message has no binary encoding.
+	 */
+	private boolean encode(SNMessageElement me, int appInstId)
+			throws IOException {
+		if (me instanceof CreditGrant)
+			writeCreditGrant(SN_CREDIT, appInstId, (CreditGrant) me);
+		else if (me instanceof CompilationTime) {
+			CompilationTime ct = (CompilationTime) me;
+			announce(ct.blobID);
+			writeHeader(COMPILATION_TIME, appInstId);
+			writeToken(ct.blobID);
+			ooStream.writeDouble(ct.milliSec);
+		} else if (me instanceof DrainingTime) {
+			DrainingTime dt = (DrainingTime) me;
+			announce(dt.blobID);
+			writeHeader(DRAINING_TIME, appInstId);
+			writeToken(dt.blobID);
+			ooStream.writeDouble(dt.milliSec);
+		} else if (me instanceof SNBufferStatusData)
+			writeBufferStatusData(appInstId, (SNBufferStatusData) me);
+		else if (me instanceof Drained) {
+			Drained d = (Drained) me;
+			announce(d.blobID);
+			writeHeader(DRAINED, appInstId);
+			writeToken(d.blobID);
+		} else if (me instanceof SNDrainedData)
+			writeDrainedData(appInstId, (SNDrainedData) me);
+		else
+			return false;
+		return true;
+	}
+
+	/**
+	 * Sends the {@link Token} in full, unless it has already been sent. Must
+	 * be called before the header of the record that refers the token.
+	 */
+	private void announce(Token t) throws IOException {
+		if (sentTokens.containsKey(t))
+			return;
+		sentTokens.put(t, sentTokens.size());
+		ooStream.writeByte(TOKEN);
+		ooStream.writeObject(t);
+		serialized = true;
+	}
+
+	private void announce(Set<Token> tokens) throws IOException {
+		for (Token t : tokens)
+			announce(t);
+	}
+
+	private void writeHeader(byte tag, int appInstId) throws IOException {
+		ooStream.writeByte(tag);
+		ooStream.writeInt(appInstId);
+	}
+
+	private void writeToken(Token t) throws IOException {
+		ooStream.writeInt(sentTokens.get(t));
+	}
+
+	private void writeCreditGrant(byte tag, int appInstId, CreditGrant cg)
+			throws IOException {
+		announce(cg.token);
+		writeHeader(tag, appInstId);
+		writeToken(cg.token);
+		ooStream.writeInt(cg.credits);
+	}
+
+	private void writeBufferStatusData(int appInstId, SNBufferStatusData bsd)
+			throws IOException {
+		for (BlobBufferStatus bbs : bsd.blobsBufferStatusSet) {
+			announce(bbs.blobID);
+			for (BufferStatus bs : bbs.inputSet)
+				announce(bs.ID);
+			for (BufferStatus bs : bbs.outputSet)
+				announce(bs.ID);
+		}
+		writeHeader(BUFFER_STATUS, appInstId);
+		ooStream.writeInt(bsd.machineID);
+		ooStream.writeInt(bsd.blobsBufferStatusSet.size());
+		for (BlobBufferStatus bbs : bsd.blobsBufferStatusSet) {
+			writeToken(bbs.blobID);
+			writeBufferStatusSet(bbs.inputSet);
+			writeBufferStatusSet(bbs.outputSet);
+		}
+	}
+
+	private void writeBufferStatusSet(Set<BufferStatus> set)
+			throws IOException {
+		ooStream.writeInt(set.size());
+		for (BufferStatus bs : set) {
+			writeToken(bs.ID);
+			ooStream.writeInt(bs.min);
+			ooStream.writeInt(bs.availableResource);
+		}
+	}
+
+	private void writeDrainedData(int appInstId, SNDrainedData dd)
+			throws IOException {
+		announce(dd.blobID);
+		if (dd.drainData != null)
+			announce(dd.drainData.getData().keySet());
+		announce(dd.inputData.keySet());
+		announce(dd.outputData.keySet());
+		writeHeader(DRAINED_DATA, appInstId);
+		writeToken(dd.blobID);
+		ooStream.writeBoolean(dd.drainData != null);
+		if (dd.drainData != null) {
+			writeDataMap(dd.drainData.getData());
+			ooStream.writeObject(dd.drainData.getState());
+			serialized = true;
+		}
+		writeDataMap(dd.inputData);
+		writeDataMap(dd.outputData);
+	}
+
+	private void writeDataMap(Map<Token, ImmutableList<Object>> data)
+			throws IOException {
+		ooStream.writeInt(data.size());
+		for (Map.Entry<Token, ImmutableList<Object>> en : data.entrySet()) {
+			writeToken(en.getKey());
+			writeList(en.getValue());
+		}
+	}
+
+	/**
+	 * Writes the items as primitives if all of them are Integers, Floats or
+	 * Doubles. Otherwise, e.g., if an item is null, serializes the list.
+	 */
+	private void writeList(ImmutableList<Object> items) throws IOException {
+		byte type = listType(items);
+		ooStream.writeByte(type);
+		if (type == OBJECT_LIST) {
+			ooStream.writeObject(items);
+			serialized = true;
+			return;
+		}
+		ooStream.writeInt(items.size());
+		for (Object o : items) {
+			switch (type) {
+				case INT_LIST :
+					ooStream.writeInt((Integer) o);
+					break;
+				case FLOAT_LIST :
+					ooStream.writeFloat((Float) o);
+					break;
+				default :
+					ooStream.writeDouble((Double) o);
+			}
+		}
+	}
+
+	private static byte listType(List<Object> items) {
+		if (items.isEmpty())
+			return INT_LIST;
+		Object first = items.get(0);
+		if (first == null)
+			return OBJECT_LIST;
+		Class<?> c = first.getClass();
+		byte type;
+		if (c == Integer.class)
+			type = INT_LIST;
+		else if (c == Float.class)
+			type = FLOAT_LIST;
+		else if (c == Double.class)
+			type = DOUBLE_LIST;
+		else
+			return OBJECT_LIST;
+		for (Object o : items)
+			if (o == null || o.getClass() != c)
+				return OBJECT_LIST;
+		return type;
+	}
+
+	/**
+	 * Writes all queued messages and then closes the connection.
+	 */
+	@Override
+	public void closeConnection() throws IOException {
+		if (isconnected && !softClosed)
+			stopWriter();
+		isconnected = false;
+		writer.interrupt();
+		socket.close();
+	}
+
+	/**
+	 * Writes all queued messages and then shuts down the output. The other end
+	 * reads all messages and then gets an EOF. This end can still read.
+	 */
+	@Override
+	public void softClose() throws IOException {
+		if (softClosed)
+			return;
+		softClosed = true;
+		if (isconnected)
+			stopWriter();
+		socket.shutdownOutput();
+	}
+
+	/**
+	 * Queues the {@link #closeMarker} and waits for the writer to write all
+	 * earlier messages.
+	 */
+	private void stopWriter() {
+		try {
+			if (queue.offer(closeMarker, 5000, TimeUnit.MILLISECONDS))
+				writer.join(5000);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public boolean isStillConnected() {
+		return isconnected;
+	}
+}
@@ -55,6 +55,28 @@ public interface BoundaryChannel {
 
 	Buffer getBuffer();
 
+	/**
+	 * {@link BoundaryChannel}s those can move to a new {@link Connection}
+	 * without being stopped. Used to migrate a blob at the other end of the
+	 * channel to another node.
+	 */
+	public interface Rewirable {
+
+		/**
+		 * Moves this channel to the connection described by @param conInfo.
+		 * Output channels soft close the current connection and move
+		 * immediately. Input channels move once the peer soft closes the
+		 * current connection. Returns immediately in both cases. A null
+		 * @param conInfo cancels a rewire that has not taken place yet.
+		 * <p>
+		 * @param rewired runs once the rewire has taken effect: for output
+		 * channels, once the current connection has been soft closed, so that
+		 * no item is sent through it anymore; for input channels and for
+		 * cancellations, right away.
+		 */
+		void rewire(ConnectionInfo conInfo, Runnable rewired);
+	}
+
 	/**
 	 * Interface that represents input channels.
 	 */
@@ -45,4 +45,8 @@ public interface CTRLRMessageVisitor {
 	public void visit(CTRLCompilationInfo ctrlCompilationInfo);
 
 	public void visit(ProfilerCommand command);
+
+	public void visit(CreditGrant creditGrant);
+
+	public void visit(CTRLRMigrationElement ctrlrMigrationElement);
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+
+/**
+ * {@link Controller} sends these to {@link StreamNode}s to move a single
+ * {@link Blob} from one {@link StreamNode} to another while the rest of the
+ * blobs keep running. {@link StreamNode}s reply with
+ * {@link SNMigrationElement}s.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 26 Oct, 2016
+ */
+public abstract class CTRLRMigrationElement implements CTRLRMessageElement {
+	private static final long serialVersionUID = 1L;
+
+	public abstract void process(CTRLRMigrationProcessor mp);
+
+	@Override
+	public void accept(CTRLRMessageVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/**
+	 * Asks the {@link StreamNode} that runs one end of a boundary channel to
+	 * move the channel to a new connection, once the other end soft closes the
+	 * current connection. The {@link StreamNode} replies with
+	 * {@link SNMigrationElement.Rewired}.
+	 */
+	public static final class Rewire extends CTRLRMigrationElement {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Token of the boundary channel.
+		 */
+		public final Token token;
+
+		/**
+		 * The new connection. Null cancels a rewire that has not taken
+		 * place yet. A newer rewire replaces a pending one.
+		 */
+		public final ConnectionInfo conInfo;
+
+		public Rewire(Token token, ConnectionInfo conInfo) {
+			this.token = token;
+			this.conInfo = conInfo;
+		}
+
+		@Override
+		public void process(CTRLRMigrationProcessor mp) {
+			mp.process(this);
+		}
+	}
+
+	/**
+	 * Drains the blob and removes it from the {@link StreamNode}. Unlike
+	 * {@link CTRLRDrainElement.DoDrain}, the {@link StreamNode} sends only the
+	 * {@link SNDrainElement.SNDrainedData} back, and the other blobs of the
+	 * {@link StreamNode} keep running.
+	 */
+	public static final class MigrateOut extends CTRLRMigrationElement {
+		private static final long serialVersionUID = 1L;
+
+		public final Token blobID;
+
+		public MigrateOut(Token blobID) {
+			this.blobID = blobID;
+		}
+
+		@Override
+		public void process(CTRLRMigrationProcessor mp) {
+			mp.process(this);
+		}
+	}
+
+	/**
+	 * Creates the blob from its drain data and starts it. The
+	 * {@link StreamNode} replies with {@link SNMigrationElement.MigratedIn}.
+	 */
+	public static final class MigrateIn extends CTRLRMigrationElement {
+		private static final long serialVersionUID = 1L;
+
+		public final Token blobID;
+
+		/**
+		 * The node on which the dynamic configuration, {@link #cfgJson},
+		 * places the blob.
+		 */
+		public final int origNodeID;
+
+		/**
+		 * Json string of the current dynamic configuration.
+		 */
+		public final String cfgJson;
+
+		public final DrainData drainData;
+
+		/**
+		 * {@link ConnectionInfo}s of all input and output channels of the
+		 * blob.
+		 */
+		public final ImmutableMap<Token, ConnectionInfo> conInfoMap;
+
+		/**
+		 * Final input buffer sizes of the blob's input channels. See
+		 * {@link CTRLCompilationInfo.FinalBufferSizes}.
+		 */
+		public final ImmutableMap<Token, Integer> bufferSizes;
+
+		public MigrateIn(Token blobID, int origNodeID, String cfgJson,
+				DrainData drainData,
+				ImmutableMap<Token, ConnectionInfo> conInfoMap,
+				ImmutableMap<Token, Integer> bufferSizes) {
+			this.blobID = blobID;
+			this.origNodeID = origNodeID;
+			this.cfgJson = cfgJson;
+			this.drainData = drainData;
+			this.conInfoMap = conInfoMap;
+			this.bufferSizes = bufferSizes;
+		}
+
+		@Override
+		public void process(CTRLRMigrationProcessor mp) {
+			mp.process(this);
+		}
+	}
+
+	public interface CTRLRMigrationProcessor {
+
+		public void process(Rewire rewire);
+
+		public void process(MigrateOut migrateOut);
+
+		public void process(MigrateIn migrateIn);
+	}
+}
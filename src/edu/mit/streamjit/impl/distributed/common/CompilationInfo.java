@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableMap;
 
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.compiler2.WorkCosts;
 
 /**
  * @author Sumanan sumanan@mit.edu
@@ -103,10 +104,31 @@ public abstract class CompilationInfo implements SNMessageElement {
 		}
 	}
 
+	/**
+	 * Work costs measured by a profiling compile of a blob.
+	 */
+	public static final class WorkCostProfile extends CompilationInfo {
+		private static final long serialVersionUID = 1L;
+
+		public final Token blobID;
+		public final WorkCosts workCosts;
+
+		public WorkCostProfile(Token blobID, WorkCosts workCosts) {
+			this.blobID = blobID;
+			this.workCosts = workCosts;
+		}
+
+		@Override
+		public void process(CompilationInfoProcessor cip) {
+			cip.process(this);
+		}
+	}
+
 	public interface CompilationInfoProcessor {
 		public void process(BufferSizes bufferSizes);
 		public void process(InitScheduleCompleted initScheduleCompleted);
 		public void process(DrainDataSizes ddSizes);
 		public void process(State state);
+		public void process(WorkCostProfile workCostProfile);
 	}
 }
@@ -123,7 +123,12 @@ public abstract class ConfigurationString implements CTRLRMessageElement {
 			 * Dynamic configuration contains all details that varies
 			 * for each opentuner's new configuration.
 			 */
-			DYNAMIC
+			DYNAMIC, /**
+			 * Dynamic configuration of an upcoming configuration. Blobs
+			 * are compiled in background and thrown away. See
+			 * {@link Options#speculativeCompilation}.
+			 */
+			SPECULATIVE
 		}
 	}
 }
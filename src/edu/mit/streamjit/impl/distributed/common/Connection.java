@@ -341,6 +341,10 @@ public interface Connection {
 			this.allConnections = new ConcurrentHashMap<>();
 		}
 
+		public NetworkInfo getNetworkInfo() {
+			return networkInfo;
+		}
+
 		/**
 		 * See {@link #getConnection(TCPConnectionInfo, int)}.
 		 * 
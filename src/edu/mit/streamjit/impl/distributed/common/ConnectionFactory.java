@@ -30,6 +30,7 @@ import java.nio.channels.AsynchronousSocketChannel;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
 import edu.mit.streamjit.impl.distributed.runtimer.ListenerSocket;
 
 /**
@@ -80,6 +81,49 @@ public class ConnectionFactory {
 		throw new IOException("Connection creation failed.");
 	}
 
+	/**
+	 * Returns a {@link Connection} for the control messages between the
+	 * controller and a {@link StreamNode}. See {@link Options#batchedControl}.
+	 */
+	public static Connection getControlConnection(Socket socket)
+			throws IOException {
+		if (socket == null)
+			throw new IOException("Null Socket.");
+		if (Options.batchedControl)
+			return new BatchedControlConnection(socket);
+		else
+			return new SynchronizedTCPConnection(socket);
+	}
+
+	/**
+	 * Connects to the controller and returns a {@link Connection} for the
+	 * control messages. See {@link #getControlConnection(Socket)}.
+	 */
+	public static Connection getControlConnection(String serverAddress,
+			int portNo) throws IOException {
+		if (!Options.batchedControl)
+			return getConnection(serverAddress, portNo, true);
+		int maxTryAttempts = 10;
+		for (int i = 0; i < maxTryAttempts; i++) {
+			try {
+				return new BatchedControlConnection(new Socket(serverAddress,
+						portNo));
+			} catch (IOException ioe) {
+				System.out.println("IO Connection failed - " + serverAddress
+						+ "/" + portNo);
+				if (i == maxTryAttempts - 1)
+					throw ioe;
+				System.out.println("Reattempting...." + i);
+			}
+			try {
+				Thread.sleep((i + 1) * 2000);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		throw new IOException("Connection creation failed.");
+	}
+
 	/**
 	 * @param portNo
 	 * @param timeOut
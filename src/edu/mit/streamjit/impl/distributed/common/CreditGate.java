@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryInputChannel;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
+import edu.mit.streamjit.impl.distributed.controller.HT.HeadChannelSeamless;
+
+/**
+ * Sender side of the credit-based flow control. A sender (e.g.,
+ * {@link HeadChannelSeamless} or a {@link BoundaryOutputChannel}) may send
+ * only as many items as it holds credits for. The receiving
+ * {@link CreditSource} grants credits, through the controller, as its buffer
+ * drains; so the items in flight never exceed the receiver's buffer
+ * capacity.
+ * <p>
+ * Once closed (i.e., when the sender is asked to stop), a gate grants
+ * unlimited credits so that draining never blocks on flow control.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 24 Oct, 2016
+ */
+public final class CreditGate {
+
+	private int credits = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * Set by {@link #wakeUp()} to release the thread waiting in
+	 * {@link #acquire(int)} once.
+	 */
+	private boolean wakeUp = false;
+
+	public synchronized void grant(int credits) {
+		this.credits += credits;
+		notifyAll();
+	}
+
+	/**
+	 * Blocks until at least one credit is available, or until
+	 * {@link #wakeUp()} is called.
+	 * 
+	 * @param max
+	 *            maximum credits needed.
+	 * @return number of credits acquired, between 1 and max. 0 if woken up
+	 *         without credits.
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted. The caller must stop
+	 *             sending.
+	 */
+	public synchronized int acquire(int max) throws InterruptedException {
+		while (credits == 0 && !closed && !wakeUp)
+			wait();
+		wakeUp = false;
+		return tryAcquire(max);
+	}
+
+	/**
+	 * Non-blocking version of {@link #acquire(int)}.
+	 * 
+	 * @return number of credits acquired, between 0 and max.
+	 */
+	public synchronized int tryAcquire(int max) {
+		if (closed)
+			return max;
+		int n = Math.min(max, credits);
+		credits -= n;
+		return n;
+	}
+
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the current or the next call of {@link #acquire(int)} even if no
+	 * credit is available, so that the sender can notice a state change
+	 * (e.g., a rewire) while it is blocked by the flow control.
+	 */
+	public synchronized void wakeUp() {
+		wakeUp = true;
+		notifyAll();
+	}
+
+	/**
+	 * @return a {@link Buffer} that accepts writes only within the credits of
+	 *         this gate. Useful when the writer is a blob, which must not be
+	 *         blocked.
+	 */
+	public Buffer gatedBuffer(Buffer buffer) {
+		return new GatedBuffer(buffer);
+	}
+
+	/**
+	 * Receiver side of the credit-based flow control.
+	 * {@link BoundaryInputChannel}s those implement this interface tell how
+	 * many items have been consumed from them so far, which is turned into
+	 * credits for the sender.
+	 */
+	public interface CreditSource {
+
+		/**
+		 * @return total number of items that have been received and then
+		 *         consumed from the buffer so far.
+		 */
+		int consumed();
+
+		/**
+		 * @return initial credits, i.e., the capacity of the receiving buffer.
+		 */
+		int initialCredits();
+
+		/**
+		 * Registers a listener to be told that the buffer has drained. The
+		 * listener runs on the reading thread whenever the reads since its
+		 * last run have freed a fraction of the buffer, so it must be cheap
+		 * and must not block.
+		 * 
+		 * @param listener
+		 *            drain listener, or null to remove.
+		 */
+		void drainListener(Runnable listener);
+	}
+
+	/**
+	 * Senders those can be flow controlled by a {@link CreditGate}.
+	 */
+	public interface Gated {
+		void creditGate(CreditGate gate);
+	}
+
+	private final class GatedBuffer implements Buffer {
+
+		private final Buffer buffer;
+
+		private GatedBuffer(Buffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public Object read() {
+			return buffer.read();
+		}
+
+		@Override
+		public int read(Object[] data, int offset, int length) {
+			return buffer.read(data, offset, length);
+		}
+
+		@Override
+		public boolean readAll(Object[] data) {
+			return buffer.readAll(data);
+		}
+
+		@Override
+		public boolean readAll(Object[] data, int offset) {
+			return buffer.readAll(data, offset);
+		}
+
+		@Override
+		public boolean write(Object t) {
+			if (tryAcquire(1) == 0)
+				return false;
+			if (buffer.write(t))
+				return true;
+			grant(1);
+			return false;
+		}
+
+		@Override
+		public int write(Object[] data, int offset, int length) {
+			int n = tryAcquire(length);
+			if (n == 0)
+				return 0;
+			int written = buffer.write(data, offset, n);
+			if (written < n)
+				grant(n - written);
+			return written;
+		}
+
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+
+		@Override
+		public int capacity() {
+			return buffer.capacity();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+
+/**
+ * Credits for the sender of a boundary channel. See {@link CreditGate}.
+ * <p>
+ * The {@link StreamNode} that receives the channel's data sends this to the
+ * {@link Controller}, which either applies it to its own head channel or
+ * forwards it to the {@link StreamNode} that sends the channel's data. So
+ * this is both an {@link SNMessageElement} and a {@link CTRLRMessageElement}.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 24 Oct, 2016
+ */
+public final class CreditGrant implements SNMessageElement, CTRLRMessageElement {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Token of the boundary channel.
+	 */
+	public final Token token;
+
+	/**
+	 * Number of items the sender may send in addition.
+	 */
+	public final int credits;
+
+	public CreditGrant(Token token, int credits) {
+		this.token = token;
+		this.credits = credits;
+	}
+
+	@Override
+	public void accept(SNMessageVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	@Override
+	public void accept(CTRLRMessageVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CreditGrant[%s, %d]", token, credits);
+	}
+}
@@ -47,6 +47,20 @@ public final class Machine {
 		isHTEnabled = !(threadsPerCore == 1);
 	}
 
+	/**
+	 * Returns the socket (NUMA node) of the given CPU, following Linux's
+	 * enumeration: all physical cores first, socket by socket, then their
+	 * hyper threaded siblings in the same order.
+	 * 
+	 * @param cpu
+	 *            CPU id, as used for thread affinity.
+	 * @return the socket on which the CPU lies.
+	 */
+	public static int socketOf(int cpu) {
+		int physicalCores = sockets * coresPerSocket;
+		return (cpu % physicalCores) / coresPerSocket;
+	}
+
 	public static Properties getProperties() {
 		Properties prop = new Properties();
 		setProperty(prop, "CPUs", CPUs);
@@ -21,6 +21,8 @@
  */
 package edu.mit.streamjit.impl.distributed.common;
 
+import java.net.InetAddress;
+
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 
@@ -52,8 +54,53 @@ public abstract class MiscCtrlElements implements CTRLRMessageElement {
 		}
 	}
 
+	/**
+	 * Informs the {@link NetworkInfo} address of a StreamNode that has joined
+	 * the running controller. See {@link Options#elasticNodes}.
+	 */
+	public static final class NewNodeAddress extends MiscCtrlElements {
+		private static final long serialVersionUID = 1L;
+
+		public final int nodeID;
+		public final InetAddress address;
+
+		public NewNodeAddress(int nodeID, InetAddress address) {
+			this.nodeID = nodeID;
+			this.address = address;
+		}
+
+		@Override
+		public void process(MiscCtrlElementProcessor miscProcessor) {
+			miscProcessor.process(this);
+		}
+	}
+
+	/**
+	 * Informs that the controller's timed measurement window has opened or
+	 * closed. StreamNodes hold back the speculative compilations while it is
+	 * open. See {@link Options#speculativeCompilation}.
+	 */
+	public static final class TimedWindow extends MiscCtrlElements {
+		private static final long serialVersionUID = 1L;
+
+		public final boolean open;
+
+		public TimedWindow(boolean open) {
+			this.open = open;
+		}
+
+		@Override
+		public void process(MiscCtrlElementProcessor miscProcessor) {
+			miscProcessor.process(this);
+		}
+	}
+
 	public interface MiscCtrlElementProcessor {
 
 		public void process(NewConInfo newConInfo);
+
+		public void process(NewNodeAddress newNodeAddress);
+
+		public void process(TimedWindow timedWindow);
 	}
 }
\ No newline at end of file
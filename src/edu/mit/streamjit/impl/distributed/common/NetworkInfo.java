@@ -2,6 +2,9 @@ package edu.mit.streamjit.impl.distributed.common;
 
 import java.net.InetAddress;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
 
 /**
  * Keeps network information of all nodes in the system.
@@ -14,7 +17,17 @@ public class NetworkInfo {
 	private final Map<Integer, InetAddress> iNetAddressMap;
 
 	public NetworkInfo(Map<Integer, InetAddress> iNetAddressMap) {
-		this.iNetAddressMap = iNetAddressMap;
+		this.iNetAddressMap = iNetAddressMap == null ? null
+				: new ConcurrentHashMap<>(iNetAddressMap);
+	}
+
+	/**
+	 * Adds the address of a {@link StreamNode} that has joined the system
+	 * after this {@link NetworkInfo} was created.
+	 */
+	public void addInetAddress(int nodeID, InetAddress address) {
+		if (this.iNetAddressMap != null)
+			iNetAddressMap.put(nodeID, address);
 	}
 
 	public InetAddress getInetAddress(int nodeID) {
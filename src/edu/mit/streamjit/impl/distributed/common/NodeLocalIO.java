@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.Socket;
+import java.nio.ByteOrder;
+import java.nio.file.Paths;
+
+import com.google.common.primitives.Primitives;
+
+import edu.mit.streamjit.api.Input;
+import edu.mit.streamjit.api.Output;
+import edu.mit.streamjit.impl.blob.AbstractReadOnlyBuffer;
+import edu.mit.streamjit.impl.blob.AbstractWriteOnlyBuffer;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.common.InputBufferFactory;
+import edu.mit.streamjit.impl.common.OutputBufferFactory;
+import edu.mit.streamjit.impl.distributed.controller.DistributedStreamCompiler;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+
+/**
+ * {@link Input}s and {@link Output}s those are pinned to a {@link StreamNode}.
+ * When a stream is compiled by the {@link DistributedStreamCompiler} with a
+ * node-local input (output), the partitioner places the source (sink) worker
+ * on that node, and the node reads (writes) the stream data directly. So the
+ * stream data does not flow through the controller; the controller only
+ * handles the control traffic and the output counts.
+ * <p>
+ * The factories are sent to the nodes as Java serialized objects. So the
+ * classes of all objects they hold (e.g., a {@link Generator}) must be
+ * available in the {@link StreamNode}'s class path.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 22 Oct, 2016
+ */
+public final class NodeLocalIO {
+
+	public static final String INPUT_EXTRA_DATA_NAME = "nodeLocalInput";
+
+	public static final String OUTPUT_EXTRA_DATA_NAME = "nodeLocalOutput";
+
+	private NodeLocalIO() {
+	}
+
+	/**
+	 * Reads primitives from a binary file at the node nodeID. Objects of
+	 * other types are read with an {@link java.io.ObjectInputStream}, as
+	 * {@link Input#fromBinaryFile(java.nio.file.Path, Class, ByteOrder)}
+	 * does. The file must be in big-endian byte order.
+	 */
+	public static <I> Input<I> fromBinaryFile(int nodeID, String path,
+			Class<I> type) {
+		return InputBufferFactory.wrap(new FileInput(nodeID, path, type));
+	}
+
+	/**
+	 * Connects to host:port from the node nodeID and reads big-endian
+	 * primitives of the given type from the socket. As a socket never knows
+	 * whether more data will come, the stream is not drained when the socket
+	 * runs dry.
+	 */
+	public static <I> Input<I> fromSocket(int nodeID, String host, int port,
+			Class<I> type) {
+		return InputBufferFactory.wrap(new SocketInput(nodeID, host, port,
+				type));
+	}
+
+	/**
+	 * Generates count items at the node nodeID.
+	 */
+	public static <I> Input<I> fromGenerator(int nodeID,
+			Generator<I> generator, long count) {
+		return InputBufferFactory.wrap(new GeneratorInput(nodeID, generator,
+				count));
+	}
+
+	/**
+	 * Writes big-endian primitives to a binary file at the node nodeID.
+	 */
+	public static <O> Output<O> toBinaryFile(int nodeID, String path,
+			Class<O> type) {
+		return OutputBufferFactory.wrap(new FileOutput(nodeID, path, type));
+	}
+
+	/**
+	 * Connects to host:port from the node nodeID and writes big-endian
+	 * primitives of the given type to the socket.
+	 */
+	public static <O> Output<O> toSocket(int nodeID, String host, int port,
+			Class<O> type) {
+		return OutputBufferFactory.wrap(new SocketOutput(nodeID, host, port,
+				type));
+	}
+
+	/**
+	 * Discards all outputs at the node nodeID. Useful for benchmarking; the
+	 * controller still receives the output counts.
+	 */
+	public static <O> Output<O> blackHole(int nodeID) {
+		return OutputBufferFactory.wrap(new BlackHoleOutput(nodeID));
+	}
+
+	/**
+	 * @return the {@link NodeInput} of the input, or null if the input is not
+	 *         node-local.
+	 */
+	public static NodeInput nodeInput(Input<?> input) {
+		InputBufferFactory f = InputBufferFactory.unwrap(input);
+		return f instanceof NodeInput ? (NodeInput) f : null;
+	}
+
+	/**
+	 * @return the {@link NodeOutput} of the output, or null if the output is
+	 *         not node-local.
+	 */
+	public static NodeOutput nodeOutput(Output<?> output) {
+		if (output == null)
+			return null;
+		OutputBufferFactory f = OutputBufferFactory.unwrap(output);
+		return f instanceof NodeOutput ? (NodeOutput) f : null;
+	}
+
+	/**
+	 * Generates the items of a node-local input.
+	 */
+	public interface Generator<I> extends Serializable {
+		/**
+		 * @param index
+		 *            index of the item in the stream, from 0.
+		 * @return the item.
+		 */
+		I next(long index);
+	}
+
+	/**
+	 * An {@link InputBufferFactory} whose buffer is created at the node
+	 * {@link #nodeID}.
+	 */
+	public static abstract class NodeInput extends InputBufferFactory
+			implements
+				Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		public final int nodeID;
+
+		protected NodeInput(int nodeID) {
+			this.nodeID = nodeID;
+		}
+
+		/**
+		 * @return true if an empty buffer means the input is over, i.e., the
+		 *         stream should be drained when the buffer runs dry.
+		 */
+		public boolean isFinite() {
+			return true;
+		}
+	}
+
+	/**
+	 * An {@link OutputBufferFactory} whose buffer is created at the node
+	 * {@link #nodeID}.
+	 */
+	public static abstract class NodeOutput extends OutputBufferFactory
+			implements
+				Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		public final int nodeID;
+
+		protected NodeOutput(int nodeID) {
+			this.nodeID = nodeID;
+		}
+
+		/**
+		 * Flushes the items written to the buffer so far. Called whenever the
+		 * blobs at the node are drained.
+		 */
+		public void flush() {
+		}
+	}
+
+	private static final class FileInput extends NodeInput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String path;
+
+		private final Class<?> type;
+
+		private FileInput(int nodeID, String path, Class<?> type) {
+			super(nodeID);
+			this.path = path;
+			this.type = type;
+		}
+
+		@Override
+		public Buffer createReadableBuffer(int readerMinSize) {
+			return InputBufferFactory.unwrap(
+					Input.fromBinaryFile(Paths.get(path), type,
+							ByteOrder.BIG_ENDIAN)).createReadableBuffer(
+					readerMinSize);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("NodeLocalIO.fromBinaryFile(%d, %s, %s)",
+					nodeID, path, type.getSimpleName());
+		}
+	}
+
+	private static final class SocketInput extends NodeInput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String host;
+
+		private final int port;
+
+		private final Class<?> type;
+
+		private SocketInput(int nodeID, String host, int port, Class<?> type) {
+			super(nodeID);
+			checkPrimitive(type);
+			this.host = host;
+			this.port = port;
+			this.type = type;
+		}
+
+		@Override
+		public boolean isFinite() {
+			return false;
+		}
+
+		@Override
+		public Buffer createReadableBuffer(int readerMinSize) {
+			final DataInputStream in;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new Socket(
+						host, port).getInputStream()));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			final int bytes = Primitives.unwrap(type) == boolean.class ? 1
+					: sizeof(type);
+			return new AbstractReadOnlyBuffer() {
+				@Override
+				public int size() {
+					try {
+						return in.available() / bytes;
+					} catch (IOException e) {
+						return 0;
+					}
+				}
+
+				@Override
+				public Object read() {
+					if (size() == 0)
+						return null;
+					try {
+						return readPrimitive(in, type);
+					} catch (IOException e) {
+						e.printStackTrace();
+						return null;
+					}
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return String.format("NodeLocalIO.fromSocket(%d, %s:%d, %s)",
+					nodeID, host, port, type.getSimpleName());
+		}
+	}
+
+	private static final class GeneratorInput extends NodeInput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Generator<?> generator;
+
+		private final long count;
+
+		private GeneratorInput(int nodeID, Generator<?> generator, long count) {
+			super(nodeID);
+			this.generator = generator;
+			this.count = count;
+		}
+
+		@Override
+		public Buffer createReadableBuffer(int readerMinSize) {
+			return new AbstractReadOnlyBuffer() {
+				private long next = 0;
+
+				@Override
+				public int size() {
+					return (int) Math.min(Integer.MAX_VALUE, count - next);
+				}
+
+				@Override
+				public Object read() {
+					if (next == count)
+						return null;
+					return generator.next(next++);
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return String.format("NodeLocalIO.fromGenerator(%d, %s, %d)",
+					nodeID, generator, count);
+		}
+	}
+
+	/**
+	 * Writes primitives to a {@link DataOutputStream}, which is opened when
+	 * the buffer is created.
+	 */
+	private static abstract class StreamOutput extends NodeOutput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Class<?> type;
+
+		private transient DataOutputStream out;
+
+		private StreamOutput(int nodeID, Class<?> type) {
+			super(nodeID);
+			checkPrimitive(type);
+			this.type = type;
+		}
+
+		protected abstract DataOutputStream open() throws IOException;
+
+		@Override
+		public Buffer createWritableBuffer(int writerMinSize) {
+			try {
+				out = open();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return new AbstractWriteOnlyBuffer() {
+				@Override
+				public boolean write(Object t) {
+					try {
+						writePrimitive(out, t);
+					} catch (IOException e) {
+						e.printStackTrace();
+						return false;
+					}
+					return true;
+				}
+			};
+		}
+
+		@Override
+		public void flush() {
+			if (out == null)
+				return;
+			try {
+				out.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		protected String typeName() {
+			return type.getSimpleName();
+		}
+	}
+
+	private static final class FileOutput extends StreamOutput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String path;
+
+		private FileOutput(int nodeID, String path, Class<?> type) {
+			super(nodeID, type);
+			this.path = path;
+		}
+
+		@Override
+		protected DataOutputStream open() throws IOException {
+			return new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(path)));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("NodeLocalIO.toBinaryFile(%d, %s, %s)",
+					nodeID, path, typeName());
+		}
+	}
+
+	private static final class SocketOutput extends StreamOutput {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String host;
+
+		private final int port;
+
+		private SocketOutput(int nodeID, String host, int port, Class<?> type) {
+			super(nodeID, type);
+			this.host = host;
+			this.port = port;
+		}
+
+		@Override
+		protected DataOutputStream open() throws IOException {
+			return new DataOutputStream(new BufferedOutputStream(new Socket(
+					host, port).getOutputStream()));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("NodeLocalIO.toSocket(%d, %s:%d, %s)",
+					nodeID, host, port, typeName());
+		}
+	}
+
+	private static final class BlackHoleOutput extends NodeOutput {
+
+		private static final long serialVersionUID = 1L;
+
+		private BlackHoleOutput(int nodeID) {
+			super(nodeID);
+		}
+
+		@Override
+		public Buffer createWritableBuffer(int writerMinSize) {
+			return new AbstractWriteOnlyBuffer() {
+				@Override
+				public boolean write(Object t) {
+					return true;
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return String.format("NodeLocalIO.blackHole(%d)", nodeID);
+		}
+	}
+
+	private static void checkPrimitive(Class<?> type) {
+		if (!Primitives.isWrapperType(type) || type.equals(Void.class))
+			throw new IllegalArgumentException(
+					"Only primitives can be streamed through sockets and files: "
+							+ type.getSimpleName());
+	}
+
+	private static int sizeof(Class<?> type) {
+		Class<?> prim = Primitives.unwrap(type);
+		if (prim == byte.class)
+			return Byte.BYTES;
+		else if (prim == short.class)
+			return Short.BYTES;
+		else if (prim == char.class)
+			return Character.BYTES;
+		else if (prim == int.class || prim == float.class)
+			return Integer.BYTES;
+		else
+			return Long.BYTES;
+	}
+
+	private static Object readPrimitive(DataInputStream in, Class<?> type)
+			throws IOException {
+		Class<?> prim = Primitives.unwrap(type);
+		if (prim == boolean.class)
+			return in.readBoolean();
+		else if (prim == byte.class)
+			return in.readByte();
+		else if (prim == short.class)
+			return in.readShort();
+		else if (prim == char.class)
+			return in.readChar();
+		else if (prim == int.class)
+			return in.readInt();
+		else if (prim == long.class)
+			return in.readLong();
+		else if (prim == float.class)
+			return in.readFloat();
+		else
+			return in.readDouble();
+	}
+
+	private static void writePrimitive(DataOutputStream out, Object t)
+			throws IOException {
+		if (t instanceof Boolean)
+			out.writeBoolean((Boolean) t);
+		else if (t instanceof Byte)
+			out.writeByte((Byte) t);
+		else if (t instanceof Short)
+			out.writeShort((Short) t);
+		else if (t instanceof Character)
+			out.writeChar((Character) t);
+		else if (t instanceof Integer)
+			out.writeInt((Integer) t);
+		else if (t instanceof Long)
+			out.writeLong((Long) t);
+		else if (t instanceof Float)
+			out.writeFloat((Float) t);
+		else if (t instanceof Double)
+			out.writeDouble((Double) t);
+		else
+			throw new IllegalArgumentException("Not a primitive: " + t);
+	}
+}
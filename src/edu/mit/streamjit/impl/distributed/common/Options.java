@@ -10,15 +10,25 @@ import java.util.Properties;
 import sun.misc.PerformanceLogger;
 import edu.mit.streamjit.impl.common.drainer.AbstractDrainer;
 import edu.mit.streamjit.impl.common.drainer.AbstractDrainer.DrainDataAction;
+import edu.mit.streamjit.impl.distributed.controller.Checkpointer;
 import edu.mit.streamjit.impl.distributed.controller.ConnectionManager.AllConnectionParams;
 import edu.mit.streamjit.impl.distributed.controller.ConnectionManager.AsyncTCPNoParams;
 import edu.mit.streamjit.impl.distributed.controller.ConnectionManager.BlockingTCPNoParams;
 import edu.mit.streamjit.impl.distributed.controller.DistributedStreamCompiler;
+import edu.mit.streamjit.impl.distributed.controller.ElasticNodeManager;
+import edu.mit.streamjit.impl.distributed.controller.HotSpotTuning;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitAppManager.Reconfigurer;
+import edu.mit.streamjit.impl.distributed.controller.SymmetricParameters;
+import edu.mit.streamjit.impl.distributed.controller.HT.HeadChannelSeamless;
+import edu.mit.streamjit.impl.distributed.controller.HT.LatencyProbe;
+import edu.mit.streamjit.impl.distributed.controller.HT.MeasurementRace;
+import edu.mit.streamjit.impl.distributed.controller.HT.TailChannel;
 import edu.mit.streamjit.impl.distributed.controller.HT.TailChannels;
 import edu.mit.streamjit.impl.distributed.controller.HT.TailChannels.BlockingTailChannel1;
 import edu.mit.streamjit.impl.distributed.controller.HT.TailChannels.BlockingTailChannel2;
 import edu.mit.streamjit.impl.distributed.node.AffinityManager;
+import edu.mit.streamjit.impl.compiler2.CompilationArtifact;
+import edu.mit.streamjit.impl.compiler2.NativeConcreteStorage;
 import edu.mit.streamjit.impl.distributed.node.AffinityManagers.AllParallelAffinityManager;
 import edu.mit.streamjit.impl.distributed.node.AffinityManagers.CoreCodeAffinityManager;
 import edu.mit.streamjit.impl.distributed.node.AffinityManagers.EmptyAffinityManager;
@@ -26,8 +36,16 @@ import edu.mit.streamjit.impl.distributed.node.AffinityManagers.EqualAffinityMan
 import edu.mit.streamjit.impl.distributed.node.AffinityManagers.FileAffinityManager;
 import edu.mit.streamjit.impl.distributed.node.AffinityManagers.OneCoreAffinityManager;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+import edu.mit.streamjit.partitioner.BandwidthAwarePartitioner;
+import edu.mit.streamjit.tuner.BackgroundTuner;
+import edu.mit.streamjit.tuner.JavaTuner;
+import edu.mit.streamjit.tuner.LearnedCostPrognosticator;
+import edu.mit.streamjit.tuner.Objective;
 import edu.mit.streamjit.tuner.OnlineTuner;
+import edu.mit.streamjit.tuner.ParetoFront;
 import edu.mit.streamjit.tuner.TCPTuner;
+import edu.mit.streamjit.tuner.TuningKnowledgeBase;
 
 /**
  * Program options. Loads the values from "options.properties".
@@ -127,6 +145,8 @@ public final class Options {
 	 * argument. Port no 12563 is used in this case. But it can be changed at
 	 * {@link TCPTuner#startTuner(String)}. We need this option to run the
 	 * tuning on remote machines.
+	 * <li>3 - No Python tuner at all. The in-process {@link JavaTuner} does the
+	 * search.
 	 * </ol>
 	 */
 	public static final int tunerStartMode;
@@ -136,6 +156,152 @@ public final class Options {
 	 */
 	public static final boolean useCompilerBlob;
 
+	/**
+	 * If true, StreamNodes save Compiler2's scheduling decisions to
+	 * ./appName/compilationArtifacts and reuse them when the same blob is
+	 * compiled with the same configuration again (e.g., after a restart). See
+	 * {@link CompilationArtifact}. At most {@link #compilationArtifactCapacity}
+	 * artifacts are kept; the least recently used ones are evicted.
+	 */
+	public static final boolean useCompilationArtifacts;
+
+	/**
+	 * Maximum number of {@link CompilationArtifact}s a {@link StreamNode} keeps
+	 * in its artifact directory. An artifact is a few KB.
+	 */
+	public static final int compilationArtifactCapacity;
+
+	/**
+	 * Keep Compiler2's primitive-typed external storage off the Java heap and
+	 * first-touch it from the core that writes it, so that Linux places it on
+	 * that core's NUMA node. Per-socket usage is printed when the blobs are
+	 * created. See {@link NativeConcreteStorage}.
+	 */
+	public static final boolean numaLocalStorage;
+
+	/**
+	 * Credit-based flow control for boundary channels. If true, the
+	 * {@link StreamNode}s grant credits to the upstream senders as their input
+	 * channels' buffers drain, and senders never send more items than they
+	 * have credits for. If false, {@link HeadChannelSeamless} falls back to its
+	 * firing rate estimation. See {@link CreditGate}.
+	 */
+	public static final boolean creditFlowControl;
+
+	/**
+	 * Let {@link StreamNode}s join a running {@link Controller}, and leave it
+	 * gracefully, after the initial set of nodes has been connected. The
+	 * controller moves at most {@link #maxBlobsPerJoin} blobs onto a joined
+	 * node at the next reconfiguration, and moves all blobs off a leaving
+	 * node before releasing it. See {@link ElasticNodeManager}.
+	 */
+	public static final boolean elasticNodes;
+
+	/**
+	 * Maximum number of blobs that {@link ElasticNodeManager} moves onto a
+	 * newly joined {@link StreamNode} in a single reconfiguration.
+	 */
+	public static final int maxBlobsPerJoin;
+
+	/**
+	 * Use {@link BatchedControlConnection}s for the control messages between
+	 * the {@link Controller} and the {@link StreamNode}s. If false,
+	 * {@link SynchronizedTCPConnection}s are used. Controller and StreamNodes
+	 * must use the same value. Only the {@link CreditGrant}s get the compact
+	 * encoding; all other messages are batched but serialized as usual.
+	 */
+	public static final boolean batchedControl;
+
+	/**
+	 * Number of the tuner's upcoming configurations those are compiled in
+	 * advance. The {@link StreamNode}s compile them in background, at low
+	 * priority, and keep the compiled blobs of stateless workers, which the
+	 * real compilation of the configuration takes instead of compiling them
+	 * again. Blobs of stateful workers are compiled again, but find their
+	 * {@link CompilationArtifact}s if {@link #useCompilationArtifacts} is set.
+	 * 0 disables the speculative compilation.
+	 * <p>
+	 * A {@link StreamNode} compiles speculatively while the app runs, on the
+	 * cores the measured configuration leaves idle. It holds back during the
+	 * controller's timed measurement window and while it compiles a new
+	 * configuration for real, which is on the reconfiguration's critical
+	 * path. A speculative blob compilation that has started by then runs to
+	 * its end.
+	 */
+	public static final int speculativeCompilation;
+
+	/**
+	 * Number of independent groups of {@link StreamNode}s those evaluate the
+	 * tuner's configurations concurrently. Each group runs an instance of the
+	 * app of its own and has the number of nodes that is passed to the
+	 * {@link DistributedStreamCompiler}. The nodes of the group g (0 based)
+	 * must connect to the port {@link GlobalConstants#PORTNO} + g. The
+	 * controller keeps running the final configuration on the group 0. 1
+	 * disables the parallel evaluation. Has effect only in the online tuning
+	 * mode ({@link #run}=1).
+	 * <p>
+	 * The groups are not fully independent: they share the controller, its
+	 * CPU, network link and the tuner. While one group compiles or drains,
+	 * the others' measurements may be slowed down, so the measured times are
+	 * noisier than with a single group. Prefer a group count that leaves the
+	 * controller some idle cores.
+	 */
+	public static final int tuningGroups;
+
+	/**
+	 * If true, {@link OnlineTuner} records every measured configuration in a
+	 * {@link TuningKnowledgeBase} that is shared by all apps and tuning runs,
+	 * and seeds the tuner with the best known configurations of the same or
+	 * similar stream graphs. Needs sqlite.
+	 */
+	public static final boolean knowledgeBase;
+
+	/**
+	 * If true, a {@link BackgroundTuner} keeps tuning the app after the
+	 * {@link OnlineTuner} has finished, whenever the throughput regresses.
+	 * Needs an infinite input (i.e., the app is not terminated after the
+	 * tuning), {@link #throughputMeasurementPeriod} > 0 and a seamless
+	 * {@link #Reconfigurer} (i.e., not 0), which keeps the app running
+	 * through the trials.
+	 */
+	public static final boolean retune;
+
+	/**
+	 * Percentage of the throughput drop from the baseline that triggers the
+	 * {@link BackgroundTuner}'s local search.
+	 */
+	public static final int retuneThreshold;
+
+	/**
+	 * Maximum number of trials of a local search of the
+	 * {@link BackgroundTuner}.
+	 */
+	public static final int retuneTrials;
+
+	/**
+	 * Minimum time, in milliseconds, between two reconfigurations of the
+	 * {@link BackgroundTuner}.
+	 */
+	public static final int retuneInterval;
+
+	/**
+	 * Ties the parameters of the structurally identical workers of symmetric
+	 * splitjoin branches, so that the tuner searches a smaller configuration
+	 * space. Tied parameters are expanded back to the full configuration
+	 * before the compilation. See {@link SymmetricParameters}.
+	 */
+	public static final boolean tieSymmetricParameters;
+
+	/**
+	 * Period, in milliseconds, of the asynchronous checkpoints of the running
+	 * app's state. If a {@link StreamNode} fails, the {@link Controller}
+	 * restores the last checkpoint on the remaining nodes and replays the
+	 * inputs since then. 0 disables checkpointing. Works only with the
+	 * non-adaptive seamless reconfigurers ({@link #Reconfigurer}=1). See
+	 * {@link Checkpointer}.
+	 */
+	public static final int checkpointInterval;
+
 	/**
 	 * To turn on or turn off the drain data. If this is false, drain data will
 	 * be ignored and every new reconfiguration will run with fresh inputs.
@@ -173,6 +339,61 @@ public final class Options {
 	 */
 	public static final boolean timeOut;
 
+	/**
+	 * If true, the tuner races each measurement against the best
+	 * configuration found so far. The {@link TailChannel} reports the
+	 * interim output counts while measuring, and the measurement is aborted
+	 * as soon as a confidence bound on the output rate shows that the
+	 * configuration can not beat the best one. The estimated time of an
+	 * aborted measurement goes to the tuner as the result. See
+	 * {@link MeasurementRace}.
+	 */
+	public static final boolean racing;
+
+	/**
+	 * Search objective of the {@link OnlineTuner}. See {@link Objective}.
+	 * <ol>
+	 * <li>0 - Minimize the running time.
+	 * <li>1 - Minimize time + {@link #latencyWeight} * latency +
+	 * {@link #coreWeight} * cores.
+	 * <li>2 - Minimize the cores while meeting the {@link #latencySLO}.
+	 * </ol>
+	 * The objectives 1 and 2 disable the {@link #racing} and keep the
+	 * {@link ParetoFront} of the time, the latency and the cores. They need
+	 * {@link #latencySampling} > 0 and the app's input and output at the
+	 * controller, otherwise the tuning does not start.
+	 */
+	public static final int objective;
+
+	/**
+	 * Every latencySampling<sup>th</sup> input of the app is timestamped to
+	 * measure the end-to-end latency. 0 disables the latency measurement. See
+	 * {@link LatencyProbe}.
+	 */
+	public static final int latencySampling;
+
+	/**
+	 * Percentile (0 - 100) of the sampled latencies that is taken as the
+	 * latency of a configuration.
+	 */
+	public static final int latencyPercentile;
+
+	/**
+	 * Latency, in milliseconds, that the configurations must meet if
+	 * {@link #objective} is 2.
+	 */
+	public static final int latencySLO;
+
+	/**
+	 * Weight of the latency(ms) if {@link #objective} is 1.
+	 */
+	public static final int latencyWeight;
+
+	/**
+	 * Weight of the number of busy cores if {@link #objective} is 1.
+	 */
+	public static final int coreWeight;
+
 	/**
 	 * {@link OnlineTuner}'s verifier verifies the configurations if
 	 * {@link #run}==2. evaluationCount determines the number of re runs for a
@@ -212,6 +433,15 @@ public final class Options {
 	 */
 	public static final int multiplierMaxValue;
 
+	/**
+	 * Seeds the tuner's worker to machine assignment with the partition of
+	 * {@link BandwidthAwarePartitioner}, which minimizes the data volume
+	 * between machines while balancing the workers' profiled costs. If
+	 * false, the tuner starts with all workers on the first machine. Has
+	 * effect only with {@link HotSpotTuning}.
+	 */
+	public static final boolean bandwidthAwarePartitioning;
+
 	public static final boolean prognosticate;
 
 	public static final int bigToSmallBlobRatio;
@@ -222,6 +452,14 @@ public final class Options {
 
 	public static final int boundaryChannelRatio;
 
+	/**
+	 * If > 0, the {@link LearnedCostPrognosticator} rejects the
+	 * configurations those are predicted to be more than this many times
+	 * slower than the best configuration so far, instead of the hand-written
+	 * rules of {@link #prognosticate}. 0 disables the learned cost model.
+	 */
+	public static final int costModelRejectRatio;
+
 	// StreamJit benchmark app's constructor arguments.
 	public static final int appArg1;
 	public static final int appArg2;
@@ -273,6 +511,33 @@ public final class Options {
 		maxNumCores = Integer.parseInt(prop.getProperty("maxNumCores"));
 		useCompilerBlob = Boolean.parseBoolean(prop
 				.getProperty("useCompilerBlob"));
+		useCompilationArtifacts = Boolean.parseBoolean(prop
+				.getProperty("useCompilationArtifacts"));
+		compilationArtifactCapacity = Integer.parseInt(prop
+				.getProperty("compilationArtifactCapacity"));
+		numaLocalStorage = Boolean.parseBoolean(prop
+				.getProperty("numaLocalStorage"));
+		creditFlowControl = Boolean.parseBoolean(prop
+				.getProperty("creditFlowControl"));
+		elasticNodes = Boolean.parseBoolean(prop.getProperty("elasticNodes"));
+		maxBlobsPerJoin = Integer.parseInt(prop.getProperty("maxBlobsPerJoin"));
+		batchedControl = Boolean.parseBoolean(prop
+				.getProperty("batchedControl"));
+		speculativeCompilation = Integer.parseInt(prop
+				.getProperty("speculativeCompilation"));
+		tuningGroups = Integer.parseInt(prop.getProperty("tuningGroups"));
+		knowledgeBase = Boolean.parseBoolean(prop
+				.getProperty("knowledgeBase"));
+		retune = Boolean.parseBoolean(prop.getProperty("retune"));
+		retuneThreshold = Integer.parseInt(prop
+				.getProperty("retuneThreshold"));
+		retuneTrials = Integer.parseInt(prop.getProperty("retuneTrials"));
+		retuneInterval = Integer
+				.parseInt(prop.getProperty("retuneInterval"));
+		tieSymmetricParameters = Boolean.parseBoolean(prop
+				.getProperty("tieSymmetricParameters"));
+		checkpointInterval = Integer.parseInt(prop
+				.getProperty("checkpointInterval"));
 		needDrainDeadlockHandler = Boolean.parseBoolean(prop
 				.getProperty("needDrainDeadlockHandler"));
 		needProfiler = Boolean.parseBoolean(prop.getProperty("needProfiler"));
@@ -292,6 +557,8 @@ public final class Options {
 				.getProperty("verificationCount"));
 		multiplierMaxValue = Integer.parseInt(prop
 				.getProperty("multiplierMaxValue"));
+		bandwidthAwarePartitioning = Boolean.parseBoolean(prop
+				.getProperty("bandwidthAwarePartitioning"));
 		prognosticate = Boolean.parseBoolean(prop.getProperty("prognosticate"));
 		bigToSmallBlobRatio = Integer.parseInt(prop
 				.getProperty("bigToSmallBlobRatio"));
@@ -299,7 +566,18 @@ public final class Options {
 		blobToNodeRatio = Integer.parseInt(prop.getProperty("blobToNodeRatio"));
 		boundaryChannelRatio = Integer.parseInt(prop
 				.getProperty("boundaryChannelRatio"));
+		costModelRejectRatio = Integer.parseInt(prop
+				.getProperty("costModelRejectRatio"));
 		timeOut = Boolean.parseBoolean(prop.getProperty("timeOut"));
+		racing = Boolean.parseBoolean(prop.getProperty("racing"));
+		objective = Integer.parseInt(prop.getProperty("objective"));
+		latencySampling = Integer.parseInt(prop
+				.getProperty("latencySampling"));
+		latencyPercentile = Integer.parseInt(prop
+				.getProperty("latencyPercentile"));
+		latencySLO = Integer.parseInt(prop.getProperty("latencySLO"));
+		latencyWeight = Integer.parseInt(prop.getProperty("latencyWeight"));
+		coreWeight = Integer.parseInt(prop.getProperty("coreWeight"));
 		tuningRounds = Integer.parseInt(prop.getProperty("tuningRounds"));
 		appArg1 = Integer.parseInt(prop.getProperty("appArg1"));
 		appArg2 = Integer.parseInt(prop.getProperty("appArg2"));
@@ -326,6 +604,23 @@ public final class Options {
 		setProperty(prop, "saveAllConfigurations", saveAllConfigurations);
 		setProperty(prop, "outputCount", outputCount);
 		setProperty(prop, "useCompilerBlob", useCompilerBlob);
+		setProperty(prop, "useCompilationArtifacts", useCompilationArtifacts);
+		setProperty(prop, "compilationArtifactCapacity",
+				compilationArtifactCapacity);
+		setProperty(prop, "numaLocalStorage", numaLocalStorage);
+		setProperty(prop, "creditFlowControl", creditFlowControl);
+		setProperty(prop, "elasticNodes", elasticNodes);
+		setProperty(prop, "maxBlobsPerJoin", maxBlobsPerJoin);
+		setProperty(prop, "batchedControl", batchedControl);
+		setProperty(prop, "speculativeCompilation", speculativeCompilation);
+		setProperty(prop, "tuningGroups", tuningGroups);
+		setProperty(prop, "knowledgeBase", knowledgeBase);
+		setProperty(prop, "retune", retune);
+		setProperty(prop, "retuneThreshold", retuneThreshold);
+		setProperty(prop, "retuneTrials", retuneTrials);
+		setProperty(prop, "retuneInterval", retuneInterval);
+		setProperty(prop, "tieSymmetricParameters", tieSymmetricParameters);
+		setProperty(prop, "checkpointInterval", checkpointInterval);
 		setProperty(prop, "throughputMeasurementPeriod",
 				throughputMeasurementPeriod);
 		setProperty(prop, "singleNodeOnline", singleNodeOnline);
@@ -336,12 +631,22 @@ public final class Options {
 		setProperty(prop, "evaluationCount", evaluationCount);
 		setProperty(prop, "verificationCount", verificationCount);
 		setProperty(prop, "multiplierMaxValue", multiplierMaxValue);
+		setProperty(prop, "bandwidthAwarePartitioning",
+				bandwidthAwarePartitioning);
 		setProperty(prop, "prognosticate", prognosticate);
 		setProperty(prop, "bigToSmallBlobRatio", bigToSmallBlobRatio);
 		setProperty(prop, "loadRatio", loadRatio);
 		setProperty(prop, "blobToNodeRatio", blobToNodeRatio);
 		setProperty(prop, "boundaryChannelRatio", boundaryChannelRatio);
+		setProperty(prop, "costModelRejectRatio", costModelRejectRatio);
 		setProperty(prop, "timeOut", timeOut);
+		setProperty(prop, "racing", racing);
+		setProperty(prop, "objective", objective);
+		setProperty(prop, "latencySampling", latencySampling);
+		setProperty(prop, "latencyPercentile", latencyPercentile);
+		setProperty(prop, "latencySLO", latencySLO);
+		setProperty(prop, "latencyWeight", latencyWeight);
+		setProperty(prop, "coreWeight", coreWeight);
 		setProperty(prop, "tuningRounds", tuningRounds);
 		setProperty(prop, "appArg1", appArg1);
 		setProperty(prop, "appArg2", appArg2);
@@ -82,6 +82,17 @@ public enum Request implements CTRLRMessageElement {
 		public void process(RequestProcessor reqProcessor) {
 			reqProcessor.processEXIT();
 		}
+	},
+	/**
+	 * The {@link Controller} can not release the {@link StreamNode} that has
+	 * sent a {@link SNMembershipElement.LeaveRequest}. The {@link StreamNode}
+	 * must keep on running.
+	 */
+	LeaveRefused {
+		@Override
+		public void process(RequestProcessor reqProcessor) {
+			reqProcessor.processLeaveRefused();
+		}
 	};
 
 	@Override
@@ -108,5 +119,7 @@ public enum Request implements CTRLRMessageElement {
 		public void processNodeInfo();
 
 		public void processEXIT();
+
+		public void processLeaveRefused();
 	}
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+import edu.mit.streamjit.impl.distributed.runtimer.StreamNodeAgent;
+
+/**
+ * {@link StreamNode}s send {@link SNMembershipElement}s to join or leave a
+ * running {@link Controller}. See {@link Options#elasticNodes}. Membership
+ * spans all app instances, so these messages are sent with appInstId -1 and
+ * are processed by the {@link StreamNodeAgent}'s visitor.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public abstract class SNMembershipElement implements SNMessageElement {
+
+	private static final long serialVersionUID = 1L;
+
+	public abstract void process(SNMembershipProcessor membershipProcessor);
+
+	@Override
+	public void accept(SNMessageVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/**
+	 * The {@link StreamNode} is going to shut down. The controller shall move
+	 * all blobs off the node and then send {@link Request#EXIT}, or send
+	 * {@link Request#LeaveRefused} if the node has to stay.
+	 */
+	public static final class LeaveRequest extends SNMembershipElement {
+
+		private static final long serialVersionUID = 1L;
+
+		public final int nodeID;
+
+		public LeaveRequest(int nodeID) {
+			this.nodeID = nodeID;
+		}
+
+		@Override
+		public void process(SNMembershipProcessor membershipProcessor) {
+			membershipProcessor.process(this);
+		}
+	}
+
+	public interface SNMembershipProcessor {
+
+		public void process(LeaveRequest leaveRequest);
+	}
+}
@@ -42,4 +42,12 @@ public interface SNMessageVisitor {
 	void visit(CompilationInfo compilationInfo);
 
 	void visit(SNProfileElement snProfileElement);
+
+	void visit(SNNodeIOElement snNodeIOElement);
+
+	void visit(CreditGrant creditGrant);
+
+	void visit(SNMigrationElement snMigrationElement);
+
+	void visit(SNMembershipElement snMembershipElement);
 }
\ No newline at end of file
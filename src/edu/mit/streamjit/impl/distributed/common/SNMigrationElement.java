@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+
+/**
+ * {@link StreamNode}s send these to the {@link Controller} to acknowledge the
+ * {@link CTRLRMigrationElement}s.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 26 Oct, 2016
+ */
+public abstract class SNMigrationElement implements SNMessageElement {
+	private static final long serialVersionUID = 1L;
+
+	public abstract void process(SNMigrationProcessor mp);
+
+	@Override
+	public void accept(SNMessageVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/**
+	 * The channel will move to the new connection. An output channel sends
+	 * this only once it has soft closed the current connection, so no item
+	 * follows through the current connection.
+	 */
+	public static final class Rewired extends SNMigrationElement {
+		private static final long serialVersionUID = 1L;
+
+		public final Token token;
+
+		/**
+		 * false if the {@link StreamNode} could not rewire the channel.
+		 */
+		public final boolean success;
+
+		public Rewired(Token token, boolean success) {
+			this.token = token;
+			this.success = success;
+		}
+
+		@Override
+		public void process(SNMigrationProcessor mp) {
+			mp.process(this);
+		}
+	}
+
+	/**
+	 * The migrated blob is running on the sender.
+	 */
+	public static final class MigratedIn extends SNMigrationElement {
+		private static final long serialVersionUID = 1L;
+
+		public final Token blobID;
+
+		/**
+		 * false if the {@link StreamNode} could not create the blob.
+		 */
+		public final boolean success;
+
+		public MigratedIn(Token blobID, boolean success) {
+			this.blobID = blobID;
+			this.success = success;
+		}
+
+		@Override
+		public void process(SNMigrationProcessor mp) {
+			mp.process(this);
+		}
+	}
+
+	public interface SNMigrationProcessor {
+
+		public void process(Rewired rewired);
+
+		public void process(MigratedIn migratedIn);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.runtimer.StreamNodeAgent;
+
+/**
+ * {@link StreamNode}s those run node-local sources and sinks (see
+ * {@link NodeLocalIO}) send {@link SNNodeIOElement}s to inform the controller
+ * about the stream data that the controller never sees. As node-local IO
+ * spans all app instances, these messages are sent with appInstId -1 and are
+ * processed by the {@link StreamNodeAgent}'s visitor.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 22 Oct, 2016
+ */
+public abstract class SNNodeIOElement implements SNMessageElement {
+
+	private static final long serialVersionUID = 1L;
+
+	public abstract void process(SNNodeIOProcessor nodeIOProcessor);
+
+	@Override
+	public void accept(SNMessageVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	/**
+	 * Cumulative number of outputs that have been written to the node-local
+	 * output so far.
+	 */
+	public static final class OutputCount extends SNNodeIOElement {
+
+		private static final long serialVersionUID = 1L;
+
+		public final int count;
+
+		public OutputCount(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public void process(SNNodeIOProcessor nodeIOProcessor) {
+			nodeIOProcessor.process(this);
+		}
+	}
+
+	/**
+	 * The node-local input has been exhausted. The controller shall drain the
+	 * app.
+	 */
+	public static final class InputExhausted extends SNNodeIOElement {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void process(SNNodeIOProcessor nodeIOProcessor) {
+			nodeIOProcessor.process(this);
+		}
+	}
+
+	public interface SNNodeIOProcessor {
+
+		public void process(OutputCount outputCount);
+
+		public void process(InputExhausted inputExhausted);
+	}
+}
@@ -21,6 +21,11 @@
  */
 package edu.mit.streamjit.impl.distributed.common;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+
 /**
  * {@link SystemInfo} holds the current system parameters such as CPU usage,
  * memory usage and battery level. Note that {@link NodeInfo} , in contrast to
@@ -36,10 +41,26 @@ public class SystemInfo implements SNMessageElement {
 	 */
 	private static final long serialVersionUID = 626480245760997626L;
 
+	/**
+	 * Average number of cores that the {@link StreamNode} process has kept
+	 * busy since the previous {@link Request#SysInfo}. -1 if unknown.
+	 */
 	public double cpuUsage;
 	public double memoryUsage;
 	public double baterryLevel;
 
+	/**
+	 * @return the CPU time, in nanoseconds, used by this JVM process so far,
+	 *         or -1 if the JVM does not provide it.
+	 */
+	public static long processCpuTime() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean) os)
+					.getProcessCpuTime();
+		return -1;
+	}
+
 	@Override
 	public void accept(SNMessageVisitor visitor) {
 		visitor.visit(this);
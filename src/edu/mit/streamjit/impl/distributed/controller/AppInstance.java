@@ -24,6 +24,7 @@ import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
 import edu.mit.streamjit.impl.common.Workers;
 import edu.mit.streamjit.impl.common.drainer.BlobGraph;
 import edu.mit.streamjit.impl.compiler2.Compiler2BlobFactory;
+import edu.mit.streamjit.impl.compiler2.WorkCosts;
 import edu.mit.streamjit.impl.concurrent.ConcurrentChannelFactory;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
 import edu.mit.streamjit.impl.distributed.common.NodeInfo;
@@ -204,12 +205,31 @@ public class AppInstance {
 		builder.addParameter(partParam.build());
 		builder.putExtraData("appInstId", id);
 		if (Options.useCompilerBlob)
-			builder.addSubconfiguration("blobConfigs", getConfiguration());
+			builder.addSubconfiguration("blobConfigs",
+					addWorkCosts(getConfiguration()));
 		else
 			builder.addSubconfiguration("blobConfigs", getInterpreterConfg());
 		return builder;
 	}
 
+	/**
+	 * Adds the work costs measured so far to the blob configuration so that
+	 * Compiler2 can allocate and fuse with them. If nothing has been measured
+	 * yet, the first configuration requests a profiling compile instead.
+	 * Costs reported by the previous configuration are saved here, once per
+	 * configuration.
+	 */
+	private Configuration addWorkCosts(Configuration blobConfigs) {
+		Configuration.Builder builder = Configuration.builder(blobConfigs);
+		app.saveWorkCosts();
+		WorkCosts costs = app.workCosts();
+		if (costs != null)
+			builder.putExtraData(WorkCosts.EXTRA_DATA_NAME, costs);
+		else if (app.requestProfile())
+			builder.putExtraData(WorkCosts.PROFILE_EXTRA_DATA_NAME, true);
+		return builder.build();
+	}
+
 	private PartitionParameter.Builder addMachineCoreMap(int maxCores) {
 		Map<Integer, Integer> machineCoreMap = new HashMap<>();
 		for (Entry<Integer, List<Set<Worker<?, ?>>>> machine : partitionsMachineMap
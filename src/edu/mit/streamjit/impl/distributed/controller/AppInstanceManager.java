@@ -31,7 +31,10 @@ import edu.mit.streamjit.impl.distributed.common.CompilationInfo.CompilationInfo
 import edu.mit.streamjit.impl.distributed.common.CompilationInfo.DrainDataSizes;
 import edu.mit.streamjit.impl.distributed.common.CompilationInfo.InitScheduleCompleted;
 import edu.mit.streamjit.impl.distributed.common.CompilationInfo.State;
+import edu.mit.streamjit.impl.distributed.common.CompilationInfo.WorkCostProfile;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
+import edu.mit.streamjit.impl.distributed.common.CreditGrant;
 import edu.mit.streamjit.impl.distributed.common.Error;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
 import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements.NewConInfo;
@@ -45,9 +48,13 @@ import edu.mit.streamjit.impl.distributed.common.SNException;
 import edu.mit.streamjit.impl.distributed.common.SNException.AddressBindException;
 import edu.mit.streamjit.impl.distributed.common.SNException.SNExceptionProcessor;
 import edu.mit.streamjit.impl.distributed.common.SNMessageVisitor;
+import edu.mit.streamjit.impl.distributed.common.SNMembershipElement;
+import edu.mit.streamjit.impl.distributed.common.SNMigrationElement;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement;
 import edu.mit.streamjit.impl.distributed.common.SNTimeInfo;
 import edu.mit.streamjit.impl.distributed.common.SystemInfo;
 import edu.mit.streamjit.impl.distributed.controller.BufferSizeCalc.GraphSchedule;
+import edu.mit.streamjit.impl.distributed.controller.Checkpointer.Checkpoint;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
 import edu.mit.streamjit.impl.distributed.profiler.SNProfileElement;
 import edu.mit.streamjit.impl.distributed.runtimer.Controller;
@@ -98,8 +105,23 @@ public class AppInstanceManager {
 
 	Map<Token, ConnectionInfo> conInfoMap;
 
+	/**
+	 * Json string of the dynamic configuration sent to the
+	 * {@link StreamNode}s.
+	 */
+	String dynCfgJson;
+
+	final BlobMigrator migrator;
+
 	final HeadTailHandler headTailHandler;
 
+	/**
+	 * The {@link Checkpoint} that is being taken. All {@link State}s go to
+	 * it, instead of {@link #getState()}, until it is cleared. See
+	 * {@link Checkpointer}.
+	 */
+	volatile Checkpoint checkpoint = null;
+
 	private final CountDownLatch latch = new CountDownLatch(1);
 
 	public final EventTimeLogger eLogger;
@@ -119,6 +141,7 @@ public class AppInstanceManager {
 		this.ciP = new CompilationInfoProcessorImpl(appManager.noOfnodes);
 		this.mv = new SNMessageVisitorImpl();
 		this.exP = new SNExceptionProcessorImpl();
+		this.migrator = new BlobMigrator(this);
 		headTailHandler = new HeadTailHandler(appManager.controller,
 				appInst.app);
 	}
@@ -229,6 +252,8 @@ public class AppInstanceManager {
 		if (!apStsPro.compilationError) {
 			graphSchedule = BufferSizeCalc.finalInputBufSizes(ciP.bufSizes,
 					appInst);
+			if (appManager.app.latencyProbe != null)
+				appManager.app.latencyProbe.schedule(graphSchedule);
 			ImmutableMap<Token, Integer> finalInputBuf = graphSchedule.bufferSizes;
 			CTRLRMessageElement me = new CTRLCompilationInfo.FinalBufferSizes(
 					finalInputBuf);
@@ -245,7 +270,19 @@ public class AppInstanceManager {
 		Configuration.Builder builder = appInst.getDynamicConfiguration();
 		addConInfoMap(builder, connectionsInUse);
 		Configuration cfg = builder.build();
-		return cfg.toJson();
+		dynCfgJson = cfg.toJson();
+		return dynCfgJson;
+	}
+
+	/**
+	 * Migrates the blob with id=@param blobID to the {@link StreamNode} @param
+	 * nodeID while the rest of the blobs keep running. See
+	 * {@link BlobMigrator}.
+	 * 
+	 * @return <code>true</code> iff the blob has been migrated.
+	 */
+	public boolean migrateBlob(Token blobID, int nodeID) {
+		return migrator.migrate(blobID, nodeID);
 	}
 
 	/**
@@ -257,9 +294,12 @@ public class AppInstanceManager {
 	 */
 	void addConInfoMap(Configuration.Builder builder,
 			Collection<ConnectionInfo> connectionsInUse) {
+		StreamJitApp<?, ?> app = appInst.app;
+		// Node-local sources and sinks need no connection to the controller.
 		conInfoMap = appManager.conManager.conInfoMap(
 				appInst.getConfiguration(), appInst.partitionsMachineMap,
-				connectionsInUse, appInst.app.source, appInst.app.sink);
+				connectionsInUse, app.nodeInput == null ? app.source : null,
+				app.nodeOutput == null ? app.sink : null);
 		builder.putExtraData(GlobalConstants.CONINFOMAP, conInfoMap);
 	}
 
@@ -435,7 +475,9 @@ public class AppInstanceManager {
 
 		@Override
 		public void process(SNDrainedData snDrainedData) {
-			if (Options.useDrainData)
+			if (migrator.isMigrating(snDrainedData.blobID))
+				migrator.drained(snDrainedData);
+			else if (Options.useDrainData)
 				drainer.drainDataHandler.newSNDrainData(snDrainedData);
 		}
 	}
@@ -533,6 +575,11 @@ public class AppInstanceManager {
 
 		@Override
 		public synchronized void process(State state) {
+			Checkpoint checkpoint = AppInstanceManager.this.checkpoint;
+			if (checkpoint != null) {
+				checkpoint.stateReceived(state);
+				return;
+			}
 			this.stateMap.put(state.blobID, state.drainData);
 			if (states == null)
 				states = state.drainData;
@@ -541,6 +588,11 @@ public class AppInstanceManager {
 			stateLatch.countDown();
 		}
 
+		@Override
+		public void process(WorkCostProfile workCostProfile) {
+			appInst.app.addWorkCosts(workCostProfile.workCosts);
+		}
+
 		private void waitforStates() {
 			try {
 				stateLatch.await();
@@ -651,6 +703,46 @@ public class AppInstanceManager {
 			snProfileElement.process(appManager.getProfiler());
 		}
 
+		/**
+		 * Applies the credits to the head channel, or forwards them to the
+		 * {@link StreamNode} that sends the channel's data.
+		 */
+		@Override
+		public void visit(CreditGrant creditGrant) {
+			Token t = creditGrant.token;
+			if (t.equals(appInst.app.headToken)) {
+				CreditGate gate = headTailHandler.headGate;
+				if (gate != null)
+					gate.grant(creditGrant.credits);
+				return;
+			}
+			ConnectionInfo ci = conInfoMap.get(t);
+			if (ci == null
+					|| ci.getSrcID() == appManager.controller.controllerNodeID)
+				return;
+			appManager.controller.send(ci.getSrcID(),
+					new CTRLRMessageElementHolder(creditGrant, appInstId()));
+		}
+
+		@Override
+		public void visit(SNMigrationElement snMigrationElement) {
+			snMigrationElement.process(migrator.mp);
+		}
+
+		@Override
+		public void visit(SNNodeIOElement snNodeIOElement) {
+			throw new UnsupportedOperationException(
+					"AppInstanceManager's SNMessageVisitor does not process SNNodeIOElement."
+							+ " StreamNodeAgent's SNMessageVisitor must be called.");
+		}
+
+		@Override
+		public void visit(SNMembershipElement snMembershipElement) {
+			throw new UnsupportedOperationException(
+					"AppInstanceManager's SNMessageVisitor does not process SNMembershipElement."
+							+ " StreamNodeAgent's SNMessageVisitor must be called.");
+		}
+
 		@Override
 		public void visit(SystemInfo systemInfo) {
 			throw new UnsupportedOperationException(
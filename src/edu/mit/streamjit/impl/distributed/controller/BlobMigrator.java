@@ -0,0 +1,463 @@
+package edu.mit.streamjit.impl.distributed.controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Sets;
+
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob;
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessageElementHolder;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.MigrateIn;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.MigrateOut;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.Rewire;
+import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
+import edu.mit.streamjit.impl.distributed.common.SNDrainElement.SNDrainedData;
+import edu.mit.streamjit.impl.distributed.common.SNMigrationElement.MigratedIn;
+import edu.mit.streamjit.impl.distributed.common.SNMigrationElement.Rewired;
+import edu.mit.streamjit.impl.distributed.common.SNMigrationElement.SNMigrationProcessor;
+import edu.mit.streamjit.impl.distributed.common.Utils;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+
+/**
+ * Moves a single {@link Blob} from one {@link StreamNode} to another while
+ * the rest of the blobs keep running. No global draining is involved.
+ * <ol>
+ * <li>Creates new connections for all boundary channels of the blob and asks
+ * the downstream neighbour {@link StreamNode}s to move their ends of the
+ * channels to the new connections once the blob soft closes the current ones
+ * ({@link Rewire}). Until then, these rewires can be cancelled, so a failure
+ * here leaves the app as it was.
+ * <li>Asks the upstream neighbours to move, too. They soft close the current
+ * connections immediately, which lets the blob's input channels finish.
+ * <li>Drains the blob at its {@link StreamNode} ({@link MigrateOut}). The blob
+ * flushes its outputs and soft closes its output connections, which moves the
+ * downstream neighbours to the new connections.
+ * <li>Recreates the blob from the drain data at the destination node and
+ * starts it ({@link MigrateIn}).
+ * </ol>
+ * If the destination can not create the blob, the migration is rolled back:
+ * the blob is recreated at the source node, from the same drain data, on
+ * connections to the neighbours' new ends. The controller's blob and
+ * connection maps are updated only once a node has confirmed the blob.
+ * <p>
+ * A blob that shares a node-local channel with a neighbour, whose neighbour
+ * runs on the destination node, or that is fed by the head or feeds the tail
+ * can not be moved this way. Such a blob is moved by a full reconfiguration
+ * with the blob placed on the destination node. Only one blob is migrated at
+ * once.
+ *
+ * @author sumanan
+ * @since 26 Oct, 2016
+ */
+public class BlobMigrator {
+
+	private final AppInstanceManager aim;
+
+	final SNMigrationProcessor mp;
+
+	/**
+	 * The node on which the dynamic configuration places each migrated blob.
+	 * The destination node finds the blob's specification in the dynamic
+	 * configuration with this.
+	 */
+	private final Map<Token, Integer> origNodes;
+
+	/**
+	 * The blob that is being migrated. Null if no migration is in progress.
+	 */
+	private volatile Token migratingBlob = null;
+
+	private volatile CountDownLatch rewiredLatch;
+
+	private volatile CountDownLatch drainedLatch;
+
+	private volatile CountDownLatch migratedInLatch;
+
+	private volatile SNDrainedData snDrainedData;
+
+	private volatile boolean migratedIn;
+
+	/**
+	 * true if any neighbour could not rewire its channel.
+	 */
+	private volatile boolean rewireFailed;
+
+	/**
+	 * Maximum time(ms) to wait for each step of a migration.
+	 */
+	private static final long timeout = 30000;
+
+	/**
+	 * Maximum time(ms) to wait for a node to compile and start the blob.
+	 * Compilation may take much longer than the other steps.
+	 */
+	private static final long migrateInTimeout = 4 * timeout;
+
+	BlobMigrator(AppInstanceManager aim) {
+		this.aim = aim;
+		this.mp = new SNMigrationProcessorImpl();
+		this.origNodes = new HashMap<>();
+	}
+
+	/**
+	 * Migrates the blob with id=@param blobID to the node @param dstNodeID.
+	 * Blocks until the blob runs at the destination node, or until a step of
+	 * the migration fails or times out.
+	 *
+	 * @return <code>true</code> iff the blob has been migrated.
+	 */
+	public synchronized boolean migrate(Token blobID, int dstNodeID) {
+		String err = check(blobID, dstNodeID);
+		if (err != null) {
+			System.err.println(String.format("%s: Can not migrate %s to %d. %s",
+					aim, blobID, dstNodeID, err));
+			return false;
+		}
+		err = checkLive(blobID, dstNodeID);
+		if (err != null) {
+			System.out.println(String.format(
+					"%s: Moving %s to %d by a reconfiguration. %s", aim,
+					blobID, dstNodeID, err));
+			return migrateByReconfiguration(blobID, dstNodeID);
+		}
+
+		AppInstance appInst = aim.appInst;
+		int srcNodeID = appInst.blobtoMachineMap.get(blobID);
+		ImmutableSet<Token> inputs = appInst.blobGraph.getInputs(blobID);
+		ImmutableSet<Token> outputs = appInst.blobGraph.getOutputs(blobID);
+		ConnectionManager conManager = aim.appManager.conManager;
+		Map<Token, ConnectionInfo> newConInfos = new HashMap<>();
+		Map<Token, Integer> neighbours = new HashMap<>();
+		for (Token t : inputs) {
+			ConnectionInfo ci = aim.conInfoMap.get(t);
+			newConInfos.put(t,
+					conManager.replaceConInfo(ci, ci.getSrcID(), dstNodeID));
+			neighbours.put(t, ci.getSrcID());
+		}
+		for (Token t : outputs) {
+			ConnectionInfo ci = aim.conInfoMap.get(t);
+			newConInfos.put(t,
+					conManager.replaceConInfo(ci, dstNodeID, ci.getDstID()));
+			neighbours.put(t, ci.getDstID());
+		}
+
+		aim.eLogger.bEvent("migration");
+		migratingBlob = blobID;
+		snDrainedData = null;
+		drainedLatch = new CountDownLatch(1);
+
+		if (!rewire(outputs, newConInfos, neighbours)) {
+			Map<Token, ConnectionInfo> cancel = new HashMap<>();
+			for (Token t : outputs)
+				cancel.put(t, null);
+			rewire(outputs, cancel, neighbours);
+			return abort(blobID,
+					"Rewiring the downstream neighbours has failed or timed out.");
+		}
+
+		// From here on, the upstream neighbours leave the current
+		// connections. So the blob must be drained and recreated, at the
+		// destination or, failing that, at the source.
+		if (!rewire(inputs, newConInfos, neighbours))
+			System.err.println(String.format(
+					"%s: Rewiring the upstream neighbours of %s has failed or timed out. Continuing.",
+					aim, blobID));
+
+		if (!origNodes.containsKey(blobID))
+			origNodes.put(blobID, srcNodeID);
+		aim.sendToBlob(blobID, new MigrateOut(blobID));
+		if (!await(drainedLatch, timeout))
+			return abort(blobID,
+					"Draining has timed out. The blob's state is lost and the app can not progress.");
+		DrainData drainData = drainData(snDrainedData);
+		ImmutableMap.Builder<Token, Integer> bufSizesBuilder = ImmutableMap
+				.builder();
+		for (Token t : inputs)
+			bufSizesBuilder.put(t, aim.graphSchedule().bufferSizes.get(t));
+		ImmutableMap<Token, Integer> bufSizes = bufSizesBuilder.build();
+
+		int nodeID = dstNodeID;
+		Map<Token, ConnectionInfo> conInfos = newConInfos;
+		boolean created = migrateIn(blobID, dstNodeID, drainData, conInfos,
+				bufSizes);
+		if (!created) {
+			System.err.println(String.format(
+					"%s: %d could not create %s. Rolling back to %d.", aim,
+					dstNodeID, blobID, srcNodeID));
+			nodeID = srcNodeID;
+			conInfos = rollbackConInfos(srcNodeID, inputs, outputs,
+					newConInfos);
+			created = migrateIn(blobID, srcNodeID, drainData, conInfos,
+					bufSizes);
+		}
+
+		migratingBlob = null;
+		long time = aim.eLogger.eEvent("migration");
+		if (!created) {
+			System.err.println(String.format(
+					"%s: Neither %d nor %d could create %s. The app can not progress.",
+					aim, dstNodeID, srcNodeID, blobID));
+			return false;
+		}
+
+		appInst.blobtoMachineMap.put(blobID, nodeID);
+		aim.conInfoMap.putAll(conInfos);
+		if (nodeID != dstNodeID) {
+			System.err.println(String.format(
+					"%s: %s has been rolled back to %d.", aim, blobID,
+					srcNodeID));
+			return false;
+		}
+		System.out.println(String.format(
+				"%s: %s migrated from %d to %d. Migration time = %dms.", aim,
+				blobID, srcNodeID, dstNodeID, time));
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> iff the blob with id=@param blobID is being
+	 *         migrated. {@link AppInstanceManager} must pass the blob's
+	 *         {@link SNDrainedData} to {@link #drained(SNDrainedData)} in this
+	 *         case.
+	 */
+	boolean isMigrating(Token blobID) {
+		return blobID.equals(migratingBlob);
+	}
+
+	void drained(SNDrainedData snDrainedData) {
+		this.snDrainedData = snDrainedData;
+		drainedLatch.countDown();
+	}
+
+	/**
+	 * @return error message if the blob can not be moved to the node at all.
+	 *         Otherwise null.
+	 */
+	private String check(Token blobID, int dstNodeID) {
+		AppInstance appInst = aim.appInst;
+		if (!aim.isRunning)
+			return "AppInstance is not running.";
+		Integer srcNodeID = appInst.blobtoMachineMap.get(blobID);
+		if (srcNodeID == null)
+			return "No such blob.";
+		if (srcNodeID == dstNodeID)
+			return "The blob is already on the node.";
+		if (!aim.appManager.controller.getAllNodeIDs().contains(dstNodeID))
+			return "No such node.";
+
+		int blobsOnSrc = 0;
+		for (int nodeID : appInst.blobtoMachineMap.values())
+			if (nodeID == srcNodeID)
+				blobsOnSrc++;
+		if (blobsOnSrc < 2)
+			return "The blob is the last blob of its node.";
+		return null;
+	}
+
+	/**
+	 * @return the reason if the blob can not be migrated while the other blobs
+	 *         keep running. Otherwise null.
+	 */
+	private String checkLive(Token blobID, int dstNodeID) {
+		AppInstance appInst = aim.appInst;
+		for (Token t : Sets.union(appInst.blobGraph.getInputs(blobID),
+				appInst.blobGraph.getOutputs(blobID))) {
+			if (t.isOverallInput() || t.isOverallOutput())
+				return String.format("%s is the head or the tail.", t);
+			ConnectionInfo ci = aim.conInfoMap.get(t);
+			if (ci == null)
+				return String.format("%s is a local channel.", t);
+			if (ci.getSrcID() == dstNodeID || ci.getDstID() == dstNodeID)
+				return String.format("%s would become a local channel.", t);
+		}
+		return null;
+	}
+
+	/**
+	 * Reconfigures the app with the current configuration, but with the blob
+	 * placed on the node.
+	 *
+	 * @return <code>true</code> iff the reconfiguration has succeeded.
+	 */
+	private boolean migrateByReconfiguration(Token blobID, int dstNodeID) {
+		AppInstance cur = aim.appInst;
+		Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap = new HashMap<>();
+		for (Map.Entry<Integer, List<Set<Worker<?, ?>>>> en : cur.partitionsMachineMap
+				.entrySet())
+			partitionsMachineMap.put(en.getKey(),
+					new ArrayList<>(en.getValue()));
+		Set<Worker<?, ?>> blob = null;
+		for (List<Set<Worker<?, ?>>> blobs : partitionsMachineMap.values())
+			for (Iterator<Set<Worker<?, ?>>> it = blobs.iterator(); it
+					.hasNext();) {
+				Set<Worker<?, ?>> workers = it.next();
+				if (Utils.getblobID(workers).equals(blobID)) {
+					blob = workers;
+					it.remove();
+				}
+			}
+		if (blob == null)
+			return false;
+		if (!partitionsMachineMap.containsKey(dstNodeID))
+			partitionsMachineMap.put(dstNodeID,
+					new ArrayList<Set<Worker<?, ?>>>());
+		partitionsMachineMap.get(dstNodeID).add(blob);
+
+		AppInstance moved = cur.app.newPartitionMap(partitionsMachineMap,
+				cur.configuration);
+		if (moved == null)
+			return false;
+		return aim.appManager.reconfigure(moved) == 0;
+	}
+
+	/**
+	 * Sends {@link Rewire}s for the tokens to their neighbour nodes and waits
+	 * for the acknowledgements. A null {@link ConnectionInfo} cancels the
+	 * pending rewire of a channel.
+	 *
+	 * @return <code>true</code> iff all neighbours have rewired in time.
+	 */
+	private boolean rewire(Set<Token> tokens,
+			Map<Token, ConnectionInfo> conInfos, Map<Token, Integer> neighbours) {
+		rewireFailed = false;
+		rewiredLatch = new CountDownLatch(tokens.size());
+		for (Token t : tokens)
+			send(neighbours.get(t), new Rewire(t, conInfos.get(t)));
+		return await(rewiredLatch, timeout) && !rewireFailed;
+	}
+
+	/**
+	 * Sends {@link MigrateIn} to the node and waits for the confirmation.
+	 *
+	 * @return <code>true</code> iff the node has created and started the blob.
+	 */
+	private boolean migrateIn(Token blobID, int nodeID, DrainData drainData,
+			Map<Token, ConnectionInfo> conInfos,
+			ImmutableMap<Token, Integer> bufSizes) {
+		migratedIn = false;
+		migratedInLatch = new CountDownLatch(1);
+		send(nodeID, new MigrateIn(blobID, origNodes.get(blobID),
+				aim.dynCfgJson, drainData, ImmutableMap.copyOf(conInfos),
+				bufSizes));
+		if (!await(migratedInLatch, migrateInTimeout)) {
+			System.err.println(String.format(
+					"%s: %d has not confirmed %s in time.", aim, nodeID,
+					blobID));
+			return false;
+		}
+		return migratedIn;
+	}
+
+	/**
+	 * Connections to recreate the blob at the source node. The upstream
+	 * neighbours are already listening on the new connections' ports, so the
+	 * blob's input channels connect to those same ports. The downstream
+	 * neighbours are moved again, to new connections from the source node.
+	 * A downstream neighbour that is still trying to reach the destination
+	 * moves on once it gives up (see {@link Rewire}).
+	 */
+	private Map<Token, ConnectionInfo> rollbackConInfos(int srcNodeID,
+			Set<Token> inputs, Set<Token> outputs,
+			Map<Token, ConnectionInfo> newConInfos) {
+		ConnectionManager conManager = aim.appManager.conManager;
+		Map<Token, ConnectionInfo> conInfos = new HashMap<>();
+		Map<Token, Integer> neighbours = new HashMap<>();
+		for (Token t : inputs) {
+			ConnectionInfo ci = newConInfos.get(t);
+			conInfos.put(t, conManager.moveConInfo(ci, ci.getSrcID(), srcNodeID));
+		}
+		for (Token t : outputs) {
+			ConnectionInfo ci = newConInfos.get(t);
+			conInfos.put(t,
+					conManager.replaceConInfo(ci, srcNodeID, ci.getDstID()));
+			neighbours.put(t, ci.getDstID());
+		}
+		if (!rewire(outputs, conInfos, neighbours))
+			System.err.println(String.format(
+					"%s: Rewiring the downstream neighbours back to %d has failed or timed out.",
+					aim, srcNodeID));
+		return conInfos;
+	}
+
+	/**
+	 * Same as the {@link DrainData} the drainer aggregates after a global
+	 * draining, but only for a single blob.
+	 */
+	private DrainData drainData(SNDrainedData snDrainedData) {
+		ImmutableMap.Builder<Token, ImmutableList<Object>> dataBuilder = ImmutableMap
+				.builder();
+		for (Token t : Sets.union(snDrainedData.inputData.keySet(),
+				snDrainedData.outputData.keySet())) {
+			ImmutableList<Object> in = snDrainedData.inputData.get(t) != null
+					? snDrainedData.inputData.get(t) : ImmutableList.of();
+			ImmutableList<Object> out = snDrainedData.outputData.get(t) != null
+					? snDrainedData.outputData.get(t) : ImmutableList.of();
+			dataBuilder.put(t,
+					ImmutableList.builder().addAll(in).addAll(out).build());
+		}
+		DrainData boundaryData = new DrainData(dataBuilder.build(),
+				ImmutableTable.of());
+		return snDrainedData.drainData.merge(boundaryData);
+	}
+
+	private void send(int nodeID, CTRLRMessageElement me) {
+		aim.appManager.controller.send(nodeID, new CTRLRMessageElementHolder(
+				me, aim.appInstId()));
+	}
+
+	/**
+	 * @return <code>false</code> if the latch has not been counted down
+	 *         within the timeout(ms).
+	 */
+	private boolean await(CountDownLatch latch, long timeout) {
+		try {
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Gives up the migration. The controller's maps still place the blob at
+	 * the source node.
+	 */
+	private boolean abort(Token blobID, String reason) {
+		migratingBlob = null;
+		aim.eLogger.eEvent("migration");
+		System.err.println(String.format(
+				"%s: Migration of %s has been aborted. %s", aim, blobID,
+				reason));
+		return false;
+	}
+
+	private class SNMigrationProcessorImpl implements SNMigrationProcessor {
+
+		@Override
+		public void process(Rewired rewired) {
+			if (!rewired.success)
+				rewireFailed = true;
+			rewiredLatch.countDown();
+		}
+
+		@Override
+		public void process(MigratedIn migratedIn) {
+			BlobMigrator.this.migratedIn = migratedIn.success;
+			migratedInLatch.countDown();
+		}
+	}
+}
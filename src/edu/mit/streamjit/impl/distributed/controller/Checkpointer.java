@@ -0,0 +1,410 @@
+package edu.mit.streamjit.impl.distributed.controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.DrainData;
+import edu.mit.streamjit.impl.distributed.common.AppStatus;
+import edu.mit.streamjit.impl.distributed.common.Command;
+import edu.mit.streamjit.impl.distributed.common.CompilationInfo.State;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.controller.BufferSizeCalc.GraphSchedule;
+import edu.mit.streamjit.impl.distributed.controller.HT.HeadChannelSeamless;
+import edu.mit.streamjit.impl.distributed.controller.HT.ReplayLog;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+
+/**
+ * Takes periodic, asynchronous checkpoints of the running {@link AppInstance}
+ * and, if a {@link StreamNode} fails, restores the last checkpoint on the
+ * remaining nodes. See {@link Options#checkpointInterval}.
+ * <p>
+ * A checkpoint uses the same state transfer as the seamless stateful
+ * reconfiguration: the head channel asks all blobs to send their state at a
+ * steady state boundary a few seconds ahead, and the blobs keep on running
+ * after sending it. The boundary fixes the checkpoint's position in the head
+ * channel's input and in the tail channel's output. The head channel keeps a
+ * copy of all inputs since the last committed checkpoint in its
+ * {@link ReplayLog}.
+ * <p>
+ * On a node failure, the failed {@link AppInstance} is stopped and a new one,
+ * with the same configuration adjusted to the remaining nodes (see
+ * {@link ElasticNodeManager#adjust(AppInstance)}), is started from the
+ * checkpointed state. Its head channel first replays the logged inputs, and
+ * the tail merger skips the outputs the failed {@link AppInstance} has
+ * already produced.
+ * <p>
+ * The start of every {@link AppInstance} is its first checkpoint. Checkpoints
+ * are not taken, and failures can not be recovered, while a reconfiguration
+ * is in progress. Outputs those were in flight when the node failed and are
+ * older than the checkpoint are lost.
+ *
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public class Checkpointer {
+
+	private final StreamJitAppManager appManager;
+
+	private final SeamlessReconfigurer reconfigurer;
+
+	private final Thread thread;
+
+	/**
+	 * Last committed checkpoint of the current {@link AppInstance}.
+	 */
+	private volatile Checkpoint committed = null;
+
+	private volatile boolean stopped = false;
+
+	/**
+	 * Number of consecutive checkpoints those have timed out.
+	 */
+	private int timeouts = 0;
+
+	/**
+	 * After this many consecutive timeouts, the {@link ReplayLog} is dropped
+	 * instead of growing until the next successful checkpoint.
+	 */
+	private static final int maxTimeouts = 3;
+
+	/**
+	 * True if the {@link ReplayLog} has been dropped since the
+	 * {@link #committed} checkpoint, so that it can not be recovered.
+	 */
+	private volatile boolean logDropped = false;
+
+	/**
+	 * @return a started {@link Checkpointer}, or null if checkpointing is
+	 *         disabled or not supported by the app manager's
+	 *         {@link StreamJitAppManager.Reconfigurer}.
+	 */
+	static Checkpointer create(StreamJitAppManager appManager) {
+		if (Options.checkpointInterval <= 0)
+			return null;
+		if (!(appManager.reconfigurer instanceof SeamlessReconfigurer)
+				|| ((SeamlessReconfigurer) appManager.reconfigurer).adaptiveReconfig
+				|| !Options.useCompilerBlob) {
+			System.err
+					.println("Checkpointing needs the non-adaptive seamless reconfigurer and the compiler blobs. "
+							+ "Checkpointing is disabled.");
+			return null;
+		}
+		Checkpointer c = new Checkpointer(appManager);
+		c.thread.start();
+		return c;
+	}
+
+	private Checkpointer(StreamJitAppManager appManager) {
+		this.appManager = appManager;
+		this.reconfigurer = (SeamlessReconfigurer) appManager.reconfigurer;
+		this.thread = new Thread("Checkpointer") {
+			public void run() {
+				while (!stopped) {
+					try {
+						Thread.sleep(Options.checkpointInterval);
+					} catch (InterruptedException e) {
+						continue;
+					}
+					checkpoint();
+				}
+			}
+		};
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Commits the start of the aim as its first checkpoint. Called by the
+	 * {@link SeamlessReconfigurer} once the aim is running.
+	 *
+	 * @param state
+	 *            the state the aim has started from. Null if the aim has
+	 *            started from scratch.
+	 */
+	void started(AppInstanceManager aim, DrainData state) {
+		committed = new Checkpoint(aim, state);
+		logDropped = false;
+		timeouts = 0;
+	}
+
+	void stop() {
+		stopped = true;
+		thread.interrupt();
+	}
+
+	/**
+	 * Called when the connection with the node has been lost.
+	 */
+	void nodeFailed(final int nodeID) {
+		// Do not block the thread that has detected the failure.
+		new Thread(String.format("NodeFailed-%d", nodeID)) {
+			public void run() {
+				synchronized (appManager) {
+					recover(nodeID);
+				}
+			}
+		}.start();
+	}
+
+	/**
+	 * Requests the blobs' states while holding the app manager's lock, but
+	 * waits for them without holding it, so that the reconfigurations, the
+	 * tuning and the draining are not blocked.
+	 */
+	private void checkpoint() {
+		Checkpoint c;
+		synchronized (appManager) {
+			c = request();
+		}
+		if (c == null)
+			return;
+		boolean received = c.await(Math.max(Options.checkpointInterval,
+				30000));
+		synchronized (appManager) {
+			if (received)
+				commit(c);
+			else
+				timedOut(c);
+		}
+	}
+
+	/**
+	 * @return the requested checkpoint, or null if a checkpoint can not be
+	 *         taken now.
+	 */
+	private Checkpoint request() {
+		AppInstanceManager aim = appManager.curAIM;
+		AppInstanceManager prevAIM = appManager.prevAIM;
+		Checkpoint last = committed;
+		if (stopped || appManager.getStatus() == AppStatus.STOPPED
+				|| aim == null || !aim.isRunning
+				|| (prevAIM != null && prevAIM.isRunning) || last == null
+				|| last.aim != aim)
+			return null;
+
+		HeadChannelSeamless head = aim.headTailHandler.headChannelSeamless();
+		Checkpoint c = new Checkpoint(aim);
+		aim.eLogger.bEvent("checkpoint");
+		aim.checkpoint = c;
+		c.firing = head.requestCheckpoint();
+		return c;
+	}
+
+	/**
+	 * Must be called while holding the app manager's lock.
+	 */
+	private void commit(Checkpoint c) {
+		AppInstanceManager aim = c.aim;
+		if (aim.checkpoint != c || appManager.curAIM != aim || !aim.isRunning) {
+			// A reconfiguration or a recovery has started meanwhile.
+			aim.eLogger.eEvent("checkpoint");
+			return;
+		}
+		aim.checkpoint = null;
+		GraphSchedule graphSchedule = aim.graphSchedule();
+		c.commit((long) c.firing * graphSchedule.steadyIn
+				+ graphSchedule.totalInDuringInit, (long) c.firing
+				* graphSchedule.steadyOut + graphSchedule.totalOutDuringInit);
+		committed = c;
+		logDropped = false;
+		timeouts = 0;
+		aim.headTailHandler.headChannelSeamless().replayLog()
+				.truncate(c.inputPos);
+		long time = aim.eLogger.eEvent("checkpoint");
+		System.out.println(String.format(
+				"%s: Checkpoint at firing %d. Checkpoint time = %dms.", aim,
+				c.firing, time));
+	}
+
+	/**
+	 * Must be called while holding the app manager's lock.
+	 */
+	private void timedOut(Checkpoint c) {
+		AppInstanceManager aim = c.aim;
+		// Keep aim.checkpoint, so that the late states do not mess up the
+		// next reconfiguration's state transfer. The reconfigurer clears it.
+		aim.eLogger.eEvent("checkpoint");
+		System.err.println(String.format(
+				"%s: Checkpoint at firing %d has timed out.", aim, c.firing));
+		if (++timeouts < maxTimeouts || logDropped
+				|| appManager.curAIM != aim)
+			return;
+		// The log would grow without a bound. Give up the recoverability
+		// until the next successful checkpoint.
+		aim.headTailHandler.headChannelSeamless().replayLog().clear();
+		logDropped = true;
+		System.err.println(String.format(
+				"%s: %d checkpoints have timed out. Dropped the replay log; "
+						+ "failures can not be recovered until the next checkpoint.",
+				aim, timeouts));
+	}
+
+	/**
+	 * Must be called while holding the app manager's lock.
+	 */
+	private void recover(int nodeID) {
+		if (appManager.getStatus() == AppStatus.STOPPED)
+			return;
+		AppInstanceManager failed = appManager.curAIM;
+		AppInstanceManager prevAIM = appManager.prevAIM;
+		appManager.elasticNodeManager.nodeFailed(nodeID);
+		if (failed == null || !failed.isRunning
+				|| !failed.appInst.blobtoMachineMap.containsValue(nodeID))
+			return;
+
+		Checkpoint c = committed;
+		if (c == null || c.aim != failed || logDropped
+				|| (prevAIM != null && prevAIM.isRunning)) {
+			System.err.println(String.format(
+					"%s: No checkpoint to recover from. Stopping the app.",
+					failed));
+			appManager.stop();
+			return;
+		}
+		AppInstance appinst = appManager.elasticNodeManager
+				.adjust(failed.appInst);
+		if (appinst.blobtoMachineMap.containsValue(nodeID)) {
+			System.err.println(String.format(
+					"%s: Couldn't move the blobs off StreamNode %d. Stopping the app.",
+					failed, nodeID));
+			appManager.stop();
+			return;
+		}
+
+		failed.eLogger.bEvent("recovery");
+		HeadChannelSeamless head = failed.headTailHandler
+				.headChannelSeamless();
+		failed.eLogger.bEvent("draining");
+		head.abort();
+		// Releases the tuner if it is measuring the failed AppInstance.
+		failed.apStsPro.processERROR();
+		failed.sendToAll(Command.STOP);
+		failed.headTailHandler.waitToStopHead();
+		failed.headTailHandler.stopTail(false);
+		failed.headTailHandler.waitToStopTail();
+
+		long produced = failed.headTailHandler.headTail().tailCounter.count();
+		// Bounded by the items in flight at the failure, so fits in an int.
+		int skipCount = (int) Math.max(0, produced - c.outputPos);
+		Object[] replay = head.replayLog().items(c.inputPos);
+		int ret = reconfigurer.recover(appinst, c.state, replay, skipCount);
+
+		failed.drainingFinished(false);
+		appManager.removeAIM(failed.appInstId());
+		long time = failed.eLogger.eEvent("recovery");
+		if (ret == 0)
+			System.out.println(String.format(
+					"%s: Recovered from the checkpoint. Replayed %d items. "
+							+ "Recovery time = %dms.", failed, replay.length,
+					time));
+		else {
+			System.err.println(String.format(
+					"%s: Recovery has failed. Stopping the app.", failed));
+			appManager.stop();
+		}
+	}
+
+	/**
+	 * State of all blobs of an {@link AppInstance} at a steady state
+	 * boundary, and the boundary's position in the head channel's input and
+	 * in the tail channel's output.
+	 */
+	static final class Checkpoint {
+
+		final AppInstanceManager aim;
+
+		private final Map<Token, DrainData> states;
+
+		private final CountDownLatch latch;
+
+		/**
+		 * Merged state of all blobs. Null if the {@link AppInstance} started
+		 * from scratch and no checkpoint has been taken since then.
+		 */
+		DrainData state;
+
+		/**
+		 * Head channel's send count at the checkpoint. See
+		 * {@link HeadChannelSeamless#sent()}.
+		 */
+		long inputPos;
+
+		/**
+		 * Tail's receive count at the checkpoint.
+		 */
+		long outputPos;
+
+		/**
+		 * Head channel's firing at which the states are taken.
+		 */
+		int firing;
+
+		/**
+		 * A checkpoint that is being taken.
+		 */
+		private Checkpoint(AppInstanceManager aim) {
+			this.aim = aim;
+			this.states = new ConcurrentHashMap<>();
+			this.latch = new CountDownLatch(aim.appInst.blobGraph
+					.getBlobIds().size());
+		}
+
+		/**
+		 * The start of the aim.
+		 */
+		private Checkpoint(AppInstanceManager aim, DrainData state) {
+			this.aim = aim;
+			this.states = null;
+			this.latch = new CountDownLatch(0);
+			this.state = state;
+			this.inputPos = 0;
+			this.outputPos = 0;
+		}
+
+		void stateReceived(State state) {
+			states.put(state.blobID, state.drainData);
+			latch.countDown();
+		}
+
+		private boolean await(long timeoutMills) {
+			try {
+				return latch.await(timeoutMills, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+
+		private void commit(long inputPos, long outputPos) {
+			DrainData merged = null;
+			for (DrainData dd : states.values())
+				merged = merged == null ? dd : merged.merge(dd);
+			this.state = merged;
+			this.inputPos = inputPos;
+			this.outputPos = outputPos;
+		}
+
+		/**
+		 * Same as {@link AppInstanceManager#getDDsizes()}, but from the
+		 * checkpointed state, as the failed node can not send its sizes.
+		 *
+		 * @return null if there is no state.
+		 */
+		static ImmutableMap<Token, Integer> stateSizes(DrainData state,
+				Token tailToken) {
+			if (state == null)
+				return null;
+			ImmutableMap.Builder<Token, Integer> sizeBuilder = ImmutableMap
+					.builder();
+			for (Map.Entry<Token, ImmutableList<Object>> en : state.getData()
+					.entrySet())
+				sizeBuilder.put(en.getKey(), en.getKey().equals(tailToken)
+						? 0 : en.getValue().size());
+			return sizeBuilder.build();
+		}
+	}
+}
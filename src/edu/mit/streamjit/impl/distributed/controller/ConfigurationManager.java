@@ -29,6 +29,7 @@ import edu.mit.streamjit.api.StreamCompilationFailedException;
 import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.drainer.BlobGraph;
+import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.tuner.OnlineTuner;
 
 public class ConfigurationManager {
@@ -37,12 +38,45 @@ public class ConfigurationManager {
 
 	private final PartitionManager partitionManager;
 
+	/**
+	 * Ties the symmetric parameters, or null if the parameters are not tied.
+	 * See {@link Options#tieSymmetricParameters}.
+	 */
+	private SymmetricParameters symmetricParameters;
+
 	public ConfigurationManager(StreamJitApp<?, ?> app,
 			PartitionManager partitionManager) {
 		this.app = app;
 		this.partitionManager = partitionManager;
 	}
 
+	public void setSymmetricParameters(SymmetricParameters symmetricParameters) {
+		this.symmetricParameters = symmetricParameters;
+	}
+
+	/**
+	 * @return config without the tied parameters, i.e., the configuration
+	 *         that the tuner should search. config is returned as is if the
+	 *         parameters are not tied.
+	 */
+	public Configuration reduce(Configuration config) {
+		if (symmetricParameters == null)
+			return config;
+		return symmetricParameters.reduce(config);
+	}
+
+	/**
+	 * @return config with the tied parameters, i.e., the full configuration
+	 *         that can be saved and run without the
+	 *         {@link SymmetricParameters}. config is returned as is if the
+	 *         parameters are not tied.
+	 */
+	public Configuration expand(Configuration config) {
+		if (symmetricParameters == null)
+			return config;
+		return symmetricParameters.expand(config);
+	}
+
 	/**
 	 * This method may be called to by the {@link OnlineTuner} to interpret a
 	 * new configuration and execute the steramjit app with the new
@@ -67,6 +101,8 @@ public class ConfigurationManager {
 		// System.out.println(p.getName() + " - Unknown type");
 		// }
 
+		config = expand(config);
+
 		Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap = partitionManager
 				.partitionMap(config);
 		BlobGraph bg;
@@ -62,7 +62,11 @@ public interface ConnectionManager {
 	 * @param cfg
 	 * @param partitionsMachineMap
 	 * @param source
+	 *            head connection from the controller to the source is added
+	 *            only if this is not null.
 	 * @param sink
+	 *            tail connection from the sink to the controller is added only
+	 *            if this is not null.
 	 * @return
 	 */
 	public Map<Token, ConnectionInfo> conInfoMap(Configuration cfg,
@@ -82,6 +86,34 @@ public interface ConnectionManager {
 	 */
 	public ConnectionInfo replaceConInfo(ConnectionInfo conInfo);
 
+	/**
+	 * Creates a new {@link ConnectionInfo} of the same type as @param conInfo,
+	 * between the nodes srcID and dstID, on a new port. Unlike
+	 * {@link #replaceConInfo(ConnectionInfo)}, @param conInfo remains
+	 * established. Used to rewire a boundary channel while its blob migrates
+	 * to another node.
+	 * 
+	 * @param conInfo
+	 *            : {@link ConnectionInfo} that is being replaced.
+	 * @return : New {@link ConnectionInfo}.
+	 */
+	public ConnectionInfo replaceConInfo(ConnectionInfo conInfo, int srcID,
+			int dstID);
+
+	/**
+	 * Creates a {@link ConnectionInfo} of the same type and on the same port as
+	 * @param conInfo, but between the nodes srcID and dstID. The end that keeps
+	 * its node keeps listening on the port, so it accepts the moved end. Used
+	 * to recreate a blob at another node when the node it was migrated to
+	 * could not create it.
+	 * 
+	 * @param conInfo
+	 *            : {@link ConnectionInfo} that is being moved.
+	 * @return : New {@link ConnectionInfo}.
+	 */
+	public ConnectionInfo moveConInfo(ConnectionInfo conInfo, int srcID,
+			int dstID);
+
 	public abstract static class AbstractConnectionManager implements
 			ConnectionManager {
 
@@ -133,15 +165,21 @@ public interface ConnectionManager {
 				}
 			}
 
-			Token headToken = Token.createOverallInputToken(source);
-			int dstMachineID = getAssignedMachine(source, partitionsMachineMap);
-			addtoconInfoMap(controllerNodeID, dstMachineID, headToken,
-					usedConInfos, conInfoMap, cfg);
+			if (source != null) {
+				Token headToken = Token.createOverallInputToken(source);
+				int dstMachineID = getAssignedMachine(source,
+						partitionsMachineMap);
+				addtoconInfoMap(controllerNodeID, dstMachineID, headToken,
+						usedConInfos, conInfoMap, cfg);
+			}
 
-			Token tailToken = Token.createOverallOutputToken(sink);
-			int srcMahineID = getAssignedMachine(sink, partitionsMachineMap);
-			addtoconInfoMap(srcMahineID, controllerNodeID, tailToken,
-					usedConInfos, conInfoMap, cfg);
+			if (sink != null) {
+				Token tailToken = Token.createOverallOutputToken(sink);
+				int srcMahineID = getAssignedMachine(sink,
+						partitionsMachineMap);
+				addtoconInfoMap(srcMahineID, controllerNodeID, tailToken,
+						usedConInfos, conInfoMap, cfg);
+			}
 
 			return conInfoMap;
 		}
@@ -247,6 +285,32 @@ public interface ConnectionManager {
 
 			return newConinfo;
 		}
+
+		public ConnectionInfo replaceConInfo(ConnectionInfo conInfo,
+				int srcID, int dstID) {
+			ConnectionInfo newConinfo;
+			if (conInfo instanceof TCPConnectionInfo)
+				newConinfo = new TCPConnectionInfo(srcID, dstID, startPortNo++);
+			else
+				newConinfo = new AsyncTCPConnectionInfo(srcID, dstID,
+						startPortNo++);
+			establishedConInfos.add(newConinfo);
+			return newConinfo;
+		}
+
+		public ConnectionInfo moveConInfo(ConnectionInfo conInfo, int srcID,
+				int dstID) {
+			establishedConInfos.remove(conInfo);
+			ConnectionInfo newConinfo;
+			if (conInfo instanceof TCPConnectionInfo)
+				newConinfo = new TCPConnectionInfo(srcID, dstID,
+						((TCPConnectionInfo) conInfo).getPortNo());
+			else
+				newConinfo = new AsyncTCPConnectionInfo(srcID, dstID,
+						((AsyncTCPConnectionInfo) conInfo).getPortNo());
+			establishedConInfos.add(newConinfo);
+			return newConinfo;
+		}
 	}
 
 	public static abstract class NoParams extends AbstractConnectionManager {
@@ -44,7 +44,9 @@ import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.InputBufferFactory;
 import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
 import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.controller.ConnectionManager.AbstractConnectionManager;
 import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager.NewConfiguration;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitAppManager.AppDrainer;
 import edu.mit.streamjit.impl.distributed.controller.HT.HeadChannels.HeadBuffer;
@@ -57,6 +59,7 @@ import edu.mit.streamjit.partitioner.HorizontalPartitioner;
 import edu.mit.streamjit.partitioner.Partitioner;
 import edu.mit.streamjit.tuner.OnlineTuner;
 import edu.mit.streamjit.tuner.Reconfigurer;
+import edu.mit.streamjit.tuner.TuningKnowledgeBase;
 import edu.mit.streamjit.tuner.Verifier;
 import edu.mit.streamjit.util.ConfigurationUtils;
 
@@ -77,6 +80,12 @@ import edu.mit.streamjit.util.ConfigurationUtils;
  */
 public class DistributedStreamCompiler implements StreamCompiler {
 
+	/**
+	 * Size of the port range of the connections of a tuning group. See
+	 * {@link #connectionManager(int, int)}.
+	 */
+	private static final int portsPerGroup = 1000;
+
 	/**
 	 * Configuration from Opentuner.
 	 */
@@ -133,13 +142,15 @@ public class DistributedStreamCompiler implements StreamCompiler {
 
 	public <I, O> CompiledStream compile(OneToOneElement<I, O> stream,
 			Input<I> input, Output<O> output) {
-		StreamJitApp<I, O> app = new StreamJitApp<>(stream, output);
-		Controller controller = establishController();
+		StreamJitApp<I, O> app = new StreamJitApp<>(stream, input,
+				output);
+		Controller controller = establishController(0);
 
 		PartitionManager partitionManager = new HotSpotTuning(app);
 		ConfigurationManager cfgManager = new ConfigurationManager(app,
 				partitionManager);
-		ConnectionManager conManager = connectionManager(controller.controllerNodeID);
+		ConnectionManager conManager = connectionManager(
+				controller.controllerNodeID, 0);
 
 		AppInstance appinst = setConfiguration(controller, app,
 				partitionManager, conManager, cfgManager);
@@ -152,13 +163,18 @@ public class DistributedStreamCompiler implements StreamCompiler {
 
 		boolean needTermination = setBufferMap(input, manager.appDrainer, app);
 
-		manager.reconfigurer.reconfigure(appinst);
+		manager.reconfigure(appinst);
+		if (Options.elasticNodes)
+			controller.acceptNewNodes();
+		if (Options.checkpointInterval > 0)
+			controller.detectNodeFailures();
 		CompiledStream cs = new DistributedCompiledStream(manager.appDrainer,
 				app.tp);
 
 		if (Options.run > 0 && this.cfg != null) {
 			Reconfigurer configurer = new Reconfigurer(manager, app, cfgManager);
-			tuneOrVerify(configurer, needTermination);
+			tuneOrVerify(configurer, tuningGroups(stream, input),
+					knowledgeBase(app, controller), needTermination);
 		} else {
 			runFixedCfg(Options.boundaryChannelRatio, manager.appDrainer,
 					app.name);
@@ -166,16 +182,108 @@ public class DistributedStreamCompiler implements StreamCompiler {
 		return cs;
 	}
 
-	private ConnectionManager connectionManager(int controllerNodeID) {
+	/**
+	 * @param group
+	 *            tuning group of the connections. Groups use disjoint port
+	 *            ranges, as the controller node takes part in the connections
+	 *            of every group. See {@link Options#tuningGroups}.
+	 */
+	private ConnectionManager connectionManager(int controllerNodeID,
+			int group) {
+		AbstractConnectionManager conManager;
 		switch (Options.connectionManager) {
 			case 0 :
-				return new ConnectionManager.AllConnectionParams(
+				conManager = new ConnectionManager.AllConnectionParams(
 						controllerNodeID);
+				break;
 			case 1 :
-				return new ConnectionManager.BlockingTCPNoParams(
+				conManager = new ConnectionManager.BlockingTCPNoParams(
 						controllerNodeID);
+				break;
 			default :
-				return new ConnectionManager.AsyncTCPNoParams(controllerNodeID);
+				conManager = new ConnectionManager.AsyncTCPNoParams(
+						controllerNodeID);
+		}
+		conManager.startPortNo += group * portsPerGroup;
+		return conManager;
+	}
+
+	/**
+	 * Sets up the groups 1 to {@link Options#tuningGroups} - 1. Each group
+	 * gets a fresh instance of the stream graph, its own {@link Controller}
+	 * and {@link StreamNode}s, and runs the default configuration, like the
+	 * group 0 does. The groups' outputs are discarded; only their running
+	 * times matter.
+	 * 
+	 * @return {@link Reconfigurer}s of the groups. Empty if the parallel
+	 *         evaluation is disabled or is not possible.
+	 */
+	private <I, O> List<Reconfigurer> tuningGroups(
+			OneToOneElement<I, O> stream, Input<I> input) {
+		List<Reconfigurer> groups = new ArrayList<>();
+		if (Options.run != 1 || Options.tuningGroups < 2)
+			return groups;
+		if (input instanceof ManualInput) {
+			System.err
+					.println("Parallel tuning is not possible with a ManualInput. "
+							+ "Tuning on a single group.");
+			return groups;
+		}
+		for (int group = 1; group < Options.tuningGroups; group++) {
+			StreamJitApp<I, O> app = new StreamJitApp<>(newInstance(stream),
+					input, Output.<O> blackHole(), String.format("%s_group%d",
+							stream.getClass().getSimpleName(), group));
+			Controller controller = establishController(group);
+			PartitionManager partitionManager = new HotSpotTuning(app);
+			ConfigurationManager cfgManager = new ConfigurationManager(app,
+					partitionManager);
+			if (Options.tieSymmetricParameters)
+				cfgManager.setSymmetricParameters(new SymmetricParameters(
+						app, this.cfg));
+			ConnectionManager conManager = connectionManager(
+					controller.controllerNodeID, group);
+			AppInstance appinst = app.newConfiguration(cfgManager
+					.newConfiguration(this.cfg));
+			StreamJitAppManager manager = new StreamJitAppManager(
+					controller, app, conManager);
+			setBufferMap(input, manager.appDrainer, app);
+			manager.reconfigure(appinst);
+			groups.add(new Reconfigurer(manager, app, cfgManager));
+		}
+		return groups;
+	}
+
+	/**
+	 * @return the {@link TuningKnowledgeBase}, or null if it is disabled or
+	 *         not available. See {@link Options#knowledgeBase}.
+	 */
+	private TuningKnowledgeBase knowledgeBase(StreamJitApp<?, ?> app,
+			Controller controller) {
+		if (Options.run != 1 || !Options.knowledgeBase)
+			return null;
+		try {
+			return new TuningKnowledgeBase(app, noOfnodes,
+					TuningKnowledgeBase.hardware(controller.getCoreCount()));
+		} catch (IllegalStateException e) {
+			System.err.println("Tuning knowledge base is not available. "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a new instance of the stream graph the same way the
+	 * {@link StreamNode}s do. See the class comment.
+	 */
+	@SuppressWarnings("unchecked")
+	private <I, O> OneToOneElement<I, O> newInstance(
+			OneToOneElement<I, O> stream) {
+		try {
+			return stream.getClass().getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(String.format(
+					"Couldn't instantiate %s for a tuning group", stream
+							.getClass().getName()), e);
 		}
 	}
 
@@ -198,14 +306,19 @@ public class DistributedStreamCompiler implements StreamCompiler {
 		return cfg1;
 	}
 
-	private Controller establishController() {
+	/**
+	 * @param group
+	 *            See {@link Options#tuningGroups}.
+	 */
+	private Controller establishController(int group) {
 		Map<CommunicationType, Integer> conTypeCount = new HashMap<>();
 
-		if (this.noOfnodes == 1)
+		if (this.noOfnodes == 1 && group == 0)
 			conTypeCount.put(CommunicationType.LOCAL, 1);
 		else
-			conTypeCount.put(CommunicationType.TCP, this.noOfnodes - 1);
-		Controller controller = new Controller();
+			conTypeCount.put(CommunicationType.TCP,
+					Math.max(this.noOfnodes - 1, 1));
+		Controller controller = new Controller(GlobalConstants.PORTNO + group);
 		controller.connect(conTypeCount);
 		return controller;
 	}
@@ -253,6 +366,13 @@ public class DistributedStreamCompiler implements StreamCompiler {
 	 */
 	private <I, O> boolean setBufferMap(Input<I> input,
 			final AppDrainer drainer, StreamJitApp<I, O> app) {
+		if (app.nodeInput != null) {
+			// The StreamNode reads the input and informs when it is
+			// exhausted.
+			app.headBuffer = null;
+			return app.nodeInput.isFinite();
+		}
+
 		// TODO: derive a algorithm to find good buffer size and use here.
 		Buffer head = InputBufferFactory.unwrap(input).createReadableBuffer(
 				10000);
@@ -277,7 +397,8 @@ public class DistributedStreamCompiler implements StreamCompiler {
 			head = new HeadBuffer(head, drainer);
 		}
 
-		app.headBuffer = head;
+		app.headBuffer = app.latencyProbe == null ? head : app.latencyProbe
+				.head(head);
 		return needTermination;
 	}
 
@@ -302,6 +423,9 @@ public class DistributedStreamCompiler implements StreamCompiler {
 		} else
 			this.cfg = defaultCfg;
 
+		if (Options.tieSymmetricParameters)
+			cfgManager.setSymmetricParameters(new SymmetricParameters(app,
+					defaultCfg));
 		NewConfiguration newConfig = cfgManager.newConfiguration(this.cfg);
 		return app.newConfiguration(newConfig);
 	}
@@ -313,10 +437,13 @@ public class DistributedStreamCompiler implements StreamCompiler {
 		return false;
 	}
 
-	private void tuneOrVerify(Reconfigurer configurer, boolean needTermination) {
+	private void tuneOrVerify(Reconfigurer configurer,
+			List<Reconfigurer> groups, TuningKnowledgeBase knowledgeBase,
+			boolean needTermination) {
 		Runnable r;
 		if (Options.run == 1) {
-			r = new OnlineTuner(configurer, needTermination, this.cfg);
+			r = new OnlineTuner(configurer, groups, knowledgeBase,
+					needTermination, this.cfg);
 			new Thread(r, "OnlineTuner").start();
 		} else if (Options.run == 2) {
 			r = new Verifier(configurer);
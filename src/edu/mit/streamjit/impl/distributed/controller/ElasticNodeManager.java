@@ -0,0 +1,426 @@
+package edu.mit.streamjit.impl.distributed.controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.compiler2.WorkCosts;
+import edu.mit.streamjit.impl.distributed.common.AppStatus;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessageElementHolder;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.common.Request;
+import edu.mit.streamjit.impl.distributed.common.SNMembershipElement.LeaveRequest;
+import edu.mit.streamjit.impl.distributed.common.SNMembershipElement.SNMembershipProcessor;
+import edu.mit.streamjit.impl.distributed.controller.PartitionManager.AbstractPartitionManager;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.impl.distributed.profiler.ProfilerCommand;
+import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+import edu.mit.streamjit.impl.distributed.runtimer.StreamNodeAgent;
+
+/**
+ * Lets {@link StreamNode}s join and leave a running app. See
+ * {@link Options#elasticNodes}.
+ * <p>
+ * The tuner's search space only knows the machines that were connected when
+ * the app started. So, instead of changing the search space, every
+ * {@link AppInstance} is adjusted to the current set of nodes before it is
+ * run (see {@link #adjust(AppInstance)}):
+ * <ol>
+ * <li>All blobs of the nodes those have left (or are leaving) are moved to the
+ * least loaded remaining nodes.
+ * <li>Every joined node gets up to {@link Options#maxBlobsPerJoin} blobs from
+ * the most loaded nodes. If no blob can be moved, e.g., every node runs a
+ * single blob, the most loaded node's largest blob is split in two and the
+ * joined node gets one part.
+ * </ol>
+ * Blobs are moved as a whole or split along a topological order of their
+ * workers, so the blob graph stays acyclic. Nodes' loads are measured with the
+ * app's {@link WorkCosts}, if any have been profiled. A join or a leave
+ * immediately reconfigures the running app with its current
+ * configuration, adjusted as above, through the app's
+ * {@link StreamJitAppManager.Reconfigurer}. With a seamless reconfigurer the
+ * app keeps on producing outputs.
+ * <p>
+ * All reconfigurations and node membership changes synchronize on the
+ * {@link StreamJitAppManager}.
+ *
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public class ElasticNodeManager {
+
+	private final StreamJitAppManager appManager;
+
+	private final Controller controller;
+
+	private final SNMembershipProcessor membershipProcessor;
+
+	/**
+	 * Nodes those joined after the app has started and have not left.
+	 */
+	private final Set<Integer> joinedNodes;
+
+	/**
+	 * Nodes those are leaving or have left. The tuner may still assign
+	 * workers to these nodes.
+	 */
+	private final Set<Integer> leftNodes;
+
+	ElasticNodeManager(StreamJitAppManager appManager) {
+		this.appManager = appManager;
+		this.controller = appManager.controller;
+		this.membershipProcessor = new SNMembershipProcessorImpl();
+		this.joinedNodes = ConcurrentHashMap.newKeySet();
+		this.leftNodes = ConcurrentHashMap.newKeySet();
+	}
+
+	public SNMembershipProcessor membershipProcessor() {
+		return membershipProcessor;
+	}
+
+	/**
+	 * Called by the {@link Controller} once the new node has been set up
+	 * with the app's static configuration.
+	 */
+	public void nodeJoined(final StreamNodeAgent agent) {
+		int nodeID = agent.getNodeID();
+		synchronized (appManager) {
+			controller.addNode(agent);
+			joinedNodes.add(nodeID);
+			leftNodes.remove(nodeID);
+			appManager.noOfnodes = controller.getAllNodeIDs().size();
+		}
+		if (appManager.profiler != null)
+			controller.send(nodeID, new CTRLRMessageElementHolder(
+					ProfilerCommand.START, -1));
+		System.out.println(String.format(
+				"StreamNode %d has joined. Total nodes = %d.", nodeID,
+				appManager.noOfnodes));
+
+		// Do not block the thread that accepts new nodes.
+		new Thread(String.format("NodeJoined-%d", nodeID)) {
+			public void run() {
+				rebalance();
+			}
+		}.start();
+	}
+
+	/**
+	 * Moves all blobs off the node and then releases it. Sends
+	 * {@link Request#LeaveRefused} if the node has to stay.
+	 */
+	private void nodeLeaving(int nodeID) {
+		if (!controller.getAllNodeIDs().contains(nodeID)
+				|| leftNodes.contains(nodeID))
+			return;
+		if (isPinned(nodeID)) {
+			refuseLeave(nodeID, "It runs node-local IO.");
+			return;
+		}
+		if (controller.getAllNodeIDs().size() < 2) {
+			refuseLeave(nodeID, "It is the last node.");
+			return;
+		}
+
+		leftNodes.add(nodeID);
+		joinedNodes.remove(nodeID);
+		if (!rebalance()) {
+			leftNodes.remove(nodeID);
+			refuseLeave(nodeID, "Couldn't move its blobs.");
+			return;
+		}
+
+		// The previous app instance may still run blobs on the node.
+		AppInstanceManager prevAIM = appManager.prevAIM;
+		if (prevAIM != null && prevAIM.isRunning)
+			prevAIM.waitToStop();
+		synchronized (appManager) {
+			controller.removeNode(nodeID);
+			appManager.noOfnodes = controller.getAllNodeIDs().size();
+		}
+		System.out.println(String.format(
+				"StreamNode %d has left. Total nodes = %d.", nodeID,
+				appManager.noOfnodes));
+	}
+
+	private void refuseLeave(int nodeID, String reason) {
+		System.err.println(String.format(
+				"StreamNode %d can not leave. %s", nodeID, reason));
+		controller.send(nodeID, new CTRLRMessageElementHolder(
+				Request.LeaveRefused, -1));
+	}
+
+	/**
+	 * Drops a failed node. Unlike a leaving node, the blobs of a failed node
+	 * can not be moved by draining. The {@link Checkpointer} restores them on
+	 * the remaining nodes, using {@link #adjust(AppInstance)} to place them.
+	 * Must be called while holding the {@link StreamJitAppManager}'s lock.
+	 */
+	void nodeFailed(int nodeID) {
+		leftNodes.add(nodeID);
+		joinedNodes.remove(nodeID);
+		controller.removeNode(nodeID);
+		appManager.noOfnodes = controller.getAllNodeIDs().size();
+		System.err.println(String.format(
+				"StreamNode %d has failed. Total nodes = %d.", nodeID,
+				appManager.noOfnodes));
+	}
+
+	/**
+	 * Reconfigures the running app with its current configuration, adjusted
+	 * to the current set of nodes.
+	 *
+	 * @return <code>false</code> iff the reconfiguration has failed.
+	 */
+	private boolean rebalance() {
+		synchronized (appManager) {
+			AppInstanceManager curAIM = appManager.curAIM;
+			if (appManager.getStatus() == AppStatus.STOPPED || curAIM == null
+					|| !curAIM.isRunning)
+				return true;
+			AppInstance cur = curAIM.appInst;
+			AppInstance appinst = adjust(cur);
+			if (appinst == cur)
+				return true;
+			int ret = appManager.reconfigurer.reconfigure(appinst);
+			return ret == 0;
+		}
+	}
+
+	/**
+	 * Adjusts the partitioning of the appinst to the current set of nodes.
+	 *
+	 * @return a new {@link AppInstance} with the same configuration if any
+	 *         blob has been moved. Otherwise the same appinst.
+	 */
+	AppInstance adjust(AppInstance appinst) {
+		if (joinedNodes.isEmpty() && leftNodes.isEmpty())
+			return appinst;
+
+		Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap = new HashMap<>();
+		for (Map.Entry<Integer, List<Set<Worker<?, ?>>>> en : appinst.partitionsMachineMap
+				.entrySet())
+			partitionsMachineMap.put(en.getKey(),
+					new ArrayList<>(en.getValue()));
+		for (int nodeID : controller.getAllNodeIDs())
+			if (!partitionsMachineMap.containsKey(nodeID))
+				partitionsMachineMap.put(nodeID,
+						new ArrayList<Set<Worker<?, ?>>>());
+
+		List<Set<Worker<?, ?>>> orphans = new ArrayList<>();
+		for (int nodeID : leftNodes) {
+			List<Set<Worker<?, ?>>> blobs = partitionsMachineMap
+					.remove(nodeID);
+			if (blobs != null)
+				orphans.addAll(blobs);
+		}
+		boolean moved = !orphans.isEmpty();
+		for (Set<Worker<?, ?>> blob : orphans)
+			partitionsMachineMap.get(leastLoaded(partitionsMachineMap)).add(
+					blob);
+
+		for (int nodeID : joinedNodes) {
+			List<Set<Worker<?, ?>>> myBlobs = partitionsMachineMap
+					.get(nodeID);
+			if (myBlobs == null)
+				continue;
+			while (myBlobs.size() < Options.maxBlobsPerJoin) {
+				Set<Worker<?, ?>> blob = blobToMove(partitionsMachineMap,
+						nodeID);
+				if (blob == null)
+					break;
+				myBlobs.add(blob);
+				moved = true;
+			}
+			if (myBlobs.isEmpty()) {
+				List<Set<Worker<?, ?>>> part = splitBlob(partitionsMachineMap);
+				if (part != null) {
+					myBlobs.addAll(part);
+					moved = true;
+				}
+			}
+		}
+
+		if (!moved)
+			return appinst;
+		AppInstance adjusted = appinst.app.newPartitionMap(
+				partitionsMachineMap, appinst.configuration);
+		return adjusted == null ? appinst : adjusted;
+	}
+
+	/**
+	 * Removes a blob from the most loaded node and returns it. The blob whose
+	 * size is closest to half of the load difference is picked, so that the
+	 * move balances the two nodes as much as possible.
+	 *
+	 * @return the removed blob, or null if no blob can be moved without
+	 *         increasing the imbalance.
+	 */
+	private Set<Worker<?, ?>> blobToMove(
+			Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap,
+			int dstNodeID) {
+		WorkCosts costs = appManager.app.workCosts();
+		double dstLoad = load(partitionsMachineMap.get(dstNodeID), costs);
+		int srcNodeID = -1;
+		double srcLoad = 0;
+		for (Map.Entry<Integer, List<Set<Worker<?, ?>>>> en : partitionsMachineMap
+				.entrySet()) {
+			double l = load(en.getValue(), costs);
+			if (en.getKey() != dstNodeID && en.getValue().size() > 1
+					&& l > srcLoad) {
+				srcNodeID = en.getKey();
+				srcLoad = l;
+			}
+		}
+		if (srcNodeID == -1 || srcLoad <= dstLoad)
+			return null;
+
+		double half = (srcLoad - dstLoad) / 2;
+		Set<Worker<?, ?>> best = null;
+		double bestLoad = 0;
+		for (Set<Worker<?, ?>> blob : partitionsMachineMap.get(srcNodeID)) {
+			double l = load(blob, costs);
+			if (isPinned(blob) || l >= srcLoad - dstLoad)
+				continue;
+			if (best == null || Math.abs(l - half) < Math.abs(bestLoad - half)) {
+				best = blob;
+				bestLoad = l;
+			}
+		}
+		if (best != null)
+			partitionsMachineMap.get(srcNodeID).remove(best);
+		return best;
+	}
+
+	/**
+	 * Splits the largest blob of the most loaded node along a topological
+	 * order of its workers, into a head part and a tail part of about the same
+	 * load. No channel goes from the tail part to the head part, so the blob
+	 * graph stays acyclic. The tail part stays on the node.
+	 *
+	 * @return the blobs of the head part, or null if no blob can be split.
+	 */
+	private List<Set<Worker<?, ?>>> splitBlob(
+			Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap) {
+		WorkCosts costs = appManager.app.workCosts();
+		int srcNodeID = -1;
+		double srcLoad = 0;
+		for (Map.Entry<Integer, List<Set<Worker<?, ?>>>> en : partitionsMachineMap
+				.entrySet()) {
+			double l = load(en.getValue(), costs);
+			if (l > srcLoad) {
+				srcNodeID = en.getKey();
+				srcLoad = l;
+			}
+		}
+		if (srcNodeID == -1)
+			return null;
+
+		List<Set<Worker<?, ?>>> srcBlobs = partitionsMachineMap.get(srcNodeID);
+		Set<Worker<?, ?>> largest = null;
+		double largestLoad = 0;
+		for (Set<Worker<?, ?>> blob : srcBlobs) {
+			double l = load(blob, costs);
+			if (!isPinned(blob) && blob.size() > 1 && l > largestLoad) {
+				largest = blob;
+				largestLoad = l;
+			}
+		}
+		if (largest == null)
+			return null;
+
+		Set<Worker<?, ?>> head = new HashSet<>();
+		Set<Worker<?, ?>> tail = new HashSet<>();
+		double headLoad = 0;
+		for (Worker<?, ?> w : Workers.topologicalSort(largest)) {
+			double c = cost(w, costs);
+			if (head.isEmpty()
+					|| (tail.isEmpty() && headLoad + c / 2 <= largestLoad / 2)) {
+				head.add(w);
+				headLoad += c;
+			} else
+				tail.add(w);
+		}
+		if (tail.isEmpty())
+			return null;
+
+		srcBlobs.remove(largest);
+		srcBlobs.addAll(AbstractPartitionManager.getConnectedComponents(tail));
+		return AbstractPartitionManager.getConnectedComponents(head);
+	}
+
+	private int leastLoaded(
+			Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap) {
+		WorkCosts costs = appManager.app.workCosts();
+		int nodeID = -1;
+		double minLoad = Double.MAX_VALUE;
+		for (Map.Entry<Integer, List<Set<Worker<?, ?>>>> en : partitionsMachineMap
+				.entrySet()) {
+			double l = load(en.getValue(), costs);
+			if (l < minLoad) {
+				nodeID = en.getKey();
+				minLoad = l;
+			}
+		}
+		return nodeID;
+	}
+
+	/**
+	 * Load of a node, in {@link WorkCosts#measuredNanos(int)}. If no costs
+	 * have been profiled yet, the number of workers.
+	 */
+	private static double load(List<Set<Worker<?, ?>>> blobs, WorkCosts costs) {
+		double load = 0;
+		for (Set<Worker<?, ?>> blob : blobs)
+			load += load(blob, costs);
+		return load;
+	}
+
+	private static double load(Set<Worker<?, ?>> blob, WorkCosts costs) {
+		double load = 0;
+		for (Worker<?, ?> w : blob)
+			load += cost(w, costs);
+		return load;
+	}
+
+	private static double cost(Worker<?, ?> w, WorkCosts costs) {
+		if (costs == null || costs.isEmpty())
+			return 1;
+		return costs.measuredNanos(Workers.getIdentifier(w));
+	}
+
+	/**
+	 * @return <code>true</code> iff the blob contains a source or sink that is
+	 *         pinned to its node. See {@link PartitionManager}.
+	 */
+	private boolean isPinned(Set<Worker<?, ?>> blob) {
+		StreamJitApp<?, ?> app = appManager.app;
+		return (app.nodeInput != null && blob.contains(app.source))
+				|| (app.nodeOutput != null && blob.contains(app.sink));
+	}
+
+	private boolean isPinned(int nodeID) {
+		StreamJitApp<?, ?> app = appManager.app;
+		return (app.nodeInput != null && app.nodeInput.nodeID == nodeID)
+				|| (app.nodeOutput != null && app.nodeOutput.nodeID == nodeID);
+	}
+
+	private class SNMembershipProcessorImpl implements SNMembershipProcessor {
+
+		@Override
+		public void process(final LeaveRequest leaveRequest) {
+			// Do not block the StreamNodeAgent's receiver thread.
+			new Thread(String.format("NodeLeaving-%d", leaveRequest.nodeID)) {
+				public void run() {
+					nodeLeaving(leaveRequest.nodeID);
+				}
+			}.start();
+		}
+	}
+}
@@ -17,9 +17,13 @@ import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement;
 import edu.mit.streamjit.impl.distributed.common.Connection;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
+import edu.mit.streamjit.impl.distributed.common.CreditGate.Gated;
+import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.controller.AppInstance;
 import edu.mit.streamjit.impl.distributed.controller.AppInstanceManager;
 import edu.mit.streamjit.impl.distributed.controller.BufferSizeCalc.GraphSchedule;
+import edu.mit.streamjit.impl.distributed.controller.Checkpointer;
 import edu.mit.streamjit.impl.distributed.controller.HT.DuplicateDataHandler.DuplicateArrayContainer;
 import edu.mit.streamjit.util.EventTimeLogger;
 
@@ -28,7 +32,8 @@ import edu.mit.streamjit.util.EventTimeLogger;
  * @author sumanan
  * @since 12 Nov, 2015
  */
-public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
+public class HeadChannelSeamless implements BoundaryOutputChannel, Counter,
+		Gated {
 
 	private static final int duplicationFiring = 500;
 
@@ -44,7 +49,11 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 
 	volatile boolean canWrite;
 
-	int count;
+	/**
+	 * Number of items sent. Volatile, as the {@link Checkpointer} reads it
+	 * to pick the checkpoint's firing.
+	 */
+	volatile long count;
 
 	GraphSchedule graphSchedule;
 
@@ -85,6 +94,29 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 
 	private volatile CountDownLatch duplicationLatch;
 
+	/**
+	 * Credit gate of this head channel. If set, the receiver's credits bound
+	 * the sending, and {@link #flowControl(int)} only measures the
+	 * {@link #firingRate}.
+	 */
+	private volatile CreditGate gate;
+
+	private long lastRateMills = 0;
+
+	private int lastRateFiring = 0;
+
+	/**
+	 * Copy of the items sent since the last committed checkpoint. Null if
+	 * {@link Options#checkpointInterval} is 0.
+	 */
+	private final ReplayLog replayLog;
+
+	/**
+	 * Items of the failed {@link AppInstance} to be sent before anything
+	 * else. See {@link #replay(Object[])}.
+	 */
+	private volatile Object[] replay;
+
 	public HeadChannelSeamless(Buffer buffer, ConnectionProvider conProvider,
 			ConnectionInfo conInfo, String bufferTokenName,
 			EventTimeLogger eLogger, Counter tailCounter,
@@ -101,6 +133,8 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 		this.aim = aim;
 		this.tbMerger = tbMerger;
 		this.duplicator = new Duplicator2();
+		this.replayLog = Options.checkpointInterval > 0 ? new ReplayLog()
+				: null;
 	}
 
 	public Runnable getRunnable() {
@@ -111,10 +145,17 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 				makeConnection();
 				graphSchedule = aim.graphSchedule();
 				canWrite = true;
-				duplicator.initialDuplication();
+				// A recovered head takes over the failed head's place in the
+				// duplication. So it must not duplicate again.
+				if (replay != null)
+					sendReplay();
+				else
+					duplicator.initialDuplication();
 				sendData();
 				if (stopCalled == 4)
 					limittedSend();
+				if (stopCalled == 5)
+					return;
 				if (stopCalled == 1)
 					duplicator.finalDuplication(duplicationCount);
 				else if (stopCalled == 2) {
@@ -142,7 +183,8 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 			size = Math.min(data.length,
 					(int) (firingRate * graphSchedule.steadyIn));
 		} while (stopCalled == 0);
-		sendRemining();
+		if (stopCalled != 5)
+			sendRemining();
 	}
 
 	private void limittedSend() {
@@ -158,16 +200,32 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 			send(data, read);
 			flowControl(limittedFcTimeGap);
 		}
-		sendRemining();
+		if (stopCalled != 5)
+			sendRemining();
+	}
+
+	private void sendReplay() {
+		Object[] items = replay;
+		replay = null;
+		System.out.println(String.format("%d-Replaying %d items",
+				aim.appInstId(), items.length));
+		send(items, items.length);
 	}
 
 	private void send(final Object[] data, int items) {
 		int totalWritten = 0;
 		int written;
+		// Logged before the sending. If the connection fails in the middle,
+		// the unsent items are still replayed.
+		if (replayLog != null)
+			replayLog.append(data, 0, items);
 		try {
-			while (totalWritten < items) {
-				written = connection.writeObjects(data, totalWritten, items
-						- totalWritten);
+			while (totalWritten < items && stopCalled != 5) {
+				int credits = acquireCredits(items - totalWritten);
+				if (credits == 0)
+					continue;
+				written = connection.writeObjects(data, totalWritten, credits);
+				returnCredits(credits - written);
 				totalWritten += written;
 				if (written == 0) {
 					try {
@@ -178,6 +236,8 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 					}
 				}
 			}
+		} catch (InterruptedException e) {
+			interrupted();
 		} catch (IOException ex) {
 			ex.printStackTrace();
 		}
@@ -191,13 +251,17 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 		try {
 			while (totalWritten < items && stopCalled != 3) {
 				Thread.sleep(950);
-				itemsToSend = Math.min(items - totalWritten, rate);
+				itemsToSend = acquireCredits(Math.min(items - totalWritten,
+						rate));
 				written = connection.writeObjects(data, totalWritten,
 						itemsToSend);
+				returnCredits(itemsToSend - written);
+				if (replayLog != null)
+					replayLog.append(data, totalWritten, written);
 				totalWritten += written;
 			}
 		} catch (InterruptedException e) {
-			e.printStackTrace();
+			interrupted();
 		} catch (IOException ex) {
 			ex.printStackTrace();
 		}
@@ -205,9 +269,37 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 		return totalWritten;
 	}
 
+	/**
+	 * Interrupted while waiting for the credits or the next firing. Restores
+	 * the interrupt flag and aborts this channel, so that the send loops
+	 * exit instead of spinning.
+	 */
+	private void interrupted() {
+		Thread.currentThread().interrupt();
+		System.err.println(name + ": Interrupted. Aborting.");
+		abort();
+	}
+
+	/**
+	 * Blocks until the receiver grants credits. Returns max immediately if
+	 * this channel is not gated.
+	 */
+	private int acquireCredits(int max) throws InterruptedException {
+		CreditGate gate = this.gate;
+		if (gate == null)
+			return max;
+		return gate.acquire(max);
+	}
+
+	private void returnCredits(int credits) {
+		CreditGate gate = this.gate;
+		if (gate != null && credits > 0)
+			gate.grant(credits);
+	}
+
 	private void sendRemining() {
-		int reminder = (count - graphSchedule.totalInDuringInit)
-				% graphSchedule.steadyIn;
+		int reminder = (int) ((count - graphSchedule.totalInDuringInit)
+				% graphSchedule.steadyIn);
 		int residue = graphSchedule.steadyIn - reminder;
 		send(residue);
 	}
@@ -226,6 +318,10 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 	}
 
 	private void flowControl(int timeGap) {
+		if (gate != null) {
+			measureFiringRate(timeGap);
+			return;
+		}
 		Stopwatch sw = null;
 		if (debugLevel > 0)
 			sw = Stopwatch.createStarted();
@@ -233,7 +329,7 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 		int currentFiring = 0;
 		int fcFiringGap = (int) (firingRate * timeGap);
 		while ((expectedFiring - (currentFiring = currentFiring()) > fcFiringGap)
-				&& stopCalled != 3) {
+				&& stopCalled != 3 && stopCalled != 5) {
 			long sleepMills = timeGap * 300; // 30% of time gap.
 			try {
 				Thread.sleep(sleepMills);
@@ -265,9 +361,32 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 							timeGap));
 	}
 
+	/**
+	 * Credits throttle the sending when this channel is gated. So, instead of
+	 * sleeping, just keep {@link #firingRate} up to date from the tail's
+	 * progress over windows of 30% of the time gap.
+	 */
+	private void measureFiringRate(int timeGap) {
+		long now = System.currentTimeMillis();
+		if (lastRateMills == 0) {
+			lastRateMills = now;
+			lastRateFiring = currentFiring();
+			return;
+		}
+		long elapsed = now - lastRateMills;
+		if (elapsed < timeGap * 300)
+			return;
+		int firing = currentFiring();
+		double fr = firingRate(firing - lastRateFiring, elapsed);
+		if (fr > 0)
+			firingRate = fr;
+		lastRateMills = now;
+		lastRateFiring = firing;
+	}
+
 	private int expectedFiring() {
-		int firing = (count - graphSchedule.totalInDuringInit)
-				/ graphSchedule.steadyIn;
+		int firing = (int) ((count - graphSchedule.totalInDuringInit)
+				/ graphSchedule.steadyIn);
 		return firing;
 	}
 
@@ -326,8 +445,8 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 
 	private void reqState() {
 		int reqStateAt = requestState();
-		int items = reqStateAt * graphSchedule.steadyIn
-				+ graphSchedule.totalInDuringInit - count;
+		int items = (int) ((long) reqStateAt * graphSchedule.steadyIn
+				+ graphSchedule.totalInDuringInit - count);
 		send(items);
 	}
 
@@ -358,11 +477,67 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 
 	public void stop() {
 		this.stopCalled = 3;
+		CreditGate gate = this.gate;
+		if (gate != null)
+			gate.close();
+	}
+
+	/**
+	 * Stops the sending immediately, without sending the remaining items of
+	 * the current steady state and without draining. The
+	 * {@link Checkpointer} calls this when a node of this {@link AppInstance}
+	 * has failed.
+	 */
+	public void abort() {
+		this.stopCalled = 5;
+		CreditGate gate = this.gate;
+		if (gate != null)
+			gate.close();
+	}
+
+	/**
+	 * Makes this head send the items before the items from the input buffer.
+	 * Must be called before the head is started.
+	 */
+	public void replay(Object[] items) {
+		this.replay = items;
+	}
+
+	/**
+	 * Asks all blobs to send their state at a steady state boundary a few
+	 * seconds ahead. Unlike the state request of a reconfiguration, the
+	 * sending goes on without any interruption.
+	 *
+	 * @return the firing at which the state is taken.
+	 */
+	public int requestCheckpoint() {
+		int reqStateAt = expectedFiring()
+				+ Math.max((int) (firingRate * 5), 1);
+		requestState(reqStateAt);
+		return reqStateAt;
+	}
+
+	/**
+	 * @return the items sent since the last committed checkpoint, or null if
+	 *         checkpointing is disabled.
+	 */
+	public ReplayLog replayLog() {
+		return replayLog;
+	}
+
+	@Override
+	public void creditGate(CreditGate gate) {
+		this.gate = gate;
 	}
 
 	private int requestState() {
 		int i = expectedFiring();
 		int reqStateAt = i + (int) (firingRate * 5);
+		requestState(reqStateAt);
+		return reqStateAt;
+	}
+
+	private void requestState(int reqStateAt) {
 		for (Map.Entry<Token, Integer> en : graphSchedule.steadyRunCount
 				.entrySet()) {
 			Token blobID = en.getKey();
@@ -373,7 +548,6 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 					blobID, reqStateAt * steadyRun + steadyDuringInit);
 			aim.sendToBlob(blobID, me);
 		}
-		return reqStateAt;
 	}
 
 	private void waitForDuplication() {
@@ -446,8 +620,19 @@ public class HeadChannelSeamless implements BoundaryOutputChannel, Counter {
 		}
 	}
 
+	/**
+	 * Truncated to int; use {@link #sent()} for sequence numbers.
+	 */
 	@Override
 	public int count() {
+		return (int) count;
+	}
+
+	/**
+	 * @return number of items sent, which is also the sequence number of the
+	 *         next item in the {@link ReplayLog}.
+	 */
+	public long sent() {
 		return count;
 	}
 
@@ -27,6 +27,7 @@ import edu.mit.streamjit.impl.blob.AbstractReadOnlyBuffer;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitAppManager;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitAppManager.AppDrainer;
 import edu.mit.streamjit.impl.distributed.node.AsyncOutputChannel;
@@ -130,6 +131,14 @@ public class HeadChannels {
 			this.stopCalled = true;
 		}
 
+		/**
+		 * Not gated. The write loop of the runnable does not observe stop requests,
+		 * so a gate that runs out of credits would never let it stop.
+		 */
+		@Override
+		public void creditGate(CreditGate gate) {
+		}
+
 		private void stopSuper(boolean isFinal) {
 			super.stop(isFinal);
 		}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.controller.BufferSizeCalc.GraphSchedule;
+
+/**
+ * Measures the end-to-end latency of the stream graph. Every
+ * {@link Options#latencySampling}th input that the head channel reads from
+ * the head buffer is timestamped, and the timestamp is matched at the tail
+ * buffer with the output that becomes available once the whole graph has
+ * fired on that input. The matching relies on the steady state rates of the
+ * graph, which are same for all configurations, and on the reconfigurations
+ * neither losing nor duplicating the items.
+ * <p>
+ * The head and tail buffers of a {@link LatencyProbe} are kept for the entire
+ * life of the app, across the reconfigurations.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public final class LatencyProbe {
+
+	private final int sampleInterval;
+
+	/**
+	 * Pending samples, in their input order. Each element is {expected output
+	 * count, timestamp in nanoseconds}.
+	 */
+	private final ConcurrentLinkedQueue<long[]> stamps;
+
+	/**
+	 * Latencies, in nanoseconds, those have been matched since the last
+	 * {@link #reset()}.
+	 */
+	private final List<Long> latencies;
+
+	private volatile GraphSchedule schedule;
+
+	private long inCount;
+
+	private long outCount;
+
+	public LatencyProbe(int sampleInterval) {
+		if (sampleInterval < 1)
+			throw new IllegalArgumentException(String.format(
+					"sampleInterval must be positive. %d", sampleInterval));
+		this.sampleInterval = sampleInterval;
+		this.stamps = new ConcurrentLinkedQueue<>();
+		this.latencies = new ArrayList<>();
+	}
+
+	/**
+	 * Sets the rates of the stream graph. Only the first schedule is taken, as
+	 * its initialization counts are the ones that the input and output counts
+	 * of the app are offset by.
+	 */
+	public void schedule(GraphSchedule schedule) {
+		if (this.schedule == null && schedule.steadyIn > 0
+				&& schedule.steadyOut > 0)
+			this.schedule = schedule;
+	}
+
+	/**
+	 * @return a wrapper of the head buffer that timestamps the sampled inputs.
+	 */
+	public Buffer head(Buffer buffer) {
+		return new HeadProbe(buffer);
+	}
+
+	/**
+	 * @return a wrapper of the tail buffer that matches the sampled inputs'
+	 *         timestamps.
+	 */
+	public Buffer tail(Buffer buffer) {
+		return new TailProbe(buffer);
+	}
+
+	/**
+	 * Discards the latencies those have been measured so far and the pending
+	 * samples. Call this at the start of a new measurement, so that the inputs
+	 * those have waited through a reconfiguration are not counted.
+	 */
+	public synchronized void reset() {
+		stamps.clear();
+		latencies.clear();
+	}
+
+	/**
+	 * @param percentile
+	 *            0 - 100.
+	 * @return the given percentile of the latencies, in milliseconds, those
+	 *         have been measured since the last {@link #reset()}, or -1 if
+	 *         there is none.
+	 */
+	public synchronized double latency(int percentile) {
+		if (latencies.isEmpty())
+			return -1;
+		List<Long> sorted = new ArrayList<>(latencies);
+		Collections.sort(sorted);
+		int idx = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+		idx = Math.max(0, Math.min(sorted.size() - 1, idx));
+		return sorted.get(idx) / 1e6;
+	}
+
+	/**
+	 * Called by the head channel's thread only.
+	 */
+	private void read(int count) {
+		GraphSchedule s = schedule;
+		long prev = inCount;
+		inCount += count;
+		if (s == null || inCount / sampleInterval == prev / sampleInterval)
+			return;
+		long in = inCount / sampleInterval * sampleInterval;
+		long firings = Math.max(0, in - s.totalInDuringInit);
+		firings = (firings + s.steadyIn - 1) / s.steadyIn;
+		stamps.offer(new long[]{s.totalOutDuringInit + firings * s.steadyOut,
+				System.nanoTime()});
+	}
+
+	/**
+	 * Called by the tail channel's thread only.
+	 */
+	private void written(int count) {
+		outCount += count;
+		long[] stamp;
+		while ((stamp = stamps.peek()) != null && stamp[0] <= outCount) {
+			stamps.poll();
+			long latency = System.nanoTime() - stamp[1];
+			synchronized (this) {
+				latencies.add(latency);
+			}
+		}
+	}
+
+	private final class HeadProbe implements Buffer {
+
+		private final Buffer buffer;
+
+		HeadProbe(Buffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public Object read() {
+			Object o = buffer.read();
+			if (o != null)
+				LatencyProbe.this.read(1);
+			return o;
+		}
+
+		@Override
+		public int read(Object[] data, int offset, int length) {
+			int read = buffer.read(data, offset, length);
+			LatencyProbe.this.read(read);
+			return read;
+		}
+
+		@Override
+		public boolean readAll(Object[] data) {
+			return readAll(data, 0);
+		}
+
+		@Override
+		public boolean readAll(Object[] data, int offset) {
+			boolean ret = buffer.readAll(data, offset);
+			if (ret)
+				LatencyProbe.this.read(data.length - offset);
+			return ret;
+		}
+
+		@Override
+		public boolean write(Object t) {
+			return buffer.write(t);
+		}
+
+		@Override
+		public int write(Object[] data, int offset, int length) {
+			return buffer.write(data, offset, length);
+		}
+
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+
+		@Override
+		public int capacity() {
+			return buffer.capacity();
+		}
+	}
+
+	private final class TailProbe implements Buffer {
+
+		private final Buffer buffer;
+
+		TailProbe(Buffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public Object read() {
+			return buffer.read();
+		}
+
+		@Override
+		public int read(Object[] data, int offset, int length) {
+			return buffer.read(data, offset, length);
+		}
+
+		@Override
+		public boolean readAll(Object[] data) {
+			return buffer.readAll(data);
+		}
+
+		@Override
+		public boolean readAll(Object[] data, int offset) {
+			return buffer.readAll(data, offset);
+		}
+
+		@Override
+		public boolean write(Object t) {
+			boolean ret = buffer.write(t);
+			if (ret)
+				written(1);
+			return ret;
+		}
+
+		@Override
+		public int write(Object[] data, int offset, int length) {
+			int written = buffer.write(data, offset, length);
+			written(written);
+			return written;
+		}
+
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+
+		@Override
+		public int capacity() {
+			return buffer.capacity();
+		}
+	}
+}
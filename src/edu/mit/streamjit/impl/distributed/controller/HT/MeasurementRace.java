@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import edu.mit.streamjit.impl.distributed.common.Options;
+
+/**
+ * Decides, from the interim output counts that a {@link TailChannel} reports
+ * while it measures a configuration, whether the configuration can still beat
+ * the incumbent (i.e., the best configuration found so far). See
+ * {@link Options#racing}.
+ * <p>
+ * The output rate of each sampling period is a sample. Once there are enough
+ * samples, the race is lost if even the upper confidence bound of the mean
+ * output rate can not produce the fixed number of outputs within the
+ * incumbent's time.
+ * <p>
+ * A {@link MeasurementRace} is good for a single measurement.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public final class MeasurementRace {
+
+	/**
+	 * Minimum length of a sampling period, in milliseconds.
+	 */
+	private static final long samplePeriod = 100;
+
+	/**
+	 * No decision is made with lesser samples.
+	 */
+	private static final int minSamples = 5;
+
+	/**
+	 * z value of the one-sided 99% confidence bound.
+	 */
+	private static final double z = 2.33;
+
+	/**
+	 * Time of the incumbent, normalized the same way as the
+	 * {@link TailChannel}'s times.
+	 */
+	private final long incumbent;
+
+	private int samples = 0;
+
+	/**
+	 * Mean and the sum of squared deviations of the output rates (outputs per
+	 * millisecond). Welford's method.
+	 */
+	private double mean = 0;
+	private double m2 = 0;
+
+	private int lastCount = 0;
+
+	private long lastMills = 0;
+
+	private boolean lost = false;
+
+	/**
+	 * @param incumbent
+	 *            time of the best configuration so far.
+	 */
+	public MeasurementRace(long incumbent) {
+		this.incumbent = incumbent;
+	}
+
+	/**
+	 * Reports the output count of the measurement so far.
+	 * 
+	 * @param count
+	 *            number of outputs received since the measurement started.
+	 * @param elapsedMills
+	 *            time since the measurement started.
+	 * @param fixedCount
+	 *            number of outputs the {@link TailChannel} normalizes its
+	 *            times to.
+	 * @return <code>true</code> iff the measurement can not beat the
+	 *         incumbent and should be aborted.
+	 */
+	public boolean lost(int count, long elapsedMills, int fixedCount) {
+		if (lost)
+			return true;
+		long period = elapsedMills - lastMills;
+		if (period < samplePeriod)
+			return false;
+		double rate = (count - lastCount) / (double) period;
+		lastCount = count;
+		lastMills = elapsedMills;
+		samples++;
+		double delta = rate - mean;
+		mean += delta / samples;
+		m2 += delta * (rate - mean);
+		if (samples < minSamples)
+			return false;
+
+		double sd = Math.sqrt(m2 / (samples - 1));
+		double upperRate = mean + z * sd / Math.sqrt(samples);
+		lost = upperRate <= 0 || fixedCount / upperRate > incumbent;
+		return lost;
+	}
+
+	/**
+	 * @return the time to receive fixedCount outputs at the mean output rate
+	 *         measured so far, or -1 if no output has been received.
+	 */
+	public long estimate(int fixedCount) {
+		if (mean <= 0)
+			return -1;
+		return (long) (fixedCount / mean);
+	}
+
+	/**
+	 * @return <code>true</code> iff the measurement has been aborted.
+	 */
+	public boolean isLost() {
+		return lost;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import edu.mit.streamjit.impl.common.Counter;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement.OutputCount;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
+
+/**
+ * Output count of a node-local sink (see {@link NodeLocalIO}). The
+ * {@link StreamNode} that writes the output periodically sends its cumulative
+ * output count as an {@link OutputCount} message, and this counter keeps the
+ * latest one.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 22 Oct, 2016
+ */
+public final class NodeOutputCounter implements Counter {
+
+	private volatile int count = 0;
+
+	/**
+	 * @param count
+	 *            cumulative output count that is reported by the node.
+	 */
+	public synchronized void update(int count) {
+		// Reports may arrive out of order. Keep the latest.
+		if (count > this.count)
+			this.count = count;
+	}
+
+	@Override
+	public int count() {
+		return count;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.common.Counter;
+import edu.mit.streamjit.impl.common.drainer.AbstractDrainer.DrainDataAction;
+import edu.mit.streamjit.impl.distributed.common.Connection;
+import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.util.EventTimeLogger;
+
+/**
+ * {@link TailChannel} for a node-local sink (see {@link NodeLocalIO}). No
+ * stream data comes to the controller; this channel measures the time to
+ * receive fixed number of outputs from the output counts that are reported by
+ * the node, the same way {@link TailChannels.BlockingTailChannel3} does.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 22 Oct, 2016
+ */
+public final class NodeTailChannel implements TailChannel {
+
+	private final Counter counter;
+
+	private final String name;
+
+	private final EventTimeLogger eLogger;
+
+	private final Stopwatch stopWatch;
+
+	private final long skipMills = Options.skipMills;
+
+	private final long steadyMills = Options.steadyMills;
+
+	/**
+	 * If no output for a given period, reject the configuration.
+	 */
+	private final int noOutputTimeLimit = Options.noOutputTimeLimit;
+
+	private final CountDownLatch stopLatch = new CountDownLatch(1);
+
+	private volatile int countAtReset;
+
+	private volatile TimedWindowListener timedWindowListener;
+
+	public NodeTailChannel(Counter counter, String name,
+			EventTimeLogger eLogger) {
+		this.counter = counter;
+		this.name = name;
+		this.eLogger = eLogger;
+		this.stopWatch = Stopwatch.createUnstarted();
+		this.countAtReset = counter.count();
+	}
+
+	@Override
+	public int count() {
+		return counter.count();
+	}
+
+	@Override
+	public long getFixedOutputTime() throws InterruptedException {
+		return getFixedOutputTime(0, null);
+	}
+
+	/**
+	 * Measures the output rate over a fixed window and extrapolates the time
+	 * to receive {@link Options#outputCount} outputs. If timeout > 0, waits at
+	 * most timeout for the first output, and returns -1 if the extrapolated
+	 * time exceeds timeout.
+	 */
+	@Override
+	public long getFixedOutputTime(long timeout, MeasurementRace race)
+			throws InterruptedException {
+		reset();
+		if (!waitForFirstOutput(timeout < 1 ? noOutputTimeLimit : Math.min(
+				timeout, noOutputTimeLimit)))
+			return -1;
+		stopWatch.start();
+		while (stopWatch.elapsed(TimeUnit.MILLISECONDS) < skipMills)
+			Thread.sleep(1);
+		int startCount = countAfterReset();
+		TimedWindowListener l = timedWindowListener;
+		if (l != null)
+			l.timedWindowOpened();
+		try {
+			while (stopWatch.elapsed(TimeUnit.MILLISECONDS) < (skipMills + steadyMills)) {
+				Thread.sleep(1);
+				if (race != null
+						&& race.lost(countAfterReset() - startCount,
+								stopWatch.elapsed(TimeUnit.MILLISECONDS)
+										- skipMills, Options.outputCount))
+					return race.estimate(Options.outputCount);
+			}
+		} finally {
+			if (l != null)
+				l.timedWindowClosed();
+		}
+		int endCount = countAfterReset();
+		long time = fixedtime(endCount - startCount);
+		if (timeout > 0 && time > timeout)
+			return -1;
+		return time;
+	}
+
+	private boolean waitForFirstOutput(long limit) throws InterruptedException {
+		Stopwatch sw = Stopwatch.createStarted();
+		while (countAfterReset() < 1
+				&& sw.elapsed(TimeUnit.MILLISECONDS) < limit)
+			Thread.sleep(1);
+		boolean ret = countAfterReset() > 0;
+		if (ret)
+			eLogger.eEvent("initialization");
+		return ret;
+	}
+
+	private long fixedtime(int cnt) {
+		if (cnt < 1)
+			return -1;
+		return (steadyMills * Options.outputCount) / cnt;
+	}
+
+	@Override
+	public long getFixedOutputTime(long timeout) throws InterruptedException {
+		return getFixedOutputTime(timeout, null);
+	}
+
+	@Override
+	public void reset() {
+		stopWatch.reset();
+		countAtReset = counter.count();
+	}
+
+	private int countAfterReset() {
+		return counter.count() - countAtReset;
+	}
+
+	@Override
+	public void setTimedWindowListener(TimedWindowListener listener) {
+		this.timedWindowListener = listener;
+	}
+
+	@Override
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Nothing to receive. The returned runnable just waits until this channel
+	 * is stopped, so that the tail thread's life time is same as other tail
+	 * channels'.
+	 */
+	@Override
+	public Runnable getRunnable() {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					stopLatch.await();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+	}
+
+	@Override
+	public void stop(DrainDataAction drainDataAction) {
+		stopLatch.countDown();
+	}
+
+	@Override
+	public void receiveData() {
+	}
+
+	@Override
+	public ImmutableList<Object> getUnprocessedData() {
+		return ImmutableList.of();
+	}
+
+	@Override
+	public Connection getConnection() {
+		return null;
+	}
+
+	@Override
+	public ConnectionInfo getConnectionInfo() {
+		return null;
+	}
+
+	@Override
+	public Buffer getBuffer() {
+		return null;
+	}
+
+	@Override
+	public Buffer getExtraBuffer() {
+		return null;
+	}
+}
@@ -0,0 +1,147 @@
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import java.util.Arrays;
+
+import edu.mit.streamjit.impl.distributed.controller.AppInstance;
+import edu.mit.streamjit.impl.distributed.controller.Checkpointer;
+
+/**
+ * Upstream backup of a {@link HeadChannelSeamless}. Keeps a copy of every item
+ * the head channel has sent since the last committed checkpoint, numbered by
+ * the head channel's send count, so that the items can be replayed to the
+ * {@link AppInstance} that replaces a failed one. See {@link Checkpointer}.
+ * <p>
+ * Items are copied into a ring buffer as they are sent, so that sending does
+ * not allocate. The ring is sized from the items sent during the last
+ * checkpoint interval: it grows when a send does not fit, and shrinks back on
+ * {@link #truncate(long)} once the interval's traffic has dropped.
+ *
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public final class ReplayLog {
+
+	private static final int minCapacity = 1 << 12;
+
+	private Object[] ring;
+
+	/**
+	 * Sequence number of the oldest logged item.
+	 */
+	private long start;
+
+	/**
+	 * Sequence number of the next item to be appended.
+	 */
+	private long end;
+
+	/**
+	 * {@link #end} at the last {@link #truncate(long)}, i.e., at the last
+	 * committed checkpoint.
+	 */
+	private long lastCommitEnd;
+
+	public ReplayLog() {
+		this.ring = new Object[minCapacity];
+		this.start = 0;
+		this.end = 0;
+		this.lastCommitEnd = 0;
+	}
+
+	public synchronized void append(Object[] data, int offset, int length) {
+		if (length <= 0)
+			return;
+		int size = size();
+		if (size + length > ring.length)
+			resize(Math.max(2 * ring.length, size + length));
+		put(end, data, offset, length);
+		end += length;
+	}
+
+	/**
+	 * Drops the items those are older than seq. Called when a checkpoint
+	 * commits; resizes the ring to twice the items appended since the previous
+	 * commit.
+	 */
+	public synchronized void truncate(long seq) {
+		seq = Math.min(seq, end);
+		if (seq > start) {
+			release(start, seq);
+			start = seq;
+		}
+		long interval = end - lastCommitEnd;
+		lastCommitEnd = end;
+		int target = (int) Math.min(Integer.MAX_VALUE - 8,
+				Math.max(minCapacity, 2 * interval));
+		if (ring.length > 2 * target && size() <= target)
+			resize(target);
+	}
+
+	/**
+	 * Drops all logged items.
+	 */
+	public synchronized void clear() {
+		release(start, end);
+		start = end;
+	}
+
+	/**
+	 * @return all items from seq onwards.
+	 */
+	public synchronized Object[] items(long seq) {
+		if (seq < start || seq > end)
+			throw new IllegalArgumentException(String.format(
+					"seq(=%d) is out of the log's range [%d, %d].", seq,
+					start, end));
+		return copy(seq, end, new Object[(int) (end - seq)]);
+	}
+
+	public synchronized int size() {
+		return (int) (end - start);
+	}
+
+	private int index(long seq) {
+		return (int) (seq % ring.length);
+	}
+
+	private void resize(int capacity) {
+		Object[] items = copy(start, end, new Object[size()]);
+		ring = new Object[capacity];
+		put(start, items, 0, items.length);
+	}
+
+	/**
+	 * Copies src[offset, offset + length) into the slots of the items [seq,
+	 * seq + length).
+	 */
+	private void put(long seq, Object[] src, int offset, int length) {
+		int pos = index(seq);
+		int first = Math.min(length, ring.length - pos);
+		System.arraycopy(src, offset, ring, pos, first);
+		System.arraycopy(src, offset + first, ring, 0, length - first);
+	}
+
+	/**
+	 * Copies the items [from, to) into dest[0, to - from).
+	 */
+	private Object[] copy(long from, long to, Object[] dest) {
+		int length = (int) (to - from);
+		int pos = index(from);
+		int first = Math.min(length, ring.length - pos);
+		System.arraycopy(ring, pos, dest, 0, first);
+		System.arraycopy(ring, 0, dest, first, length - first);
+		return dest;
+	}
+
+	/**
+	 * Clears the slots of the items [from, to), so that the dropped items can
+	 * be garbage collected.
+	 */
+	private void release(long from, long to) {
+		int length = (int) (to - from);
+		int pos = index(from);
+		int first = Math.min(length, ring.length - pos);
+		Arrays.fill(ring, pos, pos + first, null);
+		Arrays.fill(ring, 0, length - first, null);
+	}
+}
@@ -0,0 +1,266 @@
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.mit.streamjit.impl.blob.AbstractBuffer;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.distributed.controller.AppInstance;
+
+/**
+ * Per {@link AppInstance} tail buffer of the {@link TailBufferMergerSeamless}.
+ * Items are kept in a linked list of fixed size array segments. A filled
+ * segment is never copied or moved; {@link #drainTo(Buffer, int)} writes
+ * straight from the segments to the final tail buffer and
+ * {@link #skip(int)} discards the duplicate output just by advancing the read
+ * index, dropping the consumed segments by reference. Consumed segments are
+ * cleared and reused by the writer, so only about capacity / 4096 segments
+ * are ever allocated.
+ * <p>
+ * The writer and the reader each publish a running count of the items they
+ * have written or read with an ordered store, once per call. So a single item
+ * write costs one volatile read and one ordered store, and a bulk write copies
+ * whole runs into the segments.
+ * <p>
+ * Like {@link AbstractBuffer}, supports at most one reader (the merger) and one
+ * writer (the {@link TailChannel}) at once.
+ *
+ * @author sumanan
+ * @since 25 Oct, 2016
+ */
+public final class SegmentedBuffer extends AbstractBuffer {
+
+	private static final int segmentLength = 4096;
+
+	private final int capacity;
+
+	private final ConcurrentLinkedQueue<Segment> segments;
+
+	/**
+	 * Fully read segments, ready to be reused by the writer.
+	 */
+	private final ConcurrentLinkedQueue<Segment> freeSegments;
+
+	/**
+	 * Total number of items written so far. Only the writer updates this,
+	 * with {@link AtomicLong#lazySet(long)} after the items are in the
+	 * segments; so a reader that sees the count sees the items, too.
+	 */
+	private final AtomicLong writeCount;
+
+	/**
+	 * Total number of items read (or skipped) so far. Only the reader updates
+	 * this, after it is done with the items.
+	 */
+	private final AtomicLong readCount;
+
+	/**
+	 * Writer's own copy of {@link #writeCount}.
+	 */
+	private long written;
+
+	/**
+	 * Reader's own copy of {@link #readCount}.
+	 */
+	private long consumed;
+
+	/**
+	 * Segment that is being filled. Only the writer accesses this.
+	 */
+	private Segment writeSeg;
+
+	/**
+	 * Segment that is being read. Only the reader accesses this.
+	 */
+	private Segment readSeg;
+
+	public SegmentedBuffer(int capacity) {
+		this.capacity = capacity;
+		this.segments = new ConcurrentLinkedQueue<>();
+		this.freeSegments = new ConcurrentLinkedQueue<>();
+		this.writeCount = new AtomicLong(0);
+		this.readCount = new AtomicLong(0);
+	}
+
+	@Override
+	public Object read() {
+		Segment seg = readSegment();
+		if (seg == null)
+			return null;
+		Object o = seg.data[seg.start++];
+		readCount.lazySet(++consumed);
+		return o;
+	}
+
+	@Override
+	public int read(Object[] data, int offset, int length) {
+		int read = 0;
+		Segment seg;
+		while (read < length && (seg = readSegment()) != null) {
+			int n = Math.min(readable(seg), length - read);
+			System.arraycopy(seg.data, seg.start, data, offset + read, n);
+			seg.start += n;
+			consumed += n;
+			read += n;
+		}
+		if (read > 0)
+			readCount.lazySet(consumed);
+		return read;
+	}
+
+	@Override
+	public boolean write(Object t) {
+		if (written - readCount.get() >= capacity)
+			return false;
+		Segment seg = writeSegment();
+		seg.data[seg.end++] = t;
+		writeCount.lazySet(++written);
+		return true;
+	}
+
+	@Override
+	public int write(Object[] data, int offset, int length) {
+		int n = (int) Math.min(length, capacity - (written - readCount.get()));
+		int done = 0;
+		while (done < n) {
+			Segment seg = writeSegment();
+			int m = Math.min(segmentLength - seg.end, n - done);
+			System.arraycopy(data, offset + done, seg.data, seg.end, m);
+			seg.end += m;
+			done += m;
+		}
+		if (n > 0) {
+			written += n;
+			writeCount.lazySet(written);
+		}
+		return n;
+	}
+
+	@Override
+	public int size() {
+		return (int) (writeCount.get() - readCount.get());
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Writes up to max items directly from the segments to dst.
+	 *
+	 * @return number of items moved.
+	 */
+	public int drainTo(Buffer dst, int max) {
+		int moved = 0;
+		Segment seg;
+		while (moved < max && (seg = readSegment()) != null) {
+			int n = Math.min(readable(seg), max - moved);
+			int written = dst.write(seg.data, seg.start, n);
+			seg.start += written;
+			consumed += written;
+			moved += written;
+			if (written < n)
+				break;
+		}
+		if (moved > 0)
+			readCount.lazySet(consumed);
+		return moved;
+	}
+
+	/**
+	 * Discards up to count items without reading them.
+	 *
+	 * @return number of items discarded.
+	 */
+	public int skip(int count) {
+		int skipped = 0;
+		Segment seg;
+		while (skipped < count && (seg = readSegment()) != null) {
+			int n = Math.min(readable(seg), count - skipped);
+			seg.start += n;
+			consumed += n;
+			skipped += n;
+		}
+		if (skipped > 0)
+			readCount.lazySet(consumed);
+		return skipped;
+	}
+
+	/**
+	 * Discards all items. Must be called only when there is no writer.
+	 */
+	public void clear() {
+		skip(size());
+	}
+
+	/**
+	 * @return the segment to write to, taking a free or new one if the current
+	 *         one is full.
+	 */
+	private Segment writeSegment() {
+		if (writeSeg == null || writeSeg.end == segmentLength) {
+			Segment seg = freeSegments.poll();
+			if (seg == null)
+				seg = new Segment();
+			seg.start = 0;
+			seg.end = 0;
+			writeSeg = seg;
+			segments.add(seg);
+		}
+		return writeSeg;
+	}
+
+	/**
+	 * @return number of items of seg, from its read index, those have been
+	 *         published by the writer. The writer may be ahead of
+	 *         {@link #writeCount} in the current segment.
+	 */
+	private int readable(Segment seg) {
+		return (int) Math.min(seg.end - seg.start, writeCount.get() - consumed);
+	}
+
+	/**
+	 * @return the segment to read from, or null if there is nothing to read.
+	 *         Segments those are filled and fully read are unlinked, cleared
+	 *         and given back to the writer.
+	 */
+	private Segment readSegment() {
+		if (writeCount.get() == consumed)
+			return null;
+		while (true) {
+			if (readSeg == null) {
+				readSeg = segments.peek();
+				if (readSeg == null)
+					return null;
+			}
+			if (readSeg.start < readSeg.end)
+				return readSeg;
+			if (readSeg.end < segmentLength)
+				return null;
+			segments.poll();
+			Arrays.fill(readSeg.data, null);
+			freeSegments.add(readSeg);
+			readSeg = null;
+		}
+	}
+
+	private static final class Segment {
+
+		final Object[] data = new Object[segmentLength];
+
+		/**
+		 * Read index. Only the reader accesses this, except when the writer
+		 * resets a free segment.
+		 */
+		int start = 0;
+
+		/**
+		 * Write index. Only the writer writes this. The reader reads it only
+		 * after it has seen a {@link SegmentedBuffer#writeCount} that covers
+		 * the segment's items, and never reads past that count.
+		 */
+		int end = 0;
+	}
+}
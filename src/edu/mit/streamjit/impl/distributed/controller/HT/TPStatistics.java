@@ -1,5 +1,7 @@
 package edu.mit.streamjit.impl.distributed.controller.HT;
 
+import edu.mit.streamjit.impl.distributed.common.Options;
+
 /**
  * @author sumanan
  * @since 8 Mar, 2016
@@ -14,6 +16,15 @@ public interface TPStatistics {
 
 	void newThroughput(double throughput);
 
+	/**
+	 * @param periods
+	 *            number of the recent
+	 *            {@link Options#throughputMeasurementPeriod}s.
+	 * @return the average throughput (items per second) of the recent periods,
+	 *         or -1 if lesser periods have been measured so far.
+	 */
+	double recentThroughput(int periods);
+
 	public static class EmptyTPStatistics implements TPStatistics {
 
 		@Override
@@ -31,5 +42,10 @@ public interface TPStatistics {
 		@Override
 		public void newThroughput(double throughput) {
 		}
+
+		@Override
+		public double recentThroughput(int periods) {
+			return -1;
+		}
 	}
 }
\ No newline at end of file
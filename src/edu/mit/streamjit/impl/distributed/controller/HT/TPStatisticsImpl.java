@@ -68,6 +68,18 @@ public class TPStatisticsImpl implements TPStatistics {
 		checkDrop(throughput);
 	}
 
+	@Override
+	public double recentThroughput(int periods) {
+		int n = periods;
+		if (n < 1 || n > cb.data.length || cb.stored < n)
+			return -1;
+		int tail = cb.tail;
+		double tot = 0.0;
+		for (int i = 1; i <= n; i++)
+			tot += cb.data[(tail - i + cb.data.length) % cb.data.length];
+		return tot / n;
+	}
+
 	private void checkDrop(double throughput) {
 		if (appInstCount == 2) {
 			if (!isDropStarted && throughput < 0.8 * startAvg) {
@@ -216,6 +228,10 @@ public class TPStatisticsImpl implements TPStatistics {
 		double data[];
 		volatile int head;
 		volatile int tail;
+		/**
+		 * Total number of values stored so far.
+		 */
+		volatile long stored;
 
 		public CircularBuffer(int number) {
 			data = new double[number];
@@ -231,7 +247,9 @@ public class TPStatisticsImpl implements TPStatistics {
 		 */
 		public boolean store(Double value) {
 			// if (!bufferFull()) {
-			data[tail++] = value;
+			data[tail] = value;
+			stored++;
+			tail++;
 			if (tail == data.length) {
 				tail = 0;
 			}
@@ -9,7 +9,6 @@ import java.util.concurrent.Phaser;
 
 import edu.mit.streamjit.api.Output;
 import edu.mit.streamjit.impl.blob.Buffer;
-import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
 import edu.mit.streamjit.util.EventTimeLogger;
 
 /**
@@ -151,6 +150,10 @@ public abstract class TailBufferMergerSeamless implements TailBufferMerger {
 	 * @param readBuffer
 	 */
 	protected void copyToTailBuffer(final Buffer readBuffer) {
+		if (readBuffer instanceof SegmentedBuffer) {
+			copyToTailBuffer((SegmentedBuffer) readBuffer);
+			return;
+		}
 		int size = Math.min(readBuffer.size(), intermediateArray.length);
 		readBuffer.read(intermediateArray, 0, size);
 		int written = 0;
@@ -164,6 +167,18 @@ public abstract class TailBufferMergerSeamless implements TailBufferMerger {
 		}
 	}
 
+	/**
+	 * Zero-copy version of {@link #copyToTailBuffer(Buffer)}. Writes straight
+	 * from the segments of the readBuffer, without going through the
+	 * {@link #intermediateArray}.
+	 */
+	private void copyToTailBuffer(final SegmentedBuffer readBuffer) {
+		int size = Math.min(readBuffer.size(), intermediateArray.length);
+		int written = 0;
+		while (written < size)
+			written += readBuffer.drainTo(tailBuffer, size - written);
+	}
+
 	/**
 	 * wait for curBuf to be set.
 	 */
@@ -210,6 +225,11 @@ public abstract class TailBufferMergerSeamless implements TailBufferMerger {
 				continue;
 			}
 			min1 = Math.min(readBufSize, expected);
+			if (readBuffer instanceof SegmentedBuffer) {
+				// Just advances the read index. No copying.
+				expected -= ((SegmentedBuffer) readBuffer).skip(min1);
+				continue;
+			}
 			min2 = Math.min(min1, intermediateArray.length);
 			expected -= readBuffer.read(intermediateArray, 0, min2);
 		}
@@ -237,8 +257,8 @@ public abstract class TailBufferMergerSeamless implements TailBufferMerger {
 
 		private Queue<Buffer> createFreeBufferQueue() {
 			Queue<Buffer> q = new ArrayBlockingQueue<>(2);
-			q.add(new ConcurrentArrayBuffer(bufSize));
-			q.add(new ConcurrentArrayBuffer(bufSize));
+			q.add(new SegmentedBuffer(bufSize));
+			q.add(new SegmentedBuffer(bufSize));
 			return q;
 		}
 
@@ -254,9 +274,12 @@ public abstract class TailBufferMergerSeamless implements TailBufferMerger {
 			if (debug)
 				System.err.println("reclaimedBuffer Buf Size is = "
 						+ buf.size());
-			while (buf.size() > 0) {
-				buf.read(intArray, 0, intArray.length);
-			}
+			if (buf instanceof SegmentedBuffer)
+				((SegmentedBuffer) buf).clear();
+			else
+				while (buf.size() > 0) {
+					buf.read(intArray, 0, intArray.length);
+				}
 			freeBufferQueue.add(buf);
 		}
 	}
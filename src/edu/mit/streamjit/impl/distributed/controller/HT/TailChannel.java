@@ -73,6 +73,23 @@ public interface TailChannel extends BoundaryInputChannel, Counter {
 	 */
 	public long getFixedOutputTime(long timeout) throws InterruptedException;
 
+	/**
+	 * Same as {@link #getFixedOutputTime(long)}, but reports the interim
+	 * output counts to the race while measuring and returns early, with the
+	 * time estimated from the outputs received so far, once the race is lost.
+	 * Behaves as {@link #getFixedOutputTime(long)} if race is null.
+	 * 
+	 * @param timeout
+	 *            See {@link #getFixedOutputTime(long)}.
+	 * @param race
+	 *            See {@link MeasurementRace}.
+	 * @return the time(ms) to receive fixed number of outputs or -1 if timeout
+	 *         occurred.
+	 * @throws InterruptedException
+	 */
+	public long getFixedOutputTime(long timeout, MeasurementRace race)
+			throws InterruptedException;
+
 	/**
 	 * Resets all counters and other resources. Any thread blocked on either
 	 * {@link #getFixedOutputTime()} or {@link #getFixedOutputTime(long)} should
@@ -80,4 +97,22 @@ public interface TailChannel extends BoundaryInputChannel, Counter {
 	 */
 	public void reset();
 
+	/**
+	 * Sets the listener that is notified when the timed window of a
+	 * getFixedOutputTime() call, i.e., the window whose outputs are counted
+	 * after the skipped ones, opens and closes. A null listener removes the
+	 * current one.
+	 */
+	public void setTimedWindowListener(TimedWindowListener listener);
+
+	/**
+	 * Notified around the timed windows of a {@link TailChannel}. Called on
+	 * the measuring thread; implementations must not block.
+	 */
+	public interface TimedWindowListener {
+
+		public void timedWindowOpened();
+
+		public void timedWindowClosed();
+	}
 }
@@ -134,6 +134,8 @@ public class TailChannels {
 
 		protected final EventTimeLogger eLogger;
 
+		private volatile TimedWindowListener timedWindowListener;
+
 		protected abstract void releaseAndInitilize();
 
 		/**
@@ -231,6 +233,23 @@ public class TailChannels {
 		protected void countReset() {
 			countAtReset = counter.count();
 		}
+
+		@Override
+		public void setTimedWindowListener(TimedWindowListener listener) {
+			this.timedWindowListener = listener;
+		}
+
+		protected void timedWindowOpened() {
+			TimedWindowListener l = timedWindowListener;
+			if (l != null)
+				l.timedWindowOpened();
+		}
+
+		protected void timedWindowClosed() {
+			TimedWindowListener l = timedWindowListener;
+			if (l != null)
+				l.timedWindowClosed();
+		}
 	}
 
 	public static final class BlockingTailChannel1
@@ -306,7 +325,12 @@ public class TailChannels {
 			releaseAndInitilize();
 			skipLatch.await();
 			Stopwatch stopwatch = Stopwatch.createStarted();
-			steadyLatch.await();
+			timedWindowOpened();
+			try {
+				steadyLatch.await();
+			} finally {
+				timedWindowClosed();
+			}
 			stopwatch.stop();
 			long time = stopwatch.elapsed(TimeUnit.MILLISECONDS);
 			int cnt = countAfterReset();
@@ -317,16 +341,33 @@ public class TailChannels {
 		@Override
 		public long getFixedOutputTime(long timeout)
 				throws InterruptedException {
-			if (timeout < 1)
+			return getFixedOutputTime(timeout, null);
+		}
+
+		@Override
+		public long getFixedOutputTime(long timeout, MeasurementRace race)
+				throws InterruptedException {
+			if (timeout < 1 && race == null)
 				return getFixedOutputTime();
 
-			timeout = unnormalizedTime(timeout);
+			timeout = timeout < 1 ? Long.MAX_VALUE : unnormalizedTime(timeout);
 			releaseAndInitilize();
 			skipLatch.await();
+			int startCount = countAfterReset();
 			Stopwatch stopwatch = Stopwatch.createStarted();
-			while (steadyLatch.getCount() > 0
-					&& stopwatch.elapsed(TimeUnit.MILLISECONDS) < timeout) {
-				Thread.sleep(100);
+			timedWindowOpened();
+			try {
+				while (steadyLatch.getCount() > 0
+						&& stopwatch.elapsed(TimeUnit.MILLISECONDS) < timeout) {
+					Thread.sleep(100);
+					if (race != null
+							&& race.lost(countAfterReset() - startCount,
+									stopwatch.elapsed(TimeUnit.MILLISECONDS),
+									Options.outputCount))
+						return race.estimate(Options.outputCount);
+				}
+			} finally {
+				timedWindowClosed();
 			}
 
 			stopwatch.stop();
@@ -425,8 +466,13 @@ public class TailChannels {
 			releaseAndInitilize();
 			skipLatch.await();
 			stopWatch.start();
-			while (stopWatch.isRunning())
-				Thread.sleep(250);
+			timedWindowOpened();
+			try {
+				while (stopWatch.isRunning())
+					Thread.sleep(250);
+			} finally {
+				timedWindowClosed();
+			}
 			long time = stopWatch.elapsed(TimeUnit.MILLISECONDS);
 			int cnt = countAfterReset();
 			reportingTime(time);
@@ -436,16 +482,33 @@ public class TailChannels {
 		@Override
 		public long getFixedOutputTime(long timeout)
 				throws InterruptedException {
-			if (timeout < 1)
+			return getFixedOutputTime(timeout, null);
+		}
+
+		@Override
+		public long getFixedOutputTime(long timeout, MeasurementRace race)
+				throws InterruptedException {
+			if (timeout < 1 && race == null)
 				return getFixedOutputTime();
 
-			timeout = unnormalizedTime(timeout);
+			timeout = timeout < 1 ? Long.MAX_VALUE : unnormalizedTime(timeout);
 			releaseAndInitilize();
 			skipLatch.await();
+			int startCount = countAfterReset();
 			stopWatch.start();
-			while (stopWatch.isRunning()
-					&& stopWatch.elapsed(TimeUnit.MILLISECONDS) < timeout) {
-				Thread.sleep(250);
+			timedWindowOpened();
+			try {
+				while (stopWatch.isRunning()
+						&& stopWatch.elapsed(TimeUnit.MILLISECONDS) < timeout) {
+					Thread.sleep(250);
+					if (race != null
+							&& race.lost(countAfterReset() - startCount,
+									stopWatch.elapsed(TimeUnit.MILLISECONDS),
+									Options.outputCount))
+						return race.estimate(Options.outputCount);
+				}
+			} finally {
+				timedWindowClosed();
 			}
 
 			long time = stopWatch.elapsed(TimeUnit.MILLISECONDS);
@@ -506,6 +569,12 @@ public class TailChannels {
 
 		@Override
 		public long getFixedOutputTime() throws InterruptedException {
+			return getFixedOutputTime(0, null);
+		}
+
+		@Override
+		public long getFixedOutputTime(long timeout, MeasurementRace race)
+				throws InterruptedException {
 			releaseAndInitilize();
 			if (!waitForFirstOutput())
 				return -1;
@@ -513,8 +582,20 @@ public class TailChannels {
 			while (stopWatch.elapsed(TimeUnit.MILLISECONDS) < skipMills)
 				Thread.sleep(1);
 			int startCount = countAfterReset();
-			while (stopWatch.elapsed(TimeUnit.MILLISECONDS) < (skipMills + steadyMills))
-				Thread.sleep(1);
+			int steadyCount = totalCount - skipCount;
+			timedWindowOpened();
+			try {
+				while (stopWatch.elapsed(TimeUnit.MILLISECONDS) < (skipMills + steadyMills)) {
+					Thread.sleep(1);
+					if (race != null
+							&& race.lost(countAfterReset() - startCount,
+									stopWatch.elapsed(TimeUnit.MILLISECONDS)
+											- skipMills, steadyCount))
+						return race.estimate(steadyCount);
+				}
+			} finally {
+				timedWindowClosed();
+			}
 			int endCount = countAfterReset();
 			System.err.println(String.format("startCount=%d, endCount=%d",
 					startCount, endCount));
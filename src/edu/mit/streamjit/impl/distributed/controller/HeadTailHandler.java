@@ -14,11 +14,14 @@ import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryInputCh
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
+import edu.mit.streamjit.impl.distributed.common.CreditGate.Gated;
 import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.common.TCPConnection.TCPConnectionInfo;
 import edu.mit.streamjit.impl.distributed.controller.HT.HeadChannelSeamless;
 import edu.mit.streamjit.impl.distributed.controller.HT.HeadChannels;
 import edu.mit.streamjit.impl.distributed.controller.HT.HeadTail;
+import edu.mit.streamjit.impl.distributed.controller.HT.NodeTailChannel;
 import edu.mit.streamjit.impl.distributed.controller.HT.TailBufferMerger;
 import edu.mit.streamjit.impl.distributed.controller.HT.TailChannel;
 import edu.mit.streamjit.impl.distributed.controller.HT.TailChannels;
@@ -50,6 +53,13 @@ class HeadTailHandler {
 
 	private Thread headThread;
 
+	/**
+	 * {@link CreditGate} of the {@link #headChannel}. Null unless
+	 * {@link Options#creditFlowControl} is set and the head channel is
+	 * {@link Gated}.
+	 */
+	CreditGate headGate;
+
 	/**
 	 * A {@link BoundaryInputChannel} for the tail of the whole stream graph. If
 	 * the sink {@link Worker} happened to fall outside the {@link Controller},
@@ -80,21 +90,39 @@ class HeadTailHandler {
 			boolean needSeamless, TailBufferMerger tbMerger) {
 		Map<Token, ConnectionInfo> conInfoMap = aim.conInfoMap;
 		int multiplier = aim.appInst.multiplier;
-		ConnectionInfo tailconInfo = conInfoMap.get(app.tailToken);
-		assert tailconInfo != null : "No tail connection info exists in conInfoMap";
-		assert tailconInfo.getSrcID() == controller.controllerNodeID
-				|| tailconInfo.getDstID() == controller.controllerNodeID : "Tail channel should ends at the controller. "
-				+ tailconInfo;
-
 		HeadTail.Builder builder = HeadTail.builder();
 		builder.appInstId(aim.appInstId());
-		int skipCount = Math.max(Options.outputCount, multiplier * 5);
-		BufferWriteCounter bc = new BufferWriteCounter(tail);
-		builder.tailBuffer(tail);
-		builder.tailCounter(bc);
-		tailChannel = tailChannel(bc, tailconInfo, skipCount, aim.appInst,
-				aim.eLogger);
-		setHead(conInfoMap, head, aim, bc, needSeamless, tbMerger);
+		Counter tailCounter;
+		if (app.nodeOutput != null) {
+			// Node-local sink. Only the output counts come to the controller.
+			tailCounter = app.nodeOutputCounter;
+			builder.tailCounter(tailCounter);
+			tailChannel = new NodeTailChannel(tailCounter, String.format(
+					"NTC-%s-%d", app.tailToken.toString(), aim.appInst.id),
+					aim.eLogger);
+		} else {
+			ConnectionInfo tailconInfo = conInfoMap.get(app.tailToken);
+			assert tailconInfo != null : "No tail connection info exists in conInfoMap";
+			assert tailconInfo.getSrcID() == controller.controllerNodeID
+					|| tailconInfo.getDstID() == controller.controllerNodeID : "Tail channel should ends at the controller. "
+					+ tailconInfo;
+			int skipCount = Math.max(Options.outputCount, multiplier * 5);
+			BufferWriteCounter bc = new BufferWriteCounter(tail);
+			builder.tailBuffer(tail);
+			builder.tailCounter(bc);
+			tailCounter = bc;
+			tailChannel = tailChannel(bc, tailconInfo, skipCount, aim.appInst,
+					aim.eLogger);
+		}
+
+		if (app.nodeInput != null) {
+			// Node-local source. The node reads the input by itself.
+			if (needSeamless)
+				throw new IllegalStateException(
+						"Seamless reconfiguration needs the head at the controller.");
+			headChannel = null;
+		} else
+			setHead(conInfoMap, head, aim, tailCounter, needSeamless, tbMerger);
 		headTail = builder.build();
 	}
 
@@ -151,6 +179,11 @@ class HeadTailHandler {
 				throw new IllegalStateException(
 						"Head ConnectionInfo doesn't match");
 		}
+
+		if (Options.creditFlowControl && headChannel instanceof Gated) {
+			headGate = new CreditGate();
+			((Gated) headChannel).creditGate(headGate);
+		}
 	}
 
 	void startHead() {
@@ -43,7 +43,9 @@ import edu.mit.streamjit.impl.common.Configuration.IntParameter;
 import edu.mit.streamjit.impl.common.Configuration.Parameter;
 import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
 import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.controller.PartitionManager.AbstractPartitionManager;
+import edu.mit.streamjit.partitioner.BandwidthAwarePartitioner;
 
 public final class HotSpotTuning extends AbstractPartitionManager {
 
@@ -61,9 +63,65 @@ public final class HotSpotTuning extends AbstractPartitionManager {
 				"noOfMachines = %d, It must be > 0", noOfMachines));
 		PickHotSpots visitor = new PickHotSpots(noOfMachines);
 		app.streamGraph.visit(visitor);
+		if (Options.bandwidthAwarePartitioning && noOfMachines > 1)
+			seedPartition(visitor.builder, noOfMachines);
 		return visitor.builder.build();
 	}
 
+	/**
+	 * Sets the initial values of the worker to machine parameters and the cut
+	 * parameters as per the {@link BandwidthAwarePartitioner}'s partition, so
+	 * that the tuner starts from it. Each group goes to the machine of its
+	 * hot spot, and the group's cut is set to the number of leading workers
+	 * those are on the same machine.
+	 */
+	private void seedPartition(Configuration.Builder builder, int noOfMachines) {
+		Map<Worker<?, ?>, Integer> machineMap = bandwidthAwarePartition(app,
+				noOfMachines);
+		for (Map.Entry<Integer, List<Worker<?, ?>>> en : partitionGroup
+				.entrySet()) {
+			List<Worker<?, ?>> workerList = en.getValue();
+			int machine = machineMap.get(workerList.get(0));
+			@SuppressWarnings("unchecked")
+			SwitchParameter<Integer> sp = (SwitchParameter<Integer>) builder
+					.removeParameter(getParamName(en.getKey()));
+			builder.addParameter(new SwitchParameter<Integer>(sp.getName(),
+					Integer.class, machine, sp.getUniverse()));
+
+			String cutName = String.format("worker%dcut", en.getKey());
+			IntParameter cutParam = (IntParameter) builder
+					.removeParameter(cutName);
+			if (cutParam == null)
+				continue;
+			int cut = 1;
+			while (cut < workerList.size()
+					&& machineMap.get(workerList.get(cut)) == machine)
+				cut++;
+			cut = Math.max(cutParam.getMin(), Math.min(cut, cutParam.getMax()));
+			builder.addParameter(new IntParameter(cutName, cutParam
+					.getRange(), cut));
+		}
+	}
+
+	/**
+	 * @return machine of each worker. Machine IDs start from 1.
+	 */
+	private static <I, O> Map<Worker<?, ?>, Integer> bandwidthAwarePartition(
+			StreamJitApp<I, O> app, int noOfMachines) {
+		BandwidthAwarePartitioner<I, O> partitioner = new BandwidthAwarePartitioner<>(
+				app.workCosts());
+		List<Set<Worker<?, ?>>> partitions = partitioner.partitionEqually(
+				app.streamGraph, app.source, app.sink, noOfMachines);
+		System.out.println(String.format(
+				"BandwidthAwarePartitioner: steady state cut volume = %.1f",
+				partitioner.cutVolume()));
+		Map<Worker<?, ?>, Integer> machineMap = new HashMap<>();
+		for (int i = 0; i < partitions.size(); i++)
+			for (Worker<?, ?> w : partitions.get(i))
+				machineMap.put(w, i + 1);
+		return machineMap;
+	}
+
 	public Map<Integer, List<Set<Worker<?, ?>>>> partitionMap(
 			Configuration config) {
 		Map<Integer, Set<Worker<?, ?>>> partition = new HashMap<>();
@@ -109,6 +167,8 @@ public final class HotSpotTuning extends AbstractPartitionManager {
 			}
 		}
 
+		pinHeadTail(partition);
+
 		Map<Integer, List<Set<Worker<?, ?>>>> machineWorkerMap = new HashMap<>();
 		for (int machine : partition.keySet()) {
 			List<Set<Worker<?, ?>>> cycleMinimizedBlobs = new ArrayList<>();
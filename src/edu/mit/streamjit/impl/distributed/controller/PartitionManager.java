@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -16,6 +17,8 @@ import edu.mit.streamjit.api.Splitter;
 import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
 import edu.mit.streamjit.partitioner.AbstractPartitioner;
 
 /**
@@ -135,6 +138,36 @@ public interface PartitionManager {
 			return String.format("worker%dtomachine", id);
 		}
 
+		/**
+		 * Moves the source (sink) {@link Worker} to the {@link StreamNode}
+		 * that its node-local input (output) is pinned to, regardless of the
+		 * machine the configuration assigns. See {@link NodeLocalIO}.
+		 * 
+		 * @param partition
+		 *            machine to workers map that is being built from a
+		 *            configuration.
+		 */
+		protected void pinHeadTail(Map<Integer, Set<Worker<?, ?>>> partition) {
+			if (app.nodeInput != null)
+				moveWorker(app.source, app.nodeInput.nodeID, partition);
+			if (app.nodeOutput != null)
+				moveWorker(app.sink, app.nodeOutput.nodeID, partition);
+		}
+
+		private void moveWorker(Worker<?, ?> w, int machine,
+				Map<Integer, Set<Worker<?, ?>>> partition) {
+			Iterator<Set<Worker<?, ?>>> it = partition.values().iterator();
+			while (it.hasNext()) {
+				Set<Worker<?, ?>> workers = it.next();
+				workers.remove(w);
+				if (workers.isEmpty())
+					it.remove();
+			}
+			if (!partition.containsKey(machine))
+				partition.put(machine, new HashSet<Worker<?, ?>>());
+			partition.get(machine).add(w);
+		}
+
 		/**
 		 * Goes through all workers in workerset which is passed as argument,
 		 * find the workers which are interconnected and group them as a blob
@@ -148,7 +181,7 @@ public interface PartitionManager {
 		 *         Each worker set in the list is supposed to run in an
 		 *         individual blob.
 		 */
-		protected List<Set<Worker<?, ?>>> getConnectedComponents(
+		protected static List<Set<Worker<?, ?>>> getConnectedComponents(
 				Set<Worker<?, ?>> workerset) {
 			List<Set<Worker<?, ?>>> ret = new ArrayList<Set<Worker<?, ?>>>();
 			while (!workerset.isEmpty()) {
@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableMap;
 
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.DrainData;
 import edu.mit.streamjit.impl.distributed.common.CTRLCompilationInfo;
 import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessageElementHolder;
 import edu.mit.streamjit.impl.distributed.common.Options;
@@ -70,6 +71,9 @@ public abstract class SeamlessReconfigurer implements Reconfigurer {
 			prevHeadChnl = appManager.prevAIM.headTailHandler
 					.headChannelSeamless();
 			prevHeadChnl.limitSend(1);
+			// Drops a timed out checkpoint, so that the states go to
+			// AppInstanceManager#getState().
+			appManager.prevAIM.checkpoint = null;
 		}
 		preCompilation(aim);
 		aim.headTailHandler.setupHeadTail(appinst.app.headBuffer,
@@ -105,11 +109,62 @@ public abstract class SeamlessReconfigurer implements Reconfigurer {
 		Utils.printMemoryStatus();
 		if (aim.isRunning) {
 			aimRunning(aim);
+			if (appManager.checkpointer != null)
+				appManager.checkpointer.started(aim, initialState());
 			return 0;
 		} else
 			return 2;
 	}
 
+	/**
+	 * Replaces the current {@link AppInstance}, which has lost a node, with
+	 * appinst. The appinst starts from a checkpointed state and its head
+	 * channel sends the replay items before the inputs. See
+	 * {@link Checkpointer}.
+	 * 
+	 * @param state
+	 *            checkpointed state. Null if the appinst starts from scratch.
+	 * @param replay
+	 *            inputs those the failed {@link AppInstance} has received
+	 *            since the checkpoint.
+	 * @param skipCount
+	 *            number of the appinst's outputs those the failed
+	 *            {@link AppInstance} has already produced.
+	 * @return see {@link #reconfigure(AppInstance)}.
+	 */
+	int recover(AppInstance appinst, DrainData state, Object[] replay,
+			int skipCount) {
+		System.out.println(name + ": Recovering...");
+		event("Rcv" + appinst.id);
+		AppInstanceManager aim = appManager.createNewAIM(appinst);
+		appManager.preCompilation(aim,
+				Checkpointer.Checkpoint.stateSizes(state, appinst.app.tailToken));
+		aim.headTailHandler.setupHeadTail(appinst.app.headBuffer,
+				bufProvider.newBuffer(), aim, true, tailMerger);
+		tailMerger.newAppInst(aim.headTailHandler.headTail(), skipCount);
+		if (!aim.postCompilation())
+			return 2;
+
+		aim.headTailHandler.headChannelSeamless().replay(replay);
+		aim.startChannels();
+		if (state != null)
+			appManager.controller.sendToAll(new CTRLRMessageElementHolder(
+					new CTRLCompilationInfo.InitialState(state), aim.appInst.id));
+		aim.start();
+		appinst.app.tp.tpStatistics.cfgStarted(aim.appInstId());
+		event("S-" + aim.appInstId());
+		aimRunning(aim);
+		appManager.checkpointer.started(aim, state);
+		return 0;
+	}
+
+	/**
+	 * @return the state the current {@link AppInstance} has started from.
+	 */
+	protected DrainData initialState() {
+		return null;
+	}
+
 	protected abstract void aimRunning(AppInstanceManager aim);
 
 	protected abstract void compiled(AppInstanceManager aim);
@@ -207,6 +262,13 @@ public abstract class SeamlessReconfigurer implements Reconfigurer {
 			aim.requestDDsizes();
 		}
 
+		@Override
+		protected DrainData initialState() {
+			if (appManager.prevAIM == null)
+				return null;
+			return appManager.prevAIM.getState();
+		}
+
 		@Override
 		public int starterType() {
 			return 1;
@@ -21,6 +21,7 @@
  */
 package edu.mit.streamjit.impl.distributed.controller;
 
+import java.io.File;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import com.google.common.collect.ImmutableMap;
 
 import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.Input;
 import edu.mit.streamjit.api.OneToOneElement;
 import edu.mit.streamjit.api.Output;
 import edu.mit.streamjit.api.Pipeline;
@@ -53,13 +55,20 @@ import edu.mit.streamjit.impl.common.TimeLogger;
 import edu.mit.streamjit.impl.common.VerifyStreamGraph;
 import edu.mit.streamjit.impl.common.Workers;
 import edu.mit.streamjit.impl.common.drainer.BlobGraph;
+import edu.mit.streamjit.impl.compiler2.WorkCosts;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO.NodeInput;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO.NodeOutput;
 import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.common.Utils;
 import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager.NewConfiguration;
+import edu.mit.streamjit.impl.distributed.controller.HT.LatencyProbe;
+import edu.mit.streamjit.impl.distributed.controller.HT.NodeOutputCounter;
 import edu.mit.streamjit.impl.distributed.controller.HT.ThroughputPrinter;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
 import edu.mit.streamjit.impl.interp.Interpreter;
+import edu.mit.streamjit.util.ConfigurationUtils;
 import edu.mit.streamjit.util.EventTimeLogger;
 import edu.mit.streamjit.util.Pair;
 import edu.mit.streamjit.util.EventTimeLogger.FileEventTimeLogger;
@@ -119,15 +128,80 @@ public class StreamJitApp<I, O> {
 
 	public final ThroughputPrinter tp;
 
+	/**
+	 * Node-local input of the app, or null if the input is fed through the
+	 * controller. See {@link NodeLocalIO}.
+	 */
+	public final NodeInput nodeInput;
+
+	/**
+	 * Node-local output of the app, or null if the output comes to the
+	 * controller. See {@link NodeLocalIO}.
+	 */
+	public final NodeOutput nodeOutput;
+
+	/**
+	 * Output count that is reported by the node that writes the
+	 * {@link #nodeOutput}. null if {@link #nodeOutput} is null.
+	 */
+	public final NodeOutputCounter nodeOutputCounter;
+
+	/**
+	 * Measures the latency between the {@link #headBuffer} and the
+	 * {@link #tailBuffer}. null if {@link Options#latencySampling} is 0 or
+	 * either the input or the output is node-local.
+	 */
+	public final LatencyProbe latencyProbe;
+
 	// TODO: Make these variables final. Or add getter setter methods.
 	// Stream graph's total input and output rates when multiplier == 1.
 	public int steadyIn = -1;
 	public int steadyOut = -1;
 
+	/**
+	 * Configuration prefix under which measured {@link WorkCosts} are saved.
+	 */
+	private static final String workCostsPrefix = "workCosts";
+
+	/**
+	 * Work costs measured by profiling compiles so far (including earlier
+	 * runs), or null if nothing has been measured yet.
+	 */
+	private WorkCosts workCosts;
+
+	/**
+	 * True if {@link #workCosts} has been updated since it was last saved.
+	 */
+	private boolean workCostsDirty;
+
+	/**
+	 * True once a profiling compile has been requested, so that only the
+	 * first configuration without work costs pays for profiling.
+	 */
+	private boolean profileRequested;
+
 	public StreamJitApp(OneToOneElement<I, O> streamGraph, Output<O> output) {
+		this(streamGraph, null, output);
+	}
+
+	public StreamJitApp(OneToOneElement<I, O> streamGraph, Input<I> input,
+			Output<O> output) {
+		this(streamGraph, input, output, streamGraph.getClass()
+				.getSimpleName());
+	}
+
+	/**
+	 * @param name
+	 *            Name of the app. Logs, configurations and other files of the
+	 *            app are kept in a directory of this name. Instances of the
+	 *            same stream graph those run side by side need distinct names.
+	 *            See {@link Options#tuningGroups}.
+	 */
+	public StreamJitApp(OneToOneElement<I, O> streamGraph, Input<I> input,
+			Output<O> output, String name) {
 		this.streamGraph = streamGraph;
 		Pair<Worker<I, ?>, Worker<?, O>> srcSink = visit(streamGraph);
-		this.name = streamGraph.getClass().getSimpleName();
+		this.name = name;
 		this.topLevelClass = streamGraph.getClass().getName();
 		this.source = srcSink.first;
 		this.sink = srcSink.second;
@@ -142,9 +216,76 @@ public class StreamJitApp<I, O> {
 		tailToken = Token.createOverallOutputToken(sink);
 		logger = new TimeLoggers.FileTimeLogger(name);
 
+		nodeInput = input == null ? null : NodeLocalIO.nodeInput(input);
+		nodeOutput = NodeLocalIO.nodeOutput(output);
+		nodeOutputCounter = nodeOutput == null ? null
+				: new NodeOutputCounter();
+		latencyProbe = Options.latencySampling > 0 && nodeInput == null
+				&& nodeOutput == null && output != null ? new LatencyProbe(
+				Options.latencySampling) : null;
 		Pair<Buffer, ThroughputPrinter> p = tailBuffer(output);
-		tailBuffer = p.first;
+		tailBuffer = latencyProbe == null ? p.first : latencyProbe
+				.tail(p.first);
 		tp = p.second;
+		workCosts = loadWorkCosts();
+	}
+
+	/**
+	 * @return the work costs measured so far, or null if none.
+	 */
+	public synchronized WorkCosts workCosts() {
+		return workCosts;
+	}
+
+	/**
+	 * Returns true, once, if no work costs have been measured yet and the
+	 * next configuration should be compiled with profiling. Later calls
+	 * return false even if the profiling compile never reports costs.
+	 * 
+	 * @return true iff the caller should request a profiling compile.
+	 */
+	public synchronized boolean requestProfile() {
+		if (workCosts != null || profileRequested)
+			return false;
+		profileRequested = true;
+		return true;
+	}
+
+	/**
+	 * Merges newly measured work costs into the ones measured so far. Each
+	 * blob reports its own costs; call {@link #saveWorkCosts()} once the
+	 * configuration's reports are in.
+	 * 
+	 * @param measured
+	 *            work costs measured by a profiling compile of a blob.
+	 */
+	public synchronized void addWorkCosts(WorkCosts measured) {
+		workCosts = measured.merge(workCosts);
+		workCostsDirty = true;
+	}
+
+	/**
+	 * Saves the work costs if they changed since the last save, so that later
+	 * runs can compile with them from the start.
+	 */
+	public synchronized void saveWorkCosts() {
+		if (!workCostsDirty)
+			return;
+		Configuration cfg = Configuration.builder()
+				.putExtraData(WorkCosts.EXTRA_DATA_NAME, workCosts).build();
+		ConfigurationUtils.saveConfg(cfg, workCostsPrefix, name);
+		workCostsDirty = false;
+	}
+
+	private WorkCosts loadWorkCosts() {
+		File f = new File(String.format("%s%s%s%s%s_%s.cfg", name,
+				File.separator, ConfigurationUtils.configDir, File.separator,
+				workCostsPrefix, name));
+		if (!f.exists())
+			return null;
+		Configuration cfg = ConfigurationUtils.readConfiguration(name,
+				workCostsPrefix);
+		return cfg == null ? null : WorkCosts.of(cfg);
 	}
 
 	private EventTimeLogger eventTimeLogger() {
@@ -276,6 +417,11 @@ public class StreamJitApp<I, O> {
 		builder.putExtraData(GlobalConstants.TOPLEVEL_WORKER_NAME,
 				topLevelClass);
 		builder.putExtraData(GlobalConstants.APP_NAME, name);
+		if (nodeInput != null)
+			builder.putExtraData(NodeLocalIO.INPUT_EXTRA_DATA_NAME, nodeInput);
+		if (nodeOutput != null)
+			builder.putExtraData(NodeLocalIO.OUTPUT_EXTRA_DATA_NAME,
+					nodeOutput);
 		return builder;
 	}
 	public AppInstance newConfiguration(NewConfiguration newConfiguration) {
@@ -297,6 +443,17 @@ public class StreamJitApp<I, O> {
 	 */
 	public AppInstance newPartitionMap(
 			Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap) {
+		return newPartitionMap(partitionsMachineMap, null);
+	}
+
+	/**
+	 * Same as {@link #newPartitionMap(Map)}, but the returned AppInstance
+	 * carries the configuration. Used to run an existing configuration on a
+	 * different set of machines.
+	 */
+	public AppInstance newPartitionMap(
+			Map<Integer, List<Set<Worker<?, ?>>>> partitionsMachineMap,
+			Configuration configuration) {
 		BlobGraph bg;
 		try {
 			bg = AppInstance.verifyConfiguration(partitionsMachineMap);
@@ -304,7 +461,7 @@ public class StreamJitApp<I, O> {
 			return null;
 		}
 		return new AppInstance(this, appInstUniqueIDGen++,
-				partitionsMachineMap, null, bg);
+				partitionsMachineMap, configuration, bg);
 	}
 
 	private boolean isGraphStateful() {
@@ -319,6 +476,14 @@ public class StreamJitApp<I, O> {
 		if (output == null)
 			return new Pair<Buffer, ThroughputPrinter>(null, null);
 
+		if (nodeOutput != null) {
+			// The node writes the output. Only the count comes here.
+			ThroughputPrinter tp = measureThroughput ? new ThroughputPrinter(
+					nodeOutputCounter, name, null, "StreamJitApp",
+					"tailBuffer.txt") : null;
+			return new Pair<Buffer, ThroughputPrinter>(null, tp);
+		}
+
 		Buffer tail = OutputBufferFactory.unwrap(output).createWritableBuffer(
 				10000);
 		return measureThroughput(tail);
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -45,14 +46,25 @@ import edu.mit.streamjit.impl.distributed.common.ConfigurationString.Configurati
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Error.ErrorProcessor;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
+import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements.TimedWindow;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO;
 import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.common.SNMembershipElement.SNMembershipProcessor;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement.InputExhausted;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement.OutputCount;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement.SNNodeIOProcessor;
 import edu.mit.streamjit.impl.distributed.common.SNTimeInfo.SNTimeInfoProcessor;
 import edu.mit.streamjit.impl.distributed.common.SNTimeInfoProcessorImpl;
 import edu.mit.streamjit.impl.distributed.controller.SeamlessReconfigurer.SeamlessStatefulReconfigurer;
 import edu.mit.streamjit.impl.distributed.controller.SeamlessReconfigurer.SeamlessStatelessReconfigurer;
+import edu.mit.streamjit.impl.distributed.controller.HT.MeasurementRace;
+import edu.mit.streamjit.impl.distributed.controller.HT.TailChannel;
+import edu.mit.streamjit.impl.distributed.controller.HT.TailChannel.TimedWindowListener;
+import edu.mit.streamjit.impl.distributed.node.StreamNode;
 import edu.mit.streamjit.impl.distributed.profiler.MasterProfiler;
 import edu.mit.streamjit.impl.distributed.profiler.ProfilerCommand;
 import edu.mit.streamjit.impl.distributed.runtimer.Controller;
+import edu.mit.streamjit.impl.distributed.runtimer.StreamNodeAgent;
 
 /**
  * @author Sumanan sumanan@mit.edu
@@ -70,6 +82,8 @@ public class StreamJitAppManager {
 
 	private final SNTimeInfoProcessor timeInfoProcessor;
 
+	private final SNNodeIOProcessor nodeIOProcessor;
+
 	final MasterProfiler profiler;
 
 	public final AppDrainer appDrainer;
@@ -79,12 +93,31 @@ public class StreamJitAppManager {
 	volatile AppInstanceManager prevAIM = null;
 	volatile AppInstanceManager curAIM = null;
 
-	final int noOfnodes;
+	/**
+	 * Number of connected {@link StreamNode}s. Changes if nodes join or leave
+	 * the running app. See {@link ElasticNodeManager}.
+	 */
+	volatile int noOfnodes;
 
 	public final Reconfigurer reconfigurer;
 
+	final ElasticNodeManager elasticNodeManager;
+
+	/**
+	 * Null if {@link Options#checkpointInterval} is 0 or the
+	 * {@link #reconfigurer} can not recover from checkpoints.
+	 */
+	final Checkpointer checkpointer;
+
 	private final Map<Integer, AppInstanceManager> AIMs = new HashMap<>();
 
+	/**
+	 * Holds back the StreamNodes' speculative compilations while the tail
+	 * channel's timed window is open. Null if
+	 * {@link Options#speculativeCompilation} is 0.
+	 */
+	private final TimedWindowListener speculationPauser;
+
 	public StreamJitAppManager(Controller controller, StreamJitApp<?, ?> app,
 			ConnectionManager conManager) {
 		noOfnodes = controller.getAllNodeIDs().size();
@@ -92,11 +125,17 @@ public class StreamJitAppManager {
 		this.app = app;
 		this.conManager = conManager;
 		this.timeInfoProcessor = new SNTimeInfoProcessorImpl(app.logger);
+		this.nodeIOProcessor = new SNNodeIOProcessorImpl();
 		this.status = AppStatus.NOT_STARTED;
 		this.ep = new ErrorProcessorImpl();
 
 		appDrainer = new AppDrainer();
 		this.reconfigurer = reconfigurer(app.tailBuffer);
+		this.elasticNodeManager = new ElasticNodeManager(this);
+		this.checkpointer = Checkpointer.create(this);
+		this.speculationPauser = Options.speculativeCompilation < 1
+				? null
+				: new SpeculationPauser();
 		setNewApp(); // TODO: Makes IO communication. Find a good calling place.
 		profiler = setupProfiler();
 	}
@@ -109,6 +148,69 @@ public class StreamJitAppManager {
 		return timeInfoProcessor;
 	}
 
+	public SNNodeIOProcessor nodeIOProcessor() {
+		return nodeIOProcessor;
+	}
+
+	public SNMembershipProcessor membershipProcessor() {
+		return elasticNodeManager.membershipProcessor();
+	}
+
+	/**
+	 * Called by the {@link Controller} when a {@link StreamNode} has joined
+	 * the running app. See {@link Options#elasticNodes}.
+	 */
+	public void nodeJoined(StreamNodeAgent agent) {
+		elasticNodeManager.nodeJoined(agent);
+	}
+
+	/**
+	 * Called by the {@link Controller} when the connection with a
+	 * {@link StreamNode} has been lost without the node being released.
+	 */
+	public void nodeFailed(int nodeID) {
+		if (checkpointer != null)
+			checkpointer.nodeFailed(nodeID);
+		else
+			System.err.println(String.format(
+					"StreamNode %d has failed. Set Options.checkpointInterval to recover from node failures.",
+					nodeID));
+	}
+
+	/**
+	 * Reconfigures the app with the appinst, after adjusting its partitioning
+	 * to the current set of {@link StreamNode}s. All reconfigurations must go
+	 * through this method, so that they are serialized with the node
+	 * membership changes. See {@link Reconfigurer#reconfigure(AppInstance)}
+	 * for the return values.
+	 */
+	public synchronized int reconfigure(AppInstance appinst) {
+		return reconfigurer.reconfigure(elasticNodeManager.adjust(appinst));
+	}
+
+	/**
+	 * Asks the {@link StreamNode}s to compile the appinst's blobs in
+	 * background, so that a later {@link #reconfigure(AppInstance)} with the
+	 * appinst finds them already compiled. See
+	 * {@link Options#speculativeCompilation}.
+	 */
+	public synchronized void speculate(AppInstance appinst) {
+		if (Options.speculativeCompilation < 1)
+			return;
+		AppInstance adjusted = elasticNodeManager.adjust(appinst);
+		String json = adjusted.getDynamicConfiguration().build().toJson();
+		// Nodes reuse a speculated blob only if it was created with the same
+		// initial data sizes. Only the stateful seamless reconfigurer knows
+		// them in advance.
+		ImmutableMap<Token, Integer> drainDataSize = null;
+		if (curAIM != null && curAIM.isRunning
+				&& reconfigurer instanceof SeamlessStatefulReconfigurer)
+			drainDataSize = curAIM.getDDsizes();
+		controller.sendToAll(new CTRLRMessageElementHolder(
+				new ConfigurationString.ConfigurationString2(json,
+						ConfigType.SPECULATIVE, drainDataSize), -1));
+	}
+
 	private void setNewApp() {
 		controller.registerManager(this);
 		Configuration.Builder builder = app.getStaticConfiguration();
@@ -121,6 +223,11 @@ public class StreamJitAppManager {
 		boolean adaptiveReconfig = Options.Reconfigurer == 2 ? true : false;
 		boolean stateful = Options.useDrainData ? app.stateful : false;
 
+		// Seamless reconfigurers merge the tail buffers and feed the head at
+		// the controller. Node-local sources and sinks bypass the controller.
+		if (app.nodeInput != null || app.nodeOutput != null)
+			return new PauseResumeReconfigurer(this);
+
 		switch (Options.Reconfigurer) {
 			case 0 :
 				return new PauseResumeReconfigurer(this);
@@ -135,6 +242,25 @@ public class StreamJitAppManager {
 		}
 	}
 
+	/**
+	 * Tells the {@link StreamNode}s when the timed window of a measurement
+	 * opens and closes.
+	 */
+	private class SpeculationPauser implements TimedWindowListener {
+
+		@Override
+		public void timedWindowOpened() {
+			controller.sendToAll(new CTRLRMessageElementHolder(new TimedWindow(
+					true), -1));
+		}
+
+		@Override
+		public void timedWindowClosed() {
+			controller.sendToAll(new CTRLRMessageElementHolder(new TimedWindow(
+					false), -1));
+		}
+	}
+
 	public AppInstanceManager getAppInstManager(int appInstId) {
 		AppInstanceManager aim = AIMs.get(appInstId);
 		if (aim == null)
@@ -188,20 +314,47 @@ public class StreamJitAppManager {
 		// dp.drainer.stop();
 		appDrainer.stop();
 		reconfigurer.stop();
+		if (checkpointer != null)
+			checkpointer.stop();
 		System.out.println(String.format("%s: Stopped.", app.name));
 	}
 
 	public long getFixedOutputTime(long timeout) throws InterruptedException {
+		return getFixedOutputTime(timeout, null);
+	}
+
+	/**
+	 * See {@link TailChannel#getFixedOutputTime(long, MeasurementRace)}.
+	 */
+	public long getFixedOutputTime(long timeout, MeasurementRace race)
+			throws InterruptedException {
 		if (prevAIM != null)
 			prevAIM.waitToStop();
-		long time = curAIM.headTailHandler.tailChannel
-				.getFixedOutputTime(timeout);
+		// The Checkpointer may replace the curAIM while this thread waits.
+		AppInstanceManager curAIM = this.curAIM;
+		TailChannel tailChannel = curAIM.headTailHandler.tailChannel;
+		tailChannel.setTimedWindowListener(speculationPauser);
+		long time = tailChannel.getFixedOutputTime(timeout, race);
 		if (curAIM.apStsPro.error) {
 			return -1l;
 		}
 		return time;
 	}
 
+	/**
+	 * See {@link Controller#getCpuUsage(long)}.
+	 */
+	public Map<Integer, Double> cpuUsage(long timeout) {
+		return controller.getCpuUsage(timeout);
+	}
+
+	/**
+	 * See {@link Controller#getCoreCount()}.
+	 */
+	public Map<Integer, Integer> coreCount() {
+		return controller.getCoreCount();
+	}
+
 	public void drainingFinished(boolean isFinal, AppInstanceManager aim) {
 		reconfigurer.drainingFinished(isFinal, aim);
 		if (isFinal)
@@ -297,6 +450,34 @@ public class StreamJitAppManager {
 		}
 	}
 
+	/**
+	 * Processes the messages from the {@link StreamNode}s those run
+	 * node-local sources and sinks. See {@link NodeLocalIO}.
+	 */
+	private class SNNodeIOProcessorImpl implements SNNodeIOProcessor {
+
+		private final AtomicBoolean inputExhausted = new AtomicBoolean(false);
+
+		@Override
+		public void process(OutputCount outputCount) {
+			if (app.nodeOutputCounter != null)
+				app.nodeOutputCounter.update(outputCount.count);
+		}
+
+		@Override
+		public void process(InputExhausted inputExhausted) {
+			if (this.inputExhausted.getAndSet(true))
+				return;
+			// Do not block the StreamNodeAgent's receiver thread.
+			new Thread("DrainerThread") {
+				public void run() {
+					System.out.println("Input data finished");
+					appDrainer.drainFinal(true);
+				}
+			}.start();
+		}
+	}
+
 	public class AppDrainer {
 
 		/**
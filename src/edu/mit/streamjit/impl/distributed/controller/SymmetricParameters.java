@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.Joiner;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Pipeline;
+import edu.mit.streamjit.api.Splitjoin;
+import edu.mit.streamjit.api.Splitter;
+import edu.mit.streamjit.api.StreamVisitor;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.FloatParameter;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.impl.common.Configuration.Parameter;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.distributed.common.Options;
+
+/**
+ * Ties the parameters of structurally identical workers so that the tuner
+ * searches a smaller configuration space. Two workers are identical if they
+ * sit at the same position of splitjoin branches those have the same
+ * structure, i.e., the same worker classes with the same rates.
+ * <p>
+ * Only the per-worker and per-token compiler parameters (removal, fusion,
+ * unboxing, unrolling, switching, storage and connection types) are tied.
+ * The machine assignment is never tied, as placing the symmetric workers on
+ * different machines is the whole point of the partitioning. See
+ * {@link Options#tieSymmetricParameters}.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public class SymmetricParameters {
+
+	/**
+	 * Names of the tieable parameters. Every capturing group captures a
+	 * worker identifier.
+	 */
+	private static final List<Pattern> tieable = ImmutableList.of(
+			Pattern.compile("remove(\\d+)"), Pattern.compile("fuse(\\d+)"),
+			Pattern.compile("unboxInput(\\d+)"),
+			Pattern.compile("unboxOutput(\\d+)"),
+			Pattern.compile("Switching(\\d+)"),
+			Pattern.compile("UnrollCore\\d+Group(\\d+)"),
+			Pattern.compile("unboxStorageToken\\((\\w+)_(\\w+)\\)"),
+			Pattern.compile("(?:Internal|External)ArrayishToken\\((\\w+), (\\w+)\\)"),
+			Pattern.compile("UseDoubleBuffersToken\\((\\w+), (\\w+)\\)"),
+			Pattern.compile("ConnectionType-(-?\\d+):(-?\\d+)"));
+
+	/**
+	 * Maps each worker identifier to the smallest identifier of its
+	 * symmetric workers.
+	 */
+	private final Map<Integer, Integer> representatives;
+
+	/**
+	 * Tied parameter name to the name of the parameter whose value it shares.
+	 */
+	private final ImmutableMap<String, String> tied;
+
+	public SymmetricParameters(StreamJitApp<?, ?> app,
+			Configuration defaultCfg) {
+		this(app.streamGraph, defaultCfg);
+	}
+
+	/**
+	 * @param streamGraph
+	 *            a stream graph whose workers have their identifiers set.
+	 */
+	SymmetricParameters(OneToOneElement<?, ?> streamGraph,
+			Configuration defaultCfg) {
+		SymmetryVisitor visitor = new SymmetryVisitor();
+		streamGraph.visit(visitor);
+		this.representatives = visitor.representatives();
+		this.tied = tie(defaultCfg);
+		System.out.println(String.format(
+				"SymmetricParameters: %d of %d parameters are tied.",
+				tied.size(), defaultCfg.getParametersMap().size()));
+	}
+
+	/**
+	 * @return a copy of cfg without the tied parameters.
+	 */
+	public Configuration reduce(Configuration cfg) {
+		Configuration.Builder builder = Configuration.builder(cfg);
+		for (String name : tied.keySet())
+			if (cfg.getParameter(name) != null)
+				builder.removeParameter(name);
+		return builder.build();
+	}
+
+	/**
+	 * @return cfg with every missing tied parameter set to the value of the
+	 *         parameter it is tied to. A full configuration is returned as
+	 *         is.
+	 */
+	public Configuration expand(Configuration cfg) {
+		Configuration.Builder builder = null;
+		for (Map.Entry<String, String> en : tied.entrySet()) {
+			if (cfg.getParameter(en.getKey()) != null)
+				continue;
+			Parameter rep = cfg.getParameter(en.getValue());
+			if (rep == null)
+				continue;
+			if (builder == null)
+				builder = Configuration.builder(cfg);
+			builder.addParameter(rename(rep, en.getKey()));
+		}
+		return builder == null ? cfg : builder.build();
+	}
+
+	private ImmutableMap<String, String> tie(Configuration defaultCfg) {
+		Map<String, Parameter> params = defaultCfg.getParametersMap();
+		ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+		for (String name : new TreeSet<>(params.keySet())) {
+			String canonical = canonicalName(name);
+			if (canonical == null || canonical.equals(name))
+				continue;
+			Parameter rep = params.get(canonical);
+			if (rep != null && sameDomain(params.get(name), rep))
+				builder.put(name, canonical);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return the name with every worker identifier replaced by its
+	 *         representative, or null if the parameter is not tieable.
+	 */
+	private String canonicalName(String name) {
+		for (Pattern pattern : tieable) {
+			Matcher m = pattern.matcher(name);
+			if (!m.matches())
+				continue;
+			StringBuilder sb = new StringBuilder();
+			int last = 0;
+			for (int g = 1; g <= m.groupCount(); g++) {
+				sb.append(name, last, m.start(g));
+				sb.append(representative(m.group(g)));
+				last = m.end(g);
+			}
+			sb.append(name.substring(last));
+			return sb.toString();
+		}
+		return null;
+	}
+
+	private String representative(String id) {
+		try {
+			Integer rep = representatives.get(Integer.parseInt(id));
+			return rep == null ? id : rep.toString();
+		} catch (NumberFormatException ex) {
+			// "input" and "output" of the overall tokens.
+			return id;
+		}
+	}
+
+	private static boolean sameDomain(Parameter a, Parameter b) {
+		if (a.getClass() != b.getClass())
+			return false;
+		if (a instanceof IntParameter)
+			return ((IntParameter) a).getRange().equals(
+					((IntParameter) b).getRange());
+		if (a instanceof FloatParameter)
+			return ((FloatParameter) a).getRange().equals(
+					((FloatParameter) b).getRange());
+		if (a instanceof SwitchParameter)
+			return ((SwitchParameter<?>) a).getGenericParameter() == ((SwitchParameter<?>) b)
+					.getGenericParameter()
+					&& ((SwitchParameter<?>) a).getUniverse().equals(
+							((SwitchParameter<?>) b).getUniverse());
+		return false;
+	}
+
+	private static Parameter rename(Parameter p, String name) {
+		if (p instanceof IntParameter) {
+			IntParameter ip = (IntParameter) p;
+			return new IntParameter(name, ip.getRange(), ip.getValue());
+		} else if (p instanceof FloatParameter) {
+			FloatParameter fp = (FloatParameter) p;
+			return new FloatParameter(name, fp.getRange(), fp.getValue());
+		} else if (p instanceof SwitchParameter)
+			return renameSwitch((SwitchParameter<?>) p, name);
+		throw new IllegalArgumentException("Can not tie " + p);
+	}
+
+	private static <T> SwitchParameter<T> renameSwitch(SwitchParameter<T> p,
+			String name) {
+		return new SwitchParameter<T>(name, p.getGenericParameter(),
+				p.getValue(), p.getUniverse());
+	}
+
+	/**
+	 * Computes a structural signature of every stream element and unions the
+	 * workers of splitjoin branches those have the same signature.
+	 */
+	private static final class SymmetryVisitor extends StreamVisitor {
+
+		/**
+		 * Signature and the workers (in visiting order) of a stream element.
+		 */
+		private static final class Frame {
+			final StringBuilder sig = new StringBuilder();
+			final List<Integer> workers = new ArrayList<>();
+			final List<Frame> branches = new ArrayList<>();
+
+			void add(Worker<?, ?> w) {
+				sig.append(w.getClass().getName()).append(w.getPeekRates())
+						.append(w.getPopRates()).append(w.getPushRates())
+						.append(';');
+				workers.add(Workers.getIdentifier(w));
+			}
+
+			void add(Frame f) {
+				sig.append(f.sig);
+				workers.addAll(f.workers);
+			}
+		}
+
+		private final Deque<Frame> frames = new ArrayDeque<>();
+
+		private final Map<Integer, Integer> parent = new HashMap<>();
+
+		private int find(int id) {
+			Integer p = parent.get(id);
+			if (p == null || p == id)
+				return id;
+			int root = find(p);
+			parent.put(id, root);
+			return root;
+		}
+
+		private void union(int a, int b) {
+			int ra = find(a);
+			int rb = find(b);
+			if (ra != rb)
+				parent.put(Math.max(ra, rb), Math.min(ra, rb));
+		}
+
+		Map<Integer, Integer> representatives() {
+			Map<Integer, Integer> reps = new TreeMap<>();
+			for (int id : parent.keySet())
+				reps.put(id, find(id));
+			return reps;
+		}
+
+		@Override
+		public void beginVisit() {
+			frames.push(new Frame());
+		}
+
+		@Override
+		public void visitFilter(Filter<?, ?> filter) {
+			frames.peek().add(filter);
+		}
+
+		@Override
+		public boolean enterPipeline(Pipeline<?, ?> pipeline) {
+			frames.peek().sig.append("P(");
+			return true;
+		}
+
+		@Override
+		public void exitPipeline(Pipeline<?, ?> pipeline) {
+			frames.peek().sig.append(")");
+		}
+
+		@Override
+		public boolean enterSplitjoin(Splitjoin<?, ?> splitjoin) {
+			frames.push(new Frame());
+			return true;
+		}
+
+		@Override
+		public void visitSplitter(Splitter<?, ?> splitter) {
+			frames.peek().add(splitter);
+		}
+
+		@Override
+		public boolean enterSplitjoinBranch(OneToOneElement<?, ?> element) {
+			frames.push(new Frame());
+			return true;
+		}
+
+		@Override
+		public void exitSplitjoinBranch(OneToOneElement<?, ?> element) {
+			Frame branch = frames.pop();
+			frames.peek().branches.add(branch);
+		}
+
+		@Override
+		public void visitJoiner(Joiner<?, ?> joiner) {
+			Frame sj = frames.peek();
+			Frame first = sj.branches.isEmpty() ? null : sj.branches.get(0);
+			boolean symmetric = first != null;
+			for (Frame b : sj.branches)
+				symmetric &= b.sig.toString().equals(first.sig.toString());
+			sj.sig.append("SJ(");
+			for (Frame b : sj.branches) {
+				if (symmetric)
+					for (int i = 0; i < first.workers.size(); i++)
+						union(first.workers.get(i), b.workers.get(i));
+				sj.add(b);
+				sj.sig.append('|');
+			}
+			sj.sig.append(")");
+			sj.add(joiner);
+		}
+
+		@Override
+		public void exitSplitjoin(Splitjoin<?, ?> splitjoin) {
+			Frame sj = frames.pop();
+			frames.peek().add(sj);
+		}
+
+		@Override
+		public void endVisit() {
+		}
+	}
+}
@@ -109,6 +109,8 @@ public final class WorkerMachine extends AbstractPartitionManager {
 			partition.get(machine).add(w);
 		}
 
+		pinHeadTail(partition);
+
 		Map<Integer, List<Set<Worker<?, ?>>>> machineWorkerMap = new HashMap<>();
 		for (int machine : partition.keySet()) {
 			List<Set<Worker<?, ?>>> cycleMinimizedBlobs = new ArrayList<>();
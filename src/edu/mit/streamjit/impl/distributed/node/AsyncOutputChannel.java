@@ -4,15 +4,20 @@ import java.io.IOException;
 
 import com.google.common.collect.ImmutableList;
 
+import edu.mit.streamjit.impl.blob.AbstractWriteOnlyBuffer;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.distributed.common.AsyncTCPConnection;
 import edu.mit.streamjit.impl.distributed.common.AsyncTCPConnection.AsyncTCPBuffer;
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.Rewirable;
 import edu.mit.streamjit.impl.distributed.common.Connection;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
+import edu.mit.streamjit.impl.distributed.common.CreditGate.Gated;
 
-public class AsyncOutputChannel implements BoundaryOutputChannel {
+public class AsyncOutputChannel implements BoundaryOutputChannel, Gated,
+		Rewirable {
 
 	private volatile Connection con;
 
@@ -20,9 +25,15 @@ public class AsyncOutputChannel implements BoundaryOutputChannel {
 
 	private final ConnectionProvider conProvider;
 
-	private final ConnectionInfo conInfo;
+	private volatile ConnectionInfo conInfo;
 
-	private AsyncTCPBuffer buffer = null;
+	private SwitchableBuffer buffer = null;
+
+	/**
+	 * Credit gate of this channel. Null when credit based flow control is not
+	 * used.
+	 */
+	private volatile CreditGate gate;
 
 	private volatile boolean isFinal;
 
@@ -58,7 +69,7 @@ public class AsyncOutputChannel implements BoundaryOutputChannel {
 	}
 
 	@Override
-	public void stop(boolean isFinal) {
+	public synchronized void stop(boolean isFinal) {
 		while (con == null);
 		this.isFinal = isFinal;
 		if (!stopCalled) {
@@ -69,6 +80,9 @@ public class AsyncOutputChannel implements BoundaryOutputChannel {
 			}
 		}
 		stopCalled = true;
+		CreditGate gate = this.gate;
+		if (gate != null)
+			gate.close();
 	}
 
 	@Override
@@ -91,14 +105,91 @@ public class AsyncOutputChannel implements BoundaryOutputChannel {
 		return buffer;
 	}
 
+	@Override
+	public void creditGate(CreditGate gate) {
+		this.gate = gate;
+	}
+
 	private void makeConnection() {
 		if (con == null || !con.isStillConnected()) {
 			try {
 				con = conProvider.getConnection(conInfo);
-				buffer = new AsyncTCPBuffer((AsyncTCPConnection) con);
+				buffer = new SwitchableBuffer(tcpBuffer());
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
+
+	private Buffer tcpBuffer() {
+		Buffer tcpBuffer = new AsyncTCPBuffer((AsyncTCPConnection) con);
+		CreditGate gate = this.gate;
+		return gate == null ? tcpBuffer : gate.gatedBuffer(tcpBuffer);
+	}
+
+	/**
+	 * The blob keeps writing into the same {@link #buffer}. So, in a new
+	 * thread, detaches the buffer from the current connection, soft closes the
+	 * connection and attaches the buffer to the new connection. The blob's
+	 * writes fail until the new connection is established. @param rewired
+	 * runs once the current connection has been soft closed.
+	 */
+	@Override
+	public void rewire(ConnectionInfo conInfo, Runnable rewired) {
+		if (conInfo == null) {
+			rewired.run();
+			return;
+		}
+		new Thread(() -> switchConnection(conInfo, rewired), name
+				+ "-rewire").start();
+	}
+
+	private synchronized void switchConnection(ConnectionInfo newConInfo,
+			Runnable rewired) {
+		while (buffer == null);
+		if (stopCalled)
+			return;
+		buffer.detach();
+		try {
+			con.softClose();
+			conInfo = newConInfo;
+			System.out.println(name + " Rewiring to " + conInfo);
+			rewired.run();
+			con = conProvider.getConnection(conInfo);
+			buffer.attach(tcpBuffer());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forwards the writes to the buffer of the current connection. Writes
+	 * fail while no connection is attached.
+	 */
+	private static final class SwitchableBuffer extends AbstractWriteOnlyBuffer {
+
+		private Buffer target;
+
+		private SwitchableBuffer(Buffer target) {
+			this.target = target;
+		}
+
+		private synchronized void detach() {
+			target = null;
+		}
+
+		private synchronized void attach(Buffer target) {
+			this.target = target;
+		}
+
+		@Override
+		public synchronized boolean write(Object t) {
+			return target != null && target.write(t);
+		}
+
+		@Override
+		public synchronized int write(Object[] data, int offset, int length) {
+			return target == null ? 0 : target.write(data, offset, length);
+		}
+	}
 }
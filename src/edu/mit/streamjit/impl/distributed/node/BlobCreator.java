@@ -2,19 +2,29 @@ package edu.mit.streamjit.impl.distributed.node;
 
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
+import edu.mit.streamjit.api.StatefulFilter;
 import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Blob.Token;
@@ -23,10 +33,14 @@ import edu.mit.streamjit.impl.blob.DrainData;
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.Configuration.PartitionParameter;
 import edu.mit.streamjit.impl.common.Configuration.PartitionParameter.BlobSpecifier;
+import edu.mit.streamjit.impl.compiler2.CompilationArtifact;
+import edu.mit.streamjit.impl.distributed.common.Command;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
+import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
 import edu.mit.streamjit.impl.distributed.common.SNTimeInfo.CompilationTime;
 import edu.mit.streamjit.impl.distributed.common.Utils;
+import edu.mit.streamjit.util.ConfigurationUtils;
 
 /**
  * {@link ConfigurationProcessorImpl} refactored and all blob creation methods
@@ -38,6 +52,43 @@ import edu.mit.streamjit.impl.distributed.common.Utils;
  */
 public class BlobCreator {
 
+	/**
+	 * Compiles the blobs of upcoming configurations. A single low priority
+	 * thread, so that the speculative compilations disturb the running app
+	 * as little as possible. Its tasks wait for the
+	 * {@link #speculationWindow}. See {@link Options#speculativeCompilation}.
+	 */
+	private static final ThreadPoolExecutor speculativePool = new ThreadPoolExecutor(
+			1, 1, 0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<Runnable>(), r -> {
+				Thread t = new Thread(r, "SpeculativeCompiler");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			});
+
+	/**
+	 * Open while the app is running and is not being measured. See
+	 * {@link #openSpeculationWindow()}.
+	 */
+	private static final SpeculationWindow speculationWindow = new SpeculationWindow();
+
+	/**
+	 * Speculatively compiled blobs, by the configuration prefix, in the order
+	 * they were speculated. The real compilation of a configuration takes its
+	 * blobs instead of compiling them again. Keeps at most
+	 * {@link Options#speculativeCompilation} configurations.
+	 */
+	private static final LinkedHashMap<String, SpeculatedBlobs> speculatedBlobs = new LinkedHashMap<String, SpeculatedBlobs>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, SpeculatedBlobs> eldest) {
+			return size() > Math.max(1, Options.speculativeCompilation);
+		}
+	};
+
 	private final SNStreamJitApp app;
 	private final StreamNode streamNode;
 
@@ -64,59 +115,194 @@ public class BlobCreator {
 			if (blobList == null)
 				return blobSet.build();
 
+			String cfgPrefix = ConfigurationUtils.getConfigPrefix(dyncfg
+					.getSubconfiguration("blobConfigs"));
 			return blobset1(blobSet, blobList, creationLogic, app.source,
-					appInstId);
+					appInstId, takeSpeculated(cfgPrefix, creationLogic));
 
 		} else
 			return null;
 	}
 
 	/**
-	 * Compiles the blobs in parallel.
+	 * Compiles this node's blobs of the dynamic configuration in background
+	 * and keeps them for the configuration's real compilation (see
+	 * {@link #getBlobs(Configuration, CreationLogic, int)}). Compiler2 also
+	 * saves its {@link CompilationArtifact}s, if enabled, as a side effect. No
+	 * compilation time is reported to the controller. At most
+	 * {@link Options#speculativeCompilation} configurations are kept waiting;
+	 * the oldest ones, which the controller has already moved past, are
+	 * dropped.
 	 */
-	private ImmutableSet<Blob> blobset1(ImmutableSet.Builder<Blob> blobSet,
-			List<BlobSpecifier> blobList, CreationLogic creationLogic,
-			Worker<?, ?> source, int appInstId) {
-		Set<Future<Blob>> futures = new HashSet<>();
-		ExecutorService executerSevce = Executors.newFixedThreadPool(blobList
-				.size());
+	public void speculate(Configuration dyncfg, CreationLogic creationLogic) {
+		PartitionParameter partParam = dyncfg.getParameter(
+				GlobalConstants.PARTITION, PartitionParameter.class);
+		if (partParam == null || app.streamGraph == null)
+			return;
+		List<BlobSpecifier> blobList = partParam.getBlobsOnMachine(streamNode
+				.getNodeID());
+		if (blobList == null)
+			return;
+		String cfgPrefix = ConfigurationUtils.getConfigPrefix(dyncfg
+				.getSubconfiguration("blobConfigs"));
+		while (speculativePool.getQueue().size() >= Math.max(1,
+				Options.speculativeCompilation))
+			speculativePool.getQueue().poll();
+		speculativePool.execute(new SpeculativeCompilation(cfgPrefix,
+				blobList, creationLogic));
+	}
 
-		for (BlobSpecifier bs : blobList) {
-			MakeBlob mb = new MakeBlob(bs, source, creationLogic, appInstId);
-			Future<Blob> f = executerSevce.submit(mb);
-			futures.add(f);
+	/**
+	 * Drops the waiting speculative compilation of the configuration, if any.
+	 * Called before the configuration's real compilation, which makes it
+	 * useless.
+	 */
+	public void cancelSpeculation(Configuration dyncfg) {
+		String cfgPrefix = ConfigurationUtils.getConfigPrefix(dyncfg
+				.getSubconfiguration("blobConfigs"));
+		speculativePool.getQueue().removeIf(
+				r -> ((SpeculativeCompilation) r).cfgPrefix.equals(cfgPrefix));
+	}
+
+	/**
+	 * Lets the speculative compilations run. Called when a new configuration
+	 * starts to run and when the controller's timed measurement window
+	 * closes; the cores the measured app leaves idle are used to compile the
+	 * upcoming configurations.
+	 */
+	public static void openSpeculationWindow() {
+		speculationWindow.open();
+	}
+
+	/**
+	 * Holds back the speculative compilations those have not started yet.
+	 * Called when this node starts to compile a new configuration, which is
+	 * on the reconfiguration's critical path, and when the controller's timed
+	 * measurement window opens. A blob that is already being compiled is
+	 * finished; Compiler2 can not be paused.
+	 */
+	public static void closeSpeculationWindow() {
+		speculationWindow.close();
+	}
+
+	/**
+	 * Removes and returns the speculated blobs of the configuration, along
+	 * with all configurations speculated before it. Returns null if the
+	 * configuration has not been speculated or its blobs were created
+	 * differently (see {@link CreationLogic#sameBlobs(CreationLogic)}).
+	 */
+	private static Map<Token, Blob> takeSpeculated(String cfgPrefix,
+			CreationLogic creationLogic) {
+		synchronized (speculatedBlobs) {
+			if (!speculatedBlobs.containsKey(cfgPrefix))
+				return null;
+			Iterator<Map.Entry<String, SpeculatedBlobs>> it = speculatedBlobs
+					.entrySet().iterator();
+			while (true) {
+				Map.Entry<String, SpeculatedBlobs> en = it.next();
+				it.remove();
+				if (!en.getKey().equals(cfgPrefix))
+					continue;
+				SpeculatedBlobs sb = en.getValue();
+				sb.taken = true;
+				if (!sb.creationLogic.sameBlobs(creationLogic))
+					return null;
+				return sb.blobs;
+			}
 		}
+	}
 
-		executerSevce.shutdown();
+	/**
+	 * Creates only the blob with id=@param blobID, which the dynamic
+	 * configuration places on the node @param nodeID. Used to migrate a blob
+	 * from another node.
+	 * 
+	 * @return the blob or null if the blob could not be created.
+	 */
+	public Blob getBlob(Configuration dyncfg, CreationLogic creationLogic,
+			int nodeID, Token blobID, int appInstId) {
+		PartitionParameter partParam = dyncfg.getParameter(
+				GlobalConstants.PARTITION, PartitionParameter.class);
+		if (partParam == null)
+			throw new IllegalArgumentException(
+					"Partition parameter is not available in the received configuraion");
+
+		List<BlobSpecifier> blobList = partParam.getBlobsOnMachine(nodeID);
+		if (app.streamGraph == null || blobList == null)
+			return null;
 
-		while (!executerSevce.isTerminated()) {
+		for (BlobSpecifier bs : blobList) {
+			if (!Utils.getblobID(bs.getWorkers(app.source)).equals(blobID))
+				continue;
 			try {
-				Thread.sleep(200);
-			} catch (InterruptedException e) {
+				return new MakeBlob(bs, app.source, creationLogic, appInstId,
+						null).call();
+			} catch (Exception e) {
 				e.printStackTrace();
+				return null;
 			}
 		}
+		throw new IllegalArgumentException(String.format(
+				"No blob with blobID %s on node %d", blobID, nodeID));
+	}
 
-		for (Future<Blob> f : futures) {
-			Blob b;
+	/**
+	 * Compiles the blobs in parallel, one thread per blob, except the ones
+	 * those have already been compiled speculatively. Blobs are collected in
+	 * their completion order, so a failed blob is noticed as soon as it fails.
+	 * <p>
+	 * Nothing else overlaps with the compilation. Final buffer sizing
+	 * ({@link BufferManager#initialise2(java.util.Map)}) needs the
+	 * controller's ILP result, which needs the buffer requirements of every
+	 * blob of every node. The boundary channels need the final buffer sizes,
+	 * and connect only at {@link Command#START_CHANNELS}; connecting them
+	 * earlier would need every peer, including the controller's head and
+	 * tail channels, to connect while compiling.
+	 */
+	private ImmutableSet<Blob> blobset1(ImmutableSet.Builder<Blob> blobSet,
+			List<BlobSpecifier> blobList, CreationLogic creationLogic,
+			Worker<?, ?> source, int appInstId, Map<Token, Blob> speculated) {
+		ExecutorService executerSevce = Executors.newFixedThreadPool(blobList
+				.size());
+		CompletionService<Blob> cs = new ExecutorCompletionService<>(
+				executerSevce);
+		Set<Future<Blob>> futures = new HashSet<>();
+		for (BlobSpecifier bs : blobList)
+			futures.add(cs.submit(new MakeBlob(bs, source, creationLogic,
+					appInstId, speculated)));
+		executerSevce.shutdown();
+
+		boolean failed = false;
+		for (int i = 0; i < futures.size(); i++) {
 			try {
-				b = f.get();
-				if (b == null)
-					return null;
+				Blob b = cs.take().get();
+				if (b == null) {
+					failed = true;
+					break;
+				}
 				blobSet.add(b);
 			} catch (InterruptedException | ExecutionException e) {
 				e.printStackTrace();
+				failed = true;
+				break;
 			}
 		}
 
+		if (failed) {
+			// No point to compile the rest of the blobs.
+			executerSevce.shutdownNow();
+			return null;
+		}
 		System.out.println("All blobs have been created");
 		return blobSet.build();
 	}
 
 	private void sendCompilationTime(Stopwatch sw, Token blobID, int appInstId) {
 		sw.stop();
-		CompilationTime ct = new CompilationTime(blobID,
-				sw.elapsed(TimeUnit.MILLISECONDS));
+		long time = sw.elapsed(TimeUnit.MILLISECONDS);
+		streamNode.eventTimeLogger.logEvent(
+				String.format("Compilation-%s", blobID), time);
+		CompilationTime ct = new CompilationTime(blobID, time);
 		try {
 			streamNode.controllerConnection
 					.writeObject(new SNMessageElementHolder(ct, appInstId));
@@ -160,18 +346,114 @@ public class BlobCreator {
 		return blobSet.build();
 	}
 
+	/**
+	 * Compiles a configuration's blobs, one after another, but only while the
+	 * {@link #speculationWindow} is open, and puts them in
+	 * {@link #speculatedBlobs}.
+	 */
+	private class SpeculativeCompilation implements Runnable {
+		private final String cfgPrefix;
+		private final List<BlobSpecifier> blobList;
+		private final CreationLogic creationLogic;
+
+		private SpeculativeCompilation(String cfgPrefix,
+				List<BlobSpecifier> blobList, CreationLogic creationLogic) {
+			this.cfgPrefix = cfgPrefix;
+			this.blobList = blobList;
+			this.creationLogic = creationLogic;
+		}
+
+		@Override
+		public void run() {
+			SpeculatedBlobs sb = new SpeculatedBlobs(creationLogic);
+			synchronized (speculatedBlobs) {
+				speculatedBlobs.put(cfgPrefix, sb);
+			}
+			for (BlobSpecifier bs : blobList) {
+				if (sb.taken)
+					return;
+				try {
+					speculationWindow.await();
+					ImmutableSet<Worker<?, ?>> workerset = bs
+							.getWorkers(app.source);
+					Blob b = creationLogic.create(bs.getBlobFactory(),
+							workerset, bs.getCores(),
+							bs.getWorkerIdentifiers());
+					// A stateful worker's state may change before the real
+					// compilation. Only its CompilationArtifact is kept.
+					if (b != null && isStateless(workerset))
+						sb.blobs.put(Utils.getblobID(workerset), b);
+				} catch (InterruptedException ex) {
+					return;
+				} catch (Exception ex) {
+					// The real compilation will report the error, if any.
+				} catch (OutOfMemoryError er) {
+					Utils.printOutOfMemory();
+				}
+			}
+		}
+	}
+
+	private static boolean isStateless(Set<Worker<?, ?>> workerset) {
+		for (Worker<?, ?> w : workerset)
+			if (w instanceof StatefulFilter)
+				return false;
+		return true;
+	}
+
+	/**
+	 * The blobs of a speculated configuration, and how they were created.
+	 */
+	private static final class SpeculatedBlobs {
+		private final CreationLogic creationLogic;
+		private final Map<Token, Blob> blobs = new ConcurrentHashMap<>();
+		/**
+		 * Set once the real compilation has taken the blobs. The rest of the
+		 * blobs are compiled there.
+		 */
+		private volatile boolean taken = false;
+
+		private SpeculatedBlobs(CreationLogic creationLogic) {
+			this.creationLogic = creationLogic;
+		}
+	}
+
+	private static final class SpeculationWindow {
+		private boolean open = false;
+
+		private synchronized void open() {
+			open = true;
+			notifyAll();
+		}
+
+		private synchronized void close() {
+			open = false;
+		}
+
+		private synchronized void await() throws InterruptedException {
+			while (!open)
+				wait();
+		}
+	}
+
 	private class MakeBlob implements Callable<Blob> {
 		private final BlobSpecifier bs;
 		private final CreationLogic creationLogic;
 		private final Worker<?, ?> source;
 		private final int appInstId;
+		/**
+		 * Speculatively compiled blobs of the configuration. May be null.
+		 */
+		private final Map<Token, Blob> speculated;
 
 		private MakeBlob(BlobSpecifier bs, Worker<?, ?> source,
-				CreationLogic creationLogic, int appInstId) {
+				CreationLogic creationLogic, int appInstId,
+				Map<Token, Blob> speculated) {
 			this.bs = bs;
 			this.source = source;
 			this.creationLogic = creationLogic;
 			this.appInstId = appInstId;
+			this.speculated = speculated;
 		}
 
 		@Override
@@ -183,8 +465,11 @@ public class BlobCreator {
 				BlobFactory bf = bs.getBlobFactory();
 				int maxCores = bs.getCores();
 				Stopwatch sw = Stopwatch.createStarted();
-				b = creationLogic.create(bf, workerset, maxCores,
-						workIdentifiers);
+				if (speculated != null)
+					b = speculated.remove(Utils.getblobID(workerset));
+				if (b == null)
+					b = creationLogic.create(bf, workerset, maxCores,
+							workIdentifiers);
 				sendCompilationTime(sw, Utils.getblobID(workerset), appInstId);
 			} catch (Exception ex) {
 				ex.printStackTrace();
@@ -213,6 +498,19 @@ public class BlobCreator {
 		public Blob create(BlobFactory bf,
 				ImmutableSet<Worker<?, ?>> workerset, int maxCores,
 				Set<Integer> workIdentifiers);
+
+		/**
+		 * @return <code>true</code> iff the other creates the same blobs as
+		 *         this, so that a blob created by either can be used in place
+		 *         of the other's.
+		 */
+		public boolean sameBlobs(CreationLogic other);
+	}
+
+	private static boolean sameConfigs(Configuration a, Configuration b) {
+		if (a == null || b == null)
+			return a == b;
+		return a.toJson().equals(b.toJson());
 	}
 
 	/**
@@ -238,6 +536,19 @@ public class BlobCreator {
 					.subset(workIdentifiers);
 			return bf.makeBlob(workerset, blobConfigs, maxCores, dd);
 		}
+
+		/**
+		 * Blobs created with drain data carry the drained state, which is
+		 * never the same twice.
+		 */
+		@Override
+		public boolean sameBlobs(CreationLogic other) {
+			if (!(other instanceof DrainDataCreationLogic))
+				return false;
+			DrainDataCreationLogic o = (DrainDataCreationLogic) other;
+			return drainData == null && o.drainData == null
+					&& sameConfigs(blobConfigs, o.blobConfigs);
+		}
 	}
 
 	/**
@@ -266,5 +577,15 @@ public class BlobCreator {
 			return bf.makeBlob(workerset, blobConfigs, maxCores,
 					initialDrainDataBufferSizes);
 		}
+
+		@Override
+		public boolean sameBlobs(CreationLogic other) {
+			if (!(other instanceof InitDataSizeCreationLogic))
+				return false;
+			InitDataSizeCreationLogic o = (InitDataSizeCreationLogic) other;
+			return Objects.equals(initialDrainDataBufferSizes,
+					o.initialDrainDataBufferSizes)
+					&& sameConfigs(blobConfigs, o.blobConfigs);
+		}
 	}
 }
@@ -53,6 +53,12 @@ class BlobDrainer {
 
 	final BlobsManagerImpl blobsManagerImpl;
 
+	/**
+	 * Set if the blob is being drained to migrate it to another node. See
+	 * {@link #migrate()}.
+	 */
+	private volatile boolean migrating = false;
+
 	BlobDrainer(BlobExecuter be) {
 		this.be = be;
 		drainState = 0;
@@ -79,6 +85,17 @@ class BlobDrainer {
 			doDrain(drainDataAction);
 	}
 
+	/**
+	 * Drains the blob to migrate it to another node. Unlike an ordinary
+	 * draining, flushes all output channels, does not send
+	 * {@link SNDrainElement.Drained} and, once drained, removes the blob from
+	 * {@link BlobsManagerImpl} so that the other blobs keep running.
+	 */
+	void migrate() {
+		migrating = true;
+		doDrain(DrainDataAction.SEND_BACK, true);
+	}
+
 	void doDrain(DrainDataAction drainDataAction) {
 		if (printDebugMsg)
 			System.out.println("Blob " + be.blobID + "is doDrain");
@@ -134,7 +151,8 @@ class BlobDrainer {
 		}
 
 		be.eLogger.bEvent("outChnlManager.waitToStop");
-		be.outChnlManager.stop(drainDataAction == DrainDataAction.FINISH);
+		be.outChnlManager.stop(drainDataAction == DrainDataAction.FINISH
+				|| migrating);
 		be.outChnlManager.waitToStop();
 		be.eLogger.eEvent("outChnlManager.waitToStop");
 
@@ -142,8 +160,10 @@ class BlobDrainer {
 			return;
 
 		drainState = 4;
-		SNMessageElement drained = new SNDrainElement.Drained(be.blobID);
-		blobsManagerImpl.sendToController(drained);
+		if (!migrating) {
+			SNMessageElement drained = new SNDrainElement.Drained(be.blobID);
+			blobsManagerImpl.sendToController(drained);
+		}
 		if (printDebugMsg)
 			System.out.println("Blob " + be.blobID + "is drained at mid");
 
@@ -164,7 +184,10 @@ class BlobDrainer {
 
 		be.blob = null;
 		this.blob = null;
-		blobsManagerImpl.drainedLastBlobActions();
+		if (migrating)
+			blobsManagerImpl.migratedOut(be);
+		else
+			blobsManagerImpl.drainedLastBlobActions();
 		if (printDebugMsg)
 			printDrainedStatus();
 	}
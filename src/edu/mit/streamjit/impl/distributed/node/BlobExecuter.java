@@ -78,6 +78,20 @@ class BlobExecuter {
 			ImmutableMap<Token, BoundaryInputChannel> inputChannels,
 			ImmutableMap<Token, BoundaryOutputChannel> outputChannels,
 			int starterType) {
+		this(blobsManagerImpl, t, blob, inputChannels, outputChannels,
+				starterType, blobsManagerImpl.affinityManager);
+	}
+
+	/**
+	 * @param affinityManager
+	 *            assigns cores to the blob's threads. Blobs those migrate in
+	 *            from other nodes are not known to the
+	 *            {@link BlobsManagerImpl#affinityManager}.
+	 */
+	BlobExecuter(BlobsManagerImpl blobsManagerImpl, Token t, Blob blob,
+			ImmutableMap<Token, BoundaryInputChannel> inputChannels,
+			ImmutableMap<Token, BoundaryOutputChannel> outputChannels,
+			int starterType, AffinityManager affinityManager) {
 		this.blobsManagerImpl = blobsManagerImpl;
 		this.blobID = t;
 		this.blob = blob;
@@ -95,7 +109,7 @@ class BlobExecuter {
 					blobsManagerImpl.appInstId, i);
 			blobThreads
 					.add(new BlobThread2(blob.getCoreCode(i), this, name,
-							blobsManagerImpl.affinityManager.getAffinity(t, i),
+							affinityManager.getAffinity(t, i),
 							i == 0));
 		}
 
@@ -23,9 +23,12 @@ package edu.mit.streamjit.impl.distributed.node;
 
 import java.util.Set;
 
+import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.distributed.common.CTRLCompilationInfo.CTRLCompilationInfoProcessor;
 import edu.mit.streamjit.impl.distributed.common.CTRLRDrainElement.CTRLRDrainProcessor;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.CTRLRMigrationProcessor;
 import edu.mit.streamjit.impl.distributed.common.Command.CommandProcessor;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
 import edu.mit.streamjit.impl.distributed.profiler.StreamNodeProfiler;
 
 /**
@@ -45,6 +48,8 @@ public interface BlobsManager {
 
 	public CTRLCompilationInfoProcessor getCompilationInfoProcessor();
 
+	public CTRLRMigrationProcessor getMigrationProcessor();
+
 	/**
 	 * For all final resource cleanup. Mainly all started threads must be
 	 * stopped safely.
@@ -54,6 +59,12 @@ public interface BlobsManager {
 	 */
 	public void stop();
 
+	/**
+	 * Grants credits to the sender of the boundary channel identified by the
+	 * token. See {@link CreditGate}.
+	 */
+	public void grantCredits(Token token, int credits);
+
 	/**
 	 * @return Set of profilers in this BlobManager.
 	 */
@@ -30,21 +30,29 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Sets;
 
+import edu.mit.streamjit.api.StatefulFilter;
+import edu.mit.streamjit.api.Worker;
 import edu.mit.streamjit.impl.blob.Blob;
 import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.blob.DrainData;
 import edu.mit.streamjit.impl.common.drainer.AbstractDrainer.DrainDataAction;
 import edu.mit.streamjit.impl.compiler2.Compiler2BlobHost;
 import edu.mit.streamjit.impl.distributed.common.AppStatus;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel;
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryInputChannel;
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.Rewirable;
 import edu.mit.streamjit.impl.distributed.common.CTRLCompilationInfo.CTRLCompilationInfoProcessor;
 import edu.mit.streamjit.impl.distributed.common.CTRLCompilationInfo.DDSizes;
 import edu.mit.streamjit.impl.distributed.common.CTRLCompilationInfo.FinalBufferSizes;
@@ -55,18 +63,31 @@ import edu.mit.streamjit.impl.distributed.common.CTRLRDrainElement.CTRLRDrainPro
 import edu.mit.streamjit.impl.distributed.common.CTRLRDrainElement.DoDrain;
 import edu.mit.streamjit.impl.distributed.common.CTRLRDrainElement.DrainDataRequest;
 import edu.mit.streamjit.impl.distributed.common.CTRLRDrainElement.ReduceCore;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.CTRLRMigrationProcessor;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.MigrateIn;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.MigrateOut;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.Rewire;
 import edu.mit.streamjit.impl.distributed.common.Command.CommandProcessor;
 import edu.mit.streamjit.impl.distributed.common.CompilationInfo.DrainDataSizes;
 import edu.mit.streamjit.impl.distributed.common.CompilationInfo.State;
+import edu.mit.streamjit.impl.distributed.common.CompilationInfo.WorkCostProfile;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
+import edu.mit.streamjit.impl.distributed.common.CreditGate.CreditSource;
+import edu.mit.streamjit.impl.distributed.common.CreditGate.Gated;
+import edu.mit.streamjit.impl.distributed.common.CreditGrant;
+import edu.mit.streamjit.impl.distributed.common.Machine;
 import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.common.SNMessageElement;
 import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
+import edu.mit.streamjit.impl.distributed.common.SNMigrationElement.MigratedIn;
+import edu.mit.streamjit.impl.distributed.common.SNMigrationElement.Rewired;
 import edu.mit.streamjit.impl.distributed.common.Utils;
 import edu.mit.streamjit.impl.distributed.node.BufferManagementUtils.BlobsBufferStatus;
 import edu.mit.streamjit.impl.distributed.node.BufferManagementUtils.BufferCleaner;
 import edu.mit.streamjit.impl.distributed.node.BufferManagementUtils.MonitorBuffers;
+import edu.mit.streamjit.impl.distributed.controller.BufferSizeCalc;
 import edu.mit.streamjit.impl.distributed.node.BufferManager.GlobalBufferManager;
 import edu.mit.streamjit.impl.distributed.profiler.SNProfileElement;
 import edu.mit.streamjit.impl.distributed.profiler.StreamNodeProfiler;
@@ -97,6 +118,8 @@ public class BlobsManagerImpl implements BlobsManager {
 
 	private final CTRLRDrainProcessor drainProcessor;
 
+	private final CTRLRMigrationProcessor migrationProcessor;
+
 	MonitorBuffers monBufs = null;
 
 	final StreamNode streamNode;
@@ -129,10 +152,37 @@ public class BlobsManagerImpl implements BlobsManager {
 
 	private final String cfgPrefix;
 
+	/**
+	 * Node-local source and sink of the app. See {@link NodeHeadTail}.
+	 */
+	final NodeHeadTail nodeHeadTail;
+
+	/**
+	 * {@link CreditGate}s of the output channels. Empty unless
+	 * {@link Options#creditFlowControl} is set.
+	 */
+	private final Map<Token, CreditGate> creditGates = new ConcurrentHashMap<>();
+
+	/**
+	 * Credits those have been granted before the {@link CreditGate} of their
+	 * channel was created. Guarded by {@link #creditGates}.
+	 */
+	private final Map<Token, Integer> pendingCredits = new HashMap<>();
+
+	/**
+	 * Input channels those grant credits to their senders. Empty unless
+	 * {@link Options#creditFlowControl} is set.
+	 */
+	private final Map<Token, CreditSource> creditSources = new ConcurrentHashMap<>();
+
+	private volatile CreditGranter creditGranter = null;
+
+	private final ImmutableSet<Blob> blobSet;
+
 	public BlobsManagerImpl(ImmutableSet<Blob> blobSet,
 			Map<Token, ConnectionInfo> conInfoMap, StreamNode streamNode,
 			ConnectionProvider conProvider, String appName, int appInstId,
-			int starterType, String cfgPrefix) {
+			int starterType, String cfgPrefix, NodeHeadTail nodeHeadTail) {
 		this.conInfoMap = conInfoMap;
 		this.streamNode = streamNode;
 		this.conProvider = conProvider;
@@ -140,13 +190,25 @@ public class BlobsManagerImpl implements BlobsManager {
 		this.starterType = starterType;
 		this.cfgPrefix = cfgPrefix;
 		this.appName = appName;
+		this.nodeHeadTail = nodeHeadTail;
+		this.blobSet = blobSet;
 
 		this.cmdProcessor = new CommandProcessorImpl();
 		this.drainProcessor = new CTRLRDrainProcessorImpl();
+		this.migrationProcessor = new CTRLRMigrationProcessorImpl();
 		this.compInfoProcessor = new CTRLCompilationInfoProcessorImpl(blobSet);
 		this.bufferManager = new GlobalBufferManager(blobSet, streamNode,
 				appInstId);
 		this.affinityManager = affinityManager(blobSet);
+	}
+
+	/**
+	 * Sends this node's buffer requirements to the controller, which replies
+	 * with {@link FinalBufferSizes}. Must be called after the message visitor
+	 * of this instance has been registered, so that the reply is never
+	 * dropped.
+	 */
+	void initialiseBuffers() {
 		bufferManager.initialise();
 		if (bufferManager.isbufferSizesReady())
 			createBEs(blobSet);
@@ -200,6 +262,10 @@ public class BlobsManagerImpl implements BlobsManager {
 		return compInfoProcessor;
 	}
 
+	public CTRLRMigrationProcessor getMigrationProcessor() {
+		return migrationProcessor;
+	}
+
 	private BlobExecuter getBE(Token blobID) {
 		for (BlobExecuter be : blobExecuters.values()) {
 			if (be.getBlobID().equals(blobID))
@@ -241,6 +307,8 @@ public class BlobsManagerImpl implements BlobsManager {
 			if (this.bufferCleaner != null)
 				this.bufferCleaner.stopit();
 
+			nodeHeadTail.stop();
+			stopCreditGranter();
 			unRegisterMe();
 			this.streamNode.eventTimeLogger.eTuningRound(cfgPrefix);
 			drainedLastBlobActionsDone = true;
@@ -292,6 +360,11 @@ public class BlobsManagerImpl implements BlobsManager {
 	 * manage all CPU and I/O threads those are related to the {@link Blob}s.
 	 */
 	public void start() {
+		nodeHeadTail.start();
+		if (!creditSources.isEmpty() && creditGranter == null) {
+			creditGranter = new CreditGranter();
+			creditGranter.start();
+		}
 		for (BlobExecuter be : blobExecuters.values())
 			be.starter.start();
 
@@ -329,6 +402,27 @@ public class BlobsManagerImpl implements BlobsManager {
 
 		if (bufferCleaner != null)
 			bufferCleaner.stopit();
+
+		nodeHeadTail.stop();
+		stopCreditGranter();
+	}
+
+	private void stopCreditGranter() {
+		if (creditGranter != null)
+			creditGranter.stopit();
+	}
+
+	@Override
+	public void grantCredits(Token token, int credits) {
+		synchronized (creditGates) {
+			CreditGate gate = creditGates.get(token);
+			if (gate != null)
+				gate.grant(credits);
+			else
+				// The receiver may start before this node has created the
+				// channel.
+				pendingCredits.merge(token, credits, Integer::sum);
+		}
 	}
 
 	@Override
@@ -342,7 +436,8 @@ public class BlobsManagerImpl implements BlobsManager {
 
 	private void createBEs(ImmutableSet<Blob> blobSet) {
 		assert bufferManager.isbufferSizesReady() : "Buffer sizes must be available to create BlobExecuters.";
-		blobExecuters = new HashMap<>();
+		// Concurrent, as blobs may migrate in and out while running.
+		blobExecuters = new ConcurrentHashMap<>();
 		Set<Token> locaTokens = bufferManager.localTokens();
 		ImmutableMap<Token, Integer> bufferSizesMap = bufferManager
 				.bufferSizes();
@@ -354,29 +449,121 @@ public class BlobsManagerImpl implements BlobsManager {
 					Sets.difference(b.getOutputs(), locaTokens), bufferSizesMap);
 			blobExecuters.put(t, new BlobExecuter(this, t, b, inputChannels,
 					outputChannels, starterType));
+			if (b instanceof Compiler2BlobHost)
+				((Compiler2BlobHost) b).onWorkCosts(costs -> sendToController(
+						new WorkCostProfile(t, costs)));
+		}
+		if (Options.numaLocalStorage)
+			printNativeStorageUsage(blobSet);
+	}
+
+	/**
+	 * Prints, per socket, the bytes of native storage the blobs' cores will
+	 * first-touch (and so Linux will place on that socket). Cores without
+	 * affinity, or whose affinity spans more than one socket, are reported as
+	 * unplaced.
+	 */
+	private void printNativeStorageUsage(ImmutableSet<Blob> blobSet) {
+		long[] socketBytes = new long[Machine.sockets];
+		long unplaced = 0;
+		for (Blob b : blobSet) {
+			if (!(b instanceof Compiler2BlobHost))
+				continue;
+			Compiler2BlobHost host = (Compiler2BlobHost) b;
+			Token t = Utils.getBlobID(b);
+			for (int i = 0; i < b.getCoreCount(); i++) {
+				long bytes = host.getNativeStorageBytes(i);
+				int socket = socketOf(affinityManager.getAffinity(t, i));
+				if (socket < 0)
+					unplaced += bytes;
+				else
+					socketBytes[socket] += bytes;
+			}
 		}
+		StringBuilder sb = new StringBuilder(String.format(
+				"%s: native storage per socket -", streamNode.getNodeID()));
+		for (int i = 0; i < socketBytes.length; i++)
+			sb.append(String.format(" socket%d=%dKB", i, socketBytes[i] / 1024));
+		if (unplaced > 0)
+			sb.append(String.format(" unplaced=%dKB", unplaced / 1024));
+		System.out.println(sb.toString());
+	}
+
+	/**
+	 * @return the socket all of the cpus are on, or -1 if there are no cpus
+	 *         or they span more than one socket.
+	 */
+	private static int socketOf(ImmutableSet<Integer> cpus) {
+		if (cpus == null || cpus.isEmpty())
+			return -1;
+		int socket = Machine.socketOf(cpus.iterator().next());
+		for (int cpu : cpus)
+			if (Machine.socketOf(cpu) != socket)
+				return -1;
+		return socket;
 	}
 
 	private ImmutableMap<Token, BoundaryInputChannel> createInputChannels(
 			Set<Token> inputTokens, ImmutableMap<Token, Integer> bufferMap) {
+		return createInputChannels(inputTokens, bufferMap, conInfoMap);
+	}
+
+	private ImmutableMap<Token, BoundaryInputChannel> createInputChannels(
+			Set<Token> inputTokens, ImmutableMap<Token, Integer> bufferMap,
+			Map<Token, ConnectionInfo> conInfoMap) {
 		ImmutableMap.Builder<Token, BoundaryInputChannel> inputChannelMap = new ImmutableMap.Builder<>();
 		for (Token t : inputTokens) {
+			String name = String.format("%s-%d", t.toString(), appInstId);
+			if (nodeHeadTail.isNodeLocal(t)) {
+				inputChannelMap.put(t,
+						nodeHeadTail.inputChannel(t, name, bufferMap.get(t)));
+				continue;
+			}
 			ConnectionInfo conInfo = conInfoMap.get(t);
-			inputChannelMap.put(t, conInfo.inputChannel(
-					String.format("%s-%d", t.toString(), appInstId),
-					bufferMap.get(t), conProvider));
+			BoundaryInputChannel chnl = conInfo.inputChannel(name,
+					bufferMap.get(t), conProvider);
+			if (Options.creditFlowControl && chnl instanceof CreditSource) {
+				CreditSource cs = (CreditSource) chnl;
+				cs.drainListener(this::drained);
+				creditSources.put(t, cs);
+			}
+			inputChannelMap.put(t, chnl);
 		}
 		return inputChannelMap.build();
 	}
 
 	private ImmutableMap<Token, BoundaryOutputChannel> createOutputChannels(
 			Set<Token> outputTokens, ImmutableMap<Token, Integer> bufferMap) {
+		return createOutputChannels(outputTokens, bufferMap, conInfoMap);
+	}
+
+	private ImmutableMap<Token, BoundaryOutputChannel> createOutputChannels(
+			Set<Token> outputTokens, ImmutableMap<Token, Integer> bufferMap,
+			Map<Token, ConnectionInfo> conInfoMap) {
 		ImmutableMap.Builder<Token, BoundaryOutputChannel> outputChannelMap = new ImmutableMap.Builder<>();
 		for (Token t : outputTokens) {
+			String name = String.format("%s-%d", t.toString(), appInstId);
+			if (nodeHeadTail.isNodeLocal(t)) {
+				outputChannelMap.put(t,
+						nodeHeadTail.outputChannel(t, name, bufferMap.get(t)));
+				continue;
+			}
 			ConnectionInfo conInfo = conInfoMap.get(t);
-			outputChannelMap.put(t, conInfo.outputChannel(
-					String.format("%s-%d", t.toString(), appInstId),
-					bufferMap.get(t), conProvider));
+			BoundaryOutputChannel chnl = conInfo.outputChannel(name,
+					bufferMap.get(t), conProvider);
+			// Tail channel's receiver, the controller, does not grant credits.
+			if (Options.creditFlowControl && !t.isOverallOutput()
+					&& chnl instanceof Gated) {
+				CreditGate gate = new CreditGate();
+				((Gated) chnl).creditGate(gate);
+				synchronized (creditGates) {
+					creditGates.put(t, gate);
+					Integer pending = pendingCredits.remove(t);
+					if (pending != null)
+						gate.grant(pending);
+				}
+			}
+			outputChannelMap.put(t, chnl);
 		}
 		return outputChannelMap.build();
 	}
@@ -390,6 +577,95 @@ public class BlobsManagerImpl implements BlobsManager {
 		}
 	}
 
+	/**
+	 * Called by the input channels' readers as their buffers drain.
+	 */
+	private void drained() {
+		CreditGranter cg = creditGranter;
+		if (cg != null)
+			cg.drained();
+	}
+
+	/**
+	 * Grants credits to the senders of the input channels as the input buffers
+	 * drain. The grants go to the controller, which forwards them to the
+	 * sender. See {@link CreditGate}.
+	 * <p>
+	 * Wakes up when an input channel reports that its buffer has drained (see
+	 * {@link CreditSource#drainListener(Runnable)}), and also every
+	 * {@link #maxWait} ms, so that consumption below the channels' reporting
+	 * threshold is granted eventually.
+	 */
+	private class CreditGranter extends Thread {
+
+		private final AtomicBoolean stopFlag = new AtomicBoolean(false);
+
+		/**
+		 * Keyed by the channel, not by its token. A blob that migrates back
+		 * to this node comes with new channels whose counts start at 0.
+		 */
+		private final Map<CreditSource, Integer> lastConsumed = new ConcurrentHashMap<>();
+
+		private static final long maxWait = 100;
+
+		private boolean drained = false;
+
+		CreditGranter() {
+			super(String.format("CreditGranter-%d", appInstId));
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			for (Map.Entry<Token, CreditSource> en : creditSources.entrySet())
+				sendToController(new CreditGrant(en.getKey(), en.getValue()
+						.initialCredits()));
+
+			while (!stopFlag.get()) {
+				try {
+					awaitDrain();
+				} catch (InterruptedException e) {
+					break;
+				}
+				for (Map.Entry<Token, CreditSource> en : creditSources
+						.entrySet()) {
+					Token t = en.getKey();
+					CreditSource cs = en.getValue();
+					int consumed = cs.consumed();
+					Integer last = lastConsumed.get(cs);
+					int credits = consumed - (last == null ? 0 : last);
+					if (credits > 0) {
+						lastConsumed.put(cs, consumed);
+						sendToController(new CreditGrant(t, credits));
+					}
+				}
+			}
+		}
+
+		private synchronized void awaitDrain() throws InterruptedException {
+			if (!drained && !stopFlag.get())
+				wait(maxWait);
+			drained = false;
+		}
+
+		synchronized void drained() {
+			drained = true;
+			notify();
+		}
+
+		synchronized void stopit() {
+			stopFlag.set(true);
+			notify();
+		}
+
+		/**
+		 * Drops the count of a channel that has been removed.
+		 */
+		void forget(CreditSource cs) {
+			lastConsumed.remove(cs);
+		}
+	}
+
 	/**
 	 * @param coreUsage
 	 *            in percentage
@@ -423,6 +699,9 @@ public class BlobsManagerImpl implements BlobsManager {
 
 		@Override
 		public void processSTART() {
+			// Speculate while the new configuration runs. The controller
+			// holds the speculation back during its timed window.
+			BlobCreator.openSpeculationWindow();
 			start();
 			System.out.println("StraemJit app is running...");
 			logMemoryStatus();
@@ -490,6 +769,145 @@ public class BlobsManagerImpl implements BlobsManager {
 		}
 	}
 
+	/**
+	 * Removes the blob that has been drained to migrate to another node. See
+	 * {@link BlobDrainer#migrate()}.
+	 */
+	void migratedOut(BlobExecuter be) {
+		blobExecuters.remove(be.blobID);
+		for (Token t : be.inChnlManager.inputChannelsMap().keySet()) {
+			CreditSource cs = creditSources.remove(t);
+			if (cs != null && creditGranter != null)
+				creditGranter.forget(cs);
+		}
+		synchronized (creditGates) {
+			for (Token t : be.outChnlManager.outputChannelsMap().keySet()) {
+				creditGates.remove(t);
+				pendingCredits.remove(t);
+			}
+		}
+		System.out.println(String.format("%s has migrated out.", be.blobID));
+	}
+
+	/**
+	 * Creates the blob that migrates from another node, its channels and
+	 * {@link BlobExecuter}, and starts it.
+	 */
+	private void migrateIn(MigrateIn migrateIn) {
+		Token blobID = migrateIn.blobID;
+		Blob b = streamNode.jp.compileMigratedBlob(migrateIn.cfgJson,
+				migrateIn.origNodeID, blobID, migrateIn.drainData, appInstId);
+		if (b == null) {
+			sendToController(new MigratedIn(blobID, false));
+			return;
+		}
+
+		ImmutableMap<Token, Integer> bufferSizes = migratedBufferSizes(b,
+				migrateIn.bufferSizes);
+		ImmutableMap<Token, BoundaryInputChannel> inputChannels = createInputChannels(
+				b.getInputs(), bufferSizes, migrateIn.conInfoMap);
+		ImmutableMap<Token, BoundaryOutputChannel> outputChannels = createOutputChannels(
+				b.getOutputs(), bufferSizes, migrateIn.conInfoMap);
+		// Starter2 runs the init schedule with the other blobs. A migrated
+		// blob resumes from its drain data instead.
+		BlobExecuter be = new BlobExecuter(this, blobID, b, inputChannels,
+				outputChannels, 1, new AffinityManagers.EmptyAffinityManager());
+		if (b instanceof Compiler2BlobHost)
+			((Compiler2BlobHost) b).onWorkCosts(costs -> sendToController(
+					new WorkCostProfile(blobID, costs)));
+		blobExecuters.put(blobID, be);
+		be.starter.startChannels();
+		be.starter.start();
+		grantInitialCredits(inputChannels.keySet());
+		System.out.println(String.format("%s has migrated in.", blobID));
+		sendToController(new MigratedIn(blobID, true));
+	}
+
+	/**
+	 * Same as {@link GlobalBufferManager}'s buffer sizes for boundary
+	 * channels.
+	 */
+	private ImmutableMap<Token, Integer> migratedBufferSizes(Blob b,
+			ImmutableMap<Token, Integer> finalInputBufSizes) {
+		ImmutableMap.Builder<Token, Integer> builder = ImmutableMap.builder();
+		for (Token t : b.getInputs())
+			builder.put(t, Math.max(1000, finalInputBufSizes.get(t)));
+		for (Token t : b.getOutputs()) {
+			int outbufSize = BufferSizeCalc.scaledSize(t,
+					ImmutableMap.of(t, b.getMinimumInitBufferCapacity(t)),
+					ImmutableMap.of(t, b.getMinimumSteadyBufferCapacity(t)));
+			builder.put(t, Math.max(1000, outbufSize));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Grants the initial credits of the new input channels, those the
+	 * {@link CreditGranter} granted at the start for the other channels.
+	 */
+	private void grantInitialCredits(Set<Token> inputTokens) {
+		if (creditGranter == null) {
+			if (!creditSources.isEmpty()) {
+				creditGranter = new CreditGranter();
+				creditGranter.start();
+			}
+			return;
+		}
+		for (Token t : inputTokens) {
+			CreditSource cs = creditSources.get(t);
+			if (cs != null)
+				sendToController(new CreditGrant(t, cs.initialCredits()));
+		}
+	}
+
+	private BoundaryChannel channel(Token t) {
+		for (BlobExecuter be : blobExecuters.values()) {
+			BoundaryChannel chnl = be.inChnlManager.inputChannelsMap().get(t);
+			if (chnl == null)
+				chnl = be.outChnlManager.outputChannelsMap().get(t);
+			if (chnl != null)
+				return chnl;
+		}
+		return null;
+	}
+
+	/**
+	 * {@link CTRLRMigrationProcessor} at {@link StreamNode} side.
+	 * 
+	 * @author Sumanan sumanan@mit.edu
+	 * @since 26 Oct, 2016
+	 */
+	private class CTRLRMigrationProcessorImpl implements
+			CTRLRMigrationProcessor {
+
+		@Override
+		public void process(Rewire rewire) {
+			BoundaryChannel chnl = channel(rewire.token);
+			if (chnl instanceof Rewirable) {
+				// Output channels confirm only once they have left the current
+				// connection.
+				((Rewirable) chnl).rewire(rewire.conInfo,
+						() -> sendToController(new Rewired(rewire.token, true)));
+				return;
+			}
+			System.err.println(String.format(
+					"%s: Channel %s can not be rewired.", appInstId,
+					rewire.token));
+			sendToController(new Rewired(rewire.token, false));
+		}
+
+		@Override
+		public void process(MigrateOut migrateOut) {
+			getBE(migrateOut.blobID).drainer.migrate();
+		}
+
+		@Override
+		public void process(MigrateIn migrateIn) {
+			// Compilation takes time. Keep the StreamNode thread responsive.
+			new Thread(() -> migrateIn(migrateIn)).start();
+		}
+	}
+
 	private class CTRLCompilationInfoProcessorImpl implements
 			CTRLCompilationInfoProcessor {
 
@@ -522,7 +940,7 @@ public class BlobsManagerImpl implements BlobsManager {
 		public void process(DDSizes ddSizes) {
 			List<ImmutableMap<Token, Integer>> sizeList = new ArrayList<>();
 			for (BlobExecuter be : blobExecuters.values()) {
-				sizeList.add(((Compiler2BlobHost) be.blob).getDDSizes());
+				sizeList.add(ddSizes(be.blob));
 			}
 
 			ImmutableMap<Token, Integer> sizeMap = CollectionUtils.union((key,
@@ -540,8 +958,43 @@ public class BlobsManagerImpl implements BlobsManager {
 		public void process(RequestState requestState) {
 			Token blobID = requestState.blobID;
 			BlobExecuter be = getBE(blobID);
-			((Compiler2BlobHost) be.blob).requestState(
-					requestState.sendStateAt, new StateCallback(blobID));
+			if (be.blob instanceof Compiler2BlobHost)
+				((Compiler2BlobHost) be.blob).requestState(
+						requestState.sendStateAt, new StateCallback(blobID));
+			else if (!isStateful(be.blob))
+				// The state of stateless workers is the same at every firing.
+				new StateCallback(blobID).sendState(new DrainData(
+						ImmutableMap.of(), ImmutableTable.of()));
+			else
+				System.err.println(String.format(
+						"%s: %s can not take its state at a firing. "
+								+ "The state request is ignored.",
+						appInstId, blobID));
+		}
+
+		/**
+		 * Only {@link Compiler2BlobHost}s record the drain data sizes. The
+		 * sizes of other blobs are taken from their drain data, if they have
+		 * drained.
+		 */
+		private ImmutableMap<Token, Integer> ddSizes(Blob blob) {
+			if (blob instanceof Compiler2BlobHost)
+				return ((Compiler2BlobHost) blob).getDDSizes();
+			DrainData dd = blob.getDrainData();
+			ImmutableMap.Builder<Token, Integer> builder = ImmutableMap
+					.builder();
+			if (dd != null)
+				for (Map.Entry<Token, ImmutableList<Object>> en : dd.getData()
+						.entrySet())
+					builder.put(en.getKey(), en.getValue().size());
+			return builder.build();
+		}
+
+		private boolean isStateful(Blob blob) {
+			for (Worker<?, ?> w : blob.getWorkers())
+				if (w instanceof StatefulFilter)
+					return true;
+			return false;
 		}
 	}
 
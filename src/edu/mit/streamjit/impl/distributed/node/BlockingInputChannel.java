@@ -37,9 +37,11 @@ import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
 import edu.mit.streamjit.impl.common.drainer.AbstractDrainer.DrainDataAction;
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryInputChannel;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.Rewirable;
 import edu.mit.streamjit.impl.distributed.common.Connection;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
+import edu.mit.streamjit.impl.distributed.common.CreditGate.CreditSource;
 
 /**
  * This is {@link BoundaryInputChannel} over TCP. Receive objects from TCP
@@ -55,7 +57,8 @@ import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
  * @author Sumanan sumanan@mit.edu
  * @since May 29, 2013
  */
-public class BlockingInputChannel implements BoundaryInputChannel {
+public class BlockingInputChannel implements BoundaryInputChannel,
+		CreditSource, Rewirable {
 
 	private final FileWriter writer;
 
@@ -63,11 +66,31 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 
 	private final Buffer buffer;
 
+	/**
+	 * The view of {@link #buffer} that the blob reads from. Tells the
+	 * {@link #drainListener} as the reads free the buffer.
+	 */
+	private final Buffer readBuffer;
+
 	private Buffer extraBuffer;
 
+	private volatile Runnable drainListener;
+
+	/**
+	 * Items read from {@link #readBuffer} since {@link #drainListener} was
+	 * last run.
+	 */
+	private final AtomicInteger readSinceDrain = new AtomicInteger();
+
 	private final ConnectionProvider conProvider;
 
-	private final ConnectionInfo conInfo;
+	private ConnectionInfo conInfo;
+
+	/**
+	 * New connection to move to once the peer soft closes the current one.
+	 * See {@link #rewire(ConnectionInfo)}.
+	 */
+	private volatile ConnectionInfo rewireTo;
 
 	private Connection connection;
 
@@ -81,6 +104,12 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 
 	int count;
 
+	/**
+	 * Number of items written into {@link #buffer} or {@link #extraBuffer} so
+	 * far. Only the channel's thread writes this.
+	 */
+	private volatile int received;
+
 	private ImmutableList<Object> unProcessedData;
 
 	public BlockingInputChannel(int bufSize, ConnectionProvider conProvider,
@@ -92,6 +121,7 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 	public BlockingInputChannel(Buffer buffer, ConnectionProvider conProvider,
 			ConnectionInfo conInfo, String bufferTokenName, int debugLevel) {
 		this.buffer = buffer;
+		this.readBuffer = new DrainNotifyingBuffer();
 		this.conProvider = conProvider;
 		this.conInfo = conInfo;
 		this.name = "BlockingInputChnl-" + bufferTokenName;
@@ -102,6 +132,7 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 		this.isClosed = false;
 		this.stopType = new AtomicInteger(0);
 		count = 0;
+		received = 0;
 		writer = fileWriter();
 	}
 
@@ -140,6 +171,8 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 				// [2015-11-8] calls receiveData() if stopType == 0 or 1.
 				while (stopType.get() < 2 && !softClosed) {
 					receiveData();
+					if (softClosed && rewireTo != null)
+						switchConnection();
 				}
 
 				if (!softClosed) {
@@ -179,7 +212,8 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 			if (debugLevel > 0)
 				debugMethod1(methodName, obj);
 
-			while (!this.buffer.write(obj)) {
+			boolean written;
+			while (!(written = this.buffer.write(obj))) {
 				if (debugLevel > 0)
 					debugMethod2(methodName, obj);
 
@@ -195,12 +229,14 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 					break;
 				} else if (stopType.get() == 2 && ++bufFullCount > 20) {
 					this.extraBuffer = new ExtraBuffer();
-					extraBuffer.write(obj);
+					written = extraBuffer.write(obj);
 					System.err.println(name + " : " + methodName
 							+ " : Writing extra data in to extra buffer");
 					break;
 				}
 			}
+			if (written)
+				received++;
 
 			if (debugLevel == 2 && count % 1000 == 0) {
 				System.out.println(name + " : " + count
@@ -274,6 +310,9 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 						break;
 					}
 				}
+				// The loop above only exits once obj is in buffer or
+				// extraBuffer.
+				received++;
 
 				if (debugLevel == 2 && count % 1000 == 0) {
 					System.out.println(name + " : " + count
@@ -351,6 +390,33 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 		} while (hasData);
 	}
 
+	/**
+	 * The peer has soft closed the current connection. Continues receiving
+	 * from the new connection. If the new connection can not be established,
+	 * moves on to a newer rewire, if one has arrived meanwhile. This happens
+	 * when a migration is rolled back.
+	 */
+	private void switchConnection() {
+		while (rewireTo != null) {
+			conInfo = rewireTo;
+			rewireTo = null;
+			System.out.println(name + " Rewiring to " + conInfo);
+			try {
+				connection = conProvider.getConnection(conInfo);
+				softClosed = false;
+				return;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public void rewire(ConnectionInfo conInfo, Runnable rewired) {
+		this.rewireTo = conInfo;
+		rewired.run();
+	}
+
 	private void reConnect() {
 		while (stopType.get() == 0) {
 			try {
@@ -484,6 +550,89 @@ public class BlockingInputChannel implements BoundaryInputChannel {
 
 	@Override
 	public Buffer getBuffer() {
-		return buffer;
+		return readBuffer;
+	}
+
+	@Override
+	public int consumed() {
+		Buffer extra = extraBuffer;
+		int buffered = buffer.size() + (extra == null ? 0 : extra.size());
+		return received - buffered;
+	}
+
+	@Override
+	public int initialCredits() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public void drainListener(Runnable listener) {
+		this.drainListener = listener;
+	}
+
+	/**
+	 * Counts the items read and runs the {@link #drainListener} once an eighth
+	 * of the buffer has been freed since its last run.
+	 */
+	private void read(int items) {
+		Runnable listener = drainListener;
+		if (listener == null || items <= 0)
+			return;
+		int threshold = Math.max(1, buffer.capacity() / 8);
+		if (readSinceDrain.addAndGet(items) >= threshold) {
+			readSinceDrain.set(0);
+			listener.run();
+		}
+	}
+
+	private final class DrainNotifyingBuffer implements Buffer {
+
+		@Override
+		public Object read() {
+			Object o = buffer.read();
+			if (o != null)
+				BlockingInputChannel.this.read(1);
+			return o;
+		}
+
+		@Override
+		public int read(Object[] data, int offset, int length) {
+			int read = buffer.read(data, offset, length);
+			BlockingInputChannel.this.read(read);
+			return read;
+		}
+
+		@Override
+		public boolean readAll(Object[] data) {
+			return readAll(data, 0);
+		}
+
+		@Override
+		public boolean readAll(Object[] data, int offset) {
+			if (!buffer.readAll(data, offset))
+				return false;
+			BlockingInputChannel.this.read(data.length - offset);
+			return true;
+		}
+
+		@Override
+		public boolean write(Object t) {
+			return buffer.write(t);
+		}
+
+		@Override
+		public int write(Object[] data, int offset, int length) {
+			return buffer.write(data, offset, length);
+		}
+
+		@Override
+		public int size() {
+			return buffer.size();
+		}
+
+		@Override
+		public int capacity() {
+			return buffer.capacity();
+		}
 	}
 }
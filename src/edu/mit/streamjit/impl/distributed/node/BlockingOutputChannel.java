@@ -32,9 +32,12 @@ import com.google.common.collect.ImmutableList;
 import edu.mit.streamjit.impl.blob.Buffer;
 import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
 import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.Rewirable;
 import edu.mit.streamjit.impl.distributed.common.Connection;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
+import edu.mit.streamjit.impl.distributed.common.CreditGate;
+import edu.mit.streamjit.impl.distributed.common.CreditGate.Gated;
 
 /**
  * This is {@link BoundaryOutputChannel} over TCP. Reads data from the given
@@ -48,7 +51,8 @@ import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
  * @author Sumanan sumanan@mit.edu
  * @since May 29, 2013
  */
-public class BlockingOutputChannel implements BoundaryOutputChannel {
+public class BlockingOutputChannel implements BoundaryOutputChannel, Gated,
+		Rewirable {
 
 	private final FileWriter writer;
 
@@ -58,7 +62,18 @@ public class BlockingOutputChannel implements BoundaryOutputChannel {
 
 	private final ConnectionProvider conProvider;
 
-	private final ConnectionInfo conInfo;
+	private ConnectionInfo conInfo;
+
+	/**
+	 * New connection to move to. See {@link #rewire(ConnectionInfo)}.
+	 */
+	private volatile ConnectionInfo rewireTo;
+
+	/**
+	 * Runs once the channel has left the current connection. See
+	 * {@link #rewire(ConnectionInfo, Runnable)}.
+	 */
+	private volatile Runnable rewired;
 
 	private Connection connection;
 
@@ -70,6 +85,18 @@ public class BlockingOutputChannel implements BoundaryOutputChannel {
 
 	private int count;
 
+	/**
+	 * Credit gate of this channel. Null when credit based flow control is not
+	 * used.
+	 */
+	private volatile CreditGate gate;
+
+	/**
+	 * Credits acquired from the {@link #gate} but not used yet. Only the
+	 * channel's thread reads and writes this.
+	 */
+	private int credits;
+
 	protected ImmutableList<Object> unProcessedData;
 
 	public BlockingOutputChannel(int bufSize, ConnectionProvider conProvider,
@@ -89,6 +116,7 @@ public class BlockingOutputChannel implements BoundaryOutputChannel {
 		this.debugLevel = debugLevel;
 		this.unProcessedData = null;
 		count = 0;
+		credits = 0;
 		writer = fileWriter();
 	}
 
@@ -122,8 +150,13 @@ public class BlockingOutputChannel implements BoundaryOutputChannel {
 			public void run() {
 				makeConnection();
 
-				while (!stopFlag.get())
+				// An interrupted channel stops sending, as if it were
+				// stopped. See hasCredit().
+				while (!stopFlag.get() && !Thread.currentThread().isInterrupted()) {
 					sendData();
+					if (rewireTo != null)
+						switchConnection();
+				}
 
 				if (isFinal)
 					finalSend();
@@ -138,11 +171,42 @@ public class BlockingOutputChannel implements BoundaryOutputChannel {
 	}
 
 	public final void sendData() {
-		while (this.buffer.size() > 0 && !stopFlag.get()) {
+		while (this.buffer.size() > 0 && !stopFlag.get() && rewireTo == null) {
+			try {
+				if (!hasCredit())
+					continue;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
 			send();
 		}
 	}
 
+	/**
+	 * Acquires credits from the {@link #gate}, if there is any, when the
+	 * credits in hand are over. Blocks until the receiver grants credits or
+	 * this channel is stopped.
+	 * 
+	 * @return true iff one item can be sent. This method consumes that
+	 *         credit. false if no credit is available or a rewire has arrived
+	 *         while waiting for the credits; the credits in hand are kept for
+	 *         the new connection.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the credits.
+	 */
+	private boolean hasCredit() throws InterruptedException {
+		CreditGate gate = this.gate;
+		if (gate == null)
+			return true;
+		if (credits == 0)
+			credits = gate.acquire(buffer.size());
+		if (credits == 0 || rewireTo != null)
+			return false;
+		credits--;
+		return true;
+	}
+
 	/**
 	 * This can be called when running the application with the final scheduling
 	 * configurations. Shouldn't be called when autotuner tunes.
@@ -170,11 +234,53 @@ public class BlockingOutputChannel implements BoundaryOutputChannel {
 		if (!this.stopFlag.get()) {
 			this.isFinal = isFinal;
 			this.stopFlag.set(true);
+			CreditGate gate = this.gate;
+			if (gate != null)
+				gate.close();
 		} else if (debugLevel > 0) {
 			System.err.println("Stop has already been called.");
 		}
 	}
 
+	@Override
+	public void creditGate(CreditGate gate) {
+		this.gate = gate;
+	}
+
+	/**
+	 * Soft closes the current connection, so that the receiver drains, and
+	 * continues sending through the new connection. The rewire is confirmed
+	 * before connecting: the new connection is accepted only once the peer's
+	 * new end exists, which, during a migration, is after the peer has been
+	 * drained.
+	 */
+	private void switchConnection() {
+		closeConnection();
+		Runnable rewired = this.rewired;
+		conInfo = rewireTo;
+		rewireTo = null;
+		System.out.println(name + " Rewiring to " + conInfo);
+		connection = null;
+		if (rewired != null)
+			rewired.run();
+		makeConnection();
+	}
+
+	@Override
+	public void rewire(ConnectionInfo conInfo, Runnable rewired) {
+		if (conInfo == null) {
+			this.rewireTo = null;
+			rewired.run();
+			return;
+		}
+		this.rewired = rewired;
+		this.rewireTo = conInfo;
+		// The sender may be blocked by the flow control.
+		CreditGate gate = this.gate;
+		if (gate != null)
+			gate.wakeUp();
+	}
+
 	private void reConnect() {
 		try {
 			this.connection.closeConnection();
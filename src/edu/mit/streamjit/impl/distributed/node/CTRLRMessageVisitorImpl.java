@@ -29,16 +29,22 @@ import edu.mit.streamjit.impl.distributed.common.CTRLCompilationInfo.CTRLCompila
 import edu.mit.streamjit.impl.distributed.common.CTRLRDrainElement;
 import edu.mit.streamjit.impl.distributed.common.CTRLRDrainElement.CTRLRDrainProcessor;
 import edu.mit.streamjit.impl.distributed.common.CTRLRMessageVisitor;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement;
+import edu.mit.streamjit.impl.distributed.common.CTRLRMigrationElement.CTRLRMigrationProcessor;
 import edu.mit.streamjit.impl.distributed.common.Command;
 import edu.mit.streamjit.impl.distributed.common.Command.CommandProcessor;
 import edu.mit.streamjit.impl.distributed.common.ConfigurationString;
+import edu.mit.streamjit.impl.distributed.common.CreditGrant;
 import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements;
 import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements.MiscCtrlElementProcessor;
 import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements.NewConInfo;
+import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements.NewNodeAddress;
+import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements.TimedWindow;
 import edu.mit.streamjit.impl.distributed.common.NodeInfo;
 import edu.mit.streamjit.impl.distributed.common.Request;
 import edu.mit.streamjit.impl.distributed.common.Request.RequestProcessor;
 import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
+import edu.mit.streamjit.impl.distributed.common.SystemInfo;
 import edu.mit.streamjit.impl.distributed.profiler.Profiler;
 import edu.mit.streamjit.impl.distributed.profiler.ProfilerCommand;
 import edu.mit.streamjit.impl.distributed.profiler.ProfilerCommand.ProfilerCommandProcessor;
@@ -118,6 +124,25 @@ public class CTRLRMessageVisitorImpl implements CTRLRMessageVisitor {
 		command.process(pm);
 	}
 
+	@Override
+	public void visit(CreditGrant creditGrant) {
+		if (blobsManager == null) {
+			System.err.println(appInstId + " No BlobsManager to grant credits.");
+			return;
+		}
+		blobsManager.grantCredits(creditGrant.token, creditGrant.credits);
+	}
+
+	@Override
+	public void visit(CTRLRMigrationElement ctrlrMigrationElement) {
+		if (blobsManager == null) {
+			System.err.println(appInstId + " No MigrationProcessor.");
+			return;
+		}
+		CTRLRMigrationProcessor mp = blobsManager.getMigrationProcessor();
+		ctrlrMigrationElement.process(mp);
+	}
+
 	public class MiscCtrlElementProcessorImpl implements
 			MiscCtrlElementProcessor {
 
@@ -126,6 +151,24 @@ public class CTRLRMessageVisitorImpl implements CTRLRMessageVisitor {
 			// TODO
 			System.err.println("Need to process this soon");
 		}
+
+		@Override
+		public void process(NewNodeAddress newNodeAddress) {
+			// If no app has been set yet, the static configuration of the app
+			// will carry the address.
+			SNStreamJitApp app = streamNode.jp.app;
+			if (app != null)
+				app.conProvider.getNetworkInfo().addInetAddress(
+						newNodeAddress.nodeID, newNodeAddress.address);
+		}
+
+		@Override
+		public void process(TimedWindow timedWindow) {
+			if (timedWindow.open)
+				BlobCreator.closeSpeculationWindow();
+			else
+				BlobCreator.openSpeculationWindow();
+		}
 	}
 
 	/**
@@ -141,9 +184,34 @@ public class CTRLRMessageVisitorImpl implements CTRLRMessageVisitor {
 			System.out.println("APPStatus requested");
 		}
 
+		/**
+		 * Process CPU time and wall time, in nanoseconds, at the previous
+		 * {@link Request#SysInfo}.
+		 */
+		private long prevCpuTime = -1;
+		private long prevWallTime;
+
 		@Override
 		public void processSysInfo() {
-			System.out.println("SysInfo requested");
+			SystemInfo sysInfo = new SystemInfo();
+			long cpuTime = SystemInfo.processCpuTime();
+			long wallTime = System.nanoTime();
+			if (cpuTime >= 0 && prevCpuTime >= 0 && wallTime > prevWallTime)
+				sysInfo.cpuUsage = (cpuTime - prevCpuTime)
+						/ (double) (wallTime - prevWallTime);
+			else
+				sysInfo.cpuUsage = -1;
+			prevCpuTime = cpuTime;
+			prevWallTime = wallTime;
+			Runtime rt = Runtime.getRuntime();
+			sysInfo.memoryUsage = (rt.totalMemory() - rt.freeMemory())
+					/ (double) rt.maxMemory();
+			try {
+				streamNode.controllerConnection
+						.writeObject(new SNMessageElementHolder(sysInfo, -1));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		}
 
 		@Override
@@ -174,6 +242,11 @@ public class CTRLRMessageVisitorImpl implements CTRLRMessageVisitor {
 			System.out.println("StreamNode is Exiting...");
 			streamNode.exit();
 		}
+
+		@Override
+		public void processLeaveRefused() {
+			streamNode.leaveRefused();
+		}
 	}
 
 	public class ProfilerCommandProcessorImpl implements
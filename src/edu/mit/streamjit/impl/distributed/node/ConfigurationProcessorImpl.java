@@ -1,5 +1,6 @@
 package edu.mit.streamjit.impl.distributed.node;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 
@@ -12,11 +13,13 @@ import edu.mit.streamjit.impl.blob.Blob.Token;
 import edu.mit.streamjit.impl.blob.DrainData;
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.compiler2.CompilationArtifact;
 import edu.mit.streamjit.impl.distributed.common.AppStatus;
 import edu.mit.streamjit.impl.distributed.common.CompilationInfo;
 import edu.mit.streamjit.impl.distributed.common.ConfigurationString.ConfigurationProcessor;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
+import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.common.SNMessageElement;
 import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
 import edu.mit.streamjit.impl.distributed.common.Utils;
@@ -48,9 +51,27 @@ public class ConfigurationProcessorImpl implements ConfigurationProcessor {
 	public void process(String json, ConfigType type, DrainData drainData) {
 		if (type == ConfigType.STATIC) {
 			processStaticCfg(json);
-		} else {
-			processDynamicCfg(json, drainData);
+			return;
 		}
+		Configuration cfg = Jsonifiers.fromJson(json, Configuration.class);
+		CreationLogic creationLogic = creationLogic(cfg, drainData);
+		if (!speculate(type, cfg, creationLogic))
+			compile(cfg, creationLogic);
+	}
+
+	/**
+	 * Queues a {@link ConfigType#SPECULATIVE} configuration for background
+	 * compilation. See {@link BlobCreator#speculate}.
+	 * 
+	 * @return <code>false</code> iff the configuration is not speculative and
+	 *         must be compiled for real.
+	 */
+	private boolean speculate(ConfigType type, Configuration cfg,
+			CreationLogic creationLogic) {
+		if (type != ConfigType.SPECULATIVE)
+			return false;
+		blobCreator.speculate(cfg, creationLogic);
+		return true;
 	}
 
 	private void processStaticCfg(String json) {
@@ -62,26 +83,39 @@ public class ConfigurationProcessorImpl implements ConfigurationProcessor {
 					"Multiple static configurations received.");
 	}
 
-	private void processDynamicCfg(String json, DrainData drainData) {
-		Configuration cfg = Jsonifiers.fromJson(json, Configuration.class);
-		CreationLogic creationLogic = creationLogic(cfg, drainData);
-		compile(cfg, creationLogic);
-	}
-
 	CreationLogic creationLogic(Configuration dyncfg, DrainData drainData) {
-		Configuration blobConfigs = dyncfg.getSubconfiguration("blobConfigs");
+		Configuration blobConfigs = addArtifactDir(dyncfg
+				.getSubconfiguration("blobConfigs"));
 		CreationLogic creationLogic = new DrainDataCreationLogic(drainData,
 				blobConfigs);
 		return creationLogic;
 	}
 	CreationLogic creationLogic(Configuration dyncfg,
 			ImmutableMap<Token, Integer> initialDrainDataBufferSizes) {
-		Configuration blobConfigs = dyncfg.getSubconfiguration("blobConfigs");
+		Configuration blobConfigs = addArtifactDir(dyncfg
+				.getSubconfiguration("blobConfigs"));
 		CreationLogic creationLogic = new InitDataSizeCreationLogic(
 				initialDrainDataBufferSizes, blobConfigs);
 		return creationLogic;
 	}
 
+	/**
+	 * Points Compiler2 at this node's {@link CompilationArtifact} directory so
+	 * that recompiling an already seen configuration skips scheduling. The
+	 * directory keeps at most {@link Options#compilationArtifactCapacity}
+	 * artifacts.
+	 */
+	private Configuration addArtifactDir(Configuration blobConfigs) {
+		if (!Options.useCompilationArtifacts || blobConfigs == null)
+			return blobConfigs;
+		String dir = String.format("%s%scompilationArtifacts", app.appName,
+				File.separator);
+		return Configuration.builder(blobConfigs)
+				.putExtraData(CompilationArtifact.EXTRA_DATA_NAME, dir)
+				.putExtraData(CompilationArtifact.CAPACITY_EXTRA_DATA_NAME,
+						Options.compilationArtifactCapacity).build();
+	}
+
 	/**
 	 * Send empty buffer sizes if compilation error occurred. If we didn't send
 	 * this, Controller would be waiting forever at
@@ -125,6 +159,10 @@ public class ConfigurationProcessorImpl implements ConfigurationProcessor {
 	}
 
 	private void compile(Configuration cfg, CreationLogic creationLogic) {
+		blobCreator.cancelSpeculation(cfg);
+		// Keep the cores for the compilation, which is on the
+		// reconfiguration's critical path.
+		BlobCreator.closeSpeculationWindow();
 		int appInstId = (int) cfg.getExtraData("appInstId");
 		String cfgPrefix = ConfigurationUtils.getConfigPrefix(cfg
 				.getSubconfiguration("blobConfigs"));
@@ -140,10 +178,11 @@ public class ConfigurationProcessorImpl implements ConfigurationProcessor {
 
 			BlobsManagerImpl bm = new BlobsManagerImpl(blobSet, conInfoMap,
 					streamNode, app.conProvider, app.appName, appInstId,
-					app.starterType, cfgPrefix);
+					app.starterType, cfgPrefix, app.nodeHeadTail);
 			CTRLRMessageVisitorImpl mv = new CTRLRMessageVisitorImpl(
 					streamNode, bm, appInstId);
 			streamNode.registerMessageVisitor(mv);
+			bm.initialiseBuffers();
 		} else {
 			try {
 				streamNode.controllerConnection
@@ -158,6 +197,24 @@ public class ConfigurationProcessorImpl implements ConfigurationProcessor {
 		newTuningRound(blobSet, cfgPrefix);
 	}
 
+	/**
+	 * Compiles a single blob that is migrating from another node. See
+	 * {@link BlobCreator#getBlob}.
+	 * 
+	 * @param json
+	 *            the dynamic configuration the blob was created with.
+	 * @param nodeID
+	 *            the node on which the dynamic configuration places the blob.
+	 * @return the blob or null if the blob could not be created.
+	 */
+	Blob compileMigratedBlob(String json, int nodeID, Token blobID,
+			DrainData drainData, int appInstId) {
+		Configuration cfg = Jsonifiers.fromJson(json, Configuration.class);
+		CreationLogic creationLogic = creationLogic(cfg, drainData);
+		return blobCreator.getBlob(cfg, creationLogic, nodeID, blobID,
+				appInstId);
+	}
+
 	/*
 	 * (non-Javadoc) We need to call the compile() method in a new thread in
 	 * order to increase the responsiveness of the SN thread. Otherwise, the
@@ -172,6 +229,7 @@ public class ConfigurationProcessorImpl implements ConfigurationProcessor {
 		Configuration cfg = Jsonifiers.fromJson(json, Configuration.class);
 		CreationLogic creationLogic = creationLogic(cfg,
 				initialDrainDataBufferSizes);
-		new Thread(() -> compile(cfg, creationLogic)).start();
+		if (!speculate(type, cfg, creationLogic))
+			new Thread(() -> compile(cfg, creationLogic)).start();
 	}
 }
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.node;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.blob.Blob.Token;
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+import edu.mit.streamjit.impl.common.BufferWriteCounter;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.drainer.AbstractDrainer.DrainDataAction;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryInputChannel;
+import edu.mit.streamjit.impl.distributed.common.BoundaryChannel.BoundaryOutputChannel;
+import edu.mit.streamjit.impl.distributed.common.Connection;
+import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionInfo;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO.NodeInput;
+import edu.mit.streamjit.impl.distributed.common.NodeLocalIO.NodeOutput;
+import edu.mit.streamjit.impl.distributed.common.SNMessageElement;
+import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement.InputExhausted;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement.OutputCount;
+
+/**
+ * Node-local source and sink of a StreamJit app at {@link StreamNode} side.
+ * See {@link NodeLocalIO}.
+ * <p>
+ * The input and output buffers are created once and live as long as the app,
+ * while the app instances come and go with reconfigurations. Each app instance
+ * gets a {@link BoundaryInputChannel} (a {@link BoundaryOutputChannel}) that
+ * moves data from the input buffer (to the output buffer) in place of a
+ * network channel to the controller. So the blobs need not be aware of the
+ * node-local IO.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 22 Oct, 2016
+ */
+final class NodeHeadTail {
+
+	/**
+	 * Period(ms) of the output count reports to the controller.
+	 */
+	private static final int reportPeriod = 100;
+
+	private final StreamNode streamNode;
+
+	/**
+	 * Input that this node reads, or null.
+	 */
+	private final NodeInput nodeInput;
+
+	/**
+	 * Output that this node writes, or null.
+	 */
+	private final NodeOutput nodeOutput;
+
+	private final Token headToken;
+
+	private final Token tailToken;
+
+	private Buffer inputBuffer;
+
+	private BufferWriteCounter outputBuffer;
+
+	private final AtomicBoolean inputExhausted = new AtomicBoolean(false);
+
+	private OutputCountReporter reporter;
+
+	NodeHeadTail(Configuration staticConfig, StreamNode streamNode,
+			Worker<?, ?> source, Worker<?, ?> sink) {
+		this.streamNode = streamNode;
+		NodeInput in = (NodeInput) staticConfig
+				.getExtraData(NodeLocalIO.INPUT_EXTRA_DATA_NAME);
+		NodeOutput out = (NodeOutput) staticConfig
+				.getExtraData(NodeLocalIO.OUTPUT_EXTRA_DATA_NAME);
+		int nodeID = streamNode.getNodeID();
+		this.nodeInput = in != null && in.nodeID == nodeID ? in : null;
+		this.nodeOutput = out != null && out.nodeID == nodeID ? out : null;
+		this.headToken = Token.createOverallInputToken(source);
+		this.tailToken = Token.createOverallOutputToken(sink);
+	}
+
+	/**
+	 * @return true iff the data of the token is read or written at this node
+	 *         instead of at the controller.
+	 */
+	boolean isNodeLocal(Token t) {
+		return (nodeInput != null && t.equals(headToken))
+				|| (nodeOutput != null && t.equals(tailToken));
+	}
+
+	BoundaryInputChannel inputChannel(Token t, String name, int bufSize) {
+		if (nodeInput == null || !t.equals(headToken))
+			throw new IllegalArgumentException(String.format(
+					"%s is not a node-local input", t));
+		return new NodeInputChannel(inputBuffer(), bufSize, name);
+	}
+
+	BoundaryOutputChannel outputChannel(Token t, String name, int bufSize) {
+		if (nodeOutput == null || !t.equals(tailToken))
+			throw new IllegalArgumentException(String.format(
+					"%s is not a node-local output", t));
+		return new NodeOutputChannel(outputBuffer(), bufSize, name);
+	}
+
+	private synchronized Buffer inputBuffer() {
+		if (inputBuffer == null) {
+			System.out.println("Reading the input at this node: " + nodeInput);
+			inputBuffer = nodeInput.createReadableBuffer(10000);
+		}
+		return inputBuffer;
+	}
+
+	private synchronized Buffer outputBuffer() {
+		if (outputBuffer == null) {
+			System.out.println("Writing the output at this node: "
+					+ nodeOutput);
+			outputBuffer = new BufferWriteCounter(
+					nodeOutput.createWritableBuffer(10000));
+		}
+		return outputBuffer;
+	}
+
+	/**
+	 * Starts reporting the output count to the controller, if this node writes
+	 * the output. Called whenever an app instance starts at this node.
+	 */
+	synchronized void start() {
+		if (nodeOutput != null && reporter == null) {
+			reporter = new OutputCountReporter();
+			reporter.start();
+		}
+	}
+
+	/**
+	 * Stops the reporting, flushes the output and reports the final count.
+	 * Called whenever an app instance stops at this node.
+	 */
+	synchronized void stop() {
+		if (reporter == null)
+			return;
+		reporter.stopFlag.set(true);
+		try {
+			reporter.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		reporter = null;
+		nodeOutput.flush();
+		sendToController(new OutputCount(outputBuffer.count()));
+	}
+
+	private void inputExhausted() {
+		if (nodeInput.isFinite() && !inputExhausted.getAndSet(true)) {
+			System.out.println("Input data finished");
+			sendToController(new InputExhausted());
+		}
+	}
+
+	/**
+	 * Node-local IO spans all app instances. So appInstId is -1.
+	 */
+	private void sendToController(SNMessageElement me) {
+		try {
+			streamNode.controllerConnection
+					.writeObject(new SNMessageElementHolder(me, -1));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private final class OutputCountReporter extends Thread {
+
+		private final AtomicBoolean stopFlag = new AtomicBoolean(false);
+
+		private OutputCountReporter() {
+			super("OutputCountReporter");
+		}
+
+		public void run() {
+			int lastCount = -1;
+			while (!stopFlag.get()) {
+				int count = outputBuffer.count();
+				if (count != lastCount) {
+					sendToController(new OutputCount(count));
+					lastCount = count;
+				}
+				try {
+					Thread.sleep(reportPeriod);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves data from the node-local input buffer to the blob's input buffer.
+	 * Unlike network channels, nothing is left in flight when stopped; the
+	 * remaining input stays in the node-local input buffer for the next app
+	 * instance.
+	 */
+	private final class NodeInputChannel implements BoundaryInputChannel {
+
+		private final Buffer input;
+
+		private final Buffer buffer;
+
+		private final String name;
+
+		private final Object[] chunk;
+
+		private final AtomicBoolean stopFlag = new AtomicBoolean(false);
+
+		private volatile boolean isClosed = false;
+
+		private ImmutableList<Object> unProcessedData;
+
+		private NodeInputChannel(Buffer input, int bufSize, String name) {
+			this.input = input;
+			this.buffer = new ConcurrentArrayBuffer(bufSize);
+			this.name = "NodeInputChnl-" + name;
+			this.chunk = new Object[Math.min(bufSize, 1024)];
+		}
+
+		@Override
+		public Runnable getRunnable() {
+			return new Runnable() {
+				@Override
+				public void run() {
+					while (!stopFlag.get())
+						receiveData();
+					isClosed = true;
+				}
+			};
+		}
+
+		@Override
+		public void receiveData() {
+			int n = Math.min(chunk.length,
+					Math.min(buffer.capacity() - buffer.size(), input.size()));
+			if (n <= 0) {
+				if (input.size() == 0)
+					inputExhausted();
+				sleep();
+				return;
+			}
+			int read = input.read(chunk, 0, n);
+			int written = 0;
+			while (written < read)
+				written += buffer.write(chunk, written, read - written);
+			Arrays.fill(chunk, 0, read, null);
+		}
+
+		private void sleep() {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+
+		@Override
+		public void stop(DrainDataAction drainDataAction) {
+			stopFlag.set(true);
+		}
+
+		@Override
+		public ImmutableList<Object> getUnprocessedData() {
+			if (!isClosed)
+				throw new IllegalAccessError(
+						"Still processing... No unprocessed data");
+			if (unProcessedData == null) {
+				Object[] bufArray = new Object[buffer.size()];
+				buffer.readAll(bufArray);
+				unProcessedData = ImmutableList.copyOf(bufArray);
+			}
+			return unProcessedData;
+		}
+
+		@Override
+		public String name() {
+			return name;
+		}
+
+		@Override
+		public Connection getConnection() {
+			return null;
+		}
+
+		@Override
+		public ConnectionInfo getConnectionInfo() {
+			return null;
+		}
+
+		@Override
+		public Buffer getBuffer() {
+			return buffer;
+		}
+
+		@Override
+		public Buffer getExtraBuffer() {
+			return null;
+		}
+	}
+
+	/**
+	 * Moves data from the blob's output buffer to the node-local output buffer.
+	 */
+	private final class NodeOutputChannel implements BoundaryOutputChannel {
+
+		private final Buffer output;
+
+		private final Buffer buffer;
+
+		private final String name;
+
+		private final Object[] chunk;
+
+		private final AtomicBoolean stopFlag = new AtomicBoolean(false);
+
+		private volatile boolean isFinal;
+
+		/**
+		 * Set by the channel's thread after it stops; read by the draining
+		 * thread.
+		 */
+		private volatile ImmutableList<Object> unProcessedData;
+
+		private NodeOutputChannel(Buffer output, int bufSize, String name) {
+			this.output = output;
+			this.buffer = new ConcurrentArrayBuffer(bufSize);
+			this.name = "NodeOutputChnl-" + name;
+			this.chunk = new Object[Math.min(bufSize, 1024)];
+		}
+
+		@Override
+		public Runnable getRunnable() {
+			return new Runnable() {
+				@Override
+				public void run() {
+					while (!stopFlag.get())
+						sendData();
+					if (isFinal)
+						while (buffer.size() > 0)
+							move();
+					Object[] bufArray = new Object[buffer.size()];
+					buffer.readAll(bufArray);
+					unProcessedData = ImmutableList.copyOf(bufArray);
+				}
+			};
+		}
+
+		@Override
+		public void sendData() {
+			if (move() == 0) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		private int move() {
+			int read = buffer.read(chunk, 0,
+					Math.min(chunk.length, buffer.size()));
+			int written = 0;
+			while (written < read)
+				written += output.write(chunk, written, read - written);
+			Arrays.fill(chunk, 0, read, null);
+			return read;
+		}
+
+		@Override
+		public void stop(boolean isFinal) {
+			if (!stopFlag.get()) {
+				this.isFinal = isFinal;
+				stopFlag.set(true);
+			}
+		}
+
+		@Override
+		public ImmutableList<Object> getUnprocessedData() {
+			if (unProcessedData == null)
+				throw new IllegalAccessError(
+						"Still processing... No unprocessed data");
+			return unProcessedData;
+		}
+
+		@Override
+		public String name() {
+			return name;
+		}
+
+		@Override
+		public Connection getConnection() {
+			return null;
+		}
+
+		@Override
+		public ConnectionInfo getConnectionInfo() {
+			return null;
+		}
+
+		@Override
+		public Buffer getBuffer() {
+			return buffer;
+		}
+	}
+}
@@ -40,6 +40,8 @@ public class SNStreamJitApp {
 	public final String topLevelClass;
 	public final OneToOneElement<?, ?> streamGraph;
 	public final Worker<?, ?> source;
+	public final Worker<?, ?> sink;
+	final NodeHeadTail nodeHeadTail;
 	private final StreamNode streamNode;
 	public final int starterType;
 	public final String appName;
@@ -60,8 +62,12 @@ public class SNStreamJitApp {
 		topLevelClass = (String) staticConfig
 				.getExtraData(GlobalConstants.TOPLEVEL_WORKER_NAME);
 		streamGraph = getStreamGraph();
-		source = source();
+		ConnectWorkersVisitor primitiveConnector = new ConnectWorkersVisitor();
+		streamGraph.visit(primitiveConnector);
+		source = primitiveConnector.getSource();
+		sink = primitiveConnector.getSink();
 		starterType = starterType();
+		nodeHeadTail = new NodeHeadTail(staticConfig, streamNode, source, sink);
 	}
 
 	int starterType() {
@@ -182,10 +188,4 @@ public class SNStreamJitApp {
 		}
 		return null;
 	}
-
-	private Worker<?, ?> source() {
-		ConnectWorkersVisitor primitiveConnector = new ConnectWorkersVisitor();
-		streamGraph.visit(primitiveConnector);
-		return primitiveConnector.getSource();
-	}
 }
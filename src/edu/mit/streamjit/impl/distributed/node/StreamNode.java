@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.net.ConnectException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessageElementHolder;
 import edu.mit.streamjit.impl.distributed.common.CTRLRMessageVisitor;
@@ -35,6 +37,9 @@ import edu.mit.streamjit.impl.distributed.common.ConnectionFactory;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
 import edu.mit.streamjit.impl.distributed.common.Ipv4Validator;
 import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.common.Request;
+import edu.mit.streamjit.impl.distributed.common.SNMembershipElement.LeaveRequest;
+import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
 import edu.mit.streamjit.impl.distributed.profiler.Profiler;
 import edu.mit.streamjit.impl.distributed.runtimer.Controller;
 import edu.mit.streamjit.util.EventTimeLogger;
@@ -81,6 +86,24 @@ public class StreamNode extends Thread {
 							// thread,
 							// no need to make this variable thread safe.
 
+	/**
+	 * Released once this {@link StreamNode} has stopped and released all its
+	 * resources.
+	 */
+	private final CountDownLatch stopped;
+
+	/**
+	 * Time in seconds the shutdown hook waits for the controller to move all
+	 * blobs off this node. See {@link #addLeaveHook()}.
+	 */
+	private static final int leaveTimeOut = 120;
+
+	/**
+	 * Released if the controller refuses the pending leave request. See
+	 * {@link #addLeaveHook()}.
+	 */
+	private volatile CountDownLatch leaveRefused;
+
 	private static StreamNode myinstance;
 
 	/**
@@ -107,6 +130,7 @@ public class StreamNode extends Thread {
 		this.jp = new ConfigurationProcessorImpl(this);
 		this.run = true;
 		this.messageVisitors = new HashMap<>();
+		this.stopped = new CountDownLatch(1);
 	}
 
 	public void run() {
@@ -133,6 +157,7 @@ public class StreamNode extends Thread {
 			}
 		}
 		safelyCloseResources();
+		stopped.countDown();
 	}
 
 	public int getNodeID() {
@@ -178,6 +203,62 @@ public class StreamNode extends Thread {
 		this.run = false;
 	}
 
+	void leaveRefused() {
+		CountDownLatch leaveRefused = this.leaveRefused;
+		if (leaveRefused != null)
+			leaveRefused.countDown();
+	}
+
+	/**
+	 * Lets this node leave a running controller gracefully (see
+	 * {@link Options#elasticNodes}). When the JVM is asked to shut down, the
+	 * hook asks the controller to release this node and waits until the
+	 * controller has moved all blobs off this node and sent
+	 * {@link Request#EXIT}. If the controller refuses
+	 * ({@link Request#LeaveRefused}), this node keeps on running and asks
+	 * again every {@link #leaveTimeOut} seconds. Only if the controller does
+	 * not answer at all, this node leaves after {@link #leaveTimeOut} seconds.
+	 */
+	private void addLeaveHook() {
+		Runtime.getRuntime().addShutdownHook(new Thread("LeaveHook") {
+			public void run() {
+				if (stopped.getCount() == 0 || myNodeID < 0)
+					return;
+				try {
+					while (true) {
+						System.out
+								.println("Asking the controller to release me...");
+						CountDownLatch refused = new CountDownLatch(1);
+						leaveRefused = refused;
+						controllerConnection
+								.writeObject(new SNMessageElementHolder(
+										new LeaveRequest(myNodeID), -1));
+						long deadline = System.currentTimeMillis() + 1000
+								* leaveTimeOut;
+						while (!stopped.await(1, TimeUnit.SECONDS)) {
+							if (refused.getCount() == 0)
+								break;
+							if (System.currentTimeMillis() > deadline) {
+								System.err
+										.println("Controller did not release me. Leaving anyway.");
+								return;
+							}
+						}
+						if (stopped.getCount() == 0)
+							return;
+						System.err.println(String.format(
+								"Controller refused to release me. Staying. Asking again in %d seconds.",
+								leaveTimeOut));
+						if (stopped.await(leaveTimeOut, TimeUnit.SECONDS))
+							return;
+					}
+				} catch (IOException | InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
 	/**
 	 * {@link Object#toString()} is not overridden in this class because this
 	 * class's super class, {@link Thread}, overrides that method.
@@ -282,9 +363,12 @@ public class StreamNode extends Thread {
 
 		Connection tcpConnection;
 		try {
-			tcpConnection = ConnectionFactory.getConnection(ipAddress, portNo,
-					true);
-			new StreamNode(tcpConnection).run();
+			tcpConnection = ConnectionFactory.getControlConnection(ipAddress,
+					portNo);
+			StreamNode streamNode = new StreamNode(tcpConnection);
+			if (Options.elasticNodes)
+				streamNode.addLeaveHook();
+			streamNode.run();
 		} catch (ConnectException cex) {
 			System.out.println("No Controller is listening. Terminating.");
 		} catch (IOException e) {
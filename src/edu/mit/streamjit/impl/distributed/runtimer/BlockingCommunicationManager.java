@@ -24,10 +24,11 @@ package edu.mit.streamjit.impl.distributed.runtimer;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -35,9 +36,9 @@ import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessag
 import edu.mit.streamjit.impl.distributed.common.Connection;
 import edu.mit.streamjit.impl.distributed.common.ConnectionFactory;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
+import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.common.Request;
 import edu.mit.streamjit.impl.distributed.common.SNMessageElement.SNMessageElementHolder;
-import edu.mit.streamjit.impl.distributed.common.SynchronizedTCPConnection;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
 
 /**
@@ -58,9 +59,33 @@ public class BlockingCommunicationManager implements CommunicationManager {
 
 	private Set<SNAgentRunner> SNRunners;
 
+	/**
+	 * nodeID 0 goes to the controller instance. We need this, though it
+	 * doesn't executes any workers, Controller handles the head and tail
+	 * channels.
+	 */
+	private int nextNodeID = 1;
+
+	/**
+	 * Keeps on listening after the initial set of nodes has been connected if
+	 * {@link Options#elasticNodes} is true. Null otherwise.
+	 */
+	private ListenerSocket lateListener;
+
+	/**
+	 * Sockets those were accepted along with the initial set of nodes but
+	 * exceed the expected count.
+	 */
+	private final List<Socket> lateSockets;
+
+	private volatile boolean stopAccepting = false;
+
+	private volatile MachineFailureListener failureListener = null;
+
 	public BlockingCommunicationManager(int listenPort) {
 		this.listenPort = listenPort;
-		SNRunners = new HashSet<>();
+		SNRunners = ConcurrentHashMap.newKeySet();
+		lateSockets = new LinkedList<>();
 	}
 
 	public BlockingCommunicationManager() {
@@ -81,38 +106,25 @@ public class BlockingCommunicationManager implements CommunicationManager {
 			totalTcpConnections += 1;
 		}
 
-		ListenerSocket listnerSckt = new ListenerSocket(this.listenPort,
+		ListenerSocket listnerSckt = Options.elasticNodes ? new ListenerSocket(
+				this.listenPort) : new ListenerSocket(this.listenPort,
 				totalTcpConnections);
 		listnerSckt.start();
 		if (commTypes.containsKey(CommunicationType.LOCAL))
 			createTcpLocalStreamNode();
 		ImmutableMap.Builder<Integer, StreamNodeAgent> SNAgentMapbuilder = new ImmutableMap.Builder<>();
-		int nodeID = 1; // nodeID 0 goes to the controller instance. We need
-						// this, though it doesn't executes any workers,
-						// Controller
-						// handles the head and tail channels.
 		int establishedConnection = 0;
 		List<Socket> acceptedSocketList;
 		while (true) {
 			acceptedSocketList = listnerSckt.getAcceptedSockets();
 			for (Socket s : acceptedSocketList) {
-
-				Connection connection = new SynchronizedTCPConnection(s);
-				StreamNodeAgent snAgent = new StreamNodeAgentImpl(nodeID++,
-						connection, s.getInetAddress());
-
-				if (!s.getLocalAddress().isLoopbackAddress()
-						&& inetAddress == null)
-					inetAddress = s.getLocalAddress();
-
+				if (!(establishedConnection < totalTcpConnections)) {
+					lateSockets.add(s);
+					continue;
+				}
+				StreamNodeAgent snAgent = newAgent(s);
 				SNAgentMapbuilder.put(snAgent.getNodeID(), snAgent);
-				SNAgentRunner runner = new SNAgentRunner(snAgent, connection);
-				runner.start();
-				SNRunners.add(runner);
-				System.out.println("StreamNode connected: " + s.toString());
 				establishedConnection++;
-				if (!(establishedConnection < totalTcpConnections))
-					break;
 			}
 
 			if (!(establishedConnection < totalTcpConnections))
@@ -128,7 +140,10 @@ public class BlockingCommunicationManager implements CommunicationManager {
 				e.printStackTrace();
 			}
 		}
-		listnerSckt.stopListening();
+		if (Options.elasticNodes)
+			lateListener = listnerSckt;
+		else
+			listnerSckt.stopListening();
 		this.SNAgentMap = SNAgentMapbuilder.build();
 		if (inetAddress == null) {
 			inetAddress = acceptedSocketList.get(0).getLocalAddress();
@@ -136,6 +151,72 @@ public class BlockingCommunicationManager implements CommunicationManager {
 		return SNAgentMap;
 	}
 
+	/**
+	 * Creates a {@link StreamNodeAgent} for the accepted socket and starts
+	 * reading from it.
+	 */
+	private StreamNodeAgent newAgent(Socket s) throws IOException {
+		Connection connection = ConnectionFactory.getControlConnection(s);
+		StreamNodeAgent snAgent = new StreamNodeAgentImpl(nextNodeID++,
+				connection, s.getInetAddress());
+
+		if (!s.getLocalAddress().isLoopbackAddress() && inetAddress == null)
+			inetAddress = s.getLocalAddress();
+
+		SNAgentRunner runner = new SNAgentRunner(snAgent, connection);
+		runner.start();
+		SNRunners.add(runner);
+		System.out.println("StreamNode connected: " + s.toString());
+		return snAgent;
+	}
+
+	@Override
+	public void acceptNewMachines(final NewMachineListener listener)
+			throws IOException {
+		if (lateListener == null)
+			throw new IllegalStateException(
+					"Not listening for new StreamNodes. Set Options.elasticNodes=true.");
+		Thread acceptor = new Thread("NewMachineAcceptor") {
+			public void run() {
+				List<Socket> sockets = new LinkedList<>(lateSockets);
+				lateSockets.clear();
+				while (!stopAccepting) {
+					sockets.addAll(lateListener.getAcceptedSockets());
+					for (Socket s : sockets) {
+						try {
+							listener.machineConnected(newAgent(s));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+					sockets.clear();
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	@Override
+	public void detectFailures(MachineFailureListener listener) {
+		this.failureListener = listener;
+	}
+
+	@Override
+	public void disconnectMachine(int nodeID) {
+		for (SNAgentRunner runner : SNRunners) {
+			if (runner.SNAgent.getNodeID() == nodeID) {
+				runner.close();
+				SNRunners.remove(runner);
+			}
+		}
+	}
+
 	/**
 	 * Creates JVM local {@link StreamNode}. Only one JVM local
 	 * {@link StreamNode} can exist.
@@ -144,8 +225,8 @@ public class BlockingCommunicationManager implements CommunicationManager {
 		new Thread() {
 			public void run() {
 				try {
-					Connection connection = ConnectionFactory.getConnection(
-							"127.0.0.1", listenPort, true);
+					Connection connection = ConnectionFactory
+							.getControlConnection("127.0.0.1", listenPort);
 					StreamNode.getInstance(connection).start();
 				} catch (IOException e) {
 					// TODO Auto-generated catch block
@@ -157,6 +238,9 @@ public class BlockingCommunicationManager implements CommunicationManager {
 
 	@Override
 	public void closeAllConnections() throws IOException {
+		stopAccepting = true;
+		if (lateListener != null)
+			lateListener.stopListening();
 		for (SNAgentRunner runner : SNRunners) {
 			runner.close();
 		}
@@ -202,7 +286,7 @@ public class BlockingCommunicationManager implements CommunicationManager {
 	 * thread.
 	 * 
 	 */
-	private static class SNAgentRunner extends Thread {
+	private class SNAgentRunner extends Thread {
 		final StreamNodeAgent SNAgent;
 		final Connection connection;
 
@@ -224,6 +308,11 @@ public class BlockingCommunicationManager implements CommunicationManager {
 						e.printStackTrace();
 				}
 			}
+			MachineFailureListener listener = failureListener;
+			if (!SNAgent.isStopRequested() && listener != null) {
+				SNRunners.remove(this);
+				listener.machineFailed(SNAgent.getNodeID());
+			}
 		}
 
 		public void close() {
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Map;
 
+import edu.mit.streamjit.impl.distributed.common.Request;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
 
 /**
@@ -76,6 +77,37 @@ public interface CommunicationManager {
 	public Map<Integer, StreamNodeAgent> connectMachines(
 			Map<CommunicationType, Integer> comTypeCount) throws IOException;
 
+	/**
+	 * Keeps on accepting {@link StreamNode}s those connect after
+	 * {@link #connectMachines(Map)} has returned, and passes each of them to
+	 * the listener with a nodeID that has not been assigned before. This is
+	 * not a blocking call.
+	 * 
+	 * @param listener
+	 *            listener to be informed about newly connected
+	 *            {@link StreamNode}s.
+	 * @throws IOException
+	 */
+	public void acceptNewMachines(NewMachineListener listener)
+			throws IOException;
+
+	/**
+	 * Sends {@link Request#EXIT} to the {@link StreamNode} with the nodeID and
+	 * closes the connection with it. Other connections are not affected.
+	 * 
+	 * @param nodeID
+	 */
+	public void disconnectMachine(int nodeID);
+
+	/**
+	 * Informs the listener whenever the connection with a
+	 * {@link StreamNode} is lost without the node being disconnected by
+	 * {@link #disconnectMachine(int)} or {@link #closeAllConnections()}.
+	 * 
+	 * @param listener
+	 */
+	public void detectFailures(MachineFailureListener listener);
+
 	/**
 	 * Close all connections. Further, it stops all threads and release all
 	 * resources of this {@link CommunicationManager}.
@@ -91,4 +123,24 @@ public interface CommunicationManager {
 	 * @return the inetaddress of the local machine.
 	 */
 	public InetAddress getLocalAddress();
+
+	/**
+	 * Listener that gets informed about the {@link StreamNode}s those connect
+	 * after the initial set of nodes has been connected. See
+	 * {@link CommunicationManager#acceptNewMachines(NewMachineListener)}.
+	 */
+	public interface NewMachineListener {
+
+		public void machineConnected(StreamNodeAgent agent);
+	}
+
+	/**
+	 * Listener that gets informed about the {@link StreamNode}s those have
+	 * failed. See
+	 * {@link CommunicationManager#detectFailures(MachineFailureListener)}.
+	 */
+	public interface MachineFailureListener {
+
+		public void machineFailed(int nodeID);
+	}
 }
\ No newline at end of file
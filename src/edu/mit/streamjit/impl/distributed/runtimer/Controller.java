@@ -26,6 +26,7 @@ import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessageElementHolder;
@@ -34,12 +35,17 @@ import edu.mit.streamjit.impl.distributed.common.ConfigurationString.Configurati
 import edu.mit.streamjit.impl.distributed.common.ConfigurationString.ConfigurationString1;
 import edu.mit.streamjit.impl.distributed.common.Connection.ConnectionProvider;
 import edu.mit.streamjit.impl.distributed.common.GlobalConstants;
+import edu.mit.streamjit.impl.distributed.common.MiscCtrlElements.NewNodeAddress;
 import edu.mit.streamjit.impl.distributed.common.NetworkInfo;
 import edu.mit.streamjit.impl.distributed.common.NodeInfo;
+import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.common.Request;
+import edu.mit.streamjit.impl.distributed.common.SystemInfo;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitAppManager;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
 import edu.mit.streamjit.impl.distributed.runtimer.CommunicationManager.CommunicationType;
+import edu.mit.streamjit.impl.distributed.runtimer.CommunicationManager.MachineFailureListener;
+import edu.mit.streamjit.impl.distributed.runtimer.CommunicationManager.NewMachineListener;
 
 /**
  * {@link Controller} controls all {@link StreamNode}s in runtime. It has
@@ -70,8 +76,26 @@ public class Controller {
 	 */
 	public final int controllerNodeID;
 
+	/**
+	 * Static configuration of the app. Kept to set up the {@link StreamNode}s
+	 * those join later. See {@link Options#elasticNodes}.
+	 */
+	private Configuration.Builder staticCfgBuilder;
+
+	private Map<Integer, InetAddress> inetMap;
+
+	private volatile StreamJitAppManager manager;
+
 	public Controller() {
-		this.comManager = new BlockingCommunicationManager();
+		this(GlobalConstants.PORTNO);
+	}
+
+	/**
+	 * @param listenPort
+	 *            port on which {@link StreamNode}s connect to this controller.
+	 */
+	public Controller(int listenPort) {
+		this.comManager = new BlockingCommunicationManager(listenPort);
 		this.controllerNodeID = 0;
 	}
 
@@ -85,7 +109,8 @@ public class Controller {
 	public void connect(Map<CommunicationType, Integer> comTypeCount) {
 		// TODO: Need to handle this exception well.
 		try {
-			StreamNodeMap = comManager.connectMachines(comTypeCount);
+			StreamNodeMap = new ConcurrentHashMap<>(
+					comManager.connectMachines(comTypeCount));
 		} catch (IOException e) {
 			System.out.println("Connection Error...");
 			e.printStackTrace();
@@ -101,16 +126,104 @@ public class Controller {
 	}
 
 	private void setMachineIds() {
-		for (StreamNodeAgent agent : StreamNodeMap.values()) {
-			try {
-				// TODO: Need to send in a single object.
-				agent.writeObject(new CTRLRMessageElementHolder(
-						Request.machineID, -1));
-				agent.writeObject(new Integer(agent.getNodeID()));
-			} catch (IOException e) {
-				e.printStackTrace();
+		for (StreamNodeAgent agent : StreamNodeMap.values())
+			setMachineId(agent);
+	}
+
+	private void setMachineId(StreamNodeAgent agent) {
+		try {
+			// TODO: Need to send in a single object.
+			agent.writeObject(new CTRLRMessageElementHolder(Request.machineID,
+					-1));
+			agent.writeObject(new Integer(agent.getNodeID()));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts accepting the {@link StreamNode}s those connect after
+	 * {@link #connect(Map)}. A new node is set up with the app's static
+	 * configuration and then handed over to the {@link StreamJitAppManager},
+	 * which adds it with {@link #addNode(StreamNodeAgent)}. Must be called
+	 * after the app has been set by {@link #newApp(Configuration.Builder)}.
+	 */
+	public void acceptNewNodes() {
+		try {
+			comManager.acceptNewMachines(new NewMachineListener() {
+				@Override
+				public void machineConnected(StreamNodeAgent agent) {
+					setUpNewNode(agent);
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts informing the {@link StreamJitAppManager} about the
+	 * {@link StreamNode}s those fail. See {@link Options#checkpointInterval}.
+	 */
+	public void detectNodeFailures() {
+		comManager.detectFailures(new MachineFailureListener() {
+			@Override
+			public void machineFailed(int nodeID) {
+				if (StreamNodeMap.containsKey(nodeID))
+					manager.nodeFailed(nodeID);
 			}
+		});
+	}
+
+	private void setUpNewNode(StreamNodeAgent agent) {
+		int nodeID = agent.getNodeID();
+		if (nodeID == controllerNodeID || StreamNodeMap.containsKey(nodeID))
+			throw new AssertionError(String.format(
+					"Conflict in nodeID assignment. %d has already been assigned",
+					nodeID));
+		setMachineId(agent);
+		try {
+			agent.writeObject(new CTRLRMessageElementHolder(Request.NodeInfo,
+					-1));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		agent.registerManager(manager);
+
+		inetMap.put(nodeID, agent.getAddress());
+		conProvider.getNetworkInfo().addInetAddress(nodeID,
+				agent.getAddress());
+		sendToAll(new CTRLRMessageElementHolder(new NewNodeAddress(nodeID,
+				agent.getAddress()), -1));
+
+		staticCfgBuilder.putExtraData(GlobalConstants.INETADDRESS_MAP,
+				new HashMap<>(inetMap));
+		ConfigurationString json = new ConfigurationString1(staticCfgBuilder
+				.build().toJson(), ConfigType.STATIC, null);
+		try {
+			agent.writeObject(new CTRLRMessageElementHolder(json, -1));
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+		manager.nodeJoined(agent);
+	}
+
+	/**
+	 * Adds a {@link StreamNode} that has joined after {@link #connect(Map)}.
+	 * The node will receive the messages that are sent to all nodes from now
+	 * on.
+	 */
+	public void addNode(StreamNodeAgent agent) {
+		StreamNodeMap.put(agent.getNodeID(), agent);
+	}
+
+	/**
+	 * Sends {@link Request#EXIT} to the {@link StreamNode} and closes the
+	 * connection with it.
+	 */
+	public void removeNode(int nodeID) {
+		StreamNodeMap.remove(nodeID);
+		comManager.disconnectMachine(nodeID);
 	}
 
 	/**
@@ -130,13 +243,49 @@ public class Controller {
 		return coreCounts;
 	}
 
+	/**
+	 * Blocking call. Requests the {@link SystemInfo} of all
+	 * {@link StreamNode}s and waits at most timeout milliseconds for them.
+	 * 
+	 * @return : A map where key is nodeID and value is the average number of
+	 *         cores that the corresponding node has kept busy since the
+	 *         previous call. Nodes those did not respond in time are not in
+	 *         the map.
+	 */
+	public Map<Integer, Double> getCpuUsage(long timeout) {
+		Map<StreamNodeAgent, SystemInfo> prev = new HashMap<>();
+		for (StreamNodeAgent agent : StreamNodeMap.values())
+			prev.put(agent, agent.getSystemInfo());
+		sendToAll(new CTRLRMessageElementHolder(Request.SysInfo, -1));
+		long deadline = System.currentTimeMillis() + timeout;
+		Map<Integer, Double> cpuUsage = new HashMap<>();
+		while (true) {
+			for (Map.Entry<StreamNodeAgent, SystemInfo> en : prev.entrySet()) {
+				SystemInfo sysInfo = en.getKey().getSystemInfo();
+				if (sysInfo != en.getValue())
+					cpuUsage.put(en.getKey().getNodeID(), sysInfo.cpuUsage);
+			}
+			if (cpuUsage.size() == prev.size()
+					|| System.currentTimeMillis() > deadline)
+				break;
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				break;
+			}
+		}
+		return cpuUsage;
+	}
+
 	public void newApp(Configuration.Builder builder) {
-		Map<Integer, InetAddress> inetMap = new HashMap<>();
+		inetMap = new HashMap<>();
 		for (StreamNodeAgent agent : StreamNodeMap.values())
 			inetMap.put(agent.getNodeID(), agent.getAddress());
 
 		inetMap.put(controllerNodeID, comManager.getLocalAddress());
 		builder.putExtraData(GlobalConstants.INETADDRESS_MAP, inetMap);
+		staticCfgBuilder = builder;
 		NetworkInfo networkinfo = new NetworkInfo(inetMap);
 		this.conProvider = new ConnectionProvider(controllerNodeID, networkinfo);
 		ConfigurationString json = new ConfigurationString1(builder.build()
@@ -182,6 +331,7 @@ public class Controller {
 	}
 
 	public void registerManager(StreamJitAppManager manager) {
+		this.manager = manager;
 		for (StreamNodeAgent node : StreamNodeMap.values()) {
 			node.registerManager(manager);
 		}
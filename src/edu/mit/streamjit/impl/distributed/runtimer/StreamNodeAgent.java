@@ -28,13 +28,17 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import edu.mit.streamjit.impl.distributed.common.AppStatus;
 import edu.mit.streamjit.impl.distributed.common.CTRLRMessageElement.CTRLRMessageElementHolder;
 import edu.mit.streamjit.impl.distributed.common.CompilationInfo;
+import edu.mit.streamjit.impl.distributed.common.CreditGrant;
 import edu.mit.streamjit.impl.distributed.common.Error;
 import edu.mit.streamjit.impl.distributed.common.NodeInfo;
 import edu.mit.streamjit.impl.distributed.common.NodeInfo.NodeInfoProcessor;
 import edu.mit.streamjit.impl.distributed.common.Request;
 import edu.mit.streamjit.impl.distributed.common.SNDrainElement;
 import edu.mit.streamjit.impl.distributed.common.SNException;
+import edu.mit.streamjit.impl.distributed.common.SNMembershipElement;
 import edu.mit.streamjit.impl.distributed.common.SNMessageVisitor;
+import edu.mit.streamjit.impl.distributed.common.SNMigrationElement;
+import edu.mit.streamjit.impl.distributed.common.SNNodeIOElement;
 import edu.mit.streamjit.impl.distributed.common.SNTimeInfo;
 import edu.mit.streamjit.impl.distributed.common.SystemInfo;
 import edu.mit.streamjit.impl.distributed.common.SystemInfo.SystemInfoProcessor;
@@ -338,5 +342,35 @@ public abstract class StreamNodeAgent {
 					"StreamNodeAgent's SNMessageVisitor does not process SNProfileElement."
 							+ " AppInstanceManager's SNMessageVisitor must be called.");
 		}
+
+		@Override
+		public void visit(CreditGrant creditGrant) {
+			throw new UnsupportedOperationException(
+					"StreamNodeAgent's SNMessageVisitor does not process CreditGrant."
+							+ " AppInstanceManager's SNMessageVisitor must be called.");
+		}
+
+		@Override
+		public void visit(SNMigrationElement snMigrationElement) {
+			throw new UnsupportedOperationException(
+					"StreamNodeAgent's SNMessageVisitor does not process SNMigrationElement."
+							+ " AppInstanceManager's SNMessageVisitor must be called.");
+		}
+
+		@Override
+		public void visit(SNNodeIOElement snNodeIOElement) {
+			if (manager == null)
+				throw new IllegalStateException(
+						"StreamJitAppManager has not been set");
+			snNodeIOElement.process(manager.nodeIOProcessor());
+		}
+
+		@Override
+		public void visit(SNMembershipElement snMembershipElement) {
+			if (manager == null)
+				throw new IllegalStateException(
+						"StreamJitAppManager has not been set");
+			snMembershipElement.process(manager.membershipProcessor());
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.partitioner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Rate;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.compiler2.WorkCosts;
+
+/**
+ * {@link BandwidthAwarePartitioner} partitions the stream graph so that the
+ * data volume those flow between the partitions is minimum, while the
+ * partitions' loads are balanced.
+ * <p>
+ * The stream graph is treated as a weighted graph. A worker's weight is its
+ * steady state load, i.e., its steady state repetition count times its
+ * profiled cost per firing (see {@link WorkCosts}). An edge's weight is the
+ * number of items those flow through the edge in a steady state, i.e., the
+ * upstream worker's repetition count times its push rate. Dynamic rates are
+ * assumed to be 1.
+ * <p>
+ * The graph is partitioned in multiple levels. The graph is repeatedly
+ * coarsened by merging the workers connected by the heaviest edges. The
+ * coarsest graph is partitioned by cutting it in the topological order into
+ * equally loaded parts. The partition is then projected back to the finer
+ * graphs and, at each level, refined by moving the boundary workers to the
+ * partition they communicate the most with, as long as the load stays
+ * balanced.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 27 Oct, 2016
+ */
+public class BandwidthAwarePartitioner<I, O> extends AbstractPartitioner<I, O> {
+
+	/**
+	 * Coarsening stops once the graph has less than noOfPartitions *
+	 * coarsestSize vertices.
+	 */
+	private static final int coarsestSize = 8;
+
+	/**
+	 * Allowed load imbalance. A partition's load may exceed the average load
+	 * by this fraction, or by the heaviest vertex (but not more than half the
+	 * average load), whichever is more. Without the latter, no vertex of a
+	 * graph with a few, heavy vertices could ever move.
+	 */
+	private static final double imbalance = 0.1;
+
+	private static final int maxRefinementPasses = 10;
+
+	/**
+	 * Profiled costs of the workers. May be null.
+	 */
+	private final WorkCosts workCosts;
+
+	/**
+	 * Steady state data volume between the partitions of the last partition.
+	 */
+	private double cutVolume;
+
+	public BandwidthAwarePartitioner() {
+		this(null);
+	}
+
+	/**
+	 * @param workCosts
+	 *            profiled costs of the workers. If null or empty, all workers
+	 *            are assumed to cost the same per firing.
+	 */
+	public BandwidthAwarePartitioner(WorkCosts workCosts) {
+		this.workCosts = workCosts;
+	}
+
+	/**
+	 * @return the number of items those flow between the partitions, in a
+	 *         steady state, for the last partition.
+	 */
+	public double cutVolume() {
+		return cutVolume;
+	}
+
+	@Override
+	protected List<Set<Worker<?, ?>>> patririonEquallyImpl(
+			OneToOneElement<I, O> streamGraph, Worker<I, ?> source,
+			Worker<?, O> sink, int noOfPartitions) {
+		List<Worker<?, ?>> workers = Workers.topologicalSort(Workers
+				.getAllWorkersInGraph(source));
+		Graph fine = buildGraph(workers);
+
+		List<Graph> levels = new ArrayList<>();
+		levels.add(fine);
+		Graph g = fine;
+		while (g.size() > noOfPartitions * coarsestSize) {
+			Graph coarse = g.coarsen(g.totalWeight() / noOfPartitions / 2);
+			if (coarse.size() > 0.9 * g.size())
+				break;
+			levels.add(coarse);
+			g = coarse;
+		}
+
+		int[] part = g.initialPartition(noOfPartitions);
+		g.refine(part, noOfPartitions);
+		for (int l = levels.size() - 1; l > 0; l--) {
+			Graph coarse = levels.get(l);
+			Graph finer = levels.get(l - 1);
+			int[] finerPart = new int[finer.size()];
+			for (int v = 0; v < finer.size(); v++)
+				finerPart[v] = part[coarse.parentOf[v]];
+			part = finerPart;
+			finer.refine(part, noOfPartitions);
+		}
+		cutVolume = fine.cutVolume(part);
+
+		List<Set<Worker<?, ?>>> partitionList = new ArrayList<>();
+		for (int i = 0; i < noOfPartitions; i++)
+			partitionList.add(new HashSet<Worker<?, ?>>());
+		for (int v = 0; v < workers.size(); v++)
+			partitionList.get(part[v]).add(workers.get(v));
+		return partitionList;
+	}
+
+	/**
+	 * Builds the weighted graph of the workers. The vertices are numbered in
+	 * the topological order.
+	 */
+	private Graph buildGraph(List<Worker<?, ?>> workers) {
+		Map<Worker<?, ?>, Integer> index = new HashMap<>();
+		for (int v = 0; v < workers.size(); v++)
+			index.put(workers.get(v), v);
+
+		double[] reps = new double[workers.size()];
+		reps[0] = 1;
+		for (int v = 0; v < workers.size(); v++) {
+			Worker<?, ?> w = workers.get(v);
+			if (reps[v] == 0)
+				reps[v] = 1;
+			List<? extends Worker<?, ?>> succs = Workers.getSuccessors(w);
+			for (int i = 0; i < succs.size(); i++) {
+				Worker<?, ?> s = succs.get(i);
+				int sv = index.get(s);
+				if (reps[sv] != 0)
+					continue;
+				int in = Workers.getPredecessors(s).indexOf(w);
+				reps[sv] = reps[v] * rate(w.getPushRates().get(i))
+						/ rate(s.getPopRates().get(in));
+			}
+		}
+
+		Graph g = new Graph(workers.size());
+		for (int v = 0; v < workers.size(); v++) {
+			Worker<?, ?> w = workers.get(v);
+			g.weight[v] = reps[v] * cost(w);
+			List<? extends Worker<?, ?>> succs = Workers.getSuccessors(w);
+			for (int i = 0; i < succs.size(); i++)
+				g.addEdge(v, index.get(succs.get(i)), reps[v]
+						* rate(w.getPushRates().get(i)));
+		}
+		return g;
+	}
+
+	private double cost(Worker<?, ?> w) {
+		if (workCosts == null || workCosts.isEmpty())
+			return 1;
+		return workCosts.nanosPerFiring(Workers.getIdentifier(w));
+	}
+
+	private static int rate(Rate r) {
+		int val = r.avg() != Rate.DYNAMIC ? r.avg() : r.max();
+		return val > 0 ? val : 1;
+	}
+
+	/**
+	 * Undirected, weighted graph. Vertices are numbered from 0.
+	 */
+	private static final class Graph {
+
+		final double[] weight;
+
+		final List<Map<Integer, Double>> edges;
+
+		/**
+		 * Set only for coarsened graphs. parentOf[v] is the vertex of this
+		 * graph that the vertex v of the finer graph has been merged into.
+		 */
+		int[] parentOf;
+
+		Graph(int size) {
+			weight = new double[size];
+			edges = new ArrayList<>(size);
+			for (int v = 0; v < size; v++)
+				edges.add(new HashMap<Integer, Double>());
+		}
+
+		int size() {
+			return weight.length;
+		}
+
+		void addEdge(int u, int v, double w) {
+			if (u == v)
+				return;
+			edges.get(u).merge(v, w, Double::sum);
+			edges.get(v).merge(u, w, Double::sum);
+		}
+
+		double totalWeight() {
+			double total = 0;
+			for (double w : weight)
+				total += w;
+			return total;
+		}
+
+		/**
+		 * Heavy edge matching. Every vertex is merged with its unmatched
+		 * neighbour that it has the heaviest edge with, unless the merged
+		 * vertex would be heavier than maxWeight. The coarse vertices keep the
+		 * (topological) order of the finer vertices.
+		 */
+		Graph coarsen(double maxWeight) {
+			int[] parent = new int[size()];
+			Arrays.fill(parent, -1);
+			int coarseSize = 0;
+			for (int u = 0; u < size(); u++) {
+				if (parent[u] != -1)
+					continue;
+				int match = -1;
+				double heaviest = -1;
+				for (Map.Entry<Integer, Double> en : edges.get(u).entrySet()) {
+					int v = en.getKey();
+					if (parent[v] == -1 && en.getValue() > heaviest
+							&& weight[u] + weight[v] <= maxWeight) {
+						match = v;
+						heaviest = en.getValue();
+					}
+				}
+				parent[u] = coarseSize;
+				if (match != -1)
+					parent[match] = coarseSize;
+				coarseSize++;
+			}
+
+			Graph coarse = new Graph(coarseSize);
+			coarse.parentOf = parent;
+			for (int u = 0; u < size(); u++) {
+				coarse.weight[parent[u]] += weight[u];
+				for (Map.Entry<Integer, Double> en : edges.get(u).entrySet())
+					if (u < en.getKey())
+						coarse.addEdge(parent[u], parent[en.getKey()],
+								en.getValue());
+			}
+			return coarse;
+		}
+
+		/**
+		 * Cuts the vertices, in their order, into noOfPartitions parts of
+		 * nearly equal weights.
+		 */
+		int[] initialPartition(int noOfPartitions) {
+			int[] part = new int[size()];
+			double target = totalWeight() / noOfPartitions;
+			double sum = 0;
+			int p = 0;
+			for (int v = 0; v < size(); v++) {
+				if (sum >= (p + 1) * target && p < noOfPartitions - 1)
+					p++;
+				part[v] = p;
+				sum += weight[v];
+			}
+			return part;
+		}
+
+		/**
+		 * Moves the boundary vertices to the partition they have the heaviest
+		 * edges with, if the move reduces the cut volume without overloading
+		 * the destination, or keeps the cut volume and improves the balance.
+		 * A partition is never emptied.
+		 */
+		void refine(int[] part, int noOfPartitions) {
+			double average = totalWeight() / noOfPartitions;
+			double heaviest = 0;
+			for (double w : weight)
+				heaviest = Math.max(heaviest, w);
+			double maxLoad = Math.max((1 + imbalance) * average, average
+					+ Math.min(heaviest, average / 2));
+			double[] load = new double[noOfPartitions];
+			int[] count = new int[noOfPartitions];
+			for (int v = 0; v < size(); v++) {
+				load[part[v]] += weight[v];
+				count[part[v]]++;
+			}
+
+			for (int pass = 0; pass < maxRefinementPasses; pass++) {
+				boolean moved = false;
+				for (int v = 0; v < size(); v++) {
+					int p = part[v];
+					if (count[p] == 1)
+						continue;
+					Map<Integer, Double> conn = new HashMap<>();
+					for (Map.Entry<Integer, Double> en : edges.get(v)
+							.entrySet())
+						conn.merge(part[en.getKey()], en.getValue(),
+								Double::sum);
+					double internal = conn.containsKey(p) ? conn.get(p) : 0;
+					int best = -1;
+					double bestGain = 0;
+					for (Map.Entry<Integer, Double> en : conn.entrySet()) {
+						int q = en.getKey();
+						if (q == p)
+							continue;
+						double gain = en.getValue() - internal;
+						boolean fits = load[q] + weight[v] <= maxLoad;
+						boolean balances = load[q] + weight[v] < load[p];
+						if ((gain > 0 && fits) || (gain == 0 && balances)) {
+							if (best == -1 || gain > bestGain) {
+								best = q;
+								bestGain = gain;
+							}
+						}
+					}
+					if (best != -1) {
+						part[v] = best;
+						load[p] -= weight[v];
+						load[best] += weight[v];
+						count[p]--;
+						count[best]++;
+						moved = true;
+					}
+				}
+				if (!moved)
+					break;
+			}
+		}
+
+		double cutVolume(int[] part) {
+			double cut = 0;
+			for (int u = 0; u < size(); u++)
+				for (Map.Entry<Integer, Double> en : edges.get(u).entrySet())
+					if (u < en.getKey() && part[u] != part[en.getKey()])
+						cut += en.getValue();
+			return cut;
+		}
+	}
+}
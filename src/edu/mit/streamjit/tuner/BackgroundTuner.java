@@ -0,0 +1,251 @@
+package edu.mit.streamjit.tuner;
+
+import java.util.Random;
+
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.distributed.common.AppStatus;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager.NewConfiguration;
+import edu.mit.streamjit.impl.distributed.controller.SeamlessReconfigurer;
+import edu.mit.streamjit.impl.distributed.controller.HT.TPStatistics;
+import edu.mit.streamjit.tuner.JavaTuner.SearchSpace;
+import edu.mit.streamjit.util.ConfigurationUtils;
+import edu.mit.streamjit.util.Pair;
+
+/**
+ * Keeps tuning the app in the background after the {@link OnlineTuner} has
+ * finished, as the input rates and the nodes' availability drift in
+ * production. See {@link Options#retune}.
+ * <p>
+ * Watches the throughput through the app's {@link TPStatistics}. When the
+ * throughput falls more than {@link Options#retuneThreshold} percent below
+ * the baseline, runs a local search of at most {@link Options#retuneTrials}
+ * trials around the best configuration. A trial is a neighbour of the best
+ * configuration that runs for a measurement window; if it does not beat the
+ * best one, the best one is restored straight away. If the best one can not be
+ * restored after a few attempts, the background tuning stops, leaving the app
+ * with whatever configuration it runs. Trials are at least
+ * {@link Options#retuneInterval} apart. A {@link SeamlessReconfigurer} keeps
+ * the app running through the trials and the rollbacks; the background tuning
+ * does not start if the app is reconfigured by any other reconfigurer.
+ * 
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public class BackgroundTuner implements Runnable {
+
+	/**
+	 * Standard deviation of a mutation in the unit hypercube of the
+	 * {@link SearchSpace}. Keeps the search local.
+	 */
+	private static final double sigma = 0.1;
+
+	/**
+	 * Weight of a new measurement window when the baseline follows the
+	 * throughput up. A single unusually good window must not raise the
+	 * trigger point on its own.
+	 */
+	private static final double baselineSmoothing = 0.2;
+
+	/**
+	 * Attempts to restore the best configuration before giving up.
+	 */
+	private static final int rollbackAttempts = 3;
+
+	private final Reconfigurer configurer;
+
+	private final TPStatistics tpStatistics;
+
+	private final SearchSpace space;
+
+	private final Random random;
+
+	/**
+	 * Number of the {@link Options#throughputMeasurementPeriod}s that make a
+	 * measurement window.
+	 */
+	private final int windowPeriods;
+
+	private Configuration bestCfg;
+
+	private double[] bestPoint;
+
+	/**
+	 * Throughput the monitoring compares against. A local search ends with
+	 * the throughput it has reached, which is lower than the baseline before
+	 * the regression. The baseline follows the throughput back up as it
+	 * recovers, smoothed by {@link #baselineSmoothing}, so a regression does
+	 * not lower the trigger point for good.
+	 */
+	private double baseline;
+
+	/**
+	 * Time of the last reconfiguration.
+	 */
+	private long lastReconfig;
+
+	private int reconfigCount;
+
+	public BackgroundTuner(Reconfigurer configurer, Configuration bestCfg) {
+		this.configurer = configurer;
+		this.tpStatistics = configurer.app.tp == null ? null
+				: configurer.app.tp.tpStatistics;
+		this.space = new SearchSpace(bestCfg);
+		this.random = new Random();
+		this.windowPeriods = Math.max(1, Options.steadyMills
+				/ Math.max(1, Options.throughputMeasurementPeriod));
+		this.bestCfg = bestCfg;
+		this.bestPoint = space.encode(bestCfg);
+	}
+
+	@Override
+	public void run() {
+		if (tpStatistics == null || Options.throughputMeasurementPeriod < 1) {
+			System.err
+					.println("BackgroundTuner: Throughput is not measured. No background tuning.");
+			return;
+		}
+		if (!(configurer.manager.reconfigurer instanceof SeamlessReconfigurer)) {
+			System.err
+					.println("BackgroundTuner: The app does not run a SeamlessReconfigurer, which "
+							+ "would pause it on every trial. No background tuning.");
+			return;
+		}
+		try {
+			if (!apply(bestCfg, "retuneBest").first)
+				return;
+			baseline = measure();
+			System.out.println(String.format(
+					"BackgroundTuner: baseline throughput=%.2f", baseline));
+			while (isRunning()) {
+				Thread.sleep(Options.throughputMeasurementPeriod);
+				double tp = tpStatistics.recentThroughput(windowPeriods);
+				if (tp < 0 || baseline < 0)
+					continue;
+				if (tp > baseline)
+					baseline += baselineSmoothing * (tp - baseline);
+				if (tp < baseline * (1 - Options.retuneThreshold / 100.0)
+						&& System.currentTimeMillis() - lastReconfig >= Options.retuneInterval
+						&& !localSearch(tp))
+					return;
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param current
+	 *            the regressed throughput of the best configuration.
+	 * @return false if the background tuning must stop.
+	 */
+	private boolean localSearch(double current) throws InterruptedException {
+		System.out.println(String.format(
+				"BackgroundTuner: throughput has dropped from %.2f to %.2f."
+						+ " Starting a local search.", baseline, current));
+		double bestTP = current;
+		for (int i = 0; i < Options.retuneTrials && isRunning(); i++) {
+			long wait = lastReconfig + Options.retuneInterval
+					- System.currentTimeMillis();
+			if (wait > 0)
+				Thread.sleep(wait);
+			double[] point = neighbour(bestPoint);
+			Configuration cfg = space.decode(point);
+			Pair<Boolean, Integer> ret = apply(cfg, "retune");
+			if (!ret.first)
+				return false;
+			if (ret.second < 0) {
+				// -6 and -7 may have left the app without a running
+				// configuration.
+				if (ret.second <= -6 && !rollback())
+					return false;
+				continue;
+			}
+			double tp = measure();
+			if (tp > bestTP) {
+				System.out.println(String.format(
+						"BackgroundTuner: new best throughput=%.2f", tp));
+				bestTP = tp;
+				bestCfg = cfg;
+				bestPoint = point;
+			} else {
+				System.out.println(String.format(
+						"BackgroundTuner: trial throughput=%.2f. Rolling back.",
+						tp));
+				if (!rollback())
+					return false;
+			}
+		}
+		baseline = bestTP;
+		return true;
+	}
+
+	/**
+	 * @return a copy of the point with one or a few coordinates mutated.
+	 */
+	private double[] neighbour(double[] point) {
+		double[] p = point.clone();
+		int mutations = 1 + random.nextInt(Math.max(1, Math.min(3, p.length)));
+		for (int m = 0; m < mutations && p.length > 0; m++) {
+			int dim = random.nextInt(p.length);
+			p[dim] = space.mutate(dim, p[dim], random, sigma);
+		}
+		return space.round(p);
+	}
+
+	/**
+	 * Restores the best configuration, retrying a failed reconfiguration up
+	 * to {@link #rollbackAttempts} times.
+	 * 
+	 * @return false if the best configuration could not be restored, or the
+	 *         app is stopping.
+	 */
+	private boolean rollback() throws InterruptedException {
+		for (int i = 1; i <= rollbackAttempts; i++) {
+			Pair<Boolean, Integer> ret = apply(bestCfg, "rollback");
+			if (!ret.first)
+				return false;
+			if (ret.second >= 0)
+				return true;
+			System.err.println(String.format(
+					"BackgroundTuner: rollback attempt %d of %d has failed (%d).",
+					i, rollbackAttempts, ret.second));
+			Thread.sleep(Options.throughputMeasurementPeriod);
+		}
+		System.err
+				.println("BackgroundTuner: Couldn't restore the best configuration. "
+						+ "Stopping the background tuning.");
+		return false;
+	}
+
+	/**
+	 * Reconfigures the app with the configuration. See
+	 * {@link Reconfigurer#reconfigure(NewConfiguration)} for the return value.
+	 */
+	private Pair<Boolean, Integer> apply(Configuration cfg, String prefix) {
+		String cfgPrefix = String.format("%s%d", prefix, ++reconfigCount);
+		cfg = ConfigurationUtils.addConfigPrefix(cfg, cfgPrefix);
+		if (Options.saveAllConfigurations)
+			ConfigurationUtils.saveConfg(cfg, cfgPrefix, configurer.app.name);
+		NewConfiguration newConfig = configurer.newConfiguration(cfg);
+		Pair<Boolean, Integer> ret = configurer.reconfigure(newConfig);
+		lastReconfig = System.currentTimeMillis();
+		return ret;
+	}
+
+	/**
+	 * Waits for the running configuration to settle and for a measurement
+	 * window.
+	 * 
+	 * @return the average throughput of the measurement window.
+	 */
+	private double measure() throws InterruptedException {
+		Thread.sleep(Options.skipMills + windowPeriods
+				* Options.throughputMeasurementPeriod);
+		return tpStatistics.recentThroughput(windowPeriods);
+	}
+
+	private boolean isRunning() {
+		return configurer.manager.getStatus() != AppStatus.STOPPED;
+	}
+}
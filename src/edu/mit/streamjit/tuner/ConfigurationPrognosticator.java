@@ -42,6 +42,20 @@ public interface ConfigurationPrognosticator {
 	 */
 	public void time(double time);
 
+	/**
+	 * Updates the running time of a configuration that has been
+	 * prognosticated before. Implementations those learn from the measured
+	 * times need this instead of {@link #time(double)}.
+	 * 
+	 * @param config
+	 * @param time
+	 *            running time, or a negative value if the configuration
+	 *            failed.
+	 */
+	public default void time(NewConfiguration config, double time) {
+		time(time);
+	}
+
 	/**
 	 * No Prognostication. The method {@link #prognosticate(NewConfiguration)}
 	 * always returns {@code true}
@@ -0,0 +1,838 @@
+package edu.mit.streamjit.tuner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.FloatParameter;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.impl.common.Configuration.Parameter;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.util.ConfigurationUtils;
+import edu.mit.streamjit.util.Pair;
+import edu.mit.streamjit.util.json.Jsonifiers;
+
+/**
+ * Pure Java, in-process replacement of the Python OpenTuner that
+ * {@link TCPTuner} starts. Speaks the same line protocol as
+ * autotuner/onlinetuner.py, so {@link OnlineTuner} can use either of them (see
+ * {@link Options#tunerStartMode}), but needs neither a Python process nor a
+ * socket.
+ * <p>
+ * The search runs on a thread of its own. It tunes the
+ * {@link IntParameter}s, {@link SwitchParameter}s and {@link FloatParameter}s
+ * of the configuration, each mapped to [0, 1]. All other parameters, such as
+ * {@link Configuration.PartitionParameter}s, are passed through unchanged.
+ * Like OpenTuner, an AUC bandit picks, for every trial, one of the following
+ * search techniques, crediting the techniques those recently found new best
+ * configurations:
+ * <ol>
+ * <li>Differential evolution.
+ * <li>Hill climbing, by mutating a few parameters of the best configuration.
+ * <li>Pattern search around the best configuration, halving the step size
+ * after every sweep without an improvement.
+ * </ol>
+ * Every result is appended to a results file in the tuner's working
+ * directory. A new tuning run with the same working directory loads the
+ * results, skips re-measuring the known configurations and starts from the
+ * best of them.
+ *
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public final class JavaTuner implements OpenTuner {
+
+	private static final String resultsFileName = "javatuner.results";
+
+	/**
+	 * Lines to {@link OnlineTuner}.
+	 */
+	private final BlockingQueue<String> toStreamJit = new LinkedBlockingQueue<>();
+
+	/**
+	 * Measurement results, in "configPrefix:time" format.
+	 */
+	private final BlockingQueue<String> results = new LinkedBlockingQueue<>();
+
+	/**
+	 * Marks the end of {@link #toStreamJit}.
+	 */
+	private static final String EOF = new String("EOF");
+
+	private File workingDir;
+
+	private String pendingKey;
+
+	/**
+	 * Configurations to be measured first. See {@link TuningKnowledgeBase}.
+	 */
+	private final List<Configuration> seedCfgs = new ArrayList<>();
+
+	private int tuningRounds = 500;
+
+	private int parallelCfgs = 1;
+
+	private volatile Thread searchThread;
+
+	private volatile boolean stopped = false;
+
+	@Override
+	public String readLine() throws IOException {
+		try {
+			String line = toStreamJit.take();
+			if (line == EOF) {
+				toStreamJit.offer(EOF);
+				return null;
+			}
+			return line;
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public synchronized int writeLine(String message) throws IOException {
+		String line = message.trim();
+		if (pendingKey != null) {
+			String key = pendingKey;
+			pendingKey = null;
+			switch (key) {
+				case "tunerounds" :
+					tuningRounds = Integer.parseInt(line);
+					break;
+				case "parallelcfgs" :
+					parallelCfgs = Math.max(1, Integer.parseInt(line));
+					break;
+				case "seedcfg" :
+					seedCfgs.add(Configuration.fromJson(line));
+					break;
+				case "confg" :
+					startSearch(Configuration.fromJson(line));
+					break;
+				default :
+					break;
+			}
+		} else if (line.equals("program") || line.equals("tunerounds")
+				|| line.equals("parallelcfgs") || line.equals("seedcfg")
+				|| line.equals("confg"))
+			pendingKey = line;
+		else if (line.equals("exit"))
+			stopSearch();
+		else
+			results.offer(line);
+		return message.length();
+	}
+
+	@Override
+	public boolean isAlive() {
+		Thread t = searchThread;
+		return t != null && t.isAlive();
+	}
+
+	@Override
+	public void startTuner(String tunerPath, File workingDir)
+			throws IOException {
+		this.workingDir = workingDir;
+	}
+
+	@Override
+	public void stopTuner() throws IOException {
+		stopSearch();
+	}
+
+	private void startSearch(Configuration cfg) {
+		final Search search = new Search(cfg, seedCfgs);
+		searchThread = new Thread("JavaTuner") {
+			public void run() {
+				try {
+					search.run();
+				} catch (InterruptedException e) {
+				} finally {
+					toStreamJit.offer(EOF);
+				}
+			}
+		};
+		searchThread.setDaemon(true);
+		searchThread.start();
+	}
+
+	private void stopSearch() {
+		stopped = true;
+		Thread t = searchThread;
+		if (t != null)
+			t.interrupt();
+		else
+			toStreamJit.offer(EOF);
+	}
+
+	/**
+	 * The tuning loop.
+	 */
+	private final class Search {
+
+		private final SearchSpace space;
+
+		private final ResultsStore store;
+
+		private final List<SearchTechnique> techniques;
+
+		private final AUCBandit bandit;
+
+		/**
+		 * configPrefix -> trial.
+		 */
+		private final Map<Integer, Trial> outstanding = new HashMap<>();
+
+		private int tryCount = 0;
+
+		private int measured = 0;
+
+		/**
+		 * Seed configurations those are yet to be measured, the incoming
+		 * configuration first.
+		 */
+		private final Deque<double[]> seeds = new ArrayDeque<>();
+
+		Search(Configuration cfg, List<Configuration> seedCfgs) {
+			this.space = new SearchSpace(cfg);
+			this.store = new ResultsStore(workingDir == null ? null
+					: resultsFile(workingDir), space);
+			Random random = new Random();
+			this.techniques = ImmutableList.of(new DifferentialEvolution(
+					space, store, random), new HillClimbing(space, store,
+					random), new PatternSearch(space, store, random));
+			this.bandit = new AUCBandit(techniques.size());
+			store.load();
+			// Like OpenTuner's default configuration, the incoming one is
+			// measured first, so that the techniques are credited against a
+			// measured baseline rather than against random configurations.
+			double[] base = space.encode(cfg);
+			seeds.add(base);
+			techniques.get(0).seed(base);
+			for (Configuration seedCfg : seedCfgs) {
+				double[] point = space.encode(seedCfg);
+				if (point == null)
+					continue;
+				seeds.add(point);
+				techniques.get(0).seed(point);
+			}
+		}
+
+		void run() throws InterruptedException {
+			while (!stopped && measured < tuningRounds) {
+				while (outstanding.size() < parallelCfgs
+						&& tryCount - measured < parallelCfgs)
+					propose();
+				result(results.take());
+			}
+			if (stopped)
+				return;
+			while (!outstanding.isEmpty() && !stopped)
+				result(results.take());
+			double[] best = store.best();
+			Configuration finalCfg = space.decode(best == null ? space
+					.encode(space.base) : best);
+			toStreamJit.offer("Completed");
+			toStreamJit.offer(Jsonifiers.toJson(
+					ConfigurationUtils.addConfigPrefix(finalCfg, "final"))
+					.toString());
+		}
+
+		/**
+		 * Sends a new configuration to be measured. Known configurations are
+		 * not sent again; their stored results are fed back right away.
+		 */
+		private void propose() {
+			while (!seeds.isEmpty()) {
+				double[] point = seeds.poll();
+				if (store.time(point) == null) {
+					send(noTechnique, point);
+					return;
+				}
+			}
+			for (int attempt = 0; attempt < 100; attempt++) {
+				int t = bandit.select();
+				SearchTechnique technique = techniques.get(t);
+				double[] point = technique.propose();
+				Double known = store.time(point);
+				if (known != null) {
+					technique.result(point, known);
+					continue;
+				}
+				send(t, point);
+				return;
+			}
+			// The techniques keep on proposing known configurations.
+			send(noTechnique, space.random(new Random()));
+		}
+
+		private void send(int technique, double[] point) {
+			int prefix = ++tryCount;
+			outstanding.put(prefix, new Trial(technique, point));
+			Configuration cfg = ConfigurationUtils.addConfigPrefix(
+					space.decode(point), Integer.toString(prefix));
+			toStreamJit.offer(Jsonifiers.toJson(cfg).toString());
+		}
+
+		private void result(String msg) {
+			String[] pair = msg.split(":");
+			if (pair.length != 2) {
+				System.err.println("JavaTuner: Unexpected message " + msg);
+				return;
+			}
+			Trial trial = outstanding.remove(Integer.parseInt(pair[0].trim()));
+			if (trial == null) {
+				System.err.println("JavaTuner: Unknown configuration "
+						+ pair[0]);
+				return;
+			}
+			double time = Double.parseDouble(pair[1].trim());
+			if (time < 0)
+				time = Double.POSITIVE_INFINITY;
+			measured++;
+			boolean newBest = store.add(trial.point, time);
+			if (trial.technique == noTechnique) {
+				// The differential evolution keeps the seeds.
+				techniques.get(0).result(trial.point, time);
+				return;
+			}
+			bandit.reward(trial.technique, newBest);
+			techniques.get(trial.technique).result(trial.point, time);
+		}
+	}
+
+	/**
+	 * {@link Trial#technique} of the seeds and the random fallback
+	 * configurations. No technique is credited for them.
+	 */
+	private static final int noTechnique = -1;
+
+	private static final class Trial {
+		final int technique;
+		final double[] point;
+
+		Trial(int technique, double[] point) {
+			this.technique = technique;
+			this.point = point;
+		}
+	}
+
+	/**
+	 * Maps the tunable parameters of a configuration to the unit hypercube.
+	 */
+	static final class SearchSpace {
+
+		final Configuration base;
+
+		private final List<Parameter> params;
+
+		SearchSpace(Configuration base) {
+			this.base = base;
+			List<Parameter> params = new ArrayList<>();
+			for (Parameter p : base.getParametersMap().values())
+				if (levels(p) > 1)
+					params.add(p);
+			this.params = ImmutableList.copyOf(params);
+		}
+
+		int dimensions() {
+			return params.size();
+		}
+
+		/**
+		 * @return number of values the parameter can take, or -1 if it is
+		 *         continuous, or 0 if it is not tunable.
+		 */
+		private static int levels(Parameter p) {
+			if (p instanceof IntParameter) {
+				IntParameter ip = (IntParameter) p;
+				return ip.getMax() - ip.getMin() + 1;
+			} else if (p instanceof SwitchParameter)
+				return ((SwitchParameter<?>) p).getUniverse().size();
+			else if (p instanceof FloatParameter)
+				return ((FloatParameter) p).getMax() > ((FloatParameter) p)
+						.getMin() ? Integer.MAX_VALUE : 0;
+			return 0;
+		}
+
+		/**
+		 * Snaps each coordinate to the nearest value of its parameter.
+		 */
+		double[] round(double[] point) {
+			double[] rounded = new double[point.length];
+			for (int i = 0; i < point.length; i++) {
+				double x = Math.max(0, Math.min(1, point[i]));
+				int levels = levels(params.get(i));
+				if (levels != Integer.MAX_VALUE)
+					x = Math.round(x * (levels - 1)) / (double) (levels - 1);
+				rounded[i] = x;
+			}
+			return rounded;
+		}
+
+		double[] random(Random random) {
+			double[] point = new double[dimensions()];
+			for (int i = 0; i < point.length; i++)
+				point[i] = random.nextDouble();
+			return round(point);
+		}
+
+		/**
+		 * @return null if the configuration lacks any of the parameters.
+		 */
+		double[] encode(Configuration cfg) {
+			double[] point = new double[dimensions()];
+			for (int i = 0; i < point.length; i++) {
+				Parameter p = cfg.getParameter(params.get(i).getName());
+				if (p == null || p.getClass() != params.get(i).getClass())
+					return null;
+				if (p instanceof IntParameter) {
+					IntParameter ip = (IntParameter) p;
+					point[i] = (ip.getValue() - ip.getMin())
+							/ (double) Math.max(1, ip.getMax() - ip.getMin());
+				} else if (p instanceof SwitchParameter) {
+					SwitchParameter<?> sp = (SwitchParameter<?>) p;
+					point[i] = sp.getUniverse().indexOf(sp.getValue())
+							/ (double) Math.max(1, sp.getUniverse().size() - 1);
+				} else {
+					FloatParameter fp = (FloatParameter) p;
+					point[i] = (fp.getValue() - fp.getMin())
+							/ (fp.getMax() - fp.getMin());
+				}
+			}
+			return round(point);
+		}
+
+		Configuration decode(double[] point) {
+			Configuration.Builder builder = Configuration.builder(base);
+			for (int i = 0; i < point.length; i++) {
+				Parameter p = builder.removeParameter(params.get(i).getName());
+				if (p instanceof IntParameter) {
+					IntParameter ip = (IntParameter) p;
+					builder.addParameter(new IntParameter(ip.getName(), ip
+							.getRange(), ip.getMin()
+							+ (int) Math.round(point[i]
+									* (ip.getMax() - ip.getMin()))));
+				} else if (p instanceof SwitchParameter)
+					builder.addParameter(withIndex((SwitchParameter<?>) p,
+							(int) Math.round(point[i]
+									* (((SwitchParameter<?>) p).getUniverse()
+											.size() - 1))));
+				else {
+					FloatParameter fp = (FloatParameter) p;
+					builder.addParameter(new FloatParameter(fp.getName(), fp
+							.getRange(), (float) (fp.getMin() + point[i]
+							* (fp.getMax() - fp.getMin()))));
+				}
+			}
+			return builder.build();
+		}
+
+		private static <T> SwitchParameter<T> withIndex(SwitchParameter<T> p,
+				int index) {
+			return new SwitchParameter<T>(p.getName(),
+					p.getGenericParameter(), p.getUniverse().get(index),
+					p.getUniverse());
+		}
+
+		/**
+		 * @return a random value of the dimension, different from x if the
+		 *         dimension has more than one value.
+		 */
+		double mutate(int dim, double x, Random random, double sigma) {
+			int levels = levels(params.get(dim));
+			if (levels != Integer.MAX_VALUE && levels < 8)
+				return random.nextInt(levels) / (double) (levels - 1);
+			return Math.max(0, Math.min(1, x + random.nextGaussian() * sigma));
+		}
+	}
+
+	/**
+	 * All results of this and earlier tuning runs, persisted in a results
+	 * file.
+	 */
+	static final class ResultsStore {
+
+		private final File file;
+
+		private final SearchSpace space;
+
+		private final Map<String, Double> times = new HashMap<>();
+
+		private double[] best;
+
+		private double bestTime = Double.POSITIVE_INFINITY;
+
+		ResultsStore(File file, SearchSpace space) {
+			this.file = file;
+			this.space = space;
+		}
+
+		/**
+		 * Loads the results of the earlier tuning runs. Results of
+		 * configurations those do not fit the current search space are
+		 * ignored.
+		 */
+		void load() {
+			if (file == null)
+				return;
+			int loaded = 0;
+			for (Pair<Configuration, Double> result : readResults(file)) {
+				double[] point = space.encode(result.first);
+				if (point == null)
+					continue;
+				record(point, result.second);
+				loaded++;
+			}
+			System.out.println(String.format(
+					"JavaTuner: Loaded %d earlier results. Best time = %f",
+					loaded, bestTime));
+		}
+
+		/**
+		 * @return true iff the point is the new best.
+		 */
+		boolean add(double[] point, double time) {
+			boolean newBest = record(point, time);
+			if (file == null)
+				return newBest;
+			try (BufferedWriter writer = new BufferedWriter(new FileWriter(
+					file, true))) {
+				writer.write(String.format("%s\t%s", Double.toString(time),
+						Jsonifiers.toJson(space.decode(point)).toString()));
+				writer.newLine();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return newBest;
+		}
+
+		private boolean record(double[] point, double time) {
+			times.put(Arrays.toString(point), time);
+			if (time < bestTime) {
+				bestTime = time;
+				best = point;
+				return true;
+			}
+			return false;
+		}
+
+		Double time(double[] point) {
+			return times.get(Arrays.toString(point));
+		}
+
+		double[] best() {
+			return best;
+		}
+
+		double bestTime() {
+			return bestTime;
+		}
+	}
+
+	/**
+	 * @return the results file of the tuning runs those are done in the
+	 *         workingDir.
+	 */
+	static File resultsFile(File workingDir) {
+		return new File(workingDir, resultsFileName);
+	}
+
+	/**
+	 * Reads a results file. See {@link #resultsFile(File)}.
+	 * 
+	 * @return the measured configurations and their times, in the order they
+	 *         were measured. Empty if the file does not exist.
+	 */
+	static List<Pair<Configuration, Double>> readResults(File file) {
+		List<Pair<Configuration, Double>> results = new ArrayList<>();
+		if (!file.exists())
+			return results;
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab < 0)
+					continue;
+				results.add(new Pair<>(Configuration.fromJson(line
+						.substring(tab + 1)), Double.parseDouble(line
+						.substring(0, tab))));
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("JavaTuner: Couldn't load all results from "
+					+ file + ": " + e);
+		}
+		return results;
+	}
+
+	private static abstract class SearchTechnique {
+
+		final SearchSpace space;
+
+		final ResultsStore store;
+
+		final Random random;
+
+		SearchTechnique(SearchSpace space, ResultsStore store, Random random) {
+			this.space = space;
+			this.store = store;
+			this.random = random;
+		}
+
+		/**
+		 * Starts the technique from a known configuration, such as the
+		 * default one.
+		 */
+		void seed(double[] point) {
+		}
+
+		/**
+		 * @return a new point, rounded to the values of the parameters.
+		 *         {@link #result(double[], double)} is called with the same
+		 *         array.
+		 */
+		abstract double[] propose();
+
+		abstract void result(double[] point, double time);
+
+		double[] bestOrRandom() {
+			double[] best = store.best();
+			return best == null ? space.random(random) : best.clone();
+		}
+	}
+
+	private static final class DifferentialEvolution extends SearchTechnique {
+
+		private static final int populationSize = 30;
+
+		private static final double crossoverRate = 0.9;
+
+		private static final double weight = 0.5;
+
+		private final List<double[]> population = new ArrayList<>();
+
+		private final List<Double> fitness = new ArrayList<>();
+
+		/**
+		 * Proposed point -> index of the member it competes with, or -1 if
+		 * it is a new member.
+		 */
+		private final Map<double[], Integer> targets = new IdentityHashMap<>();
+
+		private int next = 0;
+
+		DifferentialEvolution(SearchSpace space, ResultsStore store,
+				Random random) {
+			super(space, store, random);
+		}
+
+		@Override
+		void seed(double[] point) {
+			if (point != null && store.time(point) == null) {
+				population.add(point);
+				fitness.add(Double.POSITIVE_INFINITY);
+			}
+		}
+
+		@Override
+		double[] propose() {
+			double[] p;
+			int target;
+			if (population.size() + targets.size() < populationSize
+					|| population.size() < 4) {
+				p = population.isEmpty() && store.best() != null ? store
+						.best().clone() : space.random(random);
+				target = -1;
+			} else {
+				target = next++ % population.size();
+				double[] x = population.get(target);
+				double[] a = population.get(random.nextInt(population.size()));
+				double[] b = population.get(random.nextInt(population.size()));
+				double[] c = population.get(random.nextInt(population.size()));
+				p = new double[x.length];
+				int forced = x.length == 0 ? 0 : random.nextInt(x.length);
+				for (int i = 0; i < x.length; i++)
+					p[i] = i == forced || random.nextDouble() < crossoverRate
+							? a[i] + weight * (b[i] - c[i]) : x[i];
+			}
+			p = space.round(p);
+			targets.put(p, target);
+			return p;
+		}
+
+		@Override
+		void result(double[] point, double time) {
+			Integer target = targets.remove(point);
+			if (target == null) {
+				// A seed or a configuration that some other technique has
+				// proposed.
+				int seed = population.indexOf(point);
+				if (seed >= 0)
+					fitness.set(seed, time);
+				else if (population.size() < populationSize) {
+					population.add(point);
+					fitness.add(time);
+				}
+			} else if (target == -1) {
+				if (population.size() < populationSize) {
+					population.add(point);
+					fitness.add(time);
+				}
+			} else if (time < fitness.get(target)) {
+				population.set(target, point);
+				fitness.set(target, time);
+			}
+		}
+	}
+
+	private static final class HillClimbing extends SearchTechnique {
+
+		HillClimbing(SearchSpace space, ResultsStore store, Random random) {
+			super(space, store, random);
+		}
+
+		@Override
+		double[] propose() {
+			double[] p = bestOrRandom();
+			int mutations = 1 + random.nextInt(Math.max(1,
+					Math.min(3, p.length)));
+			for (int m = 0; m < mutations && p.length > 0; m++) {
+				int dim = random.nextInt(p.length);
+				p[dim] = space.mutate(dim, p[dim], random, 0.1);
+			}
+			return space.round(p);
+		}
+
+		@Override
+		void result(double[] point, double time) {
+		}
+	}
+
+	private static final class PatternSearch extends SearchTechnique {
+
+		private static final double initialStep = 0.25;
+
+		private static final double minStep = 1.0 / 1024;
+
+		private double step = initialStep;
+
+		private double[] center;
+
+		private double centerTime = Double.POSITIVE_INFINITY;
+
+		private final Deque<double[]> probes = new ArrayDeque<>();
+
+		private boolean improved = false;
+
+		PatternSearch(SearchSpace space, ResultsStore store, Random random) {
+			super(space, store, random);
+		}
+
+		@Override
+		double[] propose() {
+			if (probes.isEmpty())
+				newSweep();
+			return probes.poll();
+		}
+
+		/**
+		 * Probes center +/- step along every dimension.
+		 */
+		private void newSweep() {
+			if (center == null || (!improved && (step /= 2) < minStep)) {
+				center = bestOrRandom();
+				Double t = store.time(center);
+				centerTime = t == null ? Double.POSITIVE_INFINITY : t;
+				step = initialStep;
+			}
+			improved = false;
+			for (int i = 0; i < center.length; i++)
+				for (int sign = -1; sign <= 1; sign += 2) {
+					double[] p = center.clone();
+					p[i] = Math.max(0, Math.min(1, p[i] + sign * step));
+					probes.add(space.round(p));
+				}
+			if (probes.isEmpty())
+				probes.add(center.clone());
+		}
+
+		@Override
+		void result(double[] point, double time) {
+			if (time < centerTime) {
+				center = point;
+				centerTime = time;
+				improved = true;
+			}
+		}
+	}
+
+	/**
+	 * Area under curve multi-armed bandit, as in OpenTuner. A technique's
+	 * score is its credit for the new bests it has found in the recent
+	 * window, weighted towards the latest uses, plus an exploration term.
+	 */
+	private static final class AUCBandit {
+
+		private static final int window = 500;
+
+		private static final double exploration = 0.05;
+
+		private final int arms;
+
+		private final Deque<int[]> history = new ArrayDeque<>();
+
+		private final Random random = new Random();
+
+		AUCBandit(int arms) {
+			this.arms = arms;
+		}
+
+		int select() {
+			int[] uses = new int[arms];
+			double[] auc = new double[arms];
+			for (int[] h : history) {
+				uses[h[0]]++;
+				if (h[1] == 1)
+					auc[h[0]] += uses[h[0]];
+			}
+			int best = random.nextInt(arms);
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (int t = 0; t < arms; t++) {
+				if (uses[t] == 0)
+					return t;
+				double score = auc[t] / (uses[t] * (uses[t] + 1) / 2.0)
+						+ exploration
+						* Math.sqrt(2 * Math.log(history.size()) / uses[t]);
+				if (score > bestScore) {
+					best = t;
+					bestScore = score;
+				}
+			}
+			return best;
+		}
+
+		void reward(int arm, boolean newBest) {
+			history.add(new int[]{arm, newBest ? 1 : 0});
+			if (history.size() > window)
+				history.poll();
+		}
+	}
+}
@@ -0,0 +1,469 @@
+package edu.mit.streamjit.tuner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.io.ByteStreams;
+
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.FloatParameter;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.impl.common.Configuration.Parameter;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.common.Utils;
+import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager;
+import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager.NewConfiguration;
+import edu.mit.streamjit.impl.distributed.controller.StreamJitApp;
+import edu.mit.streamjit.util.ConfigurationUtils;
+import edu.mit.streamjit.util.Pair;
+
+/**
+ * Learns the running times of the configurations, instead of relying on hand
+ * written rules such as {@link GraphPropertyPrognosticator}'s. A regression
+ * model, gradient boosted regression trees, predicts the log of the running
+ * time of a configuration from the configuration's parameter values and the
+ * graph properties of its partitioning (see {@link GraphPropertyPrognosticator}
+ * ). The configurations those are predicted to be more than
+ * {@link Options#costModelRejectRatio} times slower than the best
+ * configuration so far are rejected.
+ * <p>
+ * The model is trained on the raw running times only, never on the tuner's
+ * costs (see {@link Options#objective}), as the predictions are compared
+ * against the best time. The times are recorded in a file of their own, in
+ * the same format as {@link JavaTuner}'s results file, and are loaded by the
+ * next tuning run of the app. No prediction is made until a minimum number of
+ * times are known.
+ * <p>
+ * A new time only adds a few trees, fitted on the current residuals, to the
+ * model. The model is refitted from scratch once its trees have doubled, so
+ * that the early trees, fitted on a few samples, do not dominate it.
+ * 
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public class LearnedCostPrognosticator implements ConfigurationPrognosticator {
+
+	/**
+	 * No prediction is made with lesser training samples.
+	 */
+	private static final int minSamples = 20;
+
+	/**
+	 * Only the latest maxSamples results are used for training.
+	 */
+	private static final int maxSamples = 1000;
+
+	/**
+	 * Trees those are added to the model for every new time.
+	 */
+	private static final int treesPerUpdate = 5;
+
+	private static final String timesFileName = "costmodel.times";
+
+	private final OutputStreamWriter writer;
+
+	/**
+	 * Appends the measured times. See {@link #timesFileName}.
+	 */
+	private final FileWriter timesWriter;
+
+	/**
+	 * Only the graph property computations of this are used.
+	 */
+	private final GraphPropertyPrognosticator graphProperties;
+
+	/**
+	 * Names of the parameters those are used as features, in the order of
+	 * the feature vector. Fixed by the first configuration.
+	 */
+	private List<String> paramNames;
+
+	private final List<double[]> features;
+
+	private final List<Double> logTimes;
+
+	private GradientBoostedTrees model;
+
+	private double bestTime = Double.MAX_VALUE;
+
+	public LearnedCostPrognosticator(StreamJitApp<?, ?> app,
+			ConfigurationManager cfgManager) {
+		this.writer = Utils.fileWriter(app.name, "CostModel.txt");
+		this.graphProperties = new GraphPropertyPrognosticator(app,
+				new OutputStreamWriter(ByteStreams.nullOutputStream()), false);
+		this.features = new ArrayList<>();
+		this.logTimes = new ArrayList<>();
+		writeHeader(writer);
+		for (Pair<Configuration, Double> result : JavaTuner
+				.readResults(new File(app.name, timesFileName))) {
+			NewConfiguration newConfig = cfgManager
+					.newConfiguration(result.first);
+			if (newConfig.verificationPassed)
+				add(newConfig, result.second);
+		}
+		this.timesWriter = Utils.fileWriter(app.name, timesFileName, true);
+		fit();
+		System.out.println(String.format(
+				"LearnedCostPrognosticator: %d earlier results loaded.",
+				features.size()));
+	}
+
+	@Override
+	public synchronized boolean prognosticate(NewConfiguration newConfig) {
+		String cfgPrefix = ConfigurationUtils
+				.getConfigPrefix(newConfig.configuration);
+		boolean accept = true;
+		double predicted = -1;
+		if (model != null) {
+			predicted = Math.exp(model.predict(features(newConfig)));
+			accept = predicted <= Options.costModelRejectRatio * bestTime;
+		}
+		try {
+			writer.write(String.format("%6s\t\t", cfgPrefix));
+			writer.write(String.format("%.0f\t\t", predicted));
+			writer.write(String.format("%.0f\t\t", bestTime));
+			writer.write(String.format("%s\n", accept ? "Acptd" : "Rjctd"));
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return accept;
+	}
+
+	@Override
+	public void time(double time) {
+	}
+
+	@Override
+	public synchronized void time(NewConfiguration config, double time) {
+		if (!add(config, time))
+			return;
+		record(config.configuration, time);
+		if (model == null || model.size() >= 2 * GradientBoostedTrees.trees)
+			fit();
+		else
+			model = model.boost(features, logTimes, treesPerUpdate);
+	}
+
+	private void record(Configuration cfg, double time) {
+		if (timesWriter == null)
+			return;
+		try {
+			timesWriter.write(String.format("%s\t%s\n", Double.toString(time),
+					cfg.toJson()));
+			timesWriter.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> iff the result has been added to the training
+	 *         samples.
+	 */
+	private boolean add(NewConfiguration config, double time) {
+		if (time <= 0 || config.partitionsMachineMap == null)
+			return false;
+		features.add(features(config));
+		logTimes.add(Math.log(time));
+		if (features.size() > maxSamples) {
+			features.remove(0);
+			logTimes.remove(0);
+		}
+		bestTime = Math.min(bestTime, time);
+		return true;
+	}
+
+	private void fit() {
+		if (features.size() < minSamples)
+			return;
+		model = GradientBoostedTrees.fit(features, logTimes);
+	}
+
+	private double[] features(NewConfiguration newConfig) {
+		Configuration cfg = newConfig.configuration;
+		if (paramNames == null)
+			paramNames = tunableParameters(cfg);
+		double[] f = new double[paramNames.size() + 5];
+		int i = 0;
+		for (String name : paramNames)
+			f[i++] = value(cfg.getParameter(name));
+
+		Map<Integer, List<Set<Worker<?, ?>>>> pmm = newConfig.partitionsMachineMap;
+		f[i++] = graphProperties.bigToSmallBlobRatio(pmm);
+		f[i++] = graphProperties.loadRatio(pmm);
+		f[i++] = graphProperties.blobToNodeRatio(pmm);
+		f[i++] = graphProperties.totalToBoundaryChannelRatio(pmm);
+		f[i++] = graphProperties.hasCycle(pmm) ? 1 : 0;
+		for (int j = 0; j < f.length; j++)
+			if (Double.isInfinite(f[j]) || Double.isNaN(f[j]))
+				f[j] = Float.MAX_VALUE;
+		return f;
+	}
+
+	private static List<String> tunableParameters(Configuration cfg) {
+		Set<String> names = new TreeSet<>();
+		for (Parameter p : cfg.getParametersMap().values())
+			if (p instanceof IntParameter || p instanceof SwitchParameter
+					|| p instanceof FloatParameter)
+				names.add(p.getName());
+		return new ArrayList<>(names);
+	}
+
+	/**
+	 * @return the parameter's value, normalized to [0, 1].
+	 */
+	private static double value(Parameter p) {
+		if (p instanceof IntParameter) {
+			IntParameter ip = (IntParameter) p;
+			return (ip.getValue() - ip.getMin())
+					/ (double) Math.max(1, ip.getMax() - ip.getMin());
+		} else if (p instanceof SwitchParameter) {
+			SwitchParameter<?> sp = (SwitchParameter<?>) p;
+			return sp.getUniverse().indexOf(sp.getValue())
+					/ (double) Math.max(1, sp.getUniverse().size() - 1);
+		} else if (p instanceof FloatParameter) {
+			FloatParameter fp = (FloatParameter) p;
+			return fp.getMax() > fp.getMin() ? (fp.getValue() - fp.getMin())
+					/ (fp.getMax() - fp.getMin()) : 0;
+		}
+		return 0;
+	}
+
+	private static void writeHeader(OutputStreamWriter writer) {
+		try {
+			writer.write(String.format("%.7s", "cfgID"));
+			writer.write("\t\t");
+			writer.write(String.format("%.7s", "predicted"));
+			writer.write("\t\t");
+			writer.write(String.format("%.7s", "best"));
+			writer.write("\t\t");
+			writer.write(String.format("%.7s", "A/R")); // Accepted or Rejected.
+			writer.write("\n");
+			writer.flush();
+		} catch (IOException e) {
+
+		}
+	}
+
+	/**
+	 * Least squares gradient boosting of shallow regression trees. Splits are
+	 * searched over at most {@link #bins} quantile thresholds of each feature,
+	 * so that a refit is cheap even with thousands of parameters.
+	 */
+	static final class GradientBoostedTrees {
+
+		private static final int trees = 50;
+
+		private static final int maxDepth = 3;
+
+		private static final int minLeaf = 3;
+
+		private static final int bins = 16;
+
+		private static final double learningRate = 0.1;
+
+		private final double base;
+
+		private final List<Node> ensemble;
+
+		private GradientBoostedTrees(double base, List<Node> ensemble) {
+			this.base = base;
+			this.ensemble = ensemble;
+		}
+
+		double predict(double[] f) {
+			double y = base;
+			for (Node n : ensemble)
+				y += learningRate * n.predict(f);
+			return y;
+		}
+
+		int size() {
+			return ensemble.size();
+		}
+
+		static GradientBoostedTrees fit(List<double[]> x, List<Double> y) {
+			double base = 0;
+			for (double v : y)
+				base += v;
+			base /= y.size();
+			return grow(base, new ArrayList<>(trees), x, y, trees);
+		}
+
+		/**
+		 * @return a model with count more trees, fitted on the residuals of
+		 *         this model on the samples.
+		 */
+		GradientBoostedTrees boost(List<double[]> x, List<Double> y, int count) {
+			return grow(base, new ArrayList<>(ensemble), x, y, count);
+		}
+
+		private static GradientBoostedTrees grow(double base,
+				List<Node> ensemble, List<double[]> x, List<Double> y,
+				int count) {
+			int n = x.size();
+			int features = x.get(0).length;
+			double[][] thresholds = new double[features][];
+			for (int f = 0; f < features; f++)
+				thresholds[f] = thresholds(x, f);
+			int[][] binned = new int[n][features];
+			for (int i = 0; i < n; i++)
+				for (int f = 0; f < features; f++)
+					binned[i][f] = bin(thresholds[f], x.get(i)[f]);
+
+			GradientBoostedTrees model = new GradientBoostedTrees(base,
+					ensemble);
+			double[] residual = new double[n];
+			for (int i = 0; i < n; i++)
+				residual[i] = y.get(i) - model.predict(x.get(i));
+
+			int[] all = new int[n];
+			for (int i = 0; i < n; i++)
+				all[i] = i;
+			for (int t = 0; t < count; t++) {
+				Node tree = build(all, 0, residual, binned, thresholds);
+				ensemble.add(tree);
+				for (int i = 0; i < n; i++)
+					residual[i] -= learningRate * tree.predict(x.get(i));
+			}
+			return model;
+		}
+
+		/**
+		 * @return up to bins - 1 split thresholds at the quantiles of the
+		 *         feature's distinct values.
+		 */
+		private static double[] thresholds(List<double[]> x, int f) {
+			double[] values = new double[x.size()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = x.get(i)[f];
+			Arrays.sort(values);
+			List<Double> distinct = new ArrayList<>();
+			for (int i = 0; i < values.length; i++)
+				if (i == 0 || values[i] != values[i - 1])
+					distinct.add(values[i]);
+			int count = Math.min(bins, distinct.size()) - 1;
+			double[] thresholds = new double[Math.max(count, 0)];
+			for (int b = 0; b < thresholds.length; b++) {
+				int k = (int) ((long) (b + 1) * (distinct.size() - 1) / (count + 1));
+				thresholds[b] = (distinct.get(k) + distinct.get(k + 1)) / 2;
+			}
+			return thresholds;
+		}
+
+		/**
+		 * @return index of the first threshold that is not less than the
+		 *         value, or thresholds.length if there is none.
+		 */
+		private static int bin(double[] thresholds, double value) {
+			int b = Arrays.binarySearch(thresholds, value);
+			return b >= 0 ? b : -b - 1;
+		}
+
+		private static Node build(int[] samples, int depth, double[] residual,
+				int[][] binned, double[][] thresholds) {
+			double sum = 0;
+			for (int i : samples)
+				sum += residual[i];
+			Node leaf = new Node(sum / samples.length);
+			if (depth == maxDepth || samples.length < 2 * minLeaf)
+				return leaf;
+
+			double parentScore = sum * sum / samples.length;
+			double bestGain = 1e-12;
+			int bestFeature = -1;
+			int bestBin = -1;
+			for (int f = 0; f < thresholds.length; f++) {
+				int nBins = thresholds[f].length + 1;
+				if (nBins < 2)
+					continue;
+				double[] binSum = new double[nBins];
+				int[] binCount = new int[nBins];
+				for (int i : samples) {
+					binSum[binned[i][f]] += residual[i];
+					binCount[binned[i][f]]++;
+				}
+				double leftSum = 0;
+				int leftCount = 0;
+				for (int b = 0; b < nBins - 1; b++) {
+					leftSum += binSum[b];
+					leftCount += binCount[b];
+					int rightCount = samples.length - leftCount;
+					if (leftCount < minLeaf || rightCount < minLeaf)
+						continue;
+					double rightSum = sum - leftSum;
+					double gain = leftSum * leftSum / leftCount + rightSum
+							* rightSum / rightCount - parentScore;
+					if (gain > bestGain) {
+						bestGain = gain;
+						bestFeature = f;
+						bestBin = b;
+					}
+				}
+			}
+			if (bestFeature < 0)
+				return leaf;
+
+			int leftCount = 0;
+			for (int i : samples)
+				if (binned[i][bestFeature] <= bestBin)
+					leftCount++;
+			int[] left = new int[leftCount];
+			int[] right = new int[samples.length - leftCount];
+			int l = 0, r = 0;
+			for (int i : samples)
+				if (binned[i][bestFeature] <= bestBin)
+					left[l++] = i;
+				else
+					right[r++] = i;
+			return new Node(bestFeature, thresholds[bestFeature][bestBin],
+					build(left, depth + 1, residual, binned, thresholds),
+					build(right, depth + 1, residual, binned, thresholds));
+		}
+
+		private static final class Node {
+			/**
+			 * -1 for a leaf.
+			 */
+			final int feature;
+			final double threshold;
+			final Node left;
+			final Node right;
+			final double value;
+
+			Node(double value) {
+				this.feature = -1;
+				this.threshold = 0;
+				this.left = null;
+				this.right = null;
+				this.value = value;
+			}
+
+			Node(int feature, double threshold, Node left, Node right) {
+				this.feature = feature;
+				this.threshold = threshold;
+				this.left = left;
+				this.right = right;
+				this.value = 0;
+			}
+
+			double predict(double[] f) {
+				Node n = this;
+				while (n.feature >= 0)
+					n = f[n.feature] <= n.threshold ? n.left : n.right;
+				return n.value;
+			}
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package edu.mit.streamjit.tuner;
+
+import java.util.Map;
+
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.controller.HT.LatencyProbe;
+
+/**
+ * Search objective of the {@link OnlineTuner}. Folds the measured running
+ * time, latency and core usage of a configuration into a single cost that is
+ * sent to the tuner as the configuration's result. The tuner minimizes the
+ * cost. See {@link Options#objective}.
+ * 
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public interface Objective {
+
+	/**
+	 * @return the cost of the measurement. Lower is better.
+	 */
+	public double cost(Measurement m);
+
+	/**
+	 * @return true iff the cost depends on more than the running time, so
+	 *         that the latency and the core usage need to be measured.
+	 */
+	public boolean needsObservation();
+
+	/**
+	 * @param coreCounts
+	 *            a map where key is nodeID and value is number of cores in
+	 *            the corresponding node.
+	 * @return the objective that is selected by {@link Options#objective}.
+	 */
+	public static Objective create(Map<Integer, Integer> coreCounts) {
+		switch (Options.objective) {
+			case 1 :
+				return new Weighted(Options.latencyWeight, Options.coreWeight);
+			case 2 :
+				int totalCores = 0;
+				for (int c : coreCounts.values())
+					totalCores += c;
+				return new LatencySLO(Options.latencySLO, totalCores);
+			default :
+				return new Time();
+		}
+	}
+
+	/**
+	 * Measured properties of a configuration.
+	 */
+	public static final class Measurement {
+
+		/**
+		 * Time(ms) to receive the fixed number of outputs.
+		 */
+		public final long time;
+
+		/**
+		 * {@link Options#latencyPercentile}th percentile of the end-to-end
+		 * latencies(ms), or -1 if unknown. See {@link LatencyProbe}.
+		 */
+		public final double latency;
+
+		/**
+		 * Average number of cores kept busy by all nodes while measuring, or
+		 * -1 if unknown.
+		 */
+		public final double cores;
+
+		public Measurement(long time, double latency, double cores) {
+			this.time = time;
+			this.latency = latency;
+			this.cores = cores;
+		}
+
+		/**
+		 * @return the latency, or the time if the latency is unknown (-1).
+		 *         No sampled input has come through while the fixed number
+		 *         of outputs were received in the later case, so the latency
+		 *         is likely to be as long as the time.
+		 */
+		double knownLatency() {
+			return latency < 0 ? time : latency;
+		}
+
+		/**
+		 * @return true iff this measurement is not worse than other in any
+		 *         property and better in at least one.
+		 */
+		public boolean dominates(Measurement other) {
+			return time <= other.time && latency <= other.latency
+					&& cores <= other.cores
+					&& (time < other.time || latency < other.latency
+							|| cores < other.cores);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("time=%d,latency=%.3f,cores=%.2f", time,
+					latency, cores);
+		}
+	}
+
+	/**
+	 * Minimizes the running time. This is the objective of the tuner so far.
+	 */
+	public static final class Time implements Objective {
+
+		@Override
+		public double cost(Measurement m) {
+			return m.time;
+		}
+
+		@Override
+		public boolean needsObservation() {
+			return false;
+		}
+	}
+
+	/**
+	 * Minimizes time + latencyWeight * latency + coreWeight * cores.
+	 */
+	public static final class Weighted implements Objective {
+
+		private final int latencyWeight;
+
+		private final int coreWeight;
+
+		public Weighted(int latencyWeight, int coreWeight) {
+			this.latencyWeight = latencyWeight;
+			this.coreWeight = coreWeight;
+		}
+
+		@Override
+		public double cost(Measurement m) {
+			return m.time + latencyWeight * m.knownLatency() + coreWeight
+					* Math.max(0, m.cores);
+		}
+
+		@Override
+		public boolean needsObservation() {
+			return true;
+		}
+	}
+
+	/**
+	 * Minimizes the number of cores among the configurations those meet the
+	 * latency SLO. A configuration that violates the SLO costs more than any
+	 * configuration that meets it (total cores of all nodes), and more the
+	 * further it is from the SLO, so that the tuner is led towards the
+	 * feasible configurations.
+	 */
+	public static final class LatencySLO implements Objective {
+
+		private final int latencySLO;
+
+		private final int totalCores;
+
+		public LatencySLO(int latencySLO, int totalCores) {
+			if (latencySLO < 1)
+				throw new IllegalArgumentException(String.format(
+						"latencySLO must be positive. %d", latencySLO));
+			this.latencySLO = latencySLO;
+			this.totalCores = Math.max(1, totalCores);
+		}
+
+		@Override
+		public double cost(Measurement m) {
+			double latency = m.knownLatency();
+			if (latency > latencySLO)
+				return totalCores * latency / latencySLO;
+			return m.cores > 0 ? Math.min(m.cores, totalCores) : totalCores;
+		}
+
+		@Override
+		public boolean needsObservation() {
+			return true;
+		}
+	}
+}
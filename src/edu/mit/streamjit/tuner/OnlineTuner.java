@@ -7,8 +7,10 @@ import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.common.TimeLogger;
@@ -17,7 +19,9 @@ import edu.mit.streamjit.impl.distributed.common.Options;
 import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager;
 import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager.NewConfiguration;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitApp;
+import edu.mit.streamjit.impl.distributed.controller.HT.MeasurementRace;
 import edu.mit.streamjit.impl.distributed.controller.HT.ThroughputGraphGenerator;
+import edu.mit.streamjit.tuner.Objective.Measurement;
 import edu.mit.streamjit.util.ConfigurationUtils;
 import edu.mit.streamjit.util.EventTimeLogger;
 import edu.mit.streamjit.util.Pair;
@@ -31,32 +35,82 @@ import edu.mit.streamjit.util.json.Jsonifiers;
  * @since Oct 8, 2013
  */
 public class OnlineTuner implements Runnable {
+	/**
+	 * Maximum number of the {@link TuningKnowledgeBase}'s configurations
+	 * those seed the tuner.
+	 */
+	private static final int maxSeeds = 5;
 	private final OpenTuner tuner;
 	private final StreamJitApp<?, ?> app;
 	private final ConfigurationManager cfgManager;
 	private final boolean needTermination;
-	private final TimeLogger logger;
-	private final ConfigurationPrognosticator prognosticator;
 	private final EventTimeLogger mLogger;
 	private final Reconfigurer configurer;
 	private final Configuration defaultCfg;
-	private long currentBestTime;
+	/**
+	 * {@link Reconfigurer}s of the additional tuning groups. See
+	 * {@link Options#tuningGroups}.
+	 */
+	private final List<Reconfigurer> groups;
+	/**
+	 * null if {@link Options#knowledgeBase} is false.
+	 */
+	private final TuningKnowledgeBase knowledgeBase;
+	private final Objective objective;
+	/**
+	 * null unless the {@link #objective} needs the latency and the core
+	 * usage.
+	 */
+	private final ParetoFront paretoFront;
+	private final AtomicInteger round;
+	private volatile long currentBestTime;
+	/**
+	 * Cost of the {@link #bestCfg}. See {@link Options#objective}.
+	 */
+	private double bestCost;
 	private Configuration bestCfg;
 	private final OpenTunerListener listener;
 
 	public OnlineTuner(Reconfigurer configurer, boolean needTermination,
 			Configuration defaultCfg) {
+		this(configurer, ImmutableList.<Reconfigurer> of(), null,
+				needTermination, defaultCfg);
+	}
+
+	/**
+	 * @param groups
+	 *            {@link Reconfigurer}s of the additional tuning groups. Each
+	 *            group measures the tuner's configurations concurrently with
+	 *            the configurer. See {@link Options#tuningGroups}.
+	 * @param knowledgeBase
+	 *            records the measured configurations and gives the seeds of
+	 *            the tuning. Can be null. See {@link Options#knowledgeBase}.
+	 */
+	public OnlineTuner(Reconfigurer configurer, List<Reconfigurer> groups,
+			TuningKnowledgeBase knowledgeBase, boolean needTermination,
+			Configuration defaultCfg) {
 		this.configurer = configurer;
+		this.groups = groups;
+		this.knowledgeBase = knowledgeBase;
+		this.round = new AtomicInteger(0);
 		this.app = configurer.app;
 		this.cfgManager = configurer.cfgManager;
-		this.tuner = new TCPTuner();
+		this.tuner = Options.tunerStartMode == 3 ? new JavaTuner()
+				: new TCPTuner();
 		this.needTermination = needTermination;
-		this.logger = configurer.app.logger;
-		this.prognosticator = configurer.prognosticator;
 		this.mLogger = app.eLogger;
 		this.currentBestTime = Integer.MAX_VALUE;
+		this.bestCost = Double.POSITIVE_INFINITY;
 		this.listener = new OpenTunerListener(tuner, app.name, configurer);
 		this.defaultCfg = defaultCfg;
+		if (Options.objective != 0 && app.latencyProbe == null)
+			throw new IllegalArgumentException(
+					"Options.objective needs the latency. Set Options.latencySampling > 0 "
+							+ "and keep the app's input and output at the controller.");
+		this.objective = Options.objective == 0 ? new Objective.Time()
+				: Objective.create(configurer.manager.coreCount());
+		this.paretoFront = objective.needsObservation() ? new ParetoFront(
+				app.name) : null;
 	}
 
 	@Override
@@ -68,23 +122,73 @@ public class OnlineTuner implements Runnable {
 	}
 
 	private void tune() {
-		int round = 0;
-		Stopwatch searchTimeSW = Stopwatch.createStarted();
 		try {
 			mLogger.bEvent("startTuner");
 			startTuner();
 			mLogger.eEvent("startTuner");
-			Pair<Boolean, Integer> ret;
 
 			System.out.println("New tune run.............");
+			List<Thread> groupThreads = startGroups();
+			evaluate(configurer);
+			for (Thread t : groupThreads)
+				t.join();
+		} catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+			mLogger.bEvent("terminate");
+			configurer.terminate();
+			mLogger.eEvent("terminate");
+		}
+		for (Reconfigurer group : groups)
+			group.terminate();
+		mLogger.bEvent("tuningFinished");
+		tuningFinished(round.get());
+		mLogger.eEvent("tuningFinished");
+	}
+
+	/**
+	 * Starts measuring the tuner's configurations on the additional tuning
+	 * groups. See {@link Options#tuningGroups}.
+	 */
+	private List<Thread> startGroups() {
+		List<Thread> threads = new ArrayList<>();
+		for (Reconfigurer group : groups) {
+			Thread t = new Thread(() -> {
+				try {
+					evaluate(group);
+				} catch (Exception e) {
+					// evaluate() has reported the configuration at hand as a
+					// failed one. The other groups keep tuning.
+					System.err.println(String.format(
+							"Tuning group %s has failed.", group.app.name));
+					e.printStackTrace();
+				}
+			}, String.format("OnlineTuner-%s", group.app.name));
+			t.start();
+			threads.add(t);
+		}
+		return threads;
+	}
+
+	/**
+	 * Measures the tuner's configurations, one after another, on the app that
+	 * is run by the configurer, until the tuner stops. If a measurement
+	 * throws, reports the configuration at hand as a failed one, so that the
+	 * tuner does not wait for its result forever, and rethrows.
+	 */
+	private void evaluate(Reconfigurer configurer) throws IOException {
+		EventTimeLogger mLogger = configurer.mLogger;
+		TimeLogger logger = configurer.app.logger;
+		Stopwatch searchTimeSW = Stopwatch.createStarted();
+		Pair<Boolean, Integer> ret;
+		String pending = null;
+		try {
 			while (configurer.manager.getStatus() != AppStatus.STOPPED) {
-				String r = new Integer(++round).toString();
+				String r = new Integer(round.incrementAndGet()).toString();
 				mLogger.bTuningRound(r);
 				configurer.app.logger.newConfiguration(r);
 				mLogger.bEvent("serialcfg");
 				NewConfiguration newconfig = listener.nextConfig();
-				logger.logSearchTime(searchTimeSW
-						.elapsed(TimeUnit.MILLISECONDS));
+				logger.logSearchTime(searchTimeSW.elapsed(TimeUnit.MILLISECONDS));
 				if (newconfig == null) {
 					System.err.println("OpenTuner closed unexpectly.");
 					break;
@@ -101,48 +205,95 @@ public class OnlineTuner implements Runnable {
 				mLogger.bEvent("newCfg");
 				String cfgPrefix = ConfigurationUtils
 						.getConfigPrefix(newconfig.configuration);
+				pending = cfgPrefix;
 
-				System.out
-						.println(String
-								.format("---------------------Tuning-%s-------------------------",
-										cfgPrefix));
+				System.out.println(String.format(
+						"---------------------Tuning-%s-------------------------",
+						cfgPrefix));
+
+				// The listener builds the NewConfiguration with the group 0's
+				// workers. Other groups rebuild it with their own workers and
+				// prognosticate it with their own prognosticator.
+				if (configurer != this.configurer)
+					newconfig = configurer
+							.newConfiguration(newconfig.configuration);
 
 				mLogger.eEvent("newCfg");
 				mLogger.bEvent("reconfigure");
 				ret = configurer.reconfigure(newconfig);
 				mLogger.eEvent("reconfigure");
 				long time;
-				if (ret.second > 0)
-					time = getTime();
-				else
-					time = ret.second;
-				if (time > 1 && currentBestTime > time) {
-					currentBestTime = time;
-					bestCfg = newconfig.configuration;
-				}
+				double cost;
+				if (ret.second > 0) {
+					if (groups.isEmpty())
+						speculate();
+					if (paretoFront != null)
+						configurer.startObservation();
+					time = getTime(configurer);
+					cost = time < 0 ? time : cost(configurer,
+							newconfig.configuration, time);
+				} else
+					cost = time = ret.second;
+				newTime(time, cost, newconfig.configuration);
+				if (knowledgeBase != null)
+					knowledgeBase.record(newconfig.configuration, time);
 				logger.logRunTime(time);
-				prognosticator.time(time);
-				tuner.writeLine(String.format("%s:%s", cfgPrefix, new Double(
-						time).toString()));
+				configurer.prognosticator.time(newconfig, time);
+				synchronized (tuner) {
+					tuner.writeLine(String.format("%s:%s", cfgPrefix, new Double(
+							cost).toString()));
+				}
+				pending = null;
 				searchTimeSW.reset();
 				searchTimeSW.start();
 
 				if (!ret.first) {
-					tuner.writeLine("exit");
+					// Only the group 0 runs the app beyond the tuning.
+					if (configurer == this.configurer)
+						synchronized (tuner) {
+							tuner.writeLine("exit");
+						}
 					break;
 				}
-				mLogger.bTuningRound(new Integer(round).toString());
+				mLogger.bTuningRound(r);
 			}
+		} catch (RuntimeException e) {
+			if (pending != null)
+				synchronized (tuner) {
+					tuner.writeLine(String.format("%s:%s", pending,
+							new Double(-1).toString()));
+				}
+			throw e;
+		}
+	}
 
-		} catch (IOException e) {
-			e.printStackTrace();
-			mLogger.bEvent("terminate");
-			configurer.terminate();
-			mLogger.eEvent("terminate");
+	/**
+	 * @return the cost of the configuration that the tuner minimizes. See
+	 *         {@link Options#objective}.
+	 */
+	private double cost(Reconfigurer configurer, Configuration cfg, long time) {
+		if (paretoFront == null)
+			return objective.cost(new Measurement(time, -1, -1));
+		Measurement m = configurer.observe(time);
+		paretoFront.add(cfg, m);
+		double cost = objective.cost(m);
+		System.out.println(String.format("%s,cost=%f", m, cost));
+		return cost;
+	}
+
+	/**
+	 * Keeps the best time, for the timeouts and the racing, and the
+	 * configuration of the best cost.
+	 */
+	private synchronized void newTime(long time, double cost, Configuration cfg) {
+		if (time <= 1)
+			return;
+		if (currentBestTime > time)
+			currentBestTime = time;
+		if (bestCost > cost) {
+			bestCost = cost;
+			bestCfg = cfg;
 		}
-		mLogger.bEvent("tuningFinished");
-		tuningFinished(round);
-		mLogger.eEvent("tuningFinished");
 	}
 
 	private void startTuner() throws IOException {
@@ -161,20 +312,61 @@ public class OnlineTuner implements Runnable {
 		tuner.writeLine("tunerounds");
 		tuner.writeLine(new Integer(Options.tuningRounds).toString());
 
+		// One configuration is being measured on each tuning group. Let the
+		// tuner send speculativeCompilation more in advance for each.
+		int parallelCfgs = (Options.speculativeCompilation + 1)
+				* (groups.size() + 1);
+		if (parallelCfgs > 1) {
+			tuner.writeLine("parallelcfgs");
+			tuner.writeLine(new Integer(parallelCfgs).toString());
+		}
+
+		if (knowledgeBase != null)
+			for (Configuration seed : knowledgeBase.seeds(defaultCfg, maxSeeds)) {
+				tuner.writeLine("seedcfg");
+				tuner.writeLine(Jsonifiers.toJson(cfgManager.reduce(seed))
+						.toString());
+			}
+
+		// The tuner searches the reduced space. See
+		// Options#tieSymmetricParameters.
 		tuner.writeLine("confg");
-		tuner.writeLine(Jsonifiers.toJson(defaultCfg).toString());
+		tuner.writeLine(Jsonifiers.toJson(cfgManager.reduce(defaultCfg))
+				.toString());
 		new Thread(listener).start();
 	}
 
-	private long getTime() {
+	/**
+	 * Sends the upcoming configurations those the tuner has already sent to
+	 * the StreamNodes for speculative compilation. The nodes compile them
+	 * while the current one runs, except during its timed measurement
+	 * window. See {@link Options#speculativeCompilation}.
+	 */
+	private void speculate() {
+		if (Options.speculativeCompilation < 1)
+			return;
+		for (NewConfiguration newConfig : listener
+				.queued(Options.speculativeCompilation))
+			configurer.speculate(newConfig);
+	}
+
+	private long getTime(Reconfigurer configurer) {
 		long timeout = Options.timeOut ? 2 * currentBestTime : 0;
 		long time;
-		time = configurer.getFixedOutputTime(timeout);
+		MeasurementRace race = race();
+		time = configurer.getFixedOutputTime(timeout, race);
 		if (time < 0)
 			return time;
+		if (race != null && race.isLost()) {
+			// The estimated time goes to the tuner as the result.
+			System.err.println(String.format(
+					"Aborted the measurement...cbt=%d,estimated=%d",
+					currentBestTime, time));
+			return time;
+		}
 		if ((time - currentBestTime) < currentBestTime / 5) {
 			long time1 = time;
-			long time2 = configurer.getFixedOutputTime(timeout);
+			long time2 = configurer.getFixedOutputTime(timeout, race());
 			if (time2 > 0)
 				time = (time1 + time2) / 2;
 			System.err.println(String.format(
@@ -184,6 +376,18 @@ public class OnlineTuner implements Runnable {
 		return time;
 	}
 
+	/**
+	 * @return a race against the current best time, or null if racing is
+	 *         disabled, there is no best time yet or the objective is not the
+	 *         time alone. See {@link Options#racing}.
+	 */
+	private MeasurementRace race() {
+		if (!Options.racing || currentBestTime == Integer.MAX_VALUE
+				|| objective.needsObservation())
+			return null;
+		return new MeasurementRace(currentBestTime);
+	}
+
 	/**
 	 * Just excerpted from run() method for better readability.
 	 * 
@@ -192,9 +396,10 @@ public class OnlineTuner implements Runnable {
 	private void handleTermination() throws IOException {
 		String finalConfg = tuner.readLine();
 		System.out.println("Tuning finished");
-		ConfigurationUtils.saveConfg(finalConfg, "final", app.name);
-		Configuration finalcfg = Configuration.fromJson(finalConfg);
+		Configuration finalcfg = cfgManager.expand(Configuration
+				.fromJson(finalConfg));
 		finalcfg = ConfigurationUtils.addConfigPrefix(finalcfg, "final");
+		ConfigurationUtils.saveConfg(finalcfg, "final", app.name);
 		verify();
 		if (needTermination) {
 			configurer.terminate();
@@ -227,6 +432,10 @@ public class OnlineTuner implements Runnable {
 
 		if (needTermination)
 			configurer.terminate();
+		else if (Options.retune)
+			new Thread(new BackgroundTuner(configurer,
+					bestCfg == null ? defaultCfg : bestCfg), "BackgroundTuner")
+					.start();
 
 		try {
 			TimeLogProcessor.summarize(app.name);
@@ -292,6 +501,20 @@ public class OnlineTuner implements Runnable {
 			return newCfg;
 		}
 
+		/**
+		 * @return up to max configurations those are waiting in the queue,
+		 *         in their order.
+		 */
+		public List<NewConfiguration> queued(int max) {
+			List<NewConfiguration> queued = new ArrayList<>();
+			for (NewConfiguration newCfg : cfgQueue) {
+				if (queued.size() == max)
+					break;
+				queued.add(newCfg);
+			}
+			return queued;
+		}
+
 		public void stop() {
 			this.stopFlag.set(true);
 		}
@@ -299,10 +522,14 @@ public class OnlineTuner implements Runnable {
 		private NewConfiguration newcfgJson(String cfgJson) {
 			Configuration config = Configuration.fromJson(cfgJson);
 			String cfgPrefix = ConfigurationUtils.getConfigPrefix(config);
+			NewConfiguration newConfig = configurer.newConfiguration(config);
 
+			// Saves the full configuration, not the reduced one that the
+			// tuner has sent. See Options#tieSymmetricParameters.
 			if (Options.saveAllConfigurations)
-				ConfigurationUtils.saveConfg(cfgJson, cfgPrefix, appName);
-			return configurer.newConfiguration(config);
+				ConfigurationUtils.saveConfg(newConfig.configuration,
+						cfgPrefix, appName);
+			return newConfig;
 		}
 
 		private void newConfiguration(NewConfiguration newConfig) {
@@ -311,9 +538,12 @@ public class OnlineTuner implements Runnable {
 				cfgQueue.offer(newConfig);
 			else
 				try {
-					tuner.writeLine(String.format("%s:%s", ConfigurationUtils
-							.getConfigPrefix(newConfig.configuration),
-							new Double(-1).toString()));
+					synchronized (tuner) {
+						tuner.writeLine(String.format("%s:%s",
+								ConfigurationUtils
+										.getConfigPrefix(newConfig.configuration),
+								Double.toString(-1)));
+					}
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
@@ -0,0 +1,87 @@
+package edu.mit.streamjit.tuner;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.common.Utils;
+import edu.mit.streamjit.tuner.Objective.Measurement;
+import edu.mit.streamjit.util.ConfigurationUtils;
+
+/**
+ * Keeps the configurations those are not dominated by any other measured
+ * configuration in running time, latency and core usage, regardless of the
+ * {@link Objective} that the tuner minimizes. The front is written to
+ * "appName/pareto.txt" whenever it changes, and the configurations on the
+ * front are saved, so that a configuration with a different trade-off can be
+ * picked after the tuning.
+ * 
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public class ParetoFront {
+
+	private final String appName;
+
+	private final List<Entry> front;
+
+	public ParetoFront(String appName) {
+		this.appName = appName;
+		this.front = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a measured configuration to the front, if no configuration on the
+	 * front dominates it.
+	 * 
+	 * @return true iff the configuration is on the front.
+	 */
+	public synchronized boolean add(Configuration cfg, Measurement m) {
+		if (m.time < 0 || m.latency < 0 || m.cores < 0)
+			return false;
+		for (Entry e : front)
+			if (e.measurement.dominates(m))
+				return false;
+		for (Iterator<Entry> it = front.iterator(); it.hasNext();)
+			if (m.dominates(it.next().measurement))
+				it.remove();
+		String cfgPrefix = ConfigurationUtils.getConfigPrefix(cfg);
+		front.add(new Entry(cfgPrefix, m));
+		if (!Options.saveAllConfigurations)
+			ConfigurationUtils.saveConfg(cfg, cfgPrefix, appName);
+		write();
+		return true;
+	}
+
+	private void write() {
+		FileWriter writer = Utils.fileWriter(appName, "pareto.txt");
+		if (writer == null)
+			return;
+		try {
+			writer.write("cfgPrefix\ttime\tlatency\tcores\n");
+			for (Entry e : front)
+				writer.write(String.format("%s\t%d\t%.3f\t%.2f\n",
+						e.cfgPrefix, e.measurement.time,
+						e.measurement.latency, e.measurement.cores));
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static final class Entry {
+
+		final String cfgPrefix;
+
+		final Measurement measurement;
+
+		Entry(String cfgPrefix, Measurement measurement) {
+			this.cfgPrefix = cfgPrefix;
+			this.measurement = measurement;
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package edu.mit.streamjit.tuner;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import edu.mit.streamjit.impl.common.Configuration;
 import edu.mit.streamjit.impl.distributed.common.AppStatus;
 import edu.mit.streamjit.impl.distributed.common.Options;
@@ -8,7 +12,9 @@ import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager;
 import edu.mit.streamjit.impl.distributed.controller.ConfigurationManager.NewConfiguration;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitApp;
 import edu.mit.streamjit.impl.distributed.controller.StreamJitAppManager;
+import edu.mit.streamjit.impl.distributed.controller.HT.MeasurementRace;
 import edu.mit.streamjit.impl.distributed.node.StreamNode;
+import edu.mit.streamjit.tuner.Objective.Measurement;
 import edu.mit.streamjit.util.EventTimeLogger;
 import edu.mit.streamjit.util.Pair;
 
@@ -21,23 +27,49 @@ import edu.mit.streamjit.util.Pair;
  */
 public class Reconfigurer {
 
+	/**
+	 * Maximum time(ms) to wait for the {@link StreamNode}s' CPU usages.
+	 */
+	private static final long cpuUsageTimeout = 1000;
+
 	final StreamJitAppManager manager;
 	final StreamJitApp<?, ?> app;
 	final ConfigurationManager cfgManager;
 	final ConfigurationPrognosticator prognosticator;
 	final EventTimeLogger mLogger;
 
+	/**
+	 * {@link AppInstance}s of the configurations those have been compiled
+	 * speculatively, in the order they were speculated.
+	 * {@link #reconfigure(NewConfiguration)} reuses them and evicts the
+	 * entries those were speculated before the reused one, which will never
+	 * run. Keeps at most {@link Options#speculativeCompilation} entries.
+	 */
+	private final LinkedHashMap<NewConfiguration, AppInstance> speculated;
+
 	public Reconfigurer(StreamJitAppManager manager, StreamJitApp<?, ?> app,
 			ConfigurationManager cfgManager) {
 		this.manager = manager;
 		this.app = app;
 		this.cfgManager = cfgManager;
-		this.prognosticator = prognosticator(app);
+		this.prognosticator = prognosticator(app, cfgManager);
 		this.mLogger = app.eLogger;
+		this.speculated = new LinkedHashMap<NewConfiguration, AppInstance>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<NewConfiguration, AppInstance> eldest) {
+				return size() > Options.speculativeCompilation;
+			}
+		};
 	}
 
-	private ConfigurationPrognosticator prognosticator(StreamJitApp<?, ?> app) {
-		if (Options.prognosticate)
+	private ConfigurationPrognosticator prognosticator(StreamJitApp<?, ?> app,
+			ConfigurationManager cfgManager) {
+		if (Options.costModelRejectRatio > 0)
+			return new LearnedCostPrognosticator(app, cfgManager);
+		else if (Options.prognosticate)
 			return new GraphPropertyPrognosticator(app);
 		else
 			return new ConfigurationPrognosticator.NoPrognostication();
@@ -77,8 +109,10 @@ public class Reconfigurer {
 
 		mLogger.eEvent("serialcfg");
 		try {
-			AppInstance appinst = app.newConfiguration(newConfig);
-			int reconfigure = manager.reconfigurer.reconfigure(appinst);
+			AppInstance appinst = takeSpeculated(newConfig);
+			if (appinst == null)
+				appinst = app.newConfiguration(newConfig);
+			int reconfigure = manager.reconfigure(appinst);
 			if (reconfigure == 1)
 				return new Pair<Boolean, Integer>(false, -5);
 			else if (reconfigure == 2)
@@ -92,6 +126,52 @@ public class Reconfigurer {
 		return new Pair<Boolean, Integer>(true, reason);
 	}
 
+	/**
+	 * Compiles the newConfig's blobs in background at the
+	 * {@link StreamNode}s. See {@link Options#speculativeCompilation}.
+	 * 
+	 * @return <code>false</code> iff the newConfig can not be compiled
+	 *         speculatively.
+	 */
+	public boolean speculate(NewConfiguration newConfig) {
+		if (speculated.containsKey(newConfig))
+			return true;
+		if (!newConfig.verificationPassed
+				|| !newConfig.isPrognosticationPassed()
+				|| manager.getStatus() == AppStatus.STOPPED)
+			return false;
+		mLogger.bEvent("speculate");
+		try {
+			AppInstance appinst = app.newConfiguration(newConfig);
+			speculated.put(newConfig, appinst);
+			manager.speculate(appinst);
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			return false;
+		} finally {
+			mLogger.eEvent("speculate");
+		}
+		return true;
+	}
+
+	/**
+	 * Removes and returns the speculated {@link AppInstance} of the newConfig,
+	 * along with all entries speculated before it. Returns null and keeps the
+	 * entries if the newConfig has not been speculated.
+	 */
+	private AppInstance takeSpeculated(NewConfiguration newConfig) {
+		if (!speculated.containsKey(newConfig))
+			return null;
+		Iterator<Map.Entry<NewConfiguration, AppInstance>> it = speculated
+				.entrySet().iterator();
+		while (true) {
+			Map.Entry<NewConfiguration, AppInstance> en = it.next();
+			it.remove();
+			if (en.getKey().equals(newConfig))
+				return en.getValue();
+		}
+	}
+
 	public NewConfiguration newConfiguration(Configuration config) {
 		mLogger.bEvent("CfgManagerNewcfg");
 		NewConfiguration newConfiguration = cfgManager.newConfiguration(config);
@@ -117,13 +197,53 @@ public class Reconfigurer {
 	}
 
 	public long getFixedOutputTime(long timeout) {
+		return getFixedOutputTime(timeout, null);
+	}
+
+	/**
+	 * Starts observing the latency and the core usage of the running
+	 * configuration. See {@link #observe(long)}.
+	 */
+	public void startObservation() {
+		if (app.latencyProbe != null)
+			app.latencyProbe.reset();
+		manager.cpuUsage(cpuUsageTimeout);
+	}
+
+	/**
+	 * @param time
+	 *            the measured running time.
+	 * @return the {@link Measurement} of the running configuration since
+	 *         the last {@link #startObservation()}.
+	 */
+	public Measurement observe(long time) {
+		double latency = app.latencyProbe == null ? -1 : app.latencyProbe
+				.latency(Options.latencyPercentile);
+		Map<Integer, Double> cpuUsage = manager.cpuUsage(cpuUsageTimeout);
+		double cores = cpuUsage.isEmpty() ? -1 : 0;
+		for (double c : cpuUsage.values()) {
+			if (c < 0) {
+				cores = -1;
+				break;
+			}
+			cores += c;
+		}
+		return new Measurement(time, latency, cores);
+	}
+
+	/**
+	 * Measures the running time, but gives up as soon as the race shows the
+	 * running configuration can not beat the best one. See
+	 * {@link Options#racing}.
+	 */
+	public long getFixedOutputTime(long timeout, MeasurementRace race) {
 		// TODO: need to check the manager's status before passing the
 		// time. Exceptions, final drain, etc may causes app to stop
 		// executing.
 		mLogger.bEvent("getFixedOutputTime");
 		long time = -1;
 		try {
-			time = manager.getFixedOutputTime(timeout);
+			time = manager.getFixedOutputTime(timeout, race);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
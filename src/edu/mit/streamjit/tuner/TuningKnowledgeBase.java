@@ -0,0 +1,264 @@
+package edu.mit.streamjit.tuner;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.FloatParameter;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.impl.common.Configuration.Parameter;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
+import edu.mit.streamjit.impl.common.Workers;
+import edu.mit.streamjit.impl.distributed.common.Options;
+import edu.mit.streamjit.impl.distributed.controller.StreamJitApp;
+import edu.mit.streamjit.util.json.Jsonifiers;
+
+/**
+ * Knowledge base of measured configurations, shared by all apps and tuning
+ * runs, so that a new tuning run can start from what the earlier runs have
+ * found. See {@link Options#knowledgeBase}.
+ * <p>
+ * Results are keyed by the app's signature (a hash of the stream graph's
+ * structure), the number of nodes and a description of the hardware. The
+ * seeds of a new tuning run are the best known configurations of the
+ * following setups, in this order of preference.
+ * <ol>
+ * <li>Same stream graph on the same number of nodes on the same hardware.
+ * <li>Same stream graph on the same number of nodes.
+ * <li>Same stream graph.
+ * <li>Similar stream graphs, i.e., other versions of the same app.
+ * </ol>
+ * A known configuration is adapted to the current app by taking the default
+ * configuration and replacing the values of the parameters those exist in
+ * both with the same name and a valid value.
+ * 
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public class TuningKnowledgeBase {
+
+	private static final String dbPath = "tuningKnowledge.db";
+
+	private static final String table = "results";
+
+	private final SqliteAdapter db;
+
+	private final String appName;
+
+	private final String signature;
+
+	private final int nodes;
+
+	private final String hardware;
+
+	/**
+	 * @param app
+	 * @param nodes
+	 *            number of nodes the app runs on.
+	 * @param hardware
+	 *            description of the hardware. See {@link #hardware(Map)}.
+	 * @throws IllegalStateException
+	 *             if sqlite is not available.
+	 */
+	public TuningKnowledgeBase(StreamJitApp<?, ?> app, int nodes,
+			String hardware) {
+		this.db = new SqliteAdapter();
+		db.connectDB(dbPath);
+		db.createTable(table, "Signature string, App string, Nodes int, "
+				+ "Hardware string, Time real, SJConfig string");
+		this.appName = app.topLevelClass;
+		this.signature = signature(app);
+		this.nodes = nodes;
+		this.hardware = hardware;
+	}
+
+	/**
+	 * Adds a measured configuration.
+	 * 
+	 * @param time
+	 *            running time. Failed configurations (time <= 0) are not
+	 *            recorded.
+	 */
+	public synchronized void record(Configuration cfg, double time) {
+		if (time <= 0)
+			return;
+		String json = Jsonifiers.toJson(cfg).toString();
+		db.executeUpdate(String.format(
+				"INSERT INTO %s VALUES('%s', '%s', %d, '%s', %f, '%s')",
+				table, signature, escape(appName), nodes, escape(hardware),
+				time, escape(json)));
+	}
+
+	/**
+	 * @param defaultCfg
+	 *            default configuration of the current tuning run.
+	 * @param max
+	 *            maximum number of seeds to be returned.
+	 * @return best known configurations, adapted to the defaultCfg, in the
+	 *         order of preference.
+	 */
+	public synchronized List<Configuration> seeds(Configuration defaultCfg,
+			int max) {
+		List<Known> known = new ArrayList<>();
+		// Orders by the tier first, so that the LIMIT never cuts off the
+		// better matches in favour of faster runs elsewhere. See tier().
+		String tier = String.format("CASE WHEN Signature='%1$s' AND Nodes=%2$d "
+				+ "AND Hardware='%3$s' THEN 0 WHEN Signature='%1$s' AND Nodes=%2$d "
+				+ "THEN 1 WHEN Signature='%1$s' THEN 2 ELSE 3 END", signature,
+				nodes, escape(hardware));
+		ResultSet rs = db.executeQuery(String.format(
+				"SELECT * FROM %s WHERE Signature='%s' OR App='%s' "
+						+ "ORDER BY %s, Time LIMIT 1000", table, signature,
+				escape(appName), tier));
+		if (rs == null)
+			return new ArrayList<>();
+		try {
+			while (rs.next())
+				known.add(new Known(tier(rs.getString("Signature"),
+						rs.getInt("Nodes"), rs.getString("Hardware")), rs
+						.getDouble("Time"), rs.getString("SJConfig")));
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		Collections.sort(known, Comparator.comparingInt((Known k) -> k.tier)
+				.thenComparingDouble(k -> k.time));
+
+		List<Configuration> seeds = new ArrayList<>();
+		Set<String> added = new HashSet<>();
+		for (Known k : known) {
+			if (seeds.size() == max)
+				break;
+			Configuration seed = adapt(Configuration.fromJson(k.json),
+					defaultCfg);
+			if (seed != null
+					&& added.add(Jsonifiers.toJson(seed).toString()))
+				seeds.add(seed);
+		}
+		return seeds;
+	}
+
+	/**
+	 * @return 0 for the most preferred match. See the class comment.
+	 */
+	private int tier(String signature, int nodes, String hardware) {
+		if (!this.signature.equals(signature))
+			return 3;
+		if (this.nodes != nodes)
+			return 2;
+		if (!this.hardware.equals(hardware))
+			return 1;
+		return 0;
+	}
+
+	/**
+	 * @return the defaultCfg with the values of the known configuration, or
+	 *         null if none of the values can be taken.
+	 */
+	private static Configuration adapt(Configuration known,
+			Configuration defaultCfg) {
+		Configuration.Builder builder = Configuration.builder(defaultCfg);
+		int taken = 0;
+		for (Parameter p : defaultCfg.getParametersMap().values()) {
+			Parameter k = known.getParameter(p.getName());
+			if (k == null || k.getClass() != p.getClass())
+				continue;
+			Parameter adapted = adapt(k, p);
+			if (adapted != null) {
+				builder.removeParameter(p.getName());
+				builder.addParameter(adapted);
+				taken++;
+			}
+		}
+		return taken == 0 ? null : builder.build();
+	}
+
+	/**
+	 * @return a parameter that has the range of the defaultParam and the
+	 *         value of the known one, or null if the value is out of range.
+	 */
+	private static Parameter adapt(Parameter known, Parameter defaultParam) {
+		if (known instanceof IntParameter) {
+			IntParameter k = (IntParameter) known;
+			IntParameter d = (IntParameter) defaultParam;
+			return d.getRange().contains(k.getValue()) ? new IntParameter(
+					d.getName(), d.getRange(), k.getValue()) : null;
+		} else if (known instanceof FloatParameter) {
+			FloatParameter k = (FloatParameter) known;
+			FloatParameter d = (FloatParameter) defaultParam;
+			return d.getRange().contains(k.getValue()) ? new FloatParameter(
+					d.getName(), d.getRange(), k.getValue()) : null;
+		} else if (known instanceof SwitchParameter)
+			return adaptSwitch((SwitchParameter<?>) known,
+					(SwitchParameter<?>) defaultParam);
+		return null;
+	}
+
+	private static <T> SwitchParameter<T> adaptSwitch(
+			SwitchParameter<?> known, SwitchParameter<T> defaultParam) {
+		int index = defaultParam.getUniverse().indexOf(known.getValue());
+		if (index < 0)
+			return null;
+		return new SwitchParameter<T>(defaultParam.getName(),
+				defaultParam.getGenericParameter(), defaultParam
+						.getUniverse().get(index), defaultParam.getUniverse());
+	}
+
+	/**
+	 * @return hash of the stream graph's structure: the workers' classes and
+	 *         rates, and the channels between them.
+	 */
+	public static String signature(StreamJitApp<?, ?> app) {
+		Map<Integer, String> workers = new TreeMap<>();
+		for (Worker<?, ?> w : Workers.getAllWorkersInGraph(app.source)) {
+			StringBuilder sb = new StringBuilder(w.getClass().getName());
+			sb.append(w.getPeekRates()).append(w.getPopRates())
+					.append(w.getPushRates());
+			for (Worker<?, ?> succ : Workers.getSuccessors(w))
+				sb.append(',').append(Workers.getIdentifier(succ));
+			workers.put(Workers.getIdentifier(w), sb.toString());
+		}
+		return Hashing.sha1()
+				.hashString(workers.toString(), Charsets.UTF_8).toString();
+	}
+
+	/**
+	 * @param coreCounts
+	 *            nodeID to number of cores. See
+	 *            {@link edu.mit.streamjit.impl.distributed.runtimer.Controller#getCoreCount()}
+	 *            .
+	 * @return description of the hardware.
+	 */
+	public static String hardware(Map<Integer, Integer> coreCounts) {
+		List<Integer> cores = new ArrayList<>(coreCounts.values());
+		Collections.sort(cores);
+		return String.format("cores=%s", cores);
+	}
+
+	private static String escape(String s) {
+		return s.replace("'", "''");
+	}
+
+	private static final class Known {
+		final int tier;
+		final double time;
+		final String json;
+
+		Known(int tier, double time, String json) {
+			this.tier = tier;
+			this.time = time;
+			this.json = json;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link GrowableArrayBuffer}.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 19 Oct, 2026
+ */
+public class GrowableArrayBufferTest {
+
+	private static Object[] range(int from, int count) {
+		Object[] data = new Object[count];
+		for (int i = 0; i < count; i++)
+			data[i] = from + i;
+		return data;
+	}
+
+	@Test
+	public void growsBeyondTheInitialCapacity() {
+		GrowableArrayBuffer buffer = new GrowableArrayBuffer(4, 1000);
+		assertEquals(100, buffer.write(range(0, 100), 0, 100));
+		assertEquals(100, buffer.size());
+		Object[] data = new Object[100];
+		assertEquals(100, buffer.read(data, 0, 100));
+		for (int i = 0; i < data.length; i++)
+			assertEquals(i, data[i]);
+		assertNull(buffer.read());
+	}
+
+	@Test
+	public void keepsTheOrderWhenGrowingAWrappedArray() {
+		GrowableArrayBuffer buffer = new GrowableArrayBuffer(8, 1000);
+		buffer.write(range(0, 6), 0, 6);
+		Object[] data = new Object[5];
+		buffer.read(data, 0, 5);
+		// The next write wraps around and then grows the array.
+		assertEquals(20, buffer.write(range(6, 20), 0, 20));
+		assertEquals(5, buffer.read());
+		for (int i = 6; i < 26; i++)
+			assertEquals(i, buffer.read());
+	}
+
+	@Test
+	public void writesArePartialAtTheHighWaterMark() {
+		GrowableArrayBuffer buffer = new GrowableArrayBuffer(4, 10);
+		assertEquals(10, buffer.capacity());
+		assertEquals(10, buffer.write(range(0, 25), 0, 25));
+		assertFalse(buffer.write(10));
+		assertEquals(0, buffer.write(range(10, 5), 0, 5));
+		assertEquals(0, buffer.read());
+		assertTrue(buffer.write(10));
+		assertEquals(10, buffer.size());
+	}
+
+	@Test
+	public void readAllNeedsEnoughItems() {
+		GrowableArrayBuffer buffer = new GrowableArrayBuffer(4, 100);
+		buffer.write(range(0, 3), 0, 3);
+		Object[] data = new Object[4];
+		assertFalse(buffer.readAll(data, 0));
+		assertEquals(3, buffer.size());
+		assertTrue(buffer.readAll(data, 1));
+		assertEquals(0, data[1]);
+		assertEquals(2, data[3]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void highWaterMarkBelowTheInitialCapacity() {
+		new GrowableArrayBuffer(100, 10);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+
+/**
+ * Tests for {@link CreditGate}.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 19 Oct, 2026
+ */
+public class CreditGateTest {
+
+	@Test
+	public void acquireTakesAtMostTheGrantedCredits() throws InterruptedException {
+		CreditGate gate = new CreditGate();
+		gate.grant(5);
+		assertEquals(3, gate.acquire(3));
+		assertEquals(2, gate.acquire(10));
+		assertEquals(0, gate.tryAcquire(1));
+	}
+
+	@Test
+	public void acquireBlocksUntilGranted() throws InterruptedException {
+		CreditGate gate = new CreditGate();
+		AtomicInteger acquired = new AtomicInteger(-1);
+		CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread(() -> {
+			try {
+				acquired.set(gate.acquire(4));
+			} catch (InterruptedException e) {
+			}
+			done.countDown();
+		});
+		t.start();
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		gate.grant(2);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(2, acquired.get());
+	}
+
+	@Test
+	public void closeReleasesWaitersWithUnlimitedCredits()
+			throws InterruptedException {
+		CreditGate gate = new CreditGate();
+		AtomicInteger acquired = new AtomicInteger(-1);
+		CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread(() -> {
+			try {
+				acquired.set(gate.acquire(7));
+			} catch (InterruptedException e) {
+			}
+			done.countDown();
+		});
+		t.start();
+		gate.close();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(7, acquired.get());
+		assertEquals(100, gate.tryAcquire(100));
+	}
+
+	@Test
+	public void wakeUpReleasesAWaiterWithoutCredits()
+			throws InterruptedException {
+		CreditGate gate = new CreditGate();
+		AtomicInteger acquired = new AtomicInteger(-1);
+		CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread(() -> {
+			try {
+				acquired.set(gate.acquire(4));
+			} catch (InterruptedException e) {
+			}
+			done.countDown();
+		});
+		t.start();
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		gate.wakeUp();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(0, acquired.get());
+		// A wake up releases only once.
+		gate.grant(1);
+		assertEquals(1, gate.acquire(4));
+	}
+
+	@Test
+	public void wakeUpBeforeAcquireIsNotLost() throws InterruptedException {
+		CreditGate gate = new CreditGate();
+		gate.wakeUp();
+		assertEquals(0, gate.acquire(4));
+	}
+
+	@Test
+	public void gatedBufferWritesWithinCredits() {
+		CreditGate gate = new CreditGate();
+		Buffer buffer = gate.gatedBuffer(new ConcurrentArrayBuffer(16));
+		assertFalse(buffer.write(1));
+		gate.grant(3);
+		assertEquals(3, buffer.write(new Object[] { 1, 2, 3, 4, 5 }, 0, 5));
+		assertEquals(3, buffer.size());
+		assertFalse(buffer.write(6));
+	}
+
+	@Test
+	public void gatedBufferReturnsUnusedCredits() {
+		CreditGate gate = new CreditGate();
+		Buffer buffer = gate.gatedBuffer(new ConcurrentArrayBuffer(2));
+		gate.grant(5);
+		assertEquals(2, buffer.write(new Object[] { 1, 2, 3, 4 }, 0, 4));
+		// The underlying buffer was full; its refusal must not cost credits.
+		assertEquals(3, gate.tryAcquire(10));
+	}
+}
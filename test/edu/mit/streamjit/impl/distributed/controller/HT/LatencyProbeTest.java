@@ -0,0 +1,115 @@
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.mit.streamjit.impl.blob.Buffer;
+import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+import edu.mit.streamjit.impl.distributed.controller.BufferSizeCalc.GraphSchedule;
+
+/**
+ * Tests for {@link LatencyProbe}.
+ *
+ * @author sumanan
+ * @since 19 Oct, 2026
+ */
+public class LatencyProbeTest {
+
+	/**
+	 * {@link GraphSchedule}s are made by the BufferSizeCalc only.
+	 */
+	private static GraphSchedule schedule(int totalInDuringInit,
+			int totalOutDuringInit, int steadyIn, int steadyOut)
+			throws ReflectiveOperationException {
+		Constructor<GraphSchedule> c = GraphSchedule.class
+				.getDeclaredConstructor(ImmutableMap.class,
+						ImmutableMap.class, int.class, int.class,
+						ImmutableMap.class, int.class, int.class);
+		c.setAccessible(true);
+		return c.newInstance(ImmutableMap.of(), ImmutableMap.of(),
+				totalInDuringInit, totalOutDuringInit, ImmutableMap.of(),
+				steadyIn, steadyOut);
+	}
+
+	private static void read(Buffer head, int count) {
+		for (int i = 0; i < count; i++)
+			head.write(i);
+		Object[] data = new Object[count];
+		assertTrue(head.readAll(data));
+	}
+
+	private static void write(Buffer tail, int count) {
+		for (int i = 0; i < count; i++)
+			assertTrue(tail.write(i));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPositiveInterval() {
+		new LatencyProbe(0);
+	}
+
+	@Test
+	public void noSamplesWithoutSchedule() {
+		LatencyProbe probe = new LatencyProbe(10);
+		Buffer head = probe.head(new ConcurrentArrayBuffer(100));
+		Buffer tail = probe.tail(new ConcurrentArrayBuffer(100));
+		read(head, 50);
+		write(tail, 50);
+		assertEquals(-1, probe.latency(50), 0);
+	}
+
+	@Test
+	public void matchesTheOutputOfTheSampledInput() throws Exception {
+		LatencyProbe probe = new LatencyProbe(10);
+		// The 10th input completes the 2nd steady firing after the init,
+		// which brings the output to 3 + 2 * 1.
+		probe.schedule(schedule(6, 3, 2, 1));
+		// Only the first schedule counts.
+		probe.schedule(schedule(0, 0, 1, 1));
+		Buffer head = probe.head(new ConcurrentArrayBuffer(100));
+		Buffer tail = probe.tail(new ConcurrentArrayBuffer(100));
+		read(head, 9);
+		read(head, 1);
+		Thread.sleep(20);
+		write(tail, 4);
+		assertEquals(-1, probe.latency(50), 0);
+		write(tail, 1);
+		assertTrue(probe.latency(50) >= 20);
+	}
+
+	@Test
+	public void reportsPercentiles() throws Exception {
+		LatencyProbe probe = new LatencyProbe(10);
+		probe.schedule(schedule(0, 0, 1, 1));
+		Buffer head = probe.head(new ConcurrentArrayBuffer(100));
+		Buffer tail = probe.tail(new ConcurrentArrayBuffer(100));
+		read(head, 10);
+		Thread.sleep(30);
+		read(head, 10);
+		write(tail, 20);
+		assertTrue(probe.latency(100) >= 30);
+		assertTrue(probe.latency(50) < probe.latency(100));
+	}
+
+	@Test
+	public void resetDiscardsPendingSamples() throws Exception {
+		LatencyProbe probe = new LatencyProbe(10);
+		probe.schedule(schedule(0, 0, 1, 1));
+		Buffer head = probe.head(new ConcurrentArrayBuffer(100));
+		Buffer tail = probe.tail(new ConcurrentArrayBuffer(100));
+		read(head, 10);
+		write(tail, 10);
+		assertTrue(probe.latency(50) >= 0);
+		read(head, 10);
+		probe.reset();
+		assertEquals(-1, probe.latency(50), 0);
+		write(tail, 10);
+		assertEquals(-1, probe.latency(50), 0);
+	}
+}
@@ -0,0 +1,86 @@
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MeasurementRace}.
+ *
+ * @author sumanan
+ * @since 19 Oct, 2026
+ */
+public class MeasurementRaceTest {
+
+	private static final int fixedCount = 1000;
+
+	/**
+	 * The incumbent produces one output per millisecond.
+	 */
+	private static final long incumbent = 1000;
+
+	/**
+	 * Reports a sample every 100ms, with the given output rates (outputs per
+	 * millisecond), cycling through them.
+	 * 
+	 * @return the number of samples after which the race was lost, or -1.
+	 */
+	private static int race(MeasurementRace race, int samples,
+			double... rates) {
+		double count = 0;
+		for (int i = 0; i < samples; i++) {
+			count += rates[i % rates.length] * 100;
+			if (race.lost((int) count, (i + 1) * 100, fixedCount))
+				return i + 1;
+		}
+		return -1;
+	}
+
+	@Test
+	public void noDecisionWithFewSamples() {
+		MeasurementRace race = new MeasurementRace(incumbent);
+		// Reports closer than the sampling period are not samples.
+		for (int t = 10; t < 100; t += 10)
+			assertFalse(race.lost(0, t, fixedCount));
+		assertEquals(-1, race(race, 4, 0));
+		assertFalse(race.isLost());
+	}
+
+	@Test
+	public void slowConfigurationLoses() {
+		MeasurementRace race = new MeasurementRace(incumbent);
+		assertEquals(5, race(race, 50, 0.5, 0.52, 0.48));
+		assertTrue(race.isLost());
+		// Lost stays lost.
+		assertTrue(race.lost(1_000_000, 10_000, fixedCount));
+		long estimate = race.estimate(fixedCount);
+		assertTrue("estimate " + estimate, estimate > 1900
+				&& estimate < 2100);
+	}
+
+	@Test
+	public void fasterConfigurationKeepsRunning() {
+		MeasurementRace race = new MeasurementRace(incumbent);
+		assertEquals(-1, race(race, 50, 2, 1.8, 2.2));
+		assertFalse(race.isLost());
+		long estimate = race.estimate(fixedCount);
+		assertTrue("estimate " + estimate, estimate > 450 && estimate < 550);
+	}
+
+	@Test
+	public void noisyRatesGetTheBenefitOfTheDoubt() {
+		// The mean rate ties with the incumbent, the upper bound beats it.
+		MeasurementRace race = new MeasurementRace(incumbent);
+		assertEquals(-1, race(race, 50, 0.6, 1.4));
+		assertFalse(race.isLost());
+	}
+
+	@Test
+	public void noOutputLoses() {
+		MeasurementRace race = new MeasurementRace(incumbent);
+		assertEquals(5, race(race, 50, 0));
+		assertEquals(-1, race.estimate(fixedCount));
+	}
+}
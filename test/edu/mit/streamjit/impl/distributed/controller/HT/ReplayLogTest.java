@@ -0,0 +1,89 @@
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReplayLog}.
+ *
+ * @author sumanan
+ * @since 19 Oct, 2026
+ */
+public class ReplayLogTest {
+
+	private static Object[] range(int from, int count) {
+		Object[] data = new Object[count];
+		for (int i = 0; i < count; i++)
+			data[i] = from + i;
+		return data;
+	}
+
+	private static void assertRange(int from, Object[] items) {
+		for (int i = 0; i < items.length; i++)
+			assertEquals(from + i, items[i]);
+	}
+
+	@Test
+	public void keepsItemsFromTheCommittedPosition() {
+		ReplayLog log = new ReplayLog();
+		log.append(range(0, 100), 0, 100);
+		log.append(range(90, 20), 10, 10);
+		assertEquals(110, log.size());
+		log.truncate(40);
+		assertEquals(70, log.size());
+		Object[] items = log.items(60);
+		assertEquals(50, items.length);
+		assertRange(60, items);
+	}
+
+	@Test
+	public void copiesTheSentItems() {
+		ReplayLog log = new ReplayLog();
+		Object[] data = range(0, 10);
+		log.append(data, 0, 10);
+		// The head channel reuses its send array.
+		data[0] = -1;
+		assertEquals(0, log.items(0)[0]);
+	}
+
+	@Test
+	public void growsAndShrinksWithTheTraffic() {
+		ReplayLog log = new ReplayLog();
+		int seq = 0;
+		// A burst of traffic wraps and grows the ring.
+		for (int i = 0; i < 50; i++) {
+			log.append(range(seq, 3000), 0, 3000);
+			seq += 3000;
+		}
+		log.truncate(seq - 1000);
+		assertRange(seq - 1000, log.items(seq - 1000));
+		// Quiet intervals let the ring shrink; the items survive it.
+		for (int i = 0; i < 5; i++) {
+			log.append(range(seq, 10), 0, 10);
+			seq += 10;
+			log.truncate(seq - 5);
+		}
+		assertEquals(5, log.size());
+		assertRange(seq - 5, log.items(seq - 5));
+	}
+
+	@Test
+	public void clearDropsEverything() {
+		ReplayLog log = new ReplayLog();
+		log.append(range(0, 500), 0, 500);
+		log.clear();
+		assertEquals(0, log.size());
+		assertEquals(0, log.items(500).length);
+		log.append(range(500, 5), 0, 5);
+		assertRange(500, log.items(500));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void truncatedItemsCanNotBeReplayed() {
+		ReplayLog log = new ReplayLog();
+		log.append(range(0, 100), 0, 100);
+		log.truncate(50);
+		log.items(10);
+	}
+}
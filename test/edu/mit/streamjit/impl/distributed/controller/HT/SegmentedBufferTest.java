@@ -0,0 +1,125 @@
+package edu.mit.streamjit.impl.distributed.controller.HT;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.mit.streamjit.impl.blob.ConcurrentArrayBuffer;
+
+/**
+ * Tests for {@link SegmentedBuffer}. The sizes cross the 4096-item segment
+ * boundaries on purpose.
+ *
+ * @author sumanan
+ * @since 19 Oct, 2026
+ */
+public class SegmentedBufferTest {
+
+	private static Object[] range(int from, int count) {
+		Object[] data = new Object[count];
+		for (int i = 0; i < count; i++)
+			data[i] = from + i;
+		return data;
+	}
+
+	@Test
+	public void readsInWriteOrderAcrossSegments() {
+		SegmentedBuffer buffer = new SegmentedBuffer(20000);
+		assertEquals(5000, buffer.write(range(0, 5000), 0, 5000));
+		assertTrue(buffer.write(5000));
+		assertEquals(4000, buffer.write(range(5001, 4000), 0, 4000));
+		assertEquals(9001, buffer.size());
+
+		assertEquals(0, buffer.read());
+		Object[] data = new Object[9000];
+		assertEquals(9000, buffer.read(data, 0, 9000));
+		for (int i = 0; i < data.length; i++)
+			assertEquals(i + 1, data[i]);
+		assertNull(buffer.read());
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void writesStopAtCapacity() {
+		SegmentedBuffer buffer = new SegmentedBuffer(10);
+		assertEquals(10, buffer.write(range(0, 15), 0, 15));
+		assertFalse(buffer.write(99));
+		assertEquals(0, buffer.read());
+		assertTrue(buffer.write(10));
+		assertEquals(10, buffer.size());
+	}
+
+	@Test
+	public void segmentsAreReusedAfterReading() {
+		SegmentedBuffer buffer = new SegmentedBuffer(5000);
+		Object[] data = new Object[4096];
+		for (int round = 0; round < 10; round++) {
+			assertEquals(4096, buffer.write(range(round * 4096, 4096), 0, 4096));
+			assertEquals(4096, buffer.read(data, 0, 4096));
+			assertEquals(round * 4096, data[0]);
+			assertEquals(round * 4096 + 4095, data[4095]);
+		}
+	}
+
+	@Test
+	public void skipDiscardsTheOldestItems() {
+		SegmentedBuffer buffer = new SegmentedBuffer(10000);
+		buffer.write(range(0, 6000), 0, 6000);
+		assertEquals(4500, buffer.skip(4500));
+		assertEquals(4500, buffer.read());
+		assertEquals(1499, buffer.skip(2000));
+		assertEquals(0, buffer.size());
+
+		buffer.write(range(0, 100), 0, 100);
+		buffer.clear();
+		assertEquals(0, buffer.size());
+		assertNull(buffer.read());
+	}
+
+	@Test
+	public void drainToStopsWhenTheDestinationIsFull() {
+		SegmentedBuffer buffer = new SegmentedBuffer(10000);
+		buffer.write(range(0, 5000), 0, 5000);
+		ConcurrentArrayBuffer dst = new ConcurrentArrayBuffer(4500);
+		assertEquals(4500, buffer.drainTo(dst, 5000));
+		assertEquals(500, buffer.size());
+		assertEquals(4500, buffer.read());
+
+		Object[] data = new Object[4500];
+		dst.read(data, 0, 4500);
+		for (int i = 0; i < data.length; i++)
+			assertEquals(i, data[i]);
+	}
+
+	@Test
+	public void oneWriterOneReaderKeepTheOrder() throws InterruptedException {
+		final int total = 1000000;
+		SegmentedBuffer buffer = new SegmentedBuffer(10000);
+		Thread writer = new Thread(() -> {
+			int next = 0;
+			Object[] chunk = new Object[777];
+			while (next < total) {
+				int n = Math.min(chunk.length, total - next);
+				for (int i = 0; i < n; i++)
+					chunk[i] = next + i;
+				int off = 0;
+				while (off < n)
+					off += buffer.write(chunk, off, n - off);
+				next += n;
+			}
+		});
+		writer.start();
+		Object[] data = new Object[1000];
+		int expected = 0;
+		while (expected < total) {
+			int read = buffer.read(data, 0, data.length);
+			for (int i = 0; i < read; i++)
+				assertEquals(expected++, data[i]);
+		}
+		writer.join();
+		assertEquals(0, buffer.size());
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.impl.distributed.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.mit.streamjit.api.Identity;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Pipeline;
+import edu.mit.streamjit.api.RoundrobinJoiner;
+import edu.mit.streamjit.api.RoundrobinSplitter;
+import edu.mit.streamjit.api.Splitjoin;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.impl.common.Configuration.SwitchParameter;
+import edu.mit.streamjit.impl.common.ConnectWorkersVisitor;
+import edu.mit.streamjit.impl.common.Workers;
+
+/**
+ * Tests for {@link SymmetricParameters#reduce(Configuration)} and
+ * {@link SymmetricParameters#expand(Configuration)}.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 19 Oct, 2026
+ */
+public class SymmetricParametersTest {
+
+	private final Identity<Integer> a1 = new Identity<>(),
+			b1 = new Identity<>(), a2 = new Identity<>(),
+			b2 = new Identity<>(), tail = new Identity<>();
+
+	private static int id(Worker<?, ?> w) {
+		return Workers.getIdentifier(w);
+	}
+
+	private static String fuse(Worker<?, ?> w) {
+		return "fuse" + id(w);
+	}
+
+	private static String connection(Worker<?, ?> from, Worker<?, ?> to) {
+		return String.format("ConnectionType-%d:%d", id(from), id(to));
+	}
+
+	/**
+	 * @return a splitjoin of the given branches followed by {@link #tail},
+	 *         with the worker identifiers set.
+	 */
+	private OneToOneElement<Integer, Integer> graph(
+			OneToOneElement<Integer, Integer> branch1,
+			OneToOneElement<Integer, Integer> branch2) {
+		Pipeline<Integer, Integer> graph = new Pipeline<>(
+				new Splitjoin<Integer, Integer>(
+						new RoundrobinSplitter<Integer>(),
+						new RoundrobinJoiner<Integer>(), branch1, branch2),
+				tail);
+		graph.visit(new ConnectWorkersVisitor());
+		return graph;
+	}
+
+	private OneToOneElement<Integer, Integer> symmetricGraph() {
+		return graph(new Pipeline<Integer, Integer>(a1, b1),
+				new Pipeline<Integer, Integer>(a2, b2));
+	}
+
+	private static Configuration.Builder fuses(Worker<?, ?>... workers) {
+		Configuration.Builder builder = Configuration.builder();
+		for (Worker<?, ?> w : workers)
+			builder.addParameter(new IntParameter(fuse(w), 0, 1, 0));
+		return builder;
+	}
+
+	private static SwitchParameter<String> connectionType(String name,
+			String value) {
+		return new SwitchParameter<>(name, String.class, value,
+				Arrays.asList("local", "tcp", "async"));
+	}
+
+	private static int value(Configuration cfg, String name) {
+		return cfg.getParameter(name, IntParameter.class).getValue();
+	}
+
+	@Test
+	public void tiesIdenticalBranches() {
+		OneToOneElement<Integer, Integer> graph = symmetricGraph();
+		Configuration cfg = fuses(a1, b1, a2, b2, tail)
+				.addParameter(connectionType(connection(a1, b1), "local"))
+				.addParameter(connectionType(connection(a2, b2), "local"))
+				.addParameter(new IntParameter("worker" + id(a2), 0, 3, 0))
+				.build();
+		SymmetricParameters sp = new SymmetricParameters(graph, cfg);
+
+		Configuration reduced = sp.reduce(cfg);
+		assertEquals(cfg.getParametersMap().size() - 3, reduced
+				.getParametersMap().size());
+		assertNull(reduced.getParameter(fuse(a2)));
+		assertNull(reduced.getParameter(fuse(b2)));
+		assertNull(reduced.getParameter(connection(a2, b2)));
+		assertNotNull(reduced.getParameter(fuse(a1)));
+		assertNotNull(reduced.getParameter(fuse(tail)));
+		// The machine assignment is never tied.
+		assertNotNull(reduced.getParameter("worker" + id(a2)));
+
+		// The tuner changes the representatives only.
+		Configuration.Builder tuned = Configuration.builder(reduced);
+		tuned.removeParameter(fuse(a1));
+		tuned.addParameter(new IntParameter(fuse(a1), 0, 1, 1));
+		tuned.removeParameter(connection(a1, b1));
+		tuned.addParameter(connectionType(connection(a1, b1), "tcp"));
+		Configuration expanded = sp.expand(tuned.build());
+		assertEquals(cfg.getParametersMap().size(), expanded
+				.getParametersMap().size());
+		assertEquals(1, value(expanded, fuse(a2)));
+		assertEquals(0, value(expanded, fuse(b2)));
+		assertEquals("tcp", expanded.getParameter(connection(a2, b2),
+				SwitchParameter.class).getValue());
+	}
+
+	@Test
+	public void expandReturnsAFullConfigurationAsIs() {
+		OneToOneElement<Integer, Integer> graph = symmetricGraph();
+		Configuration cfg = fuses(a1, b1, a2, b2, tail).build();
+		SymmetricParameters sp = new SymmetricParameters(graph, cfg);
+		assertSame(cfg, sp.expand(cfg));
+	}
+
+	@Test
+	public void doesNotTieDifferentBranches() {
+		OneToOneElement<Integer, Integer> graph = graph(
+				new Pipeline<Integer, Integer>(a1, b1),
+				new Pipeline<Integer, Integer>(a2));
+		Configuration cfg = fuses(a1, b1, a2, tail).build();
+		SymmetricParameters sp = new SymmetricParameters(graph, cfg);
+		assertEquals(cfg.getParametersMap(), sp.reduce(cfg)
+				.getParametersMap());
+	}
+
+	@Test
+	public void doesNotTieDifferentDomains() {
+		OneToOneElement<Integer, Integer> graph = symmetricGraph();
+		Configuration cfg = fuses(a1, b1, b2, tail).addParameter(
+				new IntParameter(fuse(a2), 0, 5, 0)).build();
+		SymmetricParameters sp = new SymmetricParameters(graph, cfg);
+		Configuration reduced = sp.reduce(cfg);
+		assertNotNull(reduced.getParameter(fuse(a2)));
+		assertNull(reduced.getParameter(fuse(b2)));
+	}
+}
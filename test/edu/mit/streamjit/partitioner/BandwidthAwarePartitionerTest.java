@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2013-2016 Massachusetts Institute of Technology
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package edu.mit.streamjit.partitioner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.mit.streamjit.api.Filter;
+import edu.mit.streamjit.api.Identity;
+import edu.mit.streamjit.api.OneToOneElement;
+import edu.mit.streamjit.api.Pipeline;
+import edu.mit.streamjit.api.RoundrobinJoiner;
+import edu.mit.streamjit.api.RoundrobinSplitter;
+import edu.mit.streamjit.api.Splitjoin;
+import edu.mit.streamjit.api.Worker;
+import edu.mit.streamjit.impl.common.ConnectWorkersVisitor;
+
+/**
+ * Tests for {@link BandwidthAwarePartitioner}.
+ * 
+ * @author Sumanan sumanan@mit.edu
+ * @since 19 Oct, 2026
+ */
+public class BandwidthAwarePartitionerTest {
+
+	/**
+	 * Pushes every item n times.
+	 */
+	private static final class Expander extends Filter<Integer, Integer> {
+		private final int n;
+
+		Expander(int n) {
+			super(1, n);
+			this.n = n;
+		}
+
+		@Override
+		public void work() {
+			Integer x = pop();
+			for (int i = 0; i < n; i++)
+				push(x);
+		}
+	}
+
+	/**
+	 * Sums every n items into one.
+	 */
+	private static final class Reducer extends Filter<Integer, Integer> {
+		private final int n;
+
+		Reducer(int n) {
+			super(n, 1);
+			this.n = n;
+		}
+
+		@Override
+		public void work() {
+			int sum = 0;
+			for (int i = 0; i < n; i++)
+				sum += pop();
+			push(sum);
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static List<Set<Worker<?, ?>>> partition(
+			BandwidthAwarePartitioner<Integer, Integer> partitioner,
+			OneToOneElement<Integer, Integer> graph, int parts) {
+		ConnectWorkersVisitor cwv = new ConnectWorkersVisitor();
+		graph.visit(cwv);
+		return partitioner.partitionEqually(graph, (Worker) cwv.getSource(),
+				(Worker) cwv.getSink(), parts);
+	}
+
+	/**
+	 * Every worker is in exactly one, non-empty partition.
+	 */
+	private static void assertCovers(List<Set<Worker<?, ?>>> partitions,
+			int workers) {
+		Set<Worker<?, ?>> all = new HashSet<>();
+		int total = 0;
+		for (Set<Worker<?, ?>> p : partitions) {
+			assertFalse(p.isEmpty());
+			all.addAll(p);
+			total += p.size();
+		}
+		assertEquals(workers, total);
+		assertEquals(workers, all.size());
+	}
+
+	private static int partitionOf(List<Set<Worker<?, ?>>> partitions,
+			Worker<?, ?> w) {
+		for (int i = 0; i < partitions.size(); i++)
+			if (partitions.get(i).contains(w))
+				return i;
+		throw new AssertionError(w + " is not partitioned");
+	}
+
+	@Test
+	public void balancesAPipelineOfEqualWorkers() {
+		Pipeline<Integer, Integer> graph = new Pipeline<>();
+		for (int i = 0; i < 8; i++)
+			graph.add(new Identity<Integer>());
+		BandwidthAwarePartitioner<Integer, Integer> partitioner = new BandwidthAwarePartitioner<>();
+		List<Set<Worker<?, ?>>> partitions = partition(partitioner, graph, 2);
+		assertEquals(2, partitions.size());
+		assertCovers(partitions, 8);
+		assertEquals(4, partitions.get(0).size());
+		assertEquals(1, partitioner.cutVolume(), 1e-9);
+	}
+
+	@Test
+	public void doesNotCutTheHeavyEdge() {
+		Expander expander = new Expander(100);
+		Reducer reducer = new Reducer(100);
+		Pipeline<Integer, Integer> graph = new Pipeline<>();
+		graph.add(new Identity<Integer>());
+		graph.add(new Identity<Integer>());
+		graph.add(new Identity<Integer>());
+		graph.add(expander);
+		graph.add(reducer);
+		graph.add(new Identity<Integer>());
+		graph.add(new Identity<Integer>());
+		graph.add(new Identity<Integer>());
+		BandwidthAwarePartitioner<Integer, Integer> partitioner = new BandwidthAwarePartitioner<>();
+		List<Set<Worker<?, ?>>> partitions = partition(partitioner, graph, 2);
+		assertCovers(partitions, 8);
+		assertEquals(partitionOf(partitions, expander),
+				partitionOf(partitions, reducer));
+		assertTrue(partitioner.cutVolume() < 100);
+	}
+
+	@Test
+	public void partitionsASplitjoin() {
+		Pipeline<Integer, Integer> graph = new Pipeline<>();
+		graph.add(new Identity<Integer>());
+		graph.add(new Splitjoin<Integer, Integer>(
+				new RoundrobinSplitter<Integer>(),
+				new RoundrobinJoiner<Integer>(), new Pipeline<Integer, Integer>(
+						new Identity<Integer>(), new Identity<Integer>()),
+				new Pipeline<Integer, Integer>(new Identity<Integer>(),
+						new Identity<Integer>())));
+		graph.add(new Identity<Integer>());
+		graph.add(new Identity<Integer>());
+		List<Set<Worker<?, ?>>> partitions = partition(
+				new BandwidthAwarePartitioner<Integer, Integer>(), graph, 3);
+		assertEquals(3, partitions.size());
+		assertCovers(partitions, 9);
+	}
+}
@@ -0,0 +1,133 @@
+package edu.mit.streamjit.tuner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.Test;
+
+import edu.mit.streamjit.impl.common.Configuration;
+import edu.mit.streamjit.impl.common.Configuration.IntParameter;
+import edu.mit.streamjit.tuner.JavaTuner.SearchSpace;
+import edu.mit.streamjit.util.ConfigurationUtils;
+
+/**
+ * Tests for {@link JavaTuner}, through the same line protocol
+ * {@link OnlineTuner} speaks.
+ *
+ * @author sumanan
+ * @since 27 Oct, 2016
+ */
+public class JavaTunerTest {
+
+	private static Configuration cfg(int x, int y) {
+		return Configuration.builder()
+				.addParameter(new IntParameter("x", 0, 100, x))
+				.addParameter(new IntParameter("y", 0, 100, y)).build();
+	}
+
+	private static int value(Configuration cfg, String name) {
+		return ((IntParameter) cfg.getParameter(name)).getValue();
+	}
+
+	/**
+	 * A bowl with its minimum at x = 70, y = 20.
+	 */
+	private static double bowl(Configuration cfg) {
+		double dx = value(cfg, "x") - 70, dy = value(cfg, "y") - 20;
+		return 1000 + dx * dx + dy * dy;
+	}
+
+	/**
+	 * Runs a tuning session and answers every configuration with the
+	 * function's value.
+	 *
+	 * @return the final configuration.
+	 */
+	private static Configuration tune(File workingDir, int rounds,
+			ToDoubleFunction<Configuration> time) throws IOException {
+		JavaTuner tuner = new JavaTuner();
+		tuner.startTuner("", workingDir);
+		tuner.writeLine("tunerounds");
+		tuner.writeLine(Integer.toString(rounds));
+		tuner.writeLine("confg");
+		tuner.writeLine(cfg(0, 100).toJson());
+		String line;
+		while ((line = tuner.readLine()) != null) {
+			if (line.equals("Completed"))
+				return Configuration.fromJson(tuner.readLine());
+			Configuration cfg = Configuration.fromJson(line);
+			tuner.writeLine(String.format("%s:%s",
+					ConfigurationUtils.getConfigPrefix(cfg),
+					Double.toString(time.applyAsDouble(cfg))));
+		}
+		throw new AssertionError("Tuner closed without a final configuration");
+	}
+
+	@Test
+	public void searchSpaceEncodesAndDecodes() {
+		Configuration cfg = cfg(25, 100);
+		SearchSpace space = new SearchSpace(cfg);
+		assertEquals(2, space.dimensions());
+		double[] point = space.encode(cfg);
+		Configuration decoded = space.decode(point);
+		assertEquals(25, value(decoded, "x"));
+		assertEquals(100, value(decoded, "y"));
+		assertArrayEquals(point, space.encode(decoded), 1e-12);
+	}
+
+	@Test
+	public void findsTheMinimum() throws IOException {
+		Configuration best = tune(null, 200, JavaTunerTest::bowl);
+		assertNotNull(best);
+		assertTrue("final configuration is off: " + best.toJson(),
+				bowl(best) <= 1000 + 200);
+	}
+
+	@Test
+	public void theIncomingConfigurationIsMeasuredFirst() throws IOException {
+		JavaTuner tuner = new JavaTuner();
+		tuner.startTuner("", null);
+		tuner.writeLine("tunerounds");
+		tuner.writeLine("10");
+		tuner.writeLine("confg");
+		tuner.writeLine(cfg(30, 40).toJson());
+		Configuration first = Configuration.fromJson(tuner.readLine());
+		assertEquals(30, value(first, "x"));
+		assertEquals(40, value(first, "y"));
+		tuner.stopTuner();
+	}
+
+	@Test
+	public void failedConfigurationsAreNeverTheBest() throws IOException {
+		// Everything right of x = 50 fails, including the bowl's minimum.
+		Configuration best = tune(null, 100, cfg -> value(cfg, "x") > 50 ? -1
+				: bowl(cfg));
+		assertNotNull(best);
+		assertTrue(value(best, "x") <= 50);
+	}
+
+	@Test
+	public void aNewRunStartsFromTheStoredResults() throws IOException {
+		File dir = Files.createTempDirectory("javatuner").toFile();
+		try {
+			Configuration first = tune(dir, 60, JavaTunerTest::bowl);
+			// No new measurements; the final one must be the stored best.
+			Configuration second = tune(dir, 0, cfg -> {
+				throw new AssertionError("known configurations re-measured");
+			});
+			assertEquals(value(first, "x"), value(second, "x"));
+			assertEquals(value(first, "y"), value(second, "y"));
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+}